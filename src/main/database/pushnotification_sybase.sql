@@ -1,9 +1,28 @@
+CREATE TABLE ofPushNotiSvcDict (
+  serviceID             INTEGER         NOT NULL,
+  service               NVARCHAR(1024)  NOT NULL,
+  serviceHash           NVARCHAR(64)    NOT NULL,
+  CONSTRAINT ofPushNotiSvcDict_pk PRIMARY KEY (serviceID)
+);
+CREATE UNIQUE INDEX ofPushNotiSvcDict_hash_idx ON ofPushNotiSvcDict (serviceHash);
+
 CREATE TABLE ofPushNotiService (
-  username              NVARCHAR(64)     NOT NULL,
-  service               NVARCHAR(1024)   NOT NULL,
-  node                  NVARCHAR(1024)   NOT NULL,
-  options			    TEXT             NULL
+  username              NVARCHAR(64)    NOT NULL,
+  serviceID             INTEGER         NOT NULL,
+  node                  NVARCHAR(1024)  NOT NULL,
+  options			    TEXT            NULL,
+  lastUsed              BIGINT          NULL
 );
 CREATE INDEX ofPushNoti_idx ON ofPushNotiService (username);
+CREATE INDEX ofPushNoti_svc_idx ON ofPushNotiService (serviceID);
+CREATE INDEX ofPushNoti_used_idx ON ofPushNotiService (lastUsed);
+
+CREATE TABLE ofPushNotiMute (
+  username              NVARCHAR(64)    NOT NULL,
+  conversation          NVARCHAR(1024)  NOT NULL
+);
+CREATE INDEX ofPushNotiMute_idx ON ofPushNotiMute (username);
+
+INSERT INTO ofID (idType, id) VALUES (760, 1);
 
-INSERT INTO ofVersion (name, version) VALUES ('pushnotification', 2);
+INSERT INTO ofVersion (name, version) VALUES ('pushnotification', 5);
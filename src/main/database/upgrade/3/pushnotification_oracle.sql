@@ -0,0 +1,50 @@
+-- Moves the addresses of push services into a dictionary table, to prevent every registration from repeating
+-- the full address of its service.
+
+-- Step 1: Create the dictionary table
+CREATE TABLE ofPushNotiSvcDict (
+  serviceID             INTEGER         NOT NULL,
+  service               VARCHAR2(1024)  NOT NULL,
+  serviceHash           VARCHAR2(64)    NOT NULL,
+  CONSTRAINT ofPushNotiSvcDict_pk PRIMARY KEY (serviceID)
+);
+CREATE UNIQUE INDEX ofPushNotiSvcDict_hash_idx ON ofPushNotiSvcDict (serviceHash);
+
+-- Step 2: Assign a number to each distinct service. The hash column only guards against duplicate services: the
+-- plugin stores the SHA-256 hash of the services that it adds, migrated services use their (unique) identifier.
+INSERT INTO ofPushNotiSvcDict (serviceID, service, serviceHash)
+SELECT n.serviceID, n.service, CAST(n.serviceID AS VARCHAR2(64))
+FROM (
+    SELECT
+        (SELECT COUNT(DISTINCT s2.service) FROM ofPushNotiService s2 WHERE s2.service < s1.service) + 1 AS serviceID,
+        s1.service
+    FROM (SELECT DISTINCT service FROM ofPushNotiService) s1
+) n;
+
+-- Identifiers of services that are added later are issued by Openfire's sequence manager.
+INSERT INTO ofID (idType, id) SELECT 760, COALESCE(MAX(serviceID), 0) + 1 FROM ofPushNotiSvcDict;
+
+-- Step 3: Create a table with the new structure, and copy all registrations into it
+CREATE TABLE ofPushNotiService_v3 (
+  username              VARCHAR2(64)    NOT NULL,
+  serviceID             INTEGER         NOT NULL,
+  node                  VARCHAR2(1024)  NOT NULL,
+  options			    CLOB            NULL
+);
+
+INSERT INTO ofPushNotiService_v3 (username, serviceID, node, options)
+SELECT
+    r.username,
+    d.serviceID,
+    r.node,
+    r.options
+FROM ofPushNotiService r, ofPushNotiSvcDict d
+WHERE r.service = d.service;
+
+-- Step 4: Replace the original table
+DROP TABLE ofPushNotiService;
+ALTER TABLE ofPushNotiService_v3 RENAME TO ofPushNotiService;
+CREATE INDEX ofPushNoti_idx ON ofPushNotiService (username);
+CREATE INDEX ofPushNoti_svc_idx ON ofPushNotiService (serviceID);
+
+UPDATE ofVersion SET version = 3 WHERE name = 'pushnotification';
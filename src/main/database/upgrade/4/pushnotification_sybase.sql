@@ -0,0 +1,7 @@
+-- Records when each registration was last used (enabled by the client, or successfully pushed to), in milliseconds
+-- since the epoch, so that registrations of abandoned devices can be removed. Existing registrations start without a
+-- value, which is treated as the moment at which the plugin first ran with this version of the database.
+ALTER TABLE ofPushNotiService ADD lastUsed BIGINT NULL;
+CREATE INDEX ofPushNoti_used_idx ON ofPushNotiService (lastUsed);
+
+UPDATE ofVersion SET version = 4 WHERE name = 'pushnotification';
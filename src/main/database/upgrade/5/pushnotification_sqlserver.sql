@@ -0,0 +1,8 @@
+-- Records the conversations (bare JIDs of contacts or rooms) that users muted, for which no push notifications are sent.
+CREATE TABLE ofPushNotiMute (
+  username              NVARCHAR(64)    NOT NULL,
+  conversation          NVARCHAR(1024)  NOT NULL
+);
+CREATE INDEX ofPushNotiMute_idx ON ofPushNotiMute (username);
+
+UPDATE ofVersion SET version = 5 WHERE name = 'pushnotification';
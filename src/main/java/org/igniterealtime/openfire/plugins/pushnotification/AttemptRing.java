@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import java.util.Arrays;
+
+/**
+ * Operations on the rings in which the times of the most recent push attempts of a user are recorded: arrays of times
+ * (in milliseconds since the epoch), in no particular order, where 0 denotes an unused slot.
+ */
+final class AttemptRing
+{
+    /**
+     * The minimum amount of attempts that are retained per user.
+     */
+    static final int MINIMUM_SIZE = 16;
+
+    private AttemptRing() {}
+
+    /**
+     * Returns the amount of attempts in a ring that are more recent than a threshold.
+     */
+    static long countAfter( final long[] ring, final long threshold )
+    {
+        if ( ring == null ) {
+            return 0;
+        }
+        long result = 0;
+        for ( final long attempt : ring ) {
+            if ( attempt > threshold ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The amount of attempts that are retained per user: enough to apply the configured rate limit.
+     *
+     * @return the size of newly created rings.
+     */
+    static int capacity()
+    {
+        return Math.max( MINIMUM_SIZE, PushInterceptor.MAX_PER_SECOND.getValue() + 1 );
+    }
+
+    /**
+     * Records an attempt in a copy of a ring, overwriting the oldest attempt. The ring that is passed is not modified,
+     * as it can be the value of a cache entry that is read (without a lock) elsewhere. The copy is enlarged when the
+     * configured rate limit no longer fits in the ring.
+     *
+     * @param ring The ring to record the attempt in, or null.
+     * @param now The time of the attempt.
+     * @return a new ring, in which the attempt was recorded.
+     */
+    static long[] record( final long[] ring, final long now )
+    {
+        final int size = capacity();
+        final long[] result = ring == null ? new long[size] : Arrays.copyOf( ring, Math.max( ring.length, size ) );
+        overwriteOldest( result, now );
+        return result;
+    }
+
+    /**
+     * Records an attempt in a ring, overwriting the oldest attempt. The ring is modified, unless it is null or no longer
+     * fits the configured rate limit, in which case a new (larger) ring is returned. The caller must prevent concurrent
+     * access to the ring.
+     *
+     * @param ring The ring to record the attempt in, or null.
+     * @param now The time of the attempt.
+     * @return the ring in which the attempt was recorded.
+     */
+    static long[] recordInPlace( final long[] ring, final long now )
+    {
+        if ( ring == null || ring.length < capacity() ) {
+            return record( ring, now );
+        }
+        overwriteOldest( ring, now );
+        return ring;
+    }
+
+    private static void overwriteOldest( final long[] ring, final long now )
+    {
+        // Unused slots hold 0, so they are picked first.
+        int oldest = 0;
+        for ( int i = 1; i < ring.length; i++ ) {
+            if ( ring[i] < ring[oldest] ) {
+                oldest = i;
+            }
+        }
+        ring[oldest] = now;
+    }
+
+    /**
+     * Checks if all attempts in a ring are older than a threshold.
+     */
+    static boolean allBefore( final long[] ring, final long threshold )
+    {
+        for ( final long attempt : ring ) {
+            if ( attempt >= threshold ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
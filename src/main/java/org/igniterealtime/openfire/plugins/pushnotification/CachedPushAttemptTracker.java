@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.util.cache.Cache;
+import org.jivesoftware.util.cache.CacheFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps track of push notifications that were attempted in (clustered) caches, so that all cluster nodes share the
+ * same state.
+ *
+ * The state is stored using values of a fixed size: for every message, the time of the last attempt, and for every
+ * user, a ring of the times of the most recent attempts. Recording an attempt therefore replaces two small cache
+ * entries, regardless of how many push notifications were sent to the user before.
+ */
+public class CachedPushAttemptTracker implements PushAttemptTracker
+{
+    private static final Logger Log = LoggerFactory.getLogger( CachedPushAttemptTracker.class );
+
+    /**
+     * A memory-only cache that keeps track of the most recent push attempts for a user. Key: username. Value: the
+     * times (in milliseconds since the epoch) of the most recent attempts, in no particular order, where 0 denotes an
+     * unused slot.
+     */
+    // Note: cache entries should only contain classes loaded by Openfire's classloader (and explicitly not classes
+    //       loaded by the classloader that's used by this plugin), to prevent ClassCastExceptions when the plugin
+    //       gets reloaded. See https://github.com/igniterealtime/openfire-pushnotification-plugin/issues/19
+    private static final Cache<String, long[]> ATTEMPTS_BY_USER = CacheFactory.createCache( "pushnotification.attempts.users" );
+
+    /**
+     * A memory-only cache that keeps track of when the last push notification was generated for a particular message.
+     * Key: message identifier. Value: time (in milliseconds since the epoch) of the last attempt.
+     */
+    private static final Cache<String, Long> LAST_ATTEMPT_BY_MESSAGE = CacheFactory.createCache( "pushnotification.attempts.messages" );
+
+    /**
+     * Returns the lock that guards the state of a user.
+     *
+     * @param username The user for which to return a lock.
+     * @return A lock.
+     */
+    @Nonnull
+    private Lock getLock( @Nonnull final String username )
+    {
+        return ATTEMPTS_BY_USER.getLock( username );
+    }
+
+    @Nonnull
+    @Override
+    public String tryAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duplicateWindow, @Nullable final Duration coalesceWindow, final int maxPerSecond )
+    {
+        final Lock lock = getLock( username );
+        lock.lock();
+        try {
+            final long now = System.currentTimeMillis();
+            final Long last = LAST_ATTEMPT_BY_MESSAGE.get( messageIdentifier );
+            if ( last != null && last > now - duplicateWindow.toMillis() ) {
+                return "duplicate";
+            }
+            final long[] ring = ATTEMPTS_BY_USER.get( username );
+            if ( coalesceWindow != null && AttemptRing.countAfter( ring, now - coalesceWindow.toMillis() ) > 0 ) {
+                return "coalesced";
+            }
+            if ( AttemptRing.countAfter( ring, now - 1000 ) > maxPerSecond ) {
+                return "rate-limited";
+            }
+
+            // Clustered caches require an explicit PUT for the changed value to be registered.
+            ATTEMPTS_BY_USER.put( username, AttemptRing.record( ring, now ) );
+            LAST_ATTEMPT_BY_MESSAGE.put( messageIdentifier, now );
+            return "allowed";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean wasAttempted( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duration )
+    {
+        final Lock lock = getLock( username );
+        lock.lock();
+        try {
+            final Long last = LAST_ATTEMPT_BY_MESSAGE.get( messageIdentifier );
+            return last != null && last > System.currentTimeMillis() - duration.toMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long attemptsForLast( @Nonnull final String username, @Nonnull final Duration duration )
+    {
+        final Lock lock = getLock( username );
+        lock.lock();
+        try {
+            return AttemptRing.countAfter( ATTEMPTS_BY_USER.get( username ), System.currentTimeMillis() - duration.toMillis() );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier )
+    {
+        final long now = System.currentTimeMillis();
+        final Lock lock = getLock( username );
+        lock.lock();
+        try {
+            // Clustered caches require an explicit PUT for the changed value to be registered.
+            ATTEMPTS_BY_USER.put( username, AttemptRing.record( ATTEMPTS_BY_USER.get( username ), now ) );
+            LAST_ATTEMPT_BY_MESSAGE.put( messageIdentifier, now );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void purgeAllOlderThan( @Nonnull final Instant cutoff )
+    {
+        Log.debug( "Purging cached entries older than {}", cutoff );
+        final long threshold = cutoff.toEpochMilli();
+
+        final Set<String> usernames = new HashSet<>( ATTEMPTS_BY_USER.keySet() );
+        for ( final String username : usernames )
+        {
+            final Lock lock = getLock( username );
+            lock.lock();
+            try {
+                final long[] ring = ATTEMPTS_BY_USER.get( username );
+                if ( ring != null && AttemptRing.allBefore( ring, threshold ) ) {
+                    ATTEMPTS_BY_USER.remove( username );
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        final Set<String> messageIdentifiers = new HashSet<>( LAST_ATTEMPT_BY_MESSAGE.keySet() );
+        for ( final String messageIdentifier : messageIdentifiers )
+        {
+            final Lock lock = getLock( PushInterceptor.getUsername( messageIdentifier ) );
+            lock.lock();
+            try {
+                final Long last = LAST_ATTEMPT_BY_MESSAGE.get( messageIdentifier );
+                if ( last != null && last < threshold ) {
+                    LAST_ATTEMPT_BY_MESSAGE.remove( messageIdentifier );
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the recorded attempts per user.
+     */
+    Map<String, long[]> getAttemptsByUser()
+    {
+        return new HashMap<>( ATTEMPTS_BY_USER );
+    }
+
+    /**
+     * Returns a copy of the time of the last attempt per message.
+     */
+    Map<String, Long> getLastAttemptByMessage()
+    {
+        return new HashMap<>( LAST_ATTEMPT_BY_MESSAGE );
+    }
+
+    /**
+     * Adds attempts that were recorded elsewhere (such as by a {@link LocalPushAttemptTracker} that was used before
+     * this node joined a cluster). Existing state is retained.
+     */
+    void addAll( final Map<String, long[]> attemptsByUser, final Map<String, Long> lastAttemptByMessage )
+    {
+        attemptsByUser.forEach( ATTEMPTS_BY_USER::putIfAbsent );
+        lastAttemptByMessage.forEach( LAST_ATTEMPT_BY_MESSAGE::putIfAbsent );
+    }
+
+    /**
+     * Removes all state.
+     */
+    void clear()
+    {
+        ATTEMPTS_BY_USER.clear();
+        LAST_ATTEMPT_BY_MESSAGE.clear();
+    }
+}
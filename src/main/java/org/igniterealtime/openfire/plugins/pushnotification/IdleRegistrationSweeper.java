@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.TimerTask;
+
+/**
+ * Periodically removes registrations that have not been used (enabled by the client, or successfully pushed to) for
+ * longer than {@link #MAX_IDLE}. These typically belong to devices that were abandoned without disabling push
+ * notifications.
+ *
+ * Registrations are removed in small chunks, with a pause in between, to prevent long-running locks on the database
+ * table. In a cluster, only the senior member sweeps.
+ *
+ * Registrations that existed before the use of registrations was recorded are considered to have been used at the
+ * moment that the plugin first ran with that ability.
+ *
+ * Sweeping is disabled by default. A registration is only regarded as used when the client enables it, or when the
+ * push service acknowledges a push notification with a successful response. Registrations of push services that do not
+ * respond would be removed after {@link #MAX_IDLE}, even when they are still in use.
+ *
+ * @see RegistrationUsageRecorder
+ */
+public class IdleRegistrationSweeper
+{
+    private static final Logger Log = LoggerFactory.getLogger( IdleRegistrationSweeper.class );
+
+    /**
+     * Enables the removal of registrations that have not been used for a long time.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.registrations.sweep.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The period after which a registration that was not used is removed.
+     */
+    public static final SystemProperty<Duration> MAX_IDLE = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.registrations.sweep.max-idle")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.DAYS)
+        .setMinValue(Duration.ofDays(1))
+        .setDefaultValue(Duration.ofDays(90))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The period with which idle registrations are looked for. Requires a reload of the plugin.
+     */
+    public static final SystemProperty<Duration> INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.registrations.sweep.interval")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MINUTES)
+        .setDefaultValue(Duration.ofHours(1))
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The maximum amount of registrations that is removed in one database operation.
+     */
+    public static final SystemProperty<Integer> CHUNK_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.registrations.sweep.chunk-size")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setMaxValue(PushServiceManager.BATCH_SIZE)
+        .setDefaultValue(100)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The pause between the removal of two chunks of registrations.
+     */
+    public static final SystemProperty<Duration> CHUNK_PAUSE = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.registrations.sweep.chunk-pause")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofSeconds(1))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The name of the property that holds the moment (in milliseconds since the epoch) that is used as the last use of
+     * registrations for which no use was recorded.
+     */
+    static final String BASELINE_PROPERTY = "pushnotifications.registrations.sweep.baseline";
+
+    private volatile boolean running;
+
+    private final TimerTask sweep = new TimerTask() {
+        @Override
+        public void run() {
+            try {
+                sweep();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while removing push service registrations that were not used for a long time.", e );
+            }
+        }
+    };
+
+    public void start()
+    {
+        if ( JiveGlobals.getLongProperty( BASELINE_PROPERTY, -1 ) < 0 ) {
+            JiveGlobals.setProperty( BASELINE_PROPERTY, String.valueOf( System.currentTimeMillis() ) );
+        }
+        running = true;
+        final long interval = INTERVAL.getValue().toMillis();
+        TaskEngine.getInstance().schedule( sweep, Duration.ofMinutes( 5 ).toMillis(), interval );
+    }
+
+    public void stop()
+    {
+        running = false;
+        TaskEngine.getInstance().cancelScheduledTask( sweep );
+    }
+
+    synchronized void sweep() throws Exception
+    {
+        if ( !ENABLED.getValue() || !ClusterManager.isSeniorClusterMember() ) {
+            return;
+        }
+
+        final Instant cutoff = Instant.now().minus( MAX_IDLE.getValue() );
+        final boolean includeUnknown = Instant.ofEpochMilli( JiveGlobals.getLongProperty( BASELINE_PROPERTY, System.currentTimeMillis() ) ).isBefore( cutoff );
+
+        int total = 0;
+        final Instant deadline = Instant.now().plus( INTERVAL.getValue() );
+        while ( running && Instant.now().isBefore( deadline ) )
+        {
+            final int chunkSize = CHUNK_SIZE.getValue();
+            final int removed = PushServiceManager.deregisterIdle( cutoff, includeUnknown, chunkSize );
+            total += removed;
+            if ( removed < chunkSize ) {
+                break;
+            }
+            Thread.sleep( CHUNK_PAUSE.getValue().toMillis() );
+        }
+
+        if ( total > 0 ) {
+            Log.info( "Removed {} push service registration(s) that were not used since {}.", total, cutoff );
+        }
+    }
+}
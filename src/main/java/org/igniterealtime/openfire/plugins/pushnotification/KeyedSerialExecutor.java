@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Executes tasks asynchronously, guaranteeing that tasks submitted for the same key are executed one after the other,
+ * in the order in which they were submitted. Tasks for different keys are executed concurrently.
+ *
+ * @param <K> The type of the key by which tasks are ordered.
+ */
+public class KeyedSerialExecutor<K>
+{
+    private final Executor executor;
+
+    /**
+     * For every key with pending tasks, the completion of the last task that was submitted.
+     */
+    private final ConcurrentMap<K, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    private volatile boolean shutdown = false;
+
+    public KeyedSerialExecutor( @Nonnull final Executor executor )
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules a task for execution after all tasks previously submitted for the same key have completed (regardless
+     * of whether they completed successfully).
+     *
+     * A task that is accepted, but that cannot be handed to the executor when earlier tasks for the same key have
+     * completed (for example, because the executor was shut down in the meantime), completes the returned future
+     * exceptionally with a {@link RejectedExecutionException}.
+     *
+     * @param key The key by which tasks are ordered.
+     * @param task The task to execute.
+     * @return a future that completes when the task has been executed.
+     * @throws RejectedExecutionException when this instance has been shut down, or the task cannot be accepted by the executor.
+     */
+    @Nonnull
+    public CompletableFuture<Void> execute( @Nonnull final K key, @Nonnull final Runnable task )
+    {
+        if ( shutdown ) {
+            throw new RejectedExecutionException( "Unable to accept a task, as this executor has been shut down." );
+        }
+        final CompletableFuture<Void> next = tails.compute( key, ( k, tail ) -> tail == null
+            ? CompletableFuture.runAsync( task, executor )
+            : tail.handle( ( result, throwable ) -> null ).thenRunAsync( task, executor ) );
+
+        // Forget about the key when no further tasks were submitted for it in the meantime.
+        next.whenComplete( ( result, throwable ) -> tails.remove( key, next ) );
+        return next;
+    }
+
+    /**
+     * Stops accepting tasks, and waits for the tasks that were already accepted to be executed.
+     *
+     * @param timeout The maximum period to wait.
+     * @return true if all accepted tasks were executed, false if the timeout passed before that.
+     * @throws InterruptedException when the thread was interrupted while waiting.
+     */
+    public boolean shutdown( @Nonnull final Duration timeout ) throws InterruptedException
+    {
+        shutdown = true;
+        try {
+            CompletableFuture.allOf( tails.values().toArray( new CompletableFuture[0] ) ).get( timeout.toMillis(), TimeUnit.MILLISECONDS );
+        } catch ( ExecutionException e ) {
+            // Some tasks completed exceptionally, but all have completed.
+        } catch ( TimeoutException e ) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The amount of keys for which tasks are pending.
+     *
+     * @return a non-negative number.
+     */
+    public int getPendingKeyCount()
+    {
+        return tails.size();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of push notifications that were attempted in plain concurrent maps, for servers that are not part of a
+ * cluster.
+ *
+ * The state of a user is guarded by one of a fixed set of locks (lock striping), and rings of attempts are updated in
+ * place. This avoids the overhead of Openfire's cache and lock abstractions, that are needed only to share state
+ * between cluster nodes.
+ */
+public class LocalPushAttemptTracker implements PushAttemptTracker
+{
+    private static final Logger Log = LoggerFactory.getLogger( LocalPushAttemptTracker.class );
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] locks = new ReentrantLock[ STRIPES ];
+
+    /**
+     * The times (in milliseconds since the epoch) of the most recent attempts, by username.
+     */
+    private final ConcurrentMap<String, long[]> attemptsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * The time (in milliseconds since the epoch) of the last attempt, by message identifier.
+     */
+    private final ConcurrentMap<String, Long> lastAttemptByMessage = new ConcurrentHashMap<>();
+
+    public LocalPushAttemptTracker()
+    {
+        for ( int i = 0; i < STRIPES; i++ ) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock getLock( final String username )
+    {
+        final int h = username.hashCode();
+        return locks[ ( h ^ ( h >>> 16 ) ) & ( STRIPES - 1 ) ];
+    }
+
+    @Nonnull
+    @Override
+    public String tryAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duplicateWindow, @Nullable final Duration coalesceWindow, final int maxPerSecond )
+    {
+        final ReentrantLock lock = getLock( username );
+        lock.lock();
+        try {
+            final long now = System.currentTimeMillis();
+            final Long last = lastAttemptByMessage.get( messageIdentifier );
+            if ( last != null && last > now - duplicateWindow.toMillis() ) {
+                return "duplicate";
+            }
+            final long[] ring = attemptsByUser.get( username );
+            if ( coalesceWindow != null && AttemptRing.countAfter( ring, now - coalesceWindow.toMillis() ) > 0 ) {
+                return "coalesced";
+            }
+            if ( AttemptRing.countAfter( ring, now - 1000 ) > maxPerSecond ) {
+                return "rate-limited";
+            }
+            record( username, ring, messageIdentifier, now );
+            return "allowed";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean wasAttempted( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duration )
+    {
+        // A single read of a concurrent map does not need the lock.
+        final Long last = lastAttemptByMessage.get( messageIdentifier );
+        return last != null && last > System.currentTimeMillis() - duration.toMillis();
+    }
+
+    @Override
+    public long attemptsForLast( @Nonnull final String username, @Nonnull final Duration duration )
+    {
+        final ReentrantLock lock = getLock( username );
+        lock.lock();
+        try {
+            return AttemptRing.countAfter( attemptsByUser.get( username ), System.currentTimeMillis() - duration.toMillis() );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier )
+    {
+        final ReentrantLock lock = getLock( username );
+        lock.lock();
+        try {
+            record( username, attemptsByUser.get( username ), messageIdentifier, System.currentTimeMillis() );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void purgeAllOlderThan( @Nonnull final Instant cutoff )
+    {
+        Log.debug( "Purging entries older than {}", cutoff );
+        final long threshold = cutoff.toEpochMilli();
+
+        for ( final String username : attemptsByUser.keySet() )
+        {
+            final ReentrantLock lock = getLock( username );
+            lock.lock();
+            try {
+                final long[] ring = attemptsByUser.get( username );
+                if ( ring != null && AttemptRing.allBefore( ring, threshold ) ) {
+                    attemptsByUser.remove( username );
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        lastAttemptByMessage.values().removeIf( last -> last < threshold );
+    }
+
+    /**
+     * Must be invoked while holding the lock of the user. The ring is updated in place: it is only accessed while
+     * holding that lock.
+     */
+    private void record( final String username, final long[] ring, final String messageIdentifier, final long now )
+    {
+        final long[] updated = AttemptRing.recordInPlace( ring, now );
+        if ( updated != ring ) {
+            attemptsByUser.put( username, updated );
+        }
+        lastAttemptByMessage.put( messageIdentifier, now );
+    }
+
+    /**
+     * Returns a copy of the recorded attempts per user.
+     */
+    Map<String, long[]> getAttemptsByUser()
+    {
+        final Map<String, long[]> result = new HashMap<>();
+        attemptsByUser.forEach( ( username, ring ) -> {
+            final ReentrantLock lock = getLock( username );
+            lock.lock();
+            try {
+                result.put( username, ring.clone() );
+            } finally {
+                lock.unlock();
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Returns a copy of the time of the last attempt per message.
+     */
+    Map<String, Long> getLastAttemptByMessage()
+    {
+        return new HashMap<>( lastAttemptByMessage );
+    }
+
+    /**
+     * Adds attempts that were recorded elsewhere (such as in the caches that were used while this node was part of a
+     * cluster). Existing state is retained.
+     */
+    void addAll( final Map<String, long[]> attemptsByUser, final Map<String, Long> lastAttemptByMessage )
+    {
+        attemptsByUser.forEach( ( username, ring ) -> this.attemptsByUser.putIfAbsent( username, ring.clone() ) );
+        lastAttemptByMessage.forEach( this.lastAttemptByMessage::putIfAbsent );
+    }
+
+    /**
+     * Removes all state.
+     */
+    void clear()
+    {
+        attemptsByUser.clear();
+        lastAttemptByMessage.clear();
+    }
+}
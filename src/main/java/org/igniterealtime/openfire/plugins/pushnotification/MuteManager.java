@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.cache.Cache;
+import org.jivesoftware.util.cache.CacheFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Manages the conversations that users muted. No push notifications are sent for messages in a muted conversation
+ * (from a muted contact, or in a muted room).
+ *
+ * Muted conversations are stored in the database. As they are checked for every message that could cause a push
+ * notification, they are kept in memory per user as a sorted array of 64-bit hashes of the bare JIDs of the muted
+ * conversations. Checking a conversation is a binary search in that array, which is empty for users that muted
+ * nothing. The amount of conversations that a user can mute is limited by {@link #MAX_PER_USER}.
+ */
+public class MuteManager
+{
+    private static final Logger Log = LoggerFactory.getLogger( MuteManager.class );
+
+    private static final long[] NONE = new long[0];
+
+    /**
+     * The maximum amount of conversations that one user can mute.
+     */
+    public static final SystemProperty<Integer> MAX_PER_USER = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.mute.max-per-user")
+        .setPlugin("Push Notification")
+        .setMinValue(0)
+        .setDefaultValue(1000)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * A cache of the muted conversations per user. Key: username. Value: sorted hashes of the bare JIDs of the muted
+     * conversations.
+     */
+    // Note: like the other caches of this plugin, entries only contain classes loaded by Openfire's classloader.
+    private static final Cache<String, long[]> MUTES = CacheFactory.createCache( "pushnotification.mutes" );
+
+    /**
+     * Checks if a user muted a conversation. This does not access the database when the muted conversations of the
+     * user are cached.
+     *
+     * Muted conversations are loaded and cached while holding the lock of the user in the cache. Modifications remove
+     * the cached conversations while holding the same lock (see {@link #invalidate(String)}), so that conversations
+     * that were loaded before a modification are never cached after it.
+     *
+     * @param username The user.
+     * @param conversation The address of the contact or room (the resource part is ignored).
+     * @return true if the conversation is muted.
+     */
+    public static boolean isMuted( @Nonnull final String username, @Nonnull final JID conversation )
+    {
+        long[] hashes = MUTES.get( username );
+        if ( hashes == null )
+        {
+            final Lock lock = MUTES.getLock( username );
+            lock.lock();
+            try
+            {
+                hashes = MUTES.get( username );
+                if ( hashes == null ) {
+                    hashes = toHashes( loadMuted( username ) );
+                    MUTES.put( username, hashes );
+                }
+            }
+            catch ( SQLException e )
+            {
+                Log.warn( "An exception occurred while loading the muted conversations of user '{}'. Assuming the conversation with '{}' is not muted.", username, conversation, e );
+                return false;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        return hashes.length > 0 && Arrays.binarySearch( hashes, hash( conversation.toBareJID() ) ) >= 0;
+    }
+
+    /**
+     * Mutes or unmutes a conversation for a user.
+     *
+     * A conversation is not muted when the user already muted the maximum amount of conversations ({@link #MAX_PER_USER}).
+     *
+     * @param username The user.
+     * @param conversation The address of the contact or room (the resource part is ignored).
+     * @param muted true to mute, false to unmute.
+     * @return false if the conversation was not muted, because the user already muted the maximum amount of conversations.
+     */
+    public static boolean setMuted( @Nonnull final String username, @Nonnull final JID conversation, final boolean muted ) throws SQLException
+    {
+        Log.debug( "{} conversation '{}' for user '{}'.", muted ? "Muting" : "Unmuting", conversation.toBareJID(), username );
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = DbConnectionManager.getConnection();
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiMute WHERE username = ? AND conversation = ?" );
+            pstmt.setString( 1, username );
+            pstmt.setString( 2, conversation.toBareJID() );
+            final boolean wasMuted = pstmt.executeUpdate() > 0;
+            if ( muted )
+            {
+                if ( !wasMuted )
+                {
+                    DbConnectionManager.fastcloseStmt( pstmt );
+                    pstmt = connection.prepareStatement( "SELECT COUNT(*) FROM ofPushNotiMute WHERE username = ?" );
+                    pstmt.setString( 1, username );
+                    rs = pstmt.executeQuery();
+                    final int count = rs.next() ? rs.getInt( 1 ) : 0;
+                    DbConnectionManager.fastcloseStmt( rs, pstmt );
+                    rs = null;
+                    if ( count >= MAX_PER_USER.getValue() ) {
+                        Log.debug( "Not muting conversation '{}' for user '{}', who already muted {} conversation(s).", conversation.toBareJID(), username, count );
+                        return false;
+                    }
+                }
+                else
+                {
+                    DbConnectionManager.fastcloseStmt( pstmt );
+                }
+                pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiMute (username, conversation) VALUES (?, ?)" );
+                pstmt.setString( 1, username );
+                pstmt.setString( 2, conversation.toBareJID() );
+                pstmt.execute();
+            }
+            return true;
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+            invalidate( username );
+        }
+    }
+
+    /**
+     * Unmutes all conversations of a user.
+     *
+     * @param username The user.
+     */
+    public static void unmuteAll( @Nonnull final String username ) throws SQLException
+    {
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        try
+        {
+            connection = DbConnectionManager.getConnection();
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiMute WHERE username = ?" );
+            pstmt.setString( 1, username );
+            pstmt.executeUpdate();
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( null, pstmt, connection );
+            invalidate( username );
+        }
+    }
+
+    /**
+     * Removes the cached muted conversations of a user, while holding the lock of the user in the cache.
+     *
+     * @param username The user.
+     */
+    private static void invalidate( @Nonnull final String username )
+    {
+        final Lock lock = MUTES.getLock( username );
+        lock.lock();
+        try
+        {
+            MUTES.remove( username );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the conversations that a user muted from the database, bypassing the cache.
+     *
+     * @param username The user.
+     * @return the bare JIDs of the muted conversations.
+     */
+    @Nonnull
+    public static Set<String> loadMuted( @Nonnull final String username ) throws SQLException
+    {
+        final Set<String> result = new TreeSet<>();
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = DbConnectionManager.getConnection();
+            pstmt = connection.prepareStatement( "SELECT conversation FROM ofPushNotiMute WHERE username = ?" );
+            pstmt.setString( 1, username );
+            rs = pstmt.executeQuery();
+            while ( rs.next() ) {
+                result.add( rs.getString( "conversation" ) );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+        return result;
+    }
+
+    private static long[] toHashes( final Collection<String> conversations )
+    {
+        if ( conversations.isEmpty() ) {
+            return NONE;
+        }
+        return conversations.stream().mapToLong( MuteManager::hash ).sorted().distinct().toArray();
+    }
+
+    /**
+     * A 64-bit hash of a bare JID (FNV-1a, followed by a finalizer that spreads the bits). With this many bits, the
+     * chance that a conversation is wrongly regarded as muted is negligible.
+     */
+    static long hash( final String bareJID )
+    {
+        long h = 0xcbf29ce484222325L;
+        for ( int i = 0; i < bareJID.length(); i++ ) {
+            h ^= bareJID.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.dom4j.io.SAXReader;
+import org.jivesoftware.util.SystemProperty;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the publish-options of push service registrations in a canonical, compact form.
+ *
+ * Before publish-options are stored, they are normalized: only the 'type' attribute of the form, and the 'var' and
+ * 'type' attributes and the values of each field are retained, and fields are ordered by name (with FORM_TYPE first). When the DEFLATE-compressed, Base64-encoded form of
+ * the normalized XML is shorter than the XML itself, the compressed form is stored (prefixed with
+ * {@link #COMPRESSED_PREFIX}). Otherwise, the normalized XML is stored. Publish-options that were stored as raw XML by
+ * earlier versions of this plugin can still be read, and are converted by {@link PublishOptionsMigration}.
+ *
+ * Parsed publish-options are kept in a cache, so that they are not parsed again for every message. That cache is bounded
+ * by the amount of entries and by the total length of their stored representations. The elements in that cache are
+ * shared, and must not be modified (see {@link Element#createCopy()}).
+ */
+public final class PublishOptions
+{
+    /**
+     * The maximum size (in characters of normalized XML) of the publish-options of a registration. Clients that try to
+     * enable push notifications with larger publish-options receive an error.
+     */
+    public static final SystemProperty<Integer> MAX_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.publish-options.max-size")
+        .setPlugin("Push Notification")
+        .setMinValue(64)
+        .setDefaultValue(4096)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The prefix of stored publish-options that are compressed.
+     */
+    static final String COMPRESSED_PREFIX = "z:";
+
+    private static final QName DATA_FORM = QName.get( "x", "jabber:x:data" );
+
+    private static final int MAX_PARSED = 10000;
+
+    /**
+     * The maximum total length (in characters) of the stored representations of the publish-options in {@link #PARSED}.
+     * The parsed elements take an amount of memory that is proportional to that.
+     */
+    private static final long MAX_PARSED_CHARS = 1024 * 1024;
+
+    /**
+     * Parsed publish-options, by their stored representation. When the cache exceeds its bounds, entries that were not
+     * used since the previous eviction pass are evicted first (an approximation of least-recently-used eviction that
+     * does not require readers to lock).
+     */
+    private static final ConcurrentMap<String, Parsed> PARSED = new ConcurrentHashMap<>();
+
+    /**
+     * The total length of the keys of {@link #PARSED}.
+     */
+    private static final AtomicLong PARSED_CHARS = new AtomicLong();
+
+    /**
+     * Held while evicting entries from {@link #PARSED}, so that only one thread evicts at a time.
+     */
+    private static final ReentrantLock EVICTION = new ReentrantLock();
+
+    private PublishOptions() {}
+
+    /**
+     * Returns the canonical form of publish-options.
+     *
+     * @param form The publish-options (a data form).
+     * @return A new element that contains only the type of the form, and the names, types and values of the fields, ordered by name.
+     */
+    @Nonnull
+    public static Element normalize( @Nonnull final Element form )
+    {
+        final SortedMap<String, List<String>> fields = new TreeMap<>( ( a, b ) -> "FORM_TYPE".equals( a ) ? ( "FORM_TYPE".equals( b ) ? 0 : -1 ) : ( "FORM_TYPE".equals( b ) ? 1 : a.compareTo( b ) ) );
+        final Map<String, String> types = new HashMap<>();
+        for ( final Element field : form.elements( "field" ) )
+        {
+            final String var = field.attributeValue( "var" );
+            if ( var == null || fields.containsKey( var ) ) {
+                continue;
+            }
+            final List<String> values = new ArrayList<>();
+            for ( final Element value : field.elements( "value" ) ) {
+                values.add( value.getText() );
+            }
+            fields.put( var, values );
+            if ( field.attributeValue( "type" ) != null ) {
+                types.put( var, field.attributeValue( "type" ) );
+            }
+        }
+
+        final Element result = DocumentHelper.createElement( DATA_FORM );
+        if ( form.attributeValue( "type" ) != null ) {
+            result.addAttribute( "type", form.attributeValue( "type" ) );
+        }
+        for ( final Map.Entry<String, List<String>> field : fields.entrySet() )
+        {
+            final Element fieldElement = result.addElement( "field" ).addAttribute( "var", field.getKey() );
+            if ( types.containsKey( field.getKey() ) ) {
+                fieldElement.addAttribute( "type", types.get( field.getKey() ) );
+            }
+            for ( final String value : field.getValue() ) {
+                fieldElement.addElement( "value" ).setText( value );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the representation in which publish-options are stored.
+     *
+     * @param form The publish-options.
+     * @return The normalized XML, or its compressed form when that is shorter.
+     */
+    @Nonnull
+    public static String encode( @Nonnull final Element form )
+    {
+        final String xml = normalize( form ).asXML();
+        final byte[] bytes = xml.getBytes( StandardCharsets.UTF_8 );
+        final Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION, true );
+        try
+        {
+            deflater.setInput( bytes );
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream( bytes.length );
+            final byte[] buffer = new byte[1024];
+            while ( !deflater.finished() ) {
+                out.write( buffer, 0, deflater.deflate( buffer ) );
+            }
+            final String compressed = COMPRESSED_PREFIX + Base64.getEncoder().encodeToString( out.toByteArray() );
+            return compressed.length() < xml.length() ? compressed : xml;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Checks if stored publish-options are in the form that was used by earlier versions of this plugin, that were not
+     * normalized and not compressed.
+     *
+     * @param stored The stored representation of publish-options.
+     * @return true if the publish-options are to be re-encoded.
+     */
+    public static boolean isLegacy( @Nonnull final String stored )
+    {
+        if ( stored.startsWith( COMPRESSED_PREFIX ) ) {
+            return false;
+        }
+        try {
+            return !stored.equals( normalize( decode( stored ) ).asXML() );
+        } catch ( DocumentException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses stored publish-options (in any of the representations that were used by this plugin).
+     *
+     * @param stored The stored representation of publish-options.
+     * @return The publish-options. This instance is shared, and must not be modified.
+     * @throws DocumentException when the publish-options cannot be parsed.
+     */
+    @Nonnull
+    public static Element decode( @Nonnull final String stored ) throws DocumentException
+    {
+        final Parsed cached = PARSED.get( stored );
+        if ( cached != null ) {
+            if ( !cached.referenced ) {
+                cached.referenced = true;
+            }
+            return cached.element;
+        }
+
+        final String xml;
+        if ( stored.startsWith( COMPRESSED_PREFIX ) ) {
+            xml = inflate( stored.substring( COMPRESSED_PREFIX.length() ) );
+        } else {
+            xml = stored;
+        }
+        final Element result = new SAXReader().read( new StringReader( xml ) ).getRootElement();
+        result.detach();
+        if ( PARSED.putIfAbsent( stored, new Parsed( result ) ) == null ) {
+            PARSED_CHARS.addAndGet( stored.length() );
+            if ( isParsedCacheFull() ) {
+                evictParsed();
+            }
+        }
+        return result;
+    }
+
+    private static boolean isParsedCacheFull()
+    {
+        return PARSED.size() > MAX_PARSED || PARSED_CHARS.get() > MAX_PARSED_CHARS;
+    }
+
+    /**
+     * Evicts entries from {@link #PARSED} until it is within its bounds, giving entries that were used since the previous
+     * pass a second chance. When another thread is already evicting, this returns immediately: the bounds can be
+     * exceeded briefly by concurrent additions.
+     */
+    private static void evictParsed()
+    {
+        if ( !EVICTION.tryLock() ) {
+            return;
+        }
+        try
+        {
+            // The second pass evicts entries of which the first pass cleared the flag (unless they were used since).
+            for ( int pass = 0; pass < 2 && isParsedCacheFull(); pass++ )
+            {
+                final Iterator<Map.Entry<String, Parsed>> iterator = PARSED.entrySet().iterator();
+                while ( iterator.hasNext() && isParsedCacheFull() )
+                {
+                    final Map.Entry<String, Parsed> entry = iterator.next();
+                    if ( entry.getValue().referenced ) {
+                        entry.getValue().referenced = false;
+                    } else if ( PARSED.remove( entry.getKey(), entry.getValue() ) ) {
+                        PARSED_CHARS.addAndGet( -entry.getKey().length() );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            EVICTION.unlock();
+        }
+    }
+
+    /**
+     * A cached, parsed publish-options element.
+     */
+    private static final class Parsed
+    {
+        final Element element;
+
+        /**
+         * Set when the entry is used, and cleared by an eviction pass.
+         */
+        volatile boolean referenced;
+
+        Parsed( final Element element )
+        {
+            this.element = element;
+        }
+    }
+
+    private static String inflate( final String base64 ) throws DocumentException
+    {
+        final Inflater inflater = new Inflater( true );
+        try
+        {
+            inflater.setInput( Base64.getDecoder().decode( base64 ) );
+            final ByteArrayOutputStream out = new ByteArrayOutputStream( base64.length() * 2 );
+            final byte[] buffer = new byte[1024];
+            while ( !inflater.finished() )
+            {
+                final int length = inflater.inflate( buffer );
+                if ( length == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) ) {
+                    throw new DocumentException( "Truncated compressed publish-options." );
+                }
+                out.write( buffer, 0, length );
+                if ( out.size() > MAX_SIZE.getValue() * 16 ) {
+                    throw new DocumentException( "Compressed publish-options are unreasonably large." );
+                }
+            }
+            return out.toString( StandardCharsets.UTF_8 );
+        }
+        catch ( IllegalArgumentException | DataFormatException e )
+        {
+            throw new DocumentException( "Unable to decompress publish-options.", e );
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.TimerTask;
+
+/**
+ * Converts publish-options that were stored by earlier versions of this plugin (as raw XML) to the representation that
+ * is used by {@link PublishOptions}.
+ *
+ * Registrations are converted in the background, in chunks of users, with a pause in between, to prevent long-running
+ * locks on the database table. Progress is recorded in a property, so that a conversion that is interrupted (for
+ * example, by a restart) continues where it left off. In a cluster, only the senior member converts. Until converted,
+ * publish-options in the earlier representation can still be read.
+ */
+public class PublishOptionsMigration
+{
+    private static final Logger Log = LoggerFactory.getLogger( PublishOptionsMigration.class );
+
+    /**
+     * The name of the property that holds the last username of which registrations were converted, or the value of
+     * {@link #DONE} when all registrations were converted.
+     */
+    static final String PROGRESS_PROPERTY = "pushnotifications.publish-options.migration";
+
+    /**
+     * The value of {@link #PROGRESS_PROPERTY} after all registrations were converted.
+     */
+    static final String DONE = "done";
+
+    private static final int CHUNK_SIZE = 100;
+
+    private static final Duration CHUNK_PAUSE = Duration.ofMillis( 500 );
+
+    private volatile boolean running;
+
+    private final TimerTask migration = new TimerTask() {
+        @Override
+        public void run() {
+            try {
+                migrate();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while converting the publish options of push service registrations. This will be retried.", e );
+            }
+        }
+    };
+
+    public void start()
+    {
+        if ( DONE.equals( JiveGlobals.getProperty( PROGRESS_PROPERTY ) ) ) {
+            return;
+        }
+        running = true;
+        // Repeated, so that the conversion is retried after a failure, or by a new senior cluster member.
+        TaskEngine.getInstance().schedule( migration, Duration.ofMinutes( 1 ).toMillis(), Duration.ofHours( 1 ).toMillis() );
+    }
+
+    public void stop()
+    {
+        running = false;
+        TaskEngine.getInstance().cancelScheduledTask( migration );
+    }
+
+    synchronized void migrate() throws Exception
+    {
+        String last = JiveGlobals.getProperty( PROGRESS_PROPERTY );
+        if ( DONE.equals( last ) ) {
+            TaskEngine.getInstance().cancelScheduledTask( migration );
+            return;
+        }
+        if ( !ClusterManager.isSeniorClusterMember() ) {
+            return;
+        }
+
+        Log.debug( "Converting the publish options of push service registrations, starting after user '{}'.", last );
+        while ( running )
+        {
+            final String next = PushServiceManager.migratePublishOptions( last, CHUNK_SIZE );
+            if ( next == null ) {
+                JiveGlobals.setProperty( PROGRESS_PROPERTY, DONE );
+                TaskEngine.getInstance().cancelScheduledTask( migration );
+                Log.info( "Converted the publish options of all push service registrations." );
+                return;
+            }
+            last = next;
+            JiveGlobals.setProperty( PROGRESS_PROPERTY, last );
+            Thread.sleep( CHUNK_PAUSE.toMillis() );
+        }
+    }
+}
@@ -25,6 +25,8 @@ import org.jivesoftware.openfire.disco.UserFeaturesProvider;
 import org.jivesoftware.openfire.handler.IQHandler;
 import org.jivesoftware.openfire.user.User;
 import org.jivesoftware.openfire.user.UserNotFoundException;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.packet.IQ;
@@ -32,10 +34,16 @@ import org.xmpp.packet.JID;
 import org.xmpp.packet.PacketError;
 
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An IQ handler implementation for the protocol defined by namespace "urn:xmpp:push:0"
@@ -51,16 +59,54 @@ public class Push0IQHandler extends IQHandler implements UserFeaturesProvider
     public static final String ELEMENT_NAME = "enable";
     public static final String ELEMENT_NAMESPACE = "urn:xmpp:push:0";
 
-    public Push0IQHandler()
+    /**
+     * The amount of threads that process enable and disable requests. Requests of the same user are processed in
+     * order of arrival.
+     */
+    public static final SystemProperty<Integer> THREADS = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.iq.threads")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(4)
+        .setDynamic(false)
+        .build();
+
+    private final ExecutorService executorService;
+
+    private final KeyedSerialExecutor<String> executor;
+
+    private final RegistrationUsageRecorder usageRecorder;
+
+    public Push0IQHandler( final RegistrationUsageRecorder usageRecorder )
     {
         super( "Push Notification IQ Handler (enable)." );
+        this.usageRecorder = usageRecorder;
+        executorService = Executors.newFixedThreadPool( THREADS.getValue(), new NamedThreadFactory( "pushnotification-iq-", true, null, null, null ) );
+        executor = new KeyedSerialExecutor<>( executorService );
+    }
+
+    /**
+     * Stops processing requests. Requests that are already accepted are processed (waiting at most a few seconds for
+     * that) before the threads terminate.
+     */
+    public void shutdown()
+    {
+        try {
+            if ( !executor.shutdown( Duration.ofSeconds( 5 ) ) ) {
+                Log.warn( "Not all pending requests were processed before shutting down. These are answered with an error." );
+            }
+            executorService.shutdown();
+            executorService.awaitTermination( 5, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
      * Handles the received IQ packet.
      *
      * @param packet the IQ packet to handle.
-     * @return the response to send back.
+     * @return the response to send back, or null when the response is sent asynchronously.
      * @throws UnauthorizedException if the user that sent the packet is not
      *                               authorized to request the given operation.
      */
@@ -126,11 +172,83 @@ public class Push0IQHandler extends IQHandler implements UserFeaturesProvider
 
         Log.trace( "intercepted {}", packet );
 
+        // Processing requires database interaction. Do not block the thread of the IQ router while that takes place.
+        final String finalAction = action;
+        final JID finalPushService = pushService;
+        final String finalNode = node;
+        try
+        {
+            executor.execute( user.getUsername(), () -> {
+                final IQ response = process( packet, user, finalAction, finalPushService, finalNode );
+                try {
+                    XMPPServer.getInstance().getPacketDeliverer().deliver( response );
+                } catch ( Exception e ) {
+                    Log.warn( "An exception occurred while trying to send a response to {}", packet.getFrom(), e );
+                }
+            }).exceptionally( throwable -> {
+                respondWithError( packet, throwable );
+                return null;
+            });
+        }
+        catch ( RejectedExecutionException e )
+        {
+            Log.debug( "Unable to process request, as the handler is shutting down: {}", packet );
+            final IQ result = IQ.createResultIQ( packet );
+            result.setError( PacketError.Condition.service_unavailable );
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Answers a request that was accepted, but could not be processed.
+     *
+     * @param packet The request.
+     * @param throwable The cause.
+     */
+    private static void respondWithError( final IQ packet, final Throwable throwable )
+    {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        final IQ result = IQ.createResultIQ( packet );
+        if ( cause instanceof RejectedExecutionException ) {
+            Log.debug( "Unable to process request, as the handler is shutting down: {}", packet );
+            result.setError( PacketError.Condition.service_unavailable );
+        } else {
+            Log.warn( "An exception occurred while processing request: {}", packet, cause );
+            result.setError( PacketError.Condition.internal_server_error );
+        }
+        try {
+            XMPPServer.getInstance().getPacketDeliverer().deliver( result );
+        } catch ( Exception e ) {
+            Log.warn( "An exception occurred while trying to send a response to {}", packet.getFrom(), e );
+        }
+    }
+
+    /**
+     * Processes an enable or disable request.
+     *
+     * @param packet The request.
+     * @param user The user that sent the request.
+     * @param action The name of the child element of the request ('enable' or 'disable').
+     * @param pushService The push service that is enabled or disabled.
+     * @param node The node that is enabled or disabled (optional when disabling).
+     * @return the response to send back.
+     */
+    private IQ process( final IQ packet, final User user, final String action, final JID pushService, final String node )
+    {
         IQ response;
         switch( action )
         {
             case "enable":
-                final Element publishOptions = parsePublishOptions( packet );
+                final Element parsedOptions = parsePublishOptions( packet );
+                final Element publishOptions = parsedOptions == null ? null : PublishOptions.normalize( parsedOptions );
+                if ( publishOptions != null && publishOptions.asXML().length() > PublishOptions.MAX_SIZE.getValue() )
+                {
+                    Log.debug( "Refusing to register push service '{}', node '{}', for user '{}', as its publish options exceed the maximum size of {}.", new Object[]{ pushService.toString(), node, user.getUsername(), PublishOptions.MAX_SIZE.getValue() } );
+                    response = IQ.createResultIQ( packet );
+                    response.setError( PacketError.Condition.not_acceptable );
+                    break;
+                }
                 try
                 {
                     // Clients can re-enable the same configuration. Ensure that database content is not duplicated.
@@ -139,10 +257,11 @@ public class Push0IQHandler extends IQHandler implements UserFeaturesProvider
                     final Element oldOptions = nodeOptions.get( node );
                     if ( nodeOptions.containsKey( node ) && (
                                ( publishOptions == null && oldOptions == null ) // both old and new options are null.
-                            || ( publishOptions != null && oldOptions != null && publishOptions.asXML().equals(oldOptions.asXML()) ) // old and new options are equal.
+                            || ( publishOptions != null && oldOptions != null && publishOptions.asXML().equals(PublishOptions.normalize(oldOptions).asXML()) ) // old and new options are equal.
                             ) )
                     {
                         Log.debug( "Push service '{}', node '{}', for user '{}' was already registered.", new Object[]{ pushService.toString(), node, user.getUsername() } );
+                        usageRecorder.recordUse( user.getUsername(), pushService.toString(), node );
                     }
                     else
                     {
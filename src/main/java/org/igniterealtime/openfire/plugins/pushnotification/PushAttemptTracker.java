@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps track of push notifications that were attempted, to prevent duplicate push notifications and to limit the rate
+ * at which push notifications are sent to a user.
+ *
+ * @see CachedPushAttemptTracker
+ * @see LocalPushAttemptTracker
+ * @see SwitchingPushAttemptTracker
+ */
+public interface PushAttemptTracker
+{
+    /**
+     * Decides if a push notification is to be sent, and if so, records the attempt. All checks and the recording are
+     * performed as one atomic decision per user.
+     *
+     * @param username The user to notify.
+     * @param messageIdentifier The identifier of the message, as generated by {@link PushInterceptor#getMessageIdentifier}.
+     * @param duplicateWindow The past amount of time in which an attempt for the same message makes this attempt a duplicate.
+     * @param coalesceWindow The past amount of time in which any attempt for the user makes this attempt superfluous, or null.
+     * @param maxPerSecond The maximum amount of attempts for the user per second.
+     * @return 'allowed' when the attempt was recorded, otherwise 'duplicate', 'coalesced' or 'rate-limited'.
+     */
+    @Nonnull
+    String tryAttempt( @Nonnull String username, @Nonnull String messageIdentifier, @Nonnull Duration duplicateWindow, @Nullable Duration coalesceWindow, int maxPerSecond );
+
+    /**
+     * Checks if a push notification was attempted for a particular message.
+     *
+     * @param username The user that would have received the push notification.
+     * @param messageIdentifier The identifier of the message, as generated by {@link PushInterceptor#getMessageIdentifier}.
+     * @param duration The past amount of time in which to check for attempts.
+     * @return true when at least one push attempt for the user/message was recently sent.
+     */
+    boolean wasAttempted( @Nonnull String username, @Nonnull String messageIdentifier, @Nonnull Duration duration );
+
+    /**
+     * Returns the amount of push notifications attempted for a user.
+     *
+     * Only the most recent attempts of a user are retained: as many as needed to apply the rate limit, which is the
+     * larger of 16 and {@link PushInterceptor#MAX_PER_SECOND} + 1. The result is therefore exact only up to that
+     * amount; when more attempts were made in the duration, that amount is returned. This suffices for rate limiting,
+     * but not for reporting totals over longer periods.
+     *
+     * @param username The user that would have received the push notifications.
+     * @param duration The past amount of time in which to count attempts.
+     * @return The amount of attempts.
+     */
+    long attemptsForLast( @Nonnull String username, @Nonnull Duration duration );
+
+    /**
+     * Records a push attempt.
+     *
+     * @param username The user that would receive the push notification.
+     * @param messageIdentifier The identifier of the message for which the push notification is sent.
+     */
+    void addAttempt( @Nonnull String username, @Nonnull String messageIdentifier );
+
+    /**
+     * Removes all push attempts that were sent before a particular cutoff timestamp.
+     *
+     * @param cutoff The instant after which all attempts should be retained.
+     */
+    void purgeAllOlderThan( @Nonnull Instant cutoff );
+}
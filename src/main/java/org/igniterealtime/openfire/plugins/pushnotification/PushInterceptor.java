@@ -17,19 +17,29 @@ package org.igniterealtime.openfire.plugins.pushnotification;
 
 import org.dom4j.Element;
 import org.dom4j.QName;
-import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.TerminationDelegateManager;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.FanOutSmoother;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDelivery;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.ClassifyingInterceptor;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketClassification;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketConsumer;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDeliveryQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushGraceQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.PushBuildEvent;
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.PushInterceptEvent;
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.PushThrottleEvent;
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.RegistrationLookupEvent;
+import org.igniterealtime.openfire.plugins.pushnotification.mention.MentionDetector;
+import org.igniterealtime.openfire.plugins.pushnotification.overload.OverloadController;
+import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.ReplayDetector;
+import org.igniterealtime.openfire.plugins.pushnotification.trace.TraceRecorder;
 import org.jivesoftware.openfire.OfflineMessage;
 import org.jivesoftware.openfire.OfflineMessageListener;
 import org.jivesoftware.openfire.XMPPServer;
-import org.jivesoftware.openfire.interceptor.PacketInterceptor;
-import org.jivesoftware.openfire.interceptor.PacketRejectedException;
 import org.jivesoftware.openfire.session.ClientSession;
 import org.jivesoftware.openfire.session.Session;
 import org.jivesoftware.openfire.user.User;
 import org.jivesoftware.openfire.user.UserNotFoundException;
 import org.jivesoftware.util.SystemProperty;
-import org.jivesoftware.util.cache.Cache;
-import org.jivesoftware.util.cache.CacheFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.forms.DataForm;
@@ -39,12 +49,12 @@ import org.xmpp.packet.JID;
 import org.xmpp.packet.Message;
 import org.xmpp.packet.Packet;
 
+import javax.annotation.Nonnull;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.locks.Lock;
 
-public class PushInterceptor implements PacketInterceptor, OfflineMessageListener
+public class PushInterceptor implements PacketConsumer, OfflineMessageListener
 {
     private static final Logger Log = LoggerFactory.getLogger( PushInterceptor.class );
 
@@ -90,76 +100,71 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
         .setDynamic(true)
         .build();
 
-    /**
-     * An memory-only cache that keeps track of for which messages (by ID) push notifications have been generated for
-     * specific users (by username). Key: username. Value: Set of message identifiers.
-     */
-    // Note: it's MUCH MORE convenient to use a single Cache that uses a custom class to keep track of notifications per user. However
-    //       that will cause to ClassCastExceptions when the plugin gets reloaded while the cache contains (or contained) instances of
-    //       that class! See https://github.com/igniterealtime/openfire-pushnotification-plugin/issues/19
-    //       To prevent this issue, cache entries should only contain classes loaded by Openfire's classloader (and explicitly not classes
-    //       loaded by the classloader that's used by this plugin). In other words: do not use classes provided by the plugin itself.
-    private static final Cache<String, HashSet<String>> MESSAGES_BY_USER = CacheFactory.createCache( "pushnotification.users" );
+    private final PushAttemptTracker attemptTracker;
+
+    private final PushDeliveryQueue deliveryQueue;
+
+    private final OverloadController overloadController;
+
+    private final MentionDetector mentionDetector;
+
+    private final FanOutSmoother fanOutSmoother;
+    private final PushGraceQueue graceQueue;
+    private final TraceRecorder traceRecorder;
+    private final ReplayDetector replayDetector;
+
+    public PushInterceptor( final PushAttemptTracker attemptTracker, final PushDeliveryQueue deliveryQueue, final OverloadController overloadController, final MentionDetector mentionDetector, final FanOutSmoother fanOutSmoother, final PushGraceQueue graceQueue, final TraceRecorder traceRecorder, final ReplayDetector replayDetector )
+    {
+        this.attemptTracker = attemptTracker;
+        this.deliveryQueue = deliveryQueue;
+        this.overloadController = overloadController;
+        this.mentionDetector = mentionDetector;
+        this.fanOutSmoother = fanOutSmoother;
+        this.graceQueue = graceQueue;
+        this.traceRecorder = traceRecorder;
+        this.replayDetector = replayDetector;
+    }
 
     /**
-     * An memory-only cache that keeps track of when a push notification was generated for a particular message.
-     * Key: message identifier. Value: Set of instant.
+     * The packets that this instance is to be invoked for by {@link ClassifyingInterceptor}: messages that were sent to
+     * local client sessions of authenticated users.
      */
-    // Note: it's MUCH MORE convenient to use a single Cache that uses a custom class to keep track of notifications per user. However
-    //       that will cause to ClassCastExceptions when the plugin gets reloaded while the cache contains (or contained) instances of
-    //       that class! See https://github.com/igniterealtime/openfire-pushnotification-plugin/issues/19
-    //       To prevent this issue, cache entries should only contain classes loaded by Openfire's classloader (and explicitly not classes
-    //       loaded by the classloader that's used by this plugin). In other words: do not use classes provided by the plugin itself.
-    private static final Cache<String, HashSet<Instant>> INSTANTS_BY_MESSAGE = CacheFactory.createCache( "pushnotification.messages" );
+    public static final long INTEREST = PacketClassification.mask( PacketClassification.Phase.OUTBOUND_PROCESSED, EnumSet.of( PacketClassification.SessionKind.CLIENT ), EnumSet.of( PacketClassification.StanzaKind.MESSAGE ) );
 
     /**
-     * Invokes the interceptor on the specified packet. The interceptor can either modify
-     * the packet, or throw a PacketRejectedException to block it from being sent or processed
-     * (when read).<p>
-     * <p>
-     * An exception can only be thrown when <tt>processed</tt> is false which means that the read
-     * packet has not been processed yet or the packet was not sent yet. If the exception is thrown
-     * with a "read" packet then the sender of the packet will receive an answer with an error. But
-     * if the exception is thrown with a "sent" packet then nothing will happen.<p>
-     * <p>
-     * Note that for each packet, every interceptor will be called twice: once before processing
-     * is complete (<tt>processing==true</tt>) and once after processing is complete. Typically,
-     * an interceptor will want to ignore one or the other case.
+     * Invoked for every message that was sent to a local client session of an authenticated user.
      *
-     * @param packet    the packet to take action on.
-     * @param session   the session that received or is sending the packet.
-     * @param incoming  flag that indicates if the packet was read by the server or sent from
-     *                  the server.
-     * @param processed flag that indicates if the action (read/send) was performed. (PRE vs. POST).
-     * @throws PacketRejectedException if the packet should be prevented from being processed.
+     * @param packet         the message that was sent.
+     * @param session        the session that sent the message.
+     * @param classification the classification of the packet.
      */
     @Override
-    public void interceptPacket( final Packet packet, final Session session, final boolean incoming, final boolean processed ) throws PacketRejectedException
+    public void consume( @Nonnull final Packet packet, final Session session, @Nonnull final PacketClassification classification )
     {
-        if ( incoming ) {
-            return;
-        }
-
-        if ( !processed ) {
-            return;
+        final PushInterceptEvent event = new PushInterceptEvent();
+        event.begin();
+        event.source = "intercepted";
+        final long start = traceRecorder.isRecording() ? System.nanoTime() : -1;
+        try
+        {
+            event.outcome = intercept( (Message) packet, session, event );
         }
-
-        if ( !(packet instanceof Message)) {
-            return;
+        finally
+        {
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.commit();
+            }
+            trace( event, start );
         }
+    }
 
-        final String body = ((Message) packet).getBody();
+    private String intercept( final Message message, final Session session, final PushInterceptEvent event )
+    {
+        final String body = message.getBody();
         if ( body == null || body.isEmpty() )
         {
-            return;
-        }
-
-        if (!(session instanceof ClientSession)) {
-            return;
-        }
-
-        if (((ClientSession) session).isAnonymousUser()) {
-            return;
+            return "no-body";
         }
 
         final User user;
@@ -172,54 +177,223 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
         catch ( UserNotFoundException e )
         {
             Log.debug( "Not a recognized user: " + username, e );
-            return;
+            return "unknown-user";
         }
 
         Log.trace( "If user '{}' has push services configured, pushes need to be sent for a message that just arrived.", user );
-        tryPushNotification( user, (Message) packet );
+        event.username = user.getUsername();
+        final String replay = replayDetector.detect( session, user.getUsername(), getMessageIdentifier( user, message ), message );
+        if ( replay != null ) {
+            return replay;
+        }
+        final PushPriority priority;
+        if ( message.getType() != Message.Type.groupchat ) {
+            priority = PushPriority.DIRECT;
+        } else if ( mentionDetector.isMentioned( user, message ) ) {
+            priority = PushPriority.MENTION;
+        } else if ( !MentionDetector.MENTIONS_ONLY.getValue() || ( message.getFrom() != null && mentionDetector.isOptedIn( user, message.getFrom().asBareJID() ) ) ) {
+            priority = PushPriority.GROUPCHAT;
+        } else {
+            Log.trace( "Not sending a push notification to user '{}' for a group chat message that does not mention them.", user );
+            return "not-mentioned";
+        }
+        event.priority = priority.name();
+        return tryPushNotification( user, message, priority, event );
     }
 
-    private void tryPushNotification( User user, Message message )
+    /**
+     * Sends push notifications for a message to all push services that are registered by a user.
+     *
+     * @param user The recipient of the message.
+     * @param message The message for which to send push notifications.
+     * @param priority The priority of the push notifications, used to shed work when the server is overloaded.
+     * @param event The event that records the processing of the message, or null when it is no longer recording.
+     * @return A short description of the outcome (used for diagnostics).
+     */
+    private String tryPushNotification( User user, Message message, PushPriority priority, PushInterceptEvent event )
     {
+        if ( message.getFrom() != null && MuteManager.isMuted( user.getUsername(), message.getFrom() ) ) {
+            Log.trace( "For user '{}', skipping push, as the conversation with '{}' is muted.", user.toString(), message.getFrom().toBareJID() );
+            return "muted";
+        }
+
+        if ( overloadController.shouldShed( priority ) ) {
+            Log.debug( "For user '{}', skipping {} push, as the server is overloaded.", user.toString(), priority );
+            return "shed";
+        }
+
         final Map<JID, Map<String, Element>> serviceNodes;
+        final RegistrationLookupEvent lookupEvent = new RegistrationLookupEvent();
+        lookupEvent.begin();
         try
         {
             serviceNodes = PushServiceManager.getServiceNodes( user );
             Log.trace( "For user '{}', {} push service(s) are configured.", user.toString(), serviceNodes.size() );
-            if (serviceNodes.isEmpty()) {
-                return;
+            lookupEvent.serviceCount = serviceNodes.size();
+            if ( event != null ) {
+                event.registrations = serviceNodes.size();
             }
         }
         catch ( Exception e )
         {
             Log.warn( "An exception occurred while obtain push notification service nodes for user '{}'. If the user has push notifications enabled, these have not been sent.", user.toString(), e );
-            return;
+            lookupEvent.failed = true;
+            return "lookup-failed";
+        }
+        finally
+        {
+            lookupEvent.end();
+            if ( lookupEvent.shouldCommit() ) {
+                lookupEvent.username = user.getUsername();
+                lookupEvent.commit();
+            }
+        }
+        if (serviceNodes.isEmpty()) {
+            return "no-registrations";
         }
 
-        // Basic throttling.
-        final Lock lock = MESSAGES_BY_USER.getLock(user.getUsername());
-        lock.lock();
-        try {
-            if ( wasPushAttemptedFor( user, message, Duration.ofMinutes(5)) ) {
-                Log.debug( "For user '{}', not re-attempting push for this message that already had a push attempt recently.", user.toString() );
-                return;
+        final Map<String, String> summary = new LinkedHashMap<>();
+        summary.put( "message-count", "1" );
+        summary.put( "last-message-sender", message.getFrom() == null ? null : message.getFrom().toString() );
+        summary.put( "last-message-body", message.getBody() );
+        final String identifier = getMessageIdentifier( user, message );
+
+        // A message from one sender (or room) that causes push notifications for many users is smoothed. Before that,
+        // the push notification is held briefly, so that it can be cancelled when the message is read on another device.
+        final String source = message.getFrom() == null ? "" : message.getFrom().toBareJID();
+        return graceQueue.hold( user.getUsername(), source, message.getID(), () -> fanOutSmoother.submit( source, () -> dispatch( user.getUsername(), identifier, serviceNodes, summary, priority ) ) );
+    }
+
+    /**
+     * Sends push notifications on behalf of other code (typically, other plugins). The push service registrations of
+     * all users are obtained at once.
+     *
+     * @param submissions The push notifications to send.
+     * @return For each submission, in order, a short description of the outcome (used for diagnostics).
+     */
+    List<String> tryPushNotifications( final List<PushSubmission> submissions )
+    {
+        final List<String> outcomes = new ArrayList<>( Collections.nCopies( submissions.size(), null ) );
+        final Set<String> usernames = new HashSet<>();
+
+        // All submissions in a batch are regarded to be caused by one source, so that large batches are smoothed.
+        final String source = "submissions:" + UUID.randomUUID();
+        for ( int i = 0; i < submissions.size(); i++ )
+        {
+            final PushSubmission submission = submissions.get( i );
+            if ( overloadController.shouldShed( submission.getPriority() ) ) {
+                Log.debug( "For user '{}', skipping {} push, as the server is overloaded.", submission.getUsername(), submission.getPriority() );
+                outcomes.set( i, "shed" );
+                traceRecorder.record( submission.getUsername(), "api", submission.getPriority(), -1, "shed", 0 );
+            } else {
+                usernames.add( submission.getUsername() );
             }
+        }
 
-            if ( attemptsForLast(user, Duration.ofSeconds(1)) > MAX_PER_SECOND.getValue() ) {
-                Log.debug( "For user '{}', skipping push, as user is over the rate limit of 5 push attempts per second.", user.toString() );
-                return;
+        Map<String, Map<JID, Map<String, Element>>> serviceNodesByUser = Collections.emptyMap();
+        if ( !usernames.isEmpty() )
+        {
+            final RegistrationLookupEvent lookupEvent = new RegistrationLookupEvent();
+            lookupEvent.begin();
+            try
+            {
+                serviceNodesByUser = PushServiceManager.getServiceNodesByUser( usernames );
+                Log.trace( "For {} user(s), {} have push service(s) configured.", usernames.size(), serviceNodesByUser.size() );
+                lookupEvent.serviceCount = serviceNodesByUser.values().stream().mapToInt( Map::size ).sum();
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "An exception occurred while obtain push notification service nodes for {} user(s). If these users have push notifications enabled, these have not been sent.", usernames.size(), e );
+                lookupEvent.failed = true;
+                outcomes.replaceAll( outcome -> outcome == null ? "lookup-failed" : outcome );
+                return outcomes;
             }
+            finally
+            {
+                lookupEvent.end();
+                if ( lookupEvent.shouldCommit() ) {
+                    lookupEvent.commit();
+                }
+            }
+        }
 
-            addAttemptFor( user, message );
+        for ( int i = 0; i < submissions.size(); i++ )
+        {
+            if ( outcomes.get( i ) != null ) {
+                continue;
+            }
+            final PushSubmission submission = submissions.get( i );
+            final PushInterceptEvent event = new PushInterceptEvent();
+            event.begin();
+            event.source = "api";
+            event.username = submission.getUsername();
+            event.priority = submission.getPriority().name();
+            final long start = traceRecorder.isRecording() ? System.nanoTime() : -1;
+            try
+            {
+                final Map<JID, Map<String, Element>> serviceNodes = serviceNodesByUser.get( submission.getUsername() );
+                event.registrations = serviceNodes == null ? 0 : serviceNodes.size();
+                event.outcome = serviceNodes == null ? "no-registrations" : fanOutSmoother.submit( source, () -> dispatch( submission.getUsername(), submission.getUsername() + "->" + submission.getId(), serviceNodes, submission.getSummary(), submission.getPriority() ) );
+                outcomes.set( i, event.outcome );
+            }
+            finally
+            {
+                event.end();
+                if ( event.shouldCommit() ) {
+                    event.commit();
+                }
+                trace( event, start );
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Applies throttling to a push notification for a user, and when allowed, queues a push notification for each of
+     * the push services registered by the user.
+     *
+     * @param username The user to notify.
+     * @param identifier Uniquely identifies the event that the user is notified of, for deduplication.
+     * @param serviceNodes The push services registered by the user.
+     * @param summary The fields of the summary form. The sender and body are included only when configured to do so.
+     * @param priority The priority of the push notifications, which determines the delivery lane in which they are queued.
+     * @return A short description of the outcome (used for diagnostics).
+     */
+    private String dispatch( final String username, final String identifier, final Map<JID, Map<String, Element>> serviceNodes, final Map<String, String> summary, final PushPriority priority )
+    {
+        // Basic throttling.
+        final PushThrottleEvent throttleEvent = new PushThrottleEvent();
+        throttleEvent.begin();
+        try {
+            throttleEvent.decision = attemptTracker.tryAttempt( username, identifier, Duration.ofMinutes(5), overloadController.getCoalesceWindow(), MAX_PER_SECOND.getValue() );
+            switch ( throttleEvent.decision )
+            {
+                case "duplicate":
+                    Log.debug( "For user '{}', not re-attempting push for this message that already had a push attempt recently.", username );
+                    return throttleEvent.decision;
+                case "coalesced":
+                    Log.debug( "For user '{}', skipping push, as the server is overloaded and a push was attempted recently.", username );
+                    return throttleEvent.decision;
+                case "rate-limited":
+                    Log.debug( "For user '{}', skipping push, as user is over the rate limit of {} push attempts per second.", username, MAX_PER_SECOND.getValue() );
+                    return throttleEvent.decision;
+                default:
+                    break;
+            }
         } finally {
-            lock.unlock();
+            throttleEvent.end();
+            if ( throttleEvent.shouldCommit() ) {
+                throttleEvent.username = username;
+                throttleEvent.commit();
+            }
         }
 
         // Perform the pushes
+        final boolean reduced = overloadController.shouldDropSummaryBodies();
         for ( final Map.Entry<JID, Map<String, Element>> serviceNode : serviceNodes.entrySet() )
         {
             final JID service = serviceNode.getKey();
-            Log.trace( "For user '{}', found service '{}'", user.toString(), service );
+            Log.trace( "For user '{}', found service '{}'", username, service );
 
             final Map<String, Element> nodes = serviceNode.getValue();
             for ( final Map.Entry<String, Element> nodeConfig : nodes.entrySet() )
@@ -227,10 +401,15 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
                 final String node = nodeConfig.getKey();
                 final Element publishOptions = nodeConfig.getValue();
 
-                Log.trace( "For user '{}', found node '{}' of service '{}'", new Object[] { user.toString(), node, service });
+                Log.trace( "For user '{}', found node '{}' of service '{}'", new Object[] { username, node, service });
+                final PushBuildEvent buildEvent = new PushBuildEvent();
+                buildEvent.begin();
                 final IQ push = new IQ( IQ.Type.set );
                 push.setTo( service );
-                push.setFrom( XMPPServer.getInstance().getServerInfo().getXMPPDomain() );
+                final XMPPServer server = XMPPServer.getInstance();
+                if ( server != null ) { // Absent when replaying a trace outside of Openfire.
+                    push.setFrom( server.getServerInfo().getXMPPDomain() );
+                }
                 push.setChildElement( "pubsub", "http://jabber.org/protocol/pubsub" );
                 final Element publish = push.getChildElement().addElement( "publish" );
                 publish.addAttribute( "node", node );
@@ -241,40 +420,47 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
                 {
                     final DataForm notificationForm = new DataForm(DataForm.Type.form);
                     notificationForm.addField("FORM_TYPE", null, FormField.Type.hidden).addValue("urn:xmpp:push:summary");
-                    notificationForm.addField("message-count", null, FormField.Type.text_single).addValue(1);
+                    notificationForm.addField("message-count", null, FormField.Type.text_single).addValue(summary.getOrDefault("message-count", "1"));
                     final FormField lastSenderField = notificationForm.addField("last-message-sender", null, FormField.Type.text_single);
-                    if ( SUMMARY_INCLUDE_LAST_SENDER.getValue() ) {
-                        lastSenderField.addValue( message.getFrom() );
+                    if ( SUMMARY_INCLUDE_LAST_SENDER.getValue() && !reduced && summary.get("last-message-sender") != null ) {
+                        lastSenderField.addValue( summary.get("last-message-sender") );
                     }
                     final FormField lastMessageField = notificationForm.addField("last-message-body", null, FormField.Type.text_single);
                     String includedBody = "New Message"; // For IOS to wake up, some kind of content is required.
-                    if ( SUMMARY_INCLUDE_LAST_MESSAGE_BODY.getValue() ) {
-                        if ( message.getBody() != null && !message.getBody().trim().isEmpty() ) {
-                            includedBody = message.getBody().trim();
+                    if ( SUMMARY_INCLUDE_LAST_MESSAGE_BODY.getValue() && !reduced ) {
+                        final String body = summary.get("last-message-body");
+                        if ( body != null && !body.trim().isEmpty() ) {
+                            includedBody = body.trim();
                         }
                     }
                     lastMessageField.addValue( includedBody );
+                    for ( final Map.Entry<String, String> field : summary.entrySet() ) {
+                        if ( notificationForm.getField( field.getKey() ) == null && field.getValue() != null ) {
+                            notificationForm.addField( field.getKey(), null, FormField.Type.text_single ).addValue( field.getValue() );
+                        }
+                    }
                     notification.add(notificationForm.getElement());
                 }
 
                 if ( publishOptions != null )
                 {
-                    Log.trace( "For user '{}', found publish options for node '{}' of service '{}'", new Object[] { user.toString(), node, service });
+                    Log.trace( "For user '{}', found publish options for node '{}' of service '{}'", new Object[] { username, node, service });
                     final Element pubOptEl = push.getChildElement().addElement( "publish-options" );
-                    pubOptEl.add( publishOptions );
+                    pubOptEl.add( publishOptions.createCopy() ); // The parsed publish options are shared.
                 }
-                try
-                {
-                    Log.trace( "For user '{}', Routing push notification to '{}'", user.toString(), push.getTo() );
-                    XMPPServer.getInstance().getRoutingTable().routePacket( push.getTo(), push );
-                    TerminationDelegateManager.registerPushNotificationFor(user);
-                } catch ( Exception e ) {
-                    Log.warn( "An exception occurred while trying to deliver a notification for user '{}' to node '{}' on service '{}'.", new Object[] { user, node, service, e } );
+                buildEvent.end();
+                if ( buildEvent.shouldCommit() ) {
+                    buildEvent.username = username;
+                    buildEvent.service = service.toString();
+                    buildEvent.summary = SUMMARY_ENABLE.getValue();
+                    buildEvent.commit();
                 }
 
-                Log.debug( "Delivered a notification for user '{}' to node '{}' on service '{}'.", new Object[] { user, node, service } );
+                Log.trace( "For user '{}', queuing push notification to '{}'", username, push.getTo() );
+                deliveryQueue.submit( new PushDelivery( username, identifier, push, priority ) );
             }
         }
+        return "queued";
     }
 
     /**
@@ -302,15 +488,44 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
         }
 
         Log.trace( "Message stored to offline storage. Try to send push notification." );
+        final PushInterceptEvent event = new PushInterceptEvent();
+        event.begin();
+        event.source = "offline";
+        event.priority = PushPriority.DIRECT.name();
+        final long start = traceRecorder.isRecording() ? System.nanoTime() : -1;
         final User user;
         try
         {
             user = XMPPServer.getInstance().getUserManager().getUser( message.getTo().getNode() );
-            tryPushNotification( user, message );
+            event.username = user.getUsername();
+            final String replay = replayDetector.detect( null, user.getUsername(), getMessageIdentifier( user, message ), message );
+            event.outcome = replay != null ? replay : tryPushNotification( user, message, PushPriority.DIRECT, event );
         }
         catch ( UserNotFoundException e )
         {
             Log.error( "Unable to find local user '{}'.", message.getTo().getNode(), e );
+            event.outcome = "unknown-user";
+        }
+        finally
+        {
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.commit();
+            }
+            trace( event, start );
+        }
+    }
+
+    /**
+     * Adds the processing of a message to the trace that is being recorded, if any.
+     *
+     * @param event The event that describes the processing of the message.
+     * @param start The value of {@link System#nanoTime()} when processing started, or -1 when no trace was being recorded.
+     */
+    private void trace( final PushInterceptEvent event, final long start )
+    {
+        if ( start != -1 ) {
+            traceRecorder.record( event.username, event.source, event.priority == null ? null : PushPriority.valueOf( event.priority ), event.registrations, event.outcome, System.nanoTime() - start );
         }
     }
 
@@ -325,34 +540,12 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
      */
     public boolean wasPushAttemptedFor( final User user, final Message message, final Duration duration )
     {
-        final String identifier = getMessageIdentifier(user, message);
-
-        final Lock lock = MESSAGES_BY_USER.getLock(user.getUsername());
-        lock.lock();
-        try {
-            /* This can be short-circuited, as the same identifier is used in the secondary cache.
-            final HashSet<String> messageIdentifiers = MESSAGES_BY_USER.get( user.getUsername() );
-            if ( messageIdentifiers == null || messageIdentifiers.isEmpty() || !messageIdentifiers.contains(identifier)) {
-                return false;
-            }
-            */
-
-            // Look up the timestamps when a push was sent for this particular user/message combinations.
-            final HashSet<Instant> sentTimestamps = INSTANTS_BY_MESSAGE.get(identifier);
-            if ( sentTimestamps == null || sentTimestamps.isEmpty() ) {
-                return false;
-            }
-
-            return sentTimestamps.stream().anyMatch( n ->
-                n != null && n.isAfter(Instant.now().minus(duration))
-            );
-        } finally {
-            lock.unlock();
-        }
+        return attemptTracker.wasAttempted( user.getUsername(), getMessageIdentifier( user, message ), duration );
     }
 
     /**
-     * Returns the amount of push notifications (attempted to be) sent to a particular user.
+     * Returns the amount of push notifications (attempted to be) sent to a particular user. The result is capped at the
+     * amount of attempts that are retained per user (see {@link PushAttemptTracker#attemptsForLast}).
      *
      * @param user The user that would have received the push notification
      * @param duration The past amount of time in which to check for sent push notifications
@@ -360,25 +553,7 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
      */
     public long attemptsForLast( final User user, final Duration duration )
     {
-        final Lock lock = MESSAGES_BY_USER.getLock(user.getUsername());
-        lock.lock();
-        try {
-            final HashSet<String> messageIdentifiers = MESSAGES_BY_USER.get(user.getUsername());
-            if (messageIdentifiers == null) {
-                return 0;
-            }
-
-            // Count the amount of timestamps for each pushed attempt that were within the target duration.
-            long result = 0;
-            for (final String messageIdentifier : messageIdentifiers) {
-                final HashSet<Instant> instants = INSTANTS_BY_MESSAGE.get(messageIdentifier);
-                result += instants.stream().filter(instant -> instant.isAfter(Instant.now().minus(duration))).count();
-            }
-
-            return result;
-        } finally {
-            lock.unlock();
-        }
+        return attemptTracker.attemptsForLast( user.getUsername(), duration );
     }
 
     /**
@@ -389,29 +564,7 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
      */
     public void addAttemptFor( final User user, final Message message )
     {
-        final String identifier = getMessageIdentifier(user, message);
-
-        final Lock lock = MESSAGES_BY_USER.getLock(user.getUsername());
-        lock.lock();
-        try {
-            HashSet<String> messageIdentifiers = MESSAGES_BY_USER.get(user.getUsername());
-            if (messageIdentifiers == null) {
-                messageIdentifiers = new HashSet<>();
-            }
-            messageIdentifiers.add(identifier);
-            // Clustered caches require an explicit PUT for the added element to be registered.
-            MESSAGES_BY_USER.put(user.getUsername(), messageIdentifiers);
-
-            HashSet<Instant> instants = INSTANTS_BY_MESSAGE.get(identifier);
-            if (instants == null) {
-                instants = new HashSet<>();
-            }
-            instants.add(Instant.now());
-            // Clustered caches require an explicit PUT for the added element to be registered.
-            INSTANTS_BY_MESSAGE.put(identifier, instants);
-        } finally {
-            lock.unlock();
-        }
+        attemptTracker.addAttempt( user.getUsername(), getMessageIdentifier( user, message ) );
     }
 
     /**
@@ -421,60 +574,23 @@ public class PushInterceptor implements PacketInterceptor, OfflineMessageListene
      */
     public void purgeAllOlderThan(final Instant cutoff)
     {
-        Log.debug("Purging cached entries older than {}", cutoff);
-        final Set<String> userNames = new HashSet<>(MESSAGES_BY_USER.keySet());
-
-        // Iterate over all message identifiers for each user, to be able to apply the required user-specific lock.
-        for ( final String username : userNames )
-        {
-            final Lock lock = MESSAGES_BY_USER.getLock(username);
-            lock.lock();
-            try
-            {
-                // These are all the message identifiers for this user.
-                final HashSet<String> messageIdentifiers = new HashSet<>(MESSAGES_BY_USER.get(username));
-                final HashSet<String> removedMessageIds = new HashSet<>();
-                for (String messageIdentifier : messageIdentifiers) {
-                    // For each message, check when a pushes were sent.
-                    final HashSet<Instant> instants = INSTANTS_BY_MESSAGE.get(messageIdentifier);
-
-                    // Remove all entries that can be purged.
-                    if (instants.removeIf(i -> i.isBefore(cutoff))) // No need to do anything if nothing changed.
-                    {
-                        if (instants.isEmpty()) {
-                            // When no attempts are left, remove the entry completely.
-                            INSTANTS_BY_MESSAGE.remove(messageIdentifier);
-                            // Also mark this identifier as being removable from the user set.
-                            removedMessageIds.add(messageIdentifier);
-                        } else {
-                            // When attempts are left, re-add the updated push (an explicit PUT is required for clustered caches).
-                            INSTANTS_BY_MESSAGE.put(messageIdentifier, instants);
-                        }
-                    }
-                }
-
-                // When the iteration above caused any messages to be removed, remove them from the user set too.
-                if (!removedMessageIds.isEmpty()) {
-                    messageIdentifiers.removeAll(removedMessageIds);
-                    if (messageIdentifiers.isEmpty()) {
-                        // When there are no messages left, remove the entry completely.
-                        MESSAGES_BY_USER.remove(username);
-                    } else {
-                        // When attempts are left, re-add the updated push (an explicit PUT is required for clustered caches).
-                        MESSAGES_BY_USER.put(username, messageIdentifiers);
-                    }
-                }
-            } finally {
-                lock.unlock();
-            }
-        }
+        attemptTracker.purgeAllOlderThan( cutoff );
     }
 
     /**
-     * Generates a reasonably unique identifier for a message / user combination.
+     * Generates a reasonably unique identifier for a message / user combination. Messages without a sender or body are
+     * identified by their other properties.
      */
     public static String getMessageIdentifier( final User user, final Message message )
     {
-        return user.getUsername() + "->" + (message.getID() != null ? message.getID() : "") + message.getFrom().hashCode() + message.getBody().hashCode();
+        return user.getUsername() + "->" + (message.getID() != null ? message.getID() : "") + Objects.hashCode( message.getFrom() ) + Objects.hashCode( message.getBody() );
+    }
+
+    /**
+     * Returns the username that is part of a message identifier, as generated by {@link #getMessageIdentifier}.
+     */
+    static String getUsername( final String messageIdentifier )
+    {
+        return messageIdentifier.substring( 0, messageIdentifier.indexOf( "->" ) );
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.dom4j.Element;
+import org.jivesoftware.openfire.IQHandlerInfo;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.auth.UnauthorizedException;
+import org.jivesoftware.openfire.disco.UserFeaturesProvider;
+import org.jivesoftware.openfire.handler.IQHandler;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.PacketError;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An IQ handler that allows users to mute conversations, so that no push notifications are sent for messages in those
+ * conversations, while still receiving these messages on all connected clients.
+ *
+ * The muted conversations are obtained with a request of type 'get':
+ * <pre>{@code
+ * <iq type='get' id='m1'>
+ *   <query xmlns='http://igniterealtime.org/protocol/pushnotification#mute'/>
+ * </iq>
+ * }</pre>
+ * The response contains an item for every muted conversation. Requests of type 'set' mute or unmute the
+ * conversations of their items:
+ * <pre>{@code
+ * <iq type='set' id='m2'>
+ *   <query xmlns='http://igniterealtime.org/protocol/pushnotification#mute'>
+ *     <item jid='room@conference.example.org' muted='true'/>
+ *     <item jid='juliet@example.org' muted='false'/>
+ *   </query>
+ * </iq>
+ * }</pre>
+ * A request that would exceed the maximum amount of muted conversations of a user ({@link MuteManager#MAX_PER_USER})
+ * is answered with a 'resource-constraint' error. Items that precede the item that exceeded the maximum are applied.
+ *
+ * @see MuteManager
+ */
+public class PushMuteIQHandler extends IQHandler implements UserFeaturesProvider
+{
+    private static final Logger Log = LoggerFactory.getLogger( PushMuteIQHandler.class );
+
+    public static final String ELEMENT_NAME = "query";
+    public static final String ELEMENT_NAMESPACE = "http://igniterealtime.org/protocol/pushnotification#mute";
+
+    /**
+     * The maximum amount of items in one request.
+     */
+    private static final int MAX_ITEMS = 100;
+
+    private final ExecutorService executorService;
+
+    private final KeyedSerialExecutor<String> executor;
+
+    public PushMuteIQHandler()
+    {
+        super( "Push Notification IQ Handler (mute)." );
+        executorService = Executors.newFixedThreadPool( 1, new NamedThreadFactory( "pushnotification-mute-", true, null, null, null ) );
+        executor = new KeyedSerialExecutor<>( executorService );
+    }
+
+    /**
+     * Stops processing requests. Requests that are already accepted are processed (waiting at most a few seconds for
+     * that) before the thread terminates.
+     */
+    public void shutdown()
+    {
+        try {
+            if ( !executor.shutdown( Duration.ofSeconds( 5 ) ) ) {
+                Log.warn( "Not all pending requests were processed before shutting down. These are answered with an error." );
+            }
+            executorService.shutdown();
+            executorService.awaitTermination( 5, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public IQ handleIQ( final IQ packet ) throws UnauthorizedException
+    {
+        if ( packet.isResponse() ) {
+            Log.trace( "Silently ignoring an unexpected response stanza: {}", packet );
+            return null;
+        }
+
+        if ( !XMPPServer.getInstance().getUserManager().isRegisteredUser( packet.getFrom(), false ) )
+        {
+            Log.info( "Denying service for an entity that's not recognized as a registered user: {}", packet.getFrom() );
+            throw new UnauthorizedException( "This service is only available to registered, local users." );
+        }
+
+        final Map<JID, Boolean> changes = new LinkedHashMap<>();
+        if ( IQ.Type.set.equals( packet.getType() ) )
+        {
+            try
+            {
+                for ( final Element item : packet.getChildElement().elements( "item" ) ) {
+                    changes.put( new JID( item.attributeValue( "jid" ) ).asBareJID(), !"false".equals( item.attributeValue( "muted" ) ) );
+                }
+            }
+            catch ( Exception e )
+            {
+                Log.debug( "An exception occurred while trying to parse conversations from stanza: {}", packet, e );
+                changes.clear();
+            }
+
+            if ( changes.isEmpty() || changes.size() > MAX_ITEMS )
+            {
+                Log.trace( "Ignoring a request stanza that could not be parsed: {}", packet );
+                final IQ result = IQ.createResultIQ( packet );
+                result.setError( PacketError.Condition.bad_request );
+                return result;
+            }
+        }
+
+        // Processing requires database interaction. Do not block the thread of the IQ router while that takes place.
+        final String username = packet.getFrom().getNode();
+        try
+        {
+            executor.execute( username, () -> {
+                final IQ response = process( packet, username, changes );
+                try {
+                    XMPPServer.getInstance().getPacketDeliverer().deliver( response );
+                } catch ( Exception e ) {
+                    Log.warn( "An exception occurred while trying to send a response to {}", packet.getFrom(), e );
+                }
+            }).exceptionally( throwable -> {
+                respondWithError( packet, throwable );
+                return null;
+            });
+        }
+        catch ( RejectedExecutionException e )
+        {
+            Log.debug( "Unable to process request, as the handler is shutting down: {}", packet );
+            final IQ result = IQ.createResultIQ( packet );
+            result.setError( PacketError.Condition.service_unavailable );
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Answers a request that was accepted, but could not be processed.
+     *
+     * @param packet The request.
+     * @param throwable The cause.
+     */
+    private static void respondWithError( final IQ packet, final Throwable throwable )
+    {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        final IQ result = IQ.createResultIQ( packet );
+        if ( cause instanceof RejectedExecutionException ) {
+            Log.debug( "Unable to process request, as the handler is shutting down: {}", packet );
+            result.setError( PacketError.Condition.service_unavailable );
+        } else {
+            Log.warn( "An exception occurred while processing request: {}", packet, cause );
+            result.setError( PacketError.Condition.internal_server_error );
+        }
+        try {
+            XMPPServer.getInstance().getPacketDeliverer().deliver( result );
+        } catch ( Exception e ) {
+            Log.warn( "An exception occurred while trying to send a response to {}", packet.getFrom(), e );
+        }
+    }
+
+    /**
+     * Processes a request.
+     *
+     * @param packet The request.
+     * @param username The user that sent the request.
+     * @param changes The conversations to mute (true) or unmute (false). Empty for requests of type 'get'.
+     * @return the response to send back.
+     */
+    private IQ process( final IQ packet, final String username, final Map<JID, Boolean> changes )
+    {
+        final IQ response = IQ.createResultIQ( packet );
+        try
+        {
+            if ( changes.isEmpty() )
+            {
+                final Element query = response.setChildElement( ELEMENT_NAME, ELEMENT_NAMESPACE );
+                for ( final String conversation : MuteManager.loadMuted( username ) ) {
+                    query.addElement( "item" ).addAttribute( "jid", conversation ).addAttribute( "muted", "true" );
+                }
+            }
+            else
+            {
+                for ( final Map.Entry<JID, Boolean> change : changes.entrySet() ) {
+                    if ( !MuteManager.setMuted( username, change.getKey(), change.getValue() ) ) {
+                        // Changes that precede this one in the request remain applied.
+                        Log.debug( "User '{}' already muted the maximum amount of conversations. Unable to mute '{}'.", username, change.getKey() );
+                        response.setError( PacketError.Condition.resource_constraint );
+                        break;
+                    }
+                }
+            }
+        }
+        catch ( SQLException e )
+        {
+            Log.warn( "An exception occurred while processing a request of user '{}' to (un)mute conversations.", username, e );
+            response.setError( PacketError.Condition.internal_server_error );
+        }
+        return response;
+    }
+
+    @Override
+    public IQHandlerInfo getInfo()
+    {
+        return new IQHandlerInfo( ELEMENT_NAME, ELEMENT_NAMESPACE );
+    }
+
+    @Override
+    public Iterator<String> getFeatures()
+    {
+        return Collections.singletonList( ELEMENT_NAMESPACE ).iterator();
+    }
+}
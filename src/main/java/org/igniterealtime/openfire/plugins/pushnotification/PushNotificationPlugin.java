@@ -15,11 +15,23 @@
  */
 package org.igniterealtime.openfire.plugins.pushnotification;
 
+import org.igniterealtime.openfire.plugins.pushnotification.appserver.EmbeddedAppServerComponent;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.FanOutSmoother;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDelivery;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDeliveryQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushGraceQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.ClassifyingInterceptor;
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.PushRouteEvent;
+import org.igniterealtime.openfire.plugins.pushnotification.mention.MentionDetector;
+import org.igniterealtime.openfire.plugins.pushnotification.overload.OverloadController;
+import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.ReplayDetector;
 import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.TerminationDelegateManager;
+import org.igniterealtime.openfire.plugins.pushnotification.trace.TraceRecorder;
 import org.jivesoftware.openfire.OfflineMessageStrategy;
 import org.jivesoftware.openfire.SessionManager;
 import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.jivesoftware.openfire.component.InternalComponentManager;
 import org.jivesoftware.openfire.container.Plugin;
 import org.jivesoftware.openfire.container.PluginManager;
 import org.jivesoftware.openfire.disco.UserFeaturesProvider;
@@ -31,6 +43,9 @@ import org.jivesoftware.openfire.interceptor.InterceptorManager;
 import org.jivesoftware.openfire.user.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xmpp.component.IQResultListener;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.PacketError;
 
 import java.io.File;
 import java.sql.SQLException;
@@ -38,6 +53,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An Openfire plugin that adds push notification support, as defined in XEP-0357.
@@ -49,17 +65,55 @@ public class PushNotificationPlugin implements Plugin, UserEventListener
 {
     private static final Logger Log = LoggerFactory.getLogger( PushNotificationPlugin.class );
 
+    /**
+     * The period during which a response of a push service to a push notification is awaited.
+     */
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofMinutes(1);
+
     private final List<IQHandler> registeredHandlers = new ArrayList<>();
 
-    private final PushInterceptor pushInterceptor = new PushInterceptor();
+    private final PushDeliveryQueue deliveryQueue = new PushDeliveryQueue(this::deliver);
+
+    private final OverloadController overloadController = new OverloadController(deliveryQueue::getQueueDepth, PushServiceManager.getConnectionWait());
+
+    private final MentionDetector mentionDetector = new MentionDetector();
+
+    private final FanOutSmoother fanOutSmoother = new FanOutSmoother();
+
+    private final PushGraceQueue graceQueue = new PushGraceQueue();
+
+    private final SwitchingPushAttemptTracker attemptTracker = new SwitchingPushAttemptTracker();
+
+    private final ReplayDetector replayDetector = new ReplayDetector(attemptTracker);
+
+    private final TraceRecorder traceRecorder = new TraceRecorder();
+
+    private final PushInterceptor pushInterceptor = new PushInterceptor(attemptTracker, deliveryQueue, overloadController, mentionDetector, fanOutSmoother, graceQueue, traceRecorder, replayDetector);
+
+    private final PushNotificationService pushNotificationService = new PushNotificationService(pushInterceptor);
 
     private final TerminationDelegateManager terminationDelegateManager = new TerminationDelegateManager();
 
+    private final RegistrationUsageRecorder usageRecorder = new RegistrationUsageRecorder();
+
+    private final IdleRegistrationSweeper idleRegistrationSweeper = new IdleRegistrationSweeper();
+
+    private final PublishOptionsMigration publishOptionsMigration = new PublishOptionsMigration();
+
+    private final ClassifyingInterceptor interceptor = new ClassifyingInterceptor();
+
+    private EmbeddedAppServerComponent appServerComponent;
+
     private final Timer timer = new Timer();
     private final TimerTask timerTask = new TimerTask() {
         @Override
         public void run() {
             try {
+                // Clustered state is shared, and is purged by the senior cluster member only. A server that is not part of a
+                // cluster is its own senior member, and always purges its (local) state.
+                if (!ClusterManager.isSeniorClusterMember()) {
+                    return;
+                }
                 pushInterceptor.purgeAllOlderThan(Instant.now().minus(10, ChronoUnit.MINUTES));
             } catch (Exception e) {
                 Log.warn( "An exception occurred while trying to purge old cache entries.", e);
@@ -78,25 +132,53 @@ public class PushNotificationPlugin implements Plugin, UserEventListener
     {
         Log.debug( "Initializing..." );
 
-        final Push0IQHandler push0IQHandler = new Push0IQHandler();
+        final Push0IQHandler push0IQHandler = new Push0IQHandler(usageRecorder);
         XMPPServer.getInstance().getIQRouter().addHandler( push0IQHandler );
         registeredHandlers.add( push0IQHandler );
 
+        final PushMuteIQHandler pushMuteIQHandler = new PushMuteIQHandler();
+        XMPPServer.getInstance().getIQRouter().addHandler( pushMuteIQHandler );
+        registeredHandlers.add( pushMuteIQHandler );
+
+        traceRecorder.start();
+        deliveryQueue.start();
+        fanOutSmoother.start();
+        graceQueue.start();
+        overloadController.start();
+        usageRecorder.start();
+        idleRegistrationSweeper.start();
+        publishOptionsMigration.start();
+
+        attemptTracker.adoptState();
+        mentionDetector.adoptState();
         UserEventDispatcher.addListener( this );
-        InterceptorManager.getInstance().addInterceptor(pushInterceptor);
-        InterceptorManager.getInstance().addInterceptor(terminationDelegateManager);
+        ClusterManager.addListener( attemptTracker );
+        interceptor.addConsumer(pushInterceptor, PushInterceptor.INTEREST);
+        interceptor.addConsumer(mentionDetector, MentionDetector.INTEREST);
+        interceptor.addConsumer(terminationDelegateManager, TerminationDelegateManager.INTEREST);
+        interceptor.addConsumer(graceQueue, PushGraceQueue.INTEREST);
+        InterceptorManager.getInstance().addInterceptor(interceptor);
         SessionEventDispatcher.addListener(terminationDelegateManager);
         OfflineMessageStrategy.addListener(pushInterceptor);
 
         // The former is not spec-compliant, the latter is. Keeping the former for now for backwards compatibility.
         XMPPServer.getInstance().getIQDiscoInfoHandler().addServerFeature( Push0IQHandler.ELEMENT_NAMESPACE );
         XMPPServer.getInstance().getIQDiscoInfoHandler().addUserFeaturesProvider( push0IQHandler );
+        XMPPServer.getInstance().getIQDiscoInfoHandler().addUserFeaturesProvider( pushMuteIQHandler );
 
-        TerminationDelegateManager.registerDelegateForAll();
+        TerminationDelegateManager.adoptDelegatesForAll();
 
-        if (ClusterManager.isSeniorClusterMember()) {
-            timer.schedule(timerTask, Duration.ofMinutes(2).toMillis(), Duration.ofMinutes(2).toMillis());
+        if (EmbeddedAppServerComponent.ENABLED.getValue()) {
+            try {
+                appServerComponent = new EmbeddedAppServerComponent(EmbeddedAppServerComponent.createConfiguredTransport());
+                InternalComponentManager.getInstance().addComponent(EmbeddedAppServerComponent.SUBDOMAIN.getValue(), appServerComponent);
+            } catch (Exception e) {
+                Log.error("Unable to start the embedded app server.", e);
+                appServerComponent = null;
+            }
         }
+
+        timer.schedule(timerTask, Duration.ofMinutes(2).toMillis(), Duration.ofMinutes(2).toMillis());
         Log.debug( "Initialized." );
     }
 
@@ -129,6 +211,12 @@ public class PushNotificationPlugin implements Plugin, UserEventListener
                     XMPPServer.getInstance().getIQDiscoInfoHandler().removeUserFeaturesProvider( (UserFeaturesProvider) registeredHandler );
                 }
                 XMPPServer.getInstance().getIQRouter().removeHandler( registeredHandler );
+                if ( registeredHandler instanceof Push0IQHandler ) {
+                    ( (Push0IQHandler) registeredHandler ).shutdown();
+                }
+                if ( registeredHandler instanceof PushMuteIQHandler ) {
+                    ( (PushMuteIQHandler) registeredHandler ).shutdown();
+                }
             }
             catch ( Exception e )
             {
@@ -141,16 +229,148 @@ public class PushNotificationPlugin implements Plugin, UserEventListener
         }
 
         UserEventDispatcher.removeListener( this );
+        ClusterManager.removeListener( attemptTracker );
         OfflineMessageStrategy.removeListener(pushInterceptor);
         SessionEventDispatcher.removeListener(terminationDelegateManager);
-        InterceptorManager.getInstance().removeInterceptor(terminationDelegateManager);
-        InterceptorManager.getInstance().removeInterceptor(pushInterceptor);
+        InterceptorManager.getInstance().removeInterceptor(interceptor);
+        interceptor.removeConsumer(graceQueue);
+        interceptor.removeConsumer(terminationDelegateManager);
+        interceptor.removeConsumer(mentionDetector);
+        interceptor.removeConsumer(pushInterceptor);
+
+        publishOptionsMigration.stop();
+        idleRegistrationSweeper.stop();
+        usageRecorder.stop();
+        overloadController.stop();
+        graceQueue.stop();
+        fanOutSmoother.stop();
+        deliveryQueue.stop();
+        traceRecorder.stop();
 
-        TerminationDelegateManager.deregisterDelegateForAll();
+        // Leave state behind in structures that only use Openfire's classes, for the next instance of this plugin to adopt.
+        attemptTracker.exportState();
+        mentionDetector.exportState();
+        TerminationDelegateManager.exportDelegatesForAll();
+
+        if (appServerComponent != null) {
+            InternalComponentManager.getInstance().removeComponent(EmbeddedAppServerComponent.SUBDOMAIN.getValue(), appServerComponent);
+            appServerComponent = null;
+        }
 
         Log.debug( "Destroyed." );
     }
 
+    /**
+     * Routes a push notification to the push service that it is addressed to.
+     *
+     * @param delivery The push notification to deliver.
+     */
+    private void deliver( final PushDelivery delivery )
+    {
+        final PushRouteEvent event = new PushRouteEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        final AtomicBoolean unrouted = new AtomicBoolean();
+        try
+        {
+            // A successful response of the push service shows that the registration is still in use (which matters only
+            // when idle registrations are removed). A temporary error, or the absence of a response, causes the push
+            // notification to be retried. The listener is registered before routing, as the response can arrive before
+            // routing returns. When routing fails, the delivery queue retries.
+            final String node = delivery.getNode();
+            final boolean trackUsage = node != null && IdleRegistrationSweeper.ENABLED.getValue();
+            final boolean retriable = delivery.getAttempts() + 1 < PushDeliveryQueue.MAX_ATTEMPTS.getValue();
+            if ( trackUsage || retriable ) {
+                XMPPServer.getInstance().getIQRouter().addIQResultListener( delivery.getPush().getID(), new IQResultListener() {
+                    @Override
+                    public void receivedAnswer( final IQ packet ) {
+                        if ( unrouted.get() ) {
+                            return;
+                        }
+                        if ( packet.getType() == IQ.Type.result ) {
+                            if ( trackUsage ) {
+                                usageRecorder.recordUse( delivery.getUsername(), delivery.getPush().getTo().toString(), node );
+                            }
+                        } else if ( retriable && packet.getError() != null && packet.getError().getType() == PacketError.Type.wait ) {
+                            deliveryQueue.reportFailure( delivery, "temporary error: " + packet.getError().getCondition() );
+                        }
+                    }
+
+                    @Override
+                    public void answerTimeout( final String packetId ) {
+                        if ( unrouted.get() ) {
+                            return;
+                        }
+                        Log.trace( "No response from '{}' to the push notification for user '{}'.", delivery.getPush().getTo(), delivery.getUsername() );
+                        if ( retriable ) {
+                            deliveryQueue.reportFailure( delivery, "no response within " + RESPONSE_TIMEOUT );
+                        }
+                    }
+                }, RESPONSE_TIMEOUT.toMillis() );
+            }
+            XMPPServer.getInstance().getRoutingTable().routePacket( delivery.getPush().getTo(), delivery.getPush() );
+            overloadController.recordRouteLatency( System.nanoTime() - start );
+        }
+        catch ( RuntimeException e )
+        {
+            unrouted.set( true );
+            event.failed = true;
+            throw e;
+        }
+        finally
+        {
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.username = delivery.getUsername();
+                event.service = delivery.getPush().getTo().toString();
+                event.attempt = delivery.getAttempts();
+                event.commit();
+            }
+        }
+        TerminationDelegateManager.registerPushNotificationFor( delivery.getUsername() );
+        Log.debug( "Delivered a notification for user '{}' to service '{}'.", delivery.getUsername(), delivery.getPush().getTo() );
+    }
+
+    /**
+     * Returns the component that determines to what degree work is reduced when the server is overloaded.
+     *
+     * @return the overload controller.
+     */
+    public OverloadController getOverloadController()
+    {
+        return overloadController;
+    }
+
+    /**
+     * Returns the queue from which push notifications are delivered.
+     *
+     * @return the delivery queue.
+     */
+    public PushDeliveryQueue getDeliveryQueue()
+    {
+        return deliveryQueue;
+    }
+
+    /**
+     * Returns the queue in which push notifications for messages are held before they are dispatched.
+     *
+     * @return the grace queue.
+     */
+    public PushGraceQueue getGraceQueue()
+    {
+        return graceQueue;
+    }
+
+    /**
+     * Returns the service through which other plugins can send push notifications.
+     *
+     * @return the push notification service.
+     */
+    public PushNotificationService getPushNotificationService()
+    {
+        return pushNotificationService;
+    }
+
     @Override
     public void userCreated( final User user, final Map<String, Object> params )
     {}
@@ -167,6 +387,22 @@ public class PushNotificationPlugin implements Plugin, UserEventListener
         {
             Log.warn( "An exception occurred while trying to remove push service data for a user that is being deleted: '{}'.", user.toString(), e );
         }
+        try
+        {
+            MuteManager.unmuteAll( user.getUsername() );
+        }
+        catch ( SQLException e )
+        {
+            Log.warn( "An exception occurred while trying to remove muted conversations for a user that is being deleted: '{}'.", user.toString(), e );
+        }
+        try
+        {
+            mentionDetector.forget( user.getUsername() );
+        }
+        catch ( RuntimeException e )
+        {
+            Log.warn( "An exception occurred while trying to remove room nicknames for a user that is being deleted: '{}'.", user.toString(), e );
+        }
     }
 
     @Override
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Allows other plugins to send push notifications to users.
+ *
+ * Submissions are processed like push notifications for messages: they are subject to the same deduplication, rate
+ * limiting and overload protection, and are delivered through the same queue. The push service registrations of all
+ * users in a batch are obtained using as few database queries as possible.
+ *
+ * An instance is obtained from {@link PushNotificationPlugin#getPushNotificationService()}.
+ */
+public class PushNotificationService
+{
+    private final PushInterceptor pushInterceptor;
+
+    PushNotificationService( @Nonnull final PushInterceptor pushInterceptor )
+    {
+        this.pushInterceptor = pushInterceptor;
+    }
+
+    /**
+     * Sends a push notification to all push services registered by a user.
+     *
+     * @param submission The push notification to send.
+     * @return A short description of the outcome (for example: 'queued', 'no-registrations' or 'rate-limited').
+     */
+    @Nonnull
+    public String submit( @Nonnull final PushSubmission submission )
+    {
+        return pushInterceptor.tryPushNotifications( List.of( submission ) ).get( 0 );
+    }
+
+    /**
+     * Sends push notifications to all push services registered by the users of each submission.
+     *
+     * @param submissions The push notifications to send.
+     * @return For each submission, in order, a short description of the outcome.
+     */
+    @Nonnull
+    public List<String> submit( @Nonnull final Collection<PushSubmission> submissions )
+    {
+        return pushInterceptor.tryPushNotifications( new ArrayList<>( submissions ) );
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+/**
+ * The relative importance of a push notification. It determines the delivery lane in which a push notification is
+ * queued, and what is shed first when the server is overloaded.
+ */
+public enum PushPriority
+{
+    /**
+     * A push notification for a one-to-one chat message.
+     */
+    DIRECT,
+
+    /**
+     * A push notification for a message in a group chat that mentions the recipient.
+     */
+    MENTION,
+
+    /**
+     * A push notification for a message in a group chat.
+     */
+    GROUPCHAT,
+
+    /**
+     * A push notification that is part of a bulk submission (for example, a broadcast).
+     */
+    BULK;
+
+    /**
+     * Checks if push notifications of this priority are among the first to be shed under overload.
+     *
+     * @return true if this is a low priority.
+     */
+    public boolean isLow()
+    {
+        return this == GROUPCHAT || this == BULK;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * A registration of a user for push notifications on a node of a push service, as stored in the database.
+ *
+ * @see PushServiceManager#findRegistrations
+ */
+public class PushRegistration
+{
+    private final String username;
+    private final String service;
+    private final String node;
+    private final String publishOptions;
+
+    public PushRegistration( @Nonnull final String username, @Nonnull final String service, @Nonnull final String node, @Nullable final String publishOptions )
+    {
+        this.username = username;
+        this.service = service;
+        this.node = node;
+        this.publishOptions = publishOptions;
+    }
+
+    @Nonnull
+    public String getUsername()
+    {
+        return username;
+    }
+
+    @Nonnull
+    public String getService()
+    {
+        return service;
+    }
+
+    @Nonnull
+    public String getNode()
+    {
+        return node;
+    }
+
+    /**
+     * The publish-options of the registration, as XML. These can contain secrets that the push service uses to
+     * authenticate the server.
+     *
+     * @return the publish-options, or null when the registration has none.
+     */
+    @Nullable
+    public String getPublishOptions()
+    {
+        return publishOptions;
+    }
+
+    public boolean hasPublishOptions()
+    {
+        return publishOptions != null;
+    }
+
+    /**
+     * Registrations are equal when they are for the same user, service and node (regardless of their publish-options).
+     */
+    @Override
+    public boolean equals( final Object o )
+    {
+        if ( this == o ) {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() ) {
+            return false;
+        }
+        final PushRegistration that = (PushRegistration) o;
+        return username.equals( that.username ) && service.equals( that.service ) && node.equals( that.node );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( username, service, node );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PushRegistration{username='" + username + "', service='" + service + "', node='" + node + "'}";
+    }
+}
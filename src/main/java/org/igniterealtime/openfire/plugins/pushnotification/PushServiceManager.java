@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019 Ignite Realtime Foundation. All rights reserved.
+ * Copyright (C) 2019-2025 Ignite Realtime Foundation. All rights reserved.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,25 +16,129 @@
 package org.igniterealtime.openfire.plugins.pushnotification;
 
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
+import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.RefreshDelegatesTask;
+import org.igniterealtime.openfire.plugins.pushnotification.overload.LatencyGauge;
 import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.database.SequenceManager;
 import org.jivesoftware.openfire.user.User;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.cache.Cache;
+import org.jivesoftware.util.cache.CacheFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xmpp.packet.JID;
 
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 public class PushServiceManager
 {
     public static final Logger Log = LoggerFactory.getLogger( PushServiceManager.class );
 
+    /**
+     * The maximum amount of rows that is processed in one database statement by the bulk operations.
+     */
+    public static final int BATCH_SIZE = 500;
+
+    /**
+     * A cache of the push service registrations per user, as stored in the database. Key: username. Value: service
+     * address to (node to publish-options XML).
+     */
+    // Note: like the caches in PushInterceptor, entries only contain classes loaded by Openfire's classloader, to prevent
+    //       ClassCastExceptions when the plugin gets reloaded. See https://github.com/igniterealtime/openfire-pushnotification-plugin/issues/19
+    private static final Cache<String, HashMap<String, HashMap<String, String>>> REGISTRATIONS = CacheFactory.createCache( "pushnotification.registrations" );
+
+    /**
+     * A cache of the identifiers of push services in the service dictionary table. Key: service address. Value: service
+     * identifier.
+     */
+    private static final Cache<String, Long> SERVICE_IDS = CacheFactory.createCache( "pushnotification.services" );
+
+    /**
+     * The type of the sequence (in Openfire's ofID table) from which identifiers of push services are issued.
+     */
+    private static final int SERVICE_ID_SEQUENCE = 760;
+
+    /**
+     * The addresses of push services, as shared by all registrations. There are very few distinct push services, which
+     * are each used by many registrations. As clients choose the addresses that they register, at most
+     * {@link #MAX_SERVICE_JIDS} addresses are kept. Other addresses are not shared.
+     */
+    private static final ConcurrentMap<String, JID> SERVICE_JIDS = new ConcurrentHashMap<>();
+
+    private static final int MAX_SERVICE_JIDS = 1000;
+
+    /**
+     * The maximum age of the amount of registrations per push service, as kept in memory. These amounts are updated
+     * when registrations are added or removed on this cluster node, and reloaded from the database after this period
+     * (to include changes that were made on other cluster nodes).
+     */
+    public static final SystemProperty<Duration> SERVICE_COUNTS_REFRESH = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.service-counts.refresh")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDefaultValue(Duration.ofMinutes(5))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The amount of registrations per push service, or null when these are to be (re)loaded from the database.
+     */
+    private static volatile ConcurrentMap<String, AtomicLong> serviceCounts = null;
+    private static volatile Instant serviceCountsLoaded = Instant.EPOCH;
+
+    private static final LatencyGauge CONNECTION_WAIT = new LatencyGauge();
+
+    /**
+     * The moving average of the time it takes to obtain a database connection.
+     *
+     * @return a gauge of the time it takes to obtain a database connection.
+     */
+    public static LatencyGauge getConnectionWait()
+    {
+        return CONNECTION_WAIT;
+    }
+
+    private static Connection getConnection() throws SQLException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            return DbConnectionManager.getConnection();
+        }
+        finally
+        {
+            CONNECTION_WAIT.record( System.nanoTime() - start );
+        }
+    }
+
+    private static Connection getTransactionConnection() throws SQLException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            return DbConnectionManager.getTransactionConnection();
+        }
+        finally
+        {
+            CONNECTION_WAIT.record( System.nanoTime() - start );
+        }
+    }
+
     public static void register( final User user, final JID pushService, final String node, final Element publishOptions ) throws SQLException
     {
         Log.debug( "Registering user '{}' to node '{}' of service '{}'.", new Object[] { user.getUsername(), node, pushService.toString() } );
@@ -43,17 +147,21 @@ public class PushServiceManager
         PreparedStatement pstmt = null;
         try
         {
-            connection = DbConnectionManager.getConnection();
-            pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiService (username, service, node, options) VALUES(?,?,?,?) " );
+            final long serviceID = getOrCreateServiceID( pushService.toString() );
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiService (username, serviceID, node, options, lastUsed) VALUES(?,?,?,?,?) " );
             pstmt.setString( 1, user.getUsername() );
-            pstmt.setString( 2, pushService.toString() );
+            pstmt.setLong( 2, serviceID );
             pstmt.setString( 3, node );
-            pstmt.setString( 4, publishOptions == null ? null : publishOptions.asXML() );
+            pstmt.setString( 4, publishOptions == null ? null : PublishOptions.encode( publishOptions ) );
+            pstmt.setLong( 5, System.currentTimeMillis() );
             pstmt.execute();
+            adjustServiceCount( pushService.toString(), 1 );
         }
         finally
         {
             DbConnectionManager.closeConnection( null, pstmt, connection );
+            invalidateRegistrations( user.getUsername() );
         }
     }
 
@@ -65,18 +173,27 @@ public class PushServiceManager
 
         Log.debug( "Deregistered user '{}' from all services.", user.getUsername() );
 
+        final HashMap<String, HashMap<String, String>> cached = REGISTRATIONS.get( user.getUsername() );
         Connection connection = null;
         PreparedStatement pstmt = null;
         try
         {
-            connection = DbConnectionManager.getConnection();
+            connection = getConnection();
             pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ?" );
             pstmt.setString( 1, user.getUsername() );
-            pstmt.execute();
+            final int removed = pstmt.executeUpdate();
+            if ( removed > 0 ) {
+                if ( cached != null && cached.values().stream().mapToInt( Map::size ).sum() == removed ) {
+                    cached.forEach( ( service, nodes ) -> adjustServiceCount( service, -nodes.size() ) );
+                } else {
+                    invalidateServiceCounts();
+                }
+            }
         }
         finally
         {
             DbConnectionManager.closeConnection( null, pstmt, connection );
+            invalidateRegistrations( user.getUsername() );
         }
     }
 
@@ -94,15 +211,16 @@ public class PushServiceManager
         PreparedStatement pstmt = null;
         try
         {
-            connection = DbConnectionManager.getConnection();
-            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND service = ?" );
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)" );
             pstmt.setString( 1, user.getUsername() );
             pstmt.setString( 2, pushService.toString() );
-            pstmt.execute();
+            adjustServiceCount( pushService.toString(), -pstmt.executeUpdate() );
         }
         finally
         {
             DbConnectionManager.closeConnection( null, pstmt, connection );
+            invalidateRegistrations( user.getUsername() );
         }
     }
 
@@ -120,59 +238,831 @@ public class PushServiceManager
         PreparedStatement pstmt = null;
         try
         {
-            connection = DbConnectionManager.getConnection();
-            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND service = ? AND node = ?" );
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?) AND node = ?" );
             pstmt.setString( 1, user.getUsername() );
             pstmt.setString( 2, pushService.toString() );
             pstmt.setString( 3, node );
-            pstmt.execute();
+            adjustServiceCount( pushService.toString(), -pstmt.executeUpdate() );
         }
         finally
         {
             DbConnectionManager.closeConnection( null, pstmt, connection );
+            invalidateRegistrations( user.getUsername() );
         }
     }
 
     public static Map<JID,Map<String, Element>> getServiceNodes( final User user ) throws SQLException
+    {
+        return toServiceNodes( user.getUsername(), getRegistrations( user.getUsername() ) );
+    }
+
+    /**
+     * Returns the push service registrations of many users. Registrations that are not cached are loaded from the
+     * database using one query per {@link #BATCH_SIZE} users.
+     *
+     * @param usernames The users for which to return registrations.
+     * @return username to (service address to (node to publish-options)). Users without registrations are not included.
+     */
+    public static Map<String, Map<JID, Map<String, Element>>> getServiceNodesByUser( final Collection<String> usernames ) throws SQLException
+    {
+        final Map<String, Map<String, HashMap<String, String>>> registrations = new HashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for ( final String username : new HashSet<>( usernames ) )
+        {
+            final HashMap<String, HashMap<String, String>> cached = REGISTRATIONS.get( username );
+            if ( cached == null ) {
+                misses.add( username );
+            } else {
+                registrations.put( username, cached );
+            }
+        }
+
+        // The locks of all users in a batch are held while loading and caching their registrations (see
+        // getRegistrations). These are acquired in order of username, to prevent deadlocks between batches.
+        Collections.sort( misses );
+        for ( int offset = 0; offset < misses.size(); offset += BATCH_SIZE )
+        {
+            final List<String> batch = misses.subList( offset, Math.min( offset + BATCH_SIZE, misses.size() ) );
+            final Deque<Lock> locks = new ArrayDeque<>();
+            try
+            {
+                final List<String> toLoad = new ArrayList<>();
+                for ( final String username : batch )
+                {
+                    final Lock lock = REGISTRATIONS.getLock( username );
+                    lock.lock();
+                    locks.push( lock );
+
+                    final HashMap<String, HashMap<String, String>> cached = REGISTRATIONS.get( username );
+                    if ( cached == null ) {
+                        toLoad.add( username );
+                    } else {
+                        registrations.put( username, cached );
+                    }
+                }
+
+                final Map<String, HashMap<String, HashMap<String, String>>> loaded = loadRegistrations( toLoad );
+                for ( final String username : toLoad )
+                {
+                    final HashMap<String, HashMap<String, String>> userRegistrations = loaded.getOrDefault( username, new HashMap<>() );
+                    REGISTRATIONS.put( username, userRegistrations );
+                    registrations.put( username, userRegistrations );
+                }
+            }
+            finally
+            {
+                while ( !locks.isEmpty() ) {
+                    locks.pop().unlock();
+                }
+            }
+        }
+
+        final Map<String, Map<JID, Map<String, Element>>> result = new HashMap<>();
+        for ( final Map.Entry<String, Map<String, HashMap<String, String>>> entry : registrations.entrySet() )
+        {
+            if ( !entry.getValue().isEmpty() ) {
+                final Map<JID, Map<String, Element>> serviceNodes = toServiceNodes( entry.getKey(), entry.getValue() );
+                if ( !serviceNodes.isEmpty() ) {
+                    result.put( entry.getKey(), serviceNodes );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the push service registrations of a user.
+     *
+     * @param username The user that owns the registrations (used for logging).
+     * @param registrations service address to (node to publish-options XML).
+     * @return service address to (node to publish-options).
+     */
+    private static Map<JID, Map<String, Element>> toServiceNodes( final String username, final Map<String, HashMap<String, String>> registrations )
     {
         final Map<JID, Map<String, Element>> result = new HashMap<>();
+        for ( final Map.Entry<String, HashMap<String, String>> service : registrations.entrySet() )
+        {
+            final JID serviceJID;
+            try
+            {
+                serviceJID = internServiceJID( service.getKey() );
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "Unable to parse push service address '{}' while obtaining push service configuration for user '{}'.", service.getKey(), username, e );
+                continue;
+            }
+
+            final Map<String, Element> serviceConfig = new HashMap<>();
+            for ( final Map.Entry<String, String> nodeConfig : service.getValue().entrySet() )
+            {
+                try
+                {
+                    final String options = nodeConfig.getValue();
+                    serviceConfig.put( nodeConfig.getKey(), options == null ? null : PublishOptions.decode( options ) );
+                }
+                catch ( Exception e )
+                {
+                    Log.warn( "Unable to process publish options while obtaining push service configuration for user '{}'.", username, e );
+                }
+            }
+            if ( !serviceConfig.isEmpty() ) {
+                result.put( serviceJID, serviceConfig );
+            }
+        }
+
+        Log.trace( "User '{}' has {} push notification services configured.", username, result.size());
+        return result;
+    }
+
+    /**
+     * Returns the push service registrations of a user, from cache when available.
+     *
+     * Registrations are loaded and cached while holding the lock of the user in the cache. Modifications remove the
+     * cached registrations while holding the same lock (see {@link #invalidateRegistrations(String)}), so that
+     * registrations that were loaded before a modification are never cached after it.
+     *
+     * @param username The user for which to return registrations.
+     * @return service address to (node to publish-options XML). Must not be modified.
+     */
+    private static Map<String, HashMap<String, String>> getRegistrations( final String username ) throws SQLException
+    {
+        HashMap<String, HashMap<String, String>> registrations = REGISTRATIONS.get( username );
+        if ( registrations != null ) {
+            return registrations;
+        }
+
+        final Lock lock = REGISTRATIONS.getLock( username );
+        lock.lock();
+        try
+        {
+            registrations = REGISTRATIONS.get( username );
+            if ( registrations == null ) {
+                registrations = loadRegistrations( username );
+                REGISTRATIONS.put( username, registrations );
+            }
+            return registrations;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the cached registrations of a user. To be invoked after the registrations of the user were modified in
+     * the database.
+     *
+     * @param username The user of which registrations were modified.
+     */
+    private static void invalidateRegistrations( final String username )
+    {
+        final Lock lock = REGISTRATIONS.getLock( username );
+        lock.lock();
+        try
+        {
+            REGISTRATIONS.remove( username );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the push service registrations of a user from the database, bypassing the cache.
+     *
+     * @param username The user for which to load registrations.
+     * @return service address to (node to publish-options XML).
+     */
+    public static HashMap<String, HashMap<String, String>> loadRegistrations( final String username ) throws SQLException
+    {
+        final HashMap<String, HashMap<String, String>> result = new HashMap<>();
 
         Connection connection = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         try
         {
-            connection = DbConnectionManager.getConnection();
-            pstmt = connection.prepareStatement( "SELECT service, node, options FROM ofPushNotiService WHERE username = ?" );
-            pstmt.setString( 1, user.getUsername() );
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT d.service, r.node, r.options FROM ofPushNotiService r, ofPushNotiSvcDict d WHERE r.serviceID = d.serviceID AND r.username = ?" );
+            pstmt.setString( 1, username );
             rs = pstmt.executeQuery();
             while ( rs.next() )
             {
-                try
-                {
-                    final String service = rs.getString( "service" );
-                    final String node = rs.getString( "node" );
-                    final String options = rs.getString( "options" );
+                final String service = internService( rs.getString( "service" ) );
+                final String node = rs.getString( "node" );
+                final String options = rs.getString( "options" );
+                result.computeIfAbsent( service, s -> new HashMap<>() ).put( node, options );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+        return result;
+    }
 
-                    final JID serviceJID = new JID( service );
-                    final Map<String, Element> serviceConfig = result.getOrDefault( serviceJID, new HashMap<>() );
+    /**
+     * Loads the push service registrations of many users from the database, in one query, bypassing the cache.
+     *
+     * @param usernames The users for which to load registrations.
+     * @return username to (service address to (node to publish-options XML)). Users without registrations are not included.
+     */
+    public static Map<String, HashMap<String, HashMap<String, String>>> loadRegistrations( final Collection<String> usernames ) throws SQLException
+    {
+        final Map<String, HashMap<String, HashMap<String, String>>> result = new HashMap<>();
+        if ( usernames.isEmpty() ) {
+            return result;
+        }
 
-                    final Element optionsElement;
-                    if (options != null) {
-                        optionsElement = new SAXReader().read(new StringReader(options)).getRootElement();
-                        optionsElement.detach();
-                    } else {
-                        optionsElement = null;
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT r.username, d.service, r.node, r.options FROM ofPushNotiService r, ofPushNotiSvcDict d WHERE r.serviceID = d.serviceID AND r.username IN (" + String.join( ",", Collections.nCopies( usernames.size(), "?" ) ) + ")" );
+            int i = 1;
+            for ( final String username : usernames ) {
+                pstmt.setString( i++, username );
+            }
+            rs = pstmt.executeQuery();
+            while ( rs.next() )
+            {
+                final String username = rs.getString( "username" );
+                final String service = internService( rs.getString( "service" ) );
+                final String node = rs.getString( "node" );
+                final String options = rs.getString( "options" );
+                result.computeIfAbsent( username, u -> new HashMap<>() ).computeIfAbsent( service, s -> new HashMap<>() ).put( node, options );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+        return result;
+    }
+
+    public static boolean hasServiceNodes( final User user ) throws SQLException
+    {
+        return !getRegistrations(user.getUsername()).isEmpty();
+    }
+
+    /**
+     * Returns the amount of registrations per push service.
+     *
+     * These amounts are kept in memory, and are updated when registrations are added or removed. They are loaded from
+     * the database when first needed, after bulk operations, and after {@link #SERVICE_COUNTS_REFRESH}.
+     *
+     * @return service address to amount of registrations.
+     */
+    public static Map<String, Long> getServiceCounts() throws SQLException
+    {
+        ConcurrentMap<String, AtomicLong> counts = serviceCounts;
+        if ( counts == null || serviceCountsLoaded.plus( SERVICE_COUNTS_REFRESH.getValue() ).isBefore( Instant.now() ) )
+        {
+            final Instant loaded = Instant.now();
+            counts = new ConcurrentHashMap<>();
+            for ( final Map.Entry<String, Long> entry : loadServiceCounts().entrySet() ) {
+                counts.put( entry.getKey(), new AtomicLong( entry.getValue() ) );
+            }
+            serviceCounts = counts;
+            serviceCountsLoaded = loaded;
+        }
+
+        final Map<String, Long> result = new TreeMap<>();
+        counts.forEach( ( service, count ) -> {
+            if ( count.get() > 0 ) {
+                result.put( service, count.get() );
+            }
+        } );
+        return result;
+    }
+
+    private static void adjustServiceCount( final String service, final long delta )
+    {
+        final ConcurrentMap<String, AtomicLong> counts = serviceCounts;
+        if ( counts != null && delta != 0 ) {
+            counts.computeIfAbsent( service, s -> new AtomicLong() ).addAndGet( delta );
+        }
+    }
+
+    private static void invalidateServiceCounts()
+    {
+        serviceCounts = null;
+    }
+
+    private static Map<String, Long> loadServiceCounts() throws SQLException
+    {
+        final Map<String, Long> result = new HashMap<>();
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT d.service, COUNT(*) FROM ofPushNotiService r, ofPushNotiSvcDict d WHERE r.serviceID = d.serviceID GROUP BY d.service" );
+            rs = pstmt.executeQuery();
+            while ( rs.next() )
+            {
+                result.merge( rs.getString( 1 ), rs.getLong( 2 ), Long::sum );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+        return result;
+    }
+
+    /**
+     * Removes all registrations, of all users, for a particular push service (for example, when that service is
+     * decommissioned).
+     *
+     * @param pushService The service for which to remove all registrations.
+     * @return The amount of removed registrations.
+     */
+    public static int deregisterService( final JID pushService ) throws SQLException
+    {
+        if ( pushService == null ) {
+            throw new IllegalArgumentException( "Argument 'pushService' cannot be null." );
+        }
+
+        Log.info( "Deregistering all users from service '{}'.", pushService );
+        final Set<String> affected = findUsernames( "SELECT DISTINCT username FROM ofPushNotiService WHERE serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)", pushService.toString() );
+
+        final int result;
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)" );
+            pstmt.setString( 1, pushService.toString() );
+            result = pstmt.executeUpdate();
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( null, pstmt, connection );
+            SERVICE_JIDS.remove( pushService.toString() );
+            invalidateServiceCounts();
+            refresh( affected );
+        }
+
+        Log.info( "Deregistered {} registration(s) of {} user(s) from service '{}'.", result, affected.size(), pushService );
+        return result;
+    }
+
+    /**
+     * Replaces the address of a push service in all registrations, of all users (for example, when the service moved
+     * to a new address). Registrations that would become duplicates of an existing registration on the new address
+     * are removed.
+     *
+     * @param oldService The current address of the service.
+     * @param newService The new address of the service.
+     * @return The amount of updated registrations.
+     */
+    public static int renameService( final JID oldService, final JID newService ) throws SQLException
+    {
+        if ( oldService == null || newService == null ) {
+            throw new IllegalArgumentException( "Arguments 'oldService' and 'newService' cannot be null." );
+        }
+        if ( oldService.equals( newService ) ) {
+            return 0;
+        }
+
+        Log.info( "Moving all registrations from service '{}' to '{}'.", oldService, newService );
+        final Set<String> affected = findUsernames( "SELECT DISTINCT username FROM ofPushNotiService WHERE serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)", oldService.toString() );
+
+        final long newServiceID = getOrCreateServiceID( newService.toString() );
+
+        int result = 0;
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        boolean abortTransaction = false;
+        try
+        {
+            connection = getTransactionConnection();
+
+            // Find registrations that exist for both the old and new service, to prevent duplicates (see issue #50).
+            final List<String[]> duplicates = new ArrayList<>();
+            pstmt = connection.prepareStatement( "SELECT a.username, a.node FROM ofPushNotiService a, ofPushNotiService b WHERE a.serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?) AND b.serviceID = ? AND a.username = b.username AND a.node = b.node" );
+            pstmt.setString( 1, oldService.toString() );
+            pstmt.setLong( 2, newServiceID );
+            rs = pstmt.executeQuery();
+            while ( rs.next() ) {
+                duplicates.add( new String[] { rs.getString( 1 ), rs.getString( 2 ) } );
+            }
+            DbConnectionManager.fastcloseStmt( rs, pstmt );
+
+            if ( !duplicates.isEmpty() ) {
+                pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?) AND node = ?" );
+                for ( int i = 0; i < duplicates.size(); i++ ) {
+                    pstmt.setString( 1, duplicates.get( i )[0] );
+                    pstmt.setString( 2, oldService.toString() );
+                    pstmt.setString( 3, duplicates.get( i )[1] );
+                    pstmt.addBatch();
+                    if ( (i + 1) % BATCH_SIZE == 0 || i == duplicates.size() - 1 ) {
+                        pstmt.executeBatch();
+                    }
+                }
+                DbConnectionManager.fastcloseStmt( pstmt );
+            }
+
+            pstmt = connection.prepareStatement( "UPDATE ofPushNotiService SET serviceID = ? WHERE serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)" );
+            pstmt.setLong( 1, newServiceID );
+            pstmt.setString( 2, oldService.toString() );
+            result = pstmt.executeUpdate();
+            DbConnectionManager.fastcloseStmt( pstmt );
+
+            pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiSvcDict WHERE service = ?" );
+            pstmt.setString( 1, oldService.toString() );
+            pstmt.executeUpdate();
+        }
+        catch ( SQLException e )
+        {
+            abortTransaction = true;
+            throw e;
+        }
+        finally
+        {
+            DbConnectionManager.closeStatement( rs, pstmt );
+            DbConnectionManager.closeTransactionConnection( connection, abortTransaction );
+            SERVICE_IDS.remove( oldService.toString() );
+            SERVICE_JIDS.remove( oldService.toString() );
+            invalidateServiceCounts();
+            refresh( affected );
+        }
+
+        Log.info( "Moved {} registration(s) of {} user(s) from service '{}' to '{}'.", result, affected.size(), oldService, newService );
+        return result;
+    }
+
+    /**
+     * Removes all registrations, of all users and services, for nodes that match a pattern. In the pattern, the
+     * character '*' matches any sequence of characters. All other characters match literally.
+     *
+     * Registrations are found and removed in batches of {@link #BATCH_SIZE}, to prevent long-running locks on the
+     * database table, and to limit the memory that is used when many registrations match.
+     *
+     * @param nodePattern The pattern that matches the nodes to remove.
+     * @return The amount of removed registrations.
+     */
+    public static int deregisterNodes( final String nodePattern ) throws SQLException
+    {
+        if ( nodePattern == null || nodePattern.isEmpty() ) {
+            throw new IllegalArgumentException( "Argument 'nodePattern' cannot be null or empty." );
+        }
+
+        Log.info( "Deregistering all nodes that match '{}'.", nodePattern );
+
+        // Repeatedly collect a bounded chunk of the matching rows, and remove those, as many databases do not support the
+        // combination of deleting while iterating.
+        int result = 0;
+        int users = 0;
+        while ( true )
+        {
+            final List<String[]> matches = new ArrayList<>();
+            Connection connection = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try
+            {
+                connection = getConnection();
+                pstmt = connection.prepareStatement( "SELECT username, serviceID, node FROM ofPushNotiService WHERE node LIKE ? ESCAPE '!'" );
+                pstmt.setMaxRows( BATCH_SIZE );
+                pstmt.setString( 1, toLikePattern( nodePattern ) );
+                rs = pstmt.executeQuery();
+                while ( rs.next() && matches.size() < BATCH_SIZE ) {
+                    matches.add( new String[] { rs.getString( 1 ), rs.getString( 2 ), rs.getString( 3 ) } );
+                }
+            }
+            finally
+            {
+                DbConnectionManager.closeConnection( rs, pstmt, connection );
+            }
+
+            if ( matches.isEmpty() ) {
+                break;
+            }
+            final Set<String> affected = new HashSet<>();
+            final int removed = deleteRows( matches, affected );
+            result += removed;
+            users += affected.size();
+            if ( removed == 0 ) {
+                // Nothing that was found could be removed. Prevent looping over the same rows indefinitely.
+                Log.warn( "Unable to remove {} registration(s) for nodes that match '{}'.", matches.size(), nodePattern );
+                break;
+            }
+        }
+
+        Log.info( "Deregistered {} registration(s) of {} user(s) for nodes that match '{}'.", result, users, nodePattern );
+        return result;
+    }
+
+    /**
+     * Removes registrations that have not been used (enabled by the client, or successfully pushed to) since a moment
+     * in time. At most the specified amount of registrations is removed, so that callers can spread the removal of
+     * many registrations over time.
+     *
+     * @param cutoff Registrations last used before this moment are removed.
+     * @param includeUnknown Whether to also remove registrations for which it is not known when they were last used.
+     * @param max The maximum amount of registrations to remove (at most {@link #BATCH_SIZE}).
+     * @return The amount of removed registrations.
+     */
+    public static int deregisterIdle( final Instant cutoff, final boolean includeUnknown, final int max ) throws SQLException
+    {
+        if ( max < 1 || max > BATCH_SIZE ) {
+            throw new IllegalArgumentException( "Argument 'max' must be between 1 and " + BATCH_SIZE + " (inclusive)." );
+        }
+
+        final List<String[]> matches = new ArrayList<>();
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT username, serviceID, node FROM ofPushNotiService WHERE lastUsed < ?" + ( includeUnknown ? " OR lastUsed IS NULL" : "" ) );
+            pstmt.setMaxRows( max );
+            pstmt.setLong( 1, cutoff.toEpochMilli() );
+            rs = pstmt.executeQuery();
+            while ( rs.next() && matches.size() < max ) {
+                matches.add( new String[] { rs.getString( 1 ), rs.getString( 2 ), rs.getString( 3 ) } );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+
+        if ( matches.isEmpty() ) {
+            return 0;
+        }
+
+        final Set<String> affected = new HashSet<>();
+        final int result = deleteRows( matches, affected );
+        Log.debug( "Deregistered {} registration(s) of {} user(s) that were not used since {}.", result, affected.size(), cutoff );
+        return result;
+    }
+
+    /**
+     * Converts the publish-options of the registrations of a chunk of users to the representation that is used by
+     * {@link PublishOptions}. Users are processed in the order of their username.
+     *
+     * @param after The username after which to start, or null to start with the first user.
+     * @param max The maximum amount of users to process (between 1 and {@link #BATCH_SIZE}, inclusive).
+     * @return The last username that was processed, or null when there are no users after 'after'.
+     */
+    public static String migratePublishOptions( final String after, final int max ) throws SQLException
+    {
+        if ( max < 1 || max > BATCH_SIZE ) {
+            throw new IllegalArgumentException( "Argument 'max' must be between 1 and " + BATCH_SIZE + " (inclusive)." );
+        }
+
+        final List<String> usernames = new ArrayList<>();
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT DISTINCT username FROM ofPushNotiService WHERE options IS NOT NULL" + ( after != null ? " AND username > ?" : "" ) + " ORDER BY username" );
+            pstmt.setMaxRows( max );
+            if ( after != null ) {
+                pstmt.setString( 1, after );
+            }
+            rs = pstmt.executeQuery();
+            while ( rs.next() && usernames.size() < max ) {
+                usernames.add( rs.getString( 1 ) );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+
+        if ( usernames.isEmpty() ) {
+            return null;
+        }
+
+        final List<String[]> updates = new ArrayList<>();
+        for ( final Map.Entry<String, HashMap<String, HashMap<String, String>>> user : loadRegistrations( usernames ).entrySet() )
+        {
+            for ( final Map.Entry<String, HashMap<String, String>> service : user.getValue().entrySet() )
+            {
+                for ( final Map.Entry<String, String> node : service.getValue().entrySet() )
+                {
+                    final String options = node.getValue();
+                    if ( options == null || !PublishOptions.isLegacy( options ) ) {
+                        continue;
+                    }
+                    try {
+                        updates.add( new String[] { PublishOptions.encode( PublishOptions.decode( options ) ), user.getKey(), service.getKey(), node.getKey() } );
+                    } catch ( Exception e ) {
+                        Log.warn( "Unable to convert publish options of node '{}' of service '{}' for user '{}'. They are left unchanged.", node.getKey(), service.getKey(), user.getKey(), e );
                     }
+                }
+            }
+        }
 
+        if ( !updates.isEmpty() )
+        {
+            boolean abortTransaction = false;
+            pstmt = null;
+            try
+            {
+                connection = getTransactionConnection();
+                pstmt = connection.prepareStatement( "UPDATE ofPushNotiService SET options = ? WHERE username = ? AND serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?) AND node = ?" );
+                for ( final String[] update : updates ) {
+                    pstmt.setString( 1, update[0] );
+                    pstmt.setString( 2, update[1] );
+                    pstmt.setString( 3, update[2] );
+                    pstmt.setString( 4, update[3] );
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            catch ( SQLException e )
+            {
+                abortTransaction = true;
+                throw e;
+            }
+            finally
+            {
+                DbConnectionManager.closeStatement( pstmt );
+                DbConnectionManager.closeTransactionConnection( connection, abortTransaction );
+                for ( final String[] update : updates ) {
+                    invalidateRegistrations( update[1] );
+                }
+            }
+            Log.debug( "Converted the publish options of {} registration(s).", updates.size() );
+        }
+        return usernames.get( usernames.size() - 1 );
+    }
 
-                    serviceConfig.put( node, optionsElement );
-                    result.put( serviceJID, serviceConfig );
+    /**
+     * Records that registrations were used at a particular moment. Registrations are updated in batches of
+     * {@link #BATCH_SIZE}. Registrations that no longer exist are ignored.
+     *
+     * @param registrations The registrations that were used (the publish-options of which are ignored).
+     * @param when The moment at which the registrations were used.
+     * @return The amount of updated registrations.
+     */
+    public static int updateLastUsed( final Collection<PushRegistration> registrations, final Instant when ) throws SQLException
+    {
+        final List<PushRegistration> list = new ArrayList<>( registrations );
+        int result = 0;
+        for ( int offset = 0; offset < list.size(); offset += BATCH_SIZE )
+        {
+            final List<PushRegistration> batch = list.subList( offset, Math.min( offset + BATCH_SIZE, list.size() ) );
+            Connection connection = null;
+            PreparedStatement pstmt = null;
+            boolean abortTransaction = false;
+            try
+            {
+                connection = getTransactionConnection();
+                pstmt = connection.prepareStatement( "UPDATE ofPushNotiService SET lastUsed = ? WHERE username = ? AND serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?) AND node = ?" );
+                for ( final PushRegistration registration : batch ) {
+                    pstmt.setLong( 1, when.toEpochMilli() );
+                    pstmt.setString( 2, registration.getUsername() );
+                    pstmt.setString( 3, registration.getService() );
+                    pstmt.setString( 4, registration.getNode() );
+                    pstmt.addBatch();
                 }
-                catch ( Exception e )
+                for ( final int count : pstmt.executeBatch() ) {
+                    result += Math.max( count, 0 );
+                }
+            }
+            catch ( SQLException e )
+            {
+                abortTransaction = true;
+                throw e;
+            }
+            finally
+            {
+                DbConnectionManager.closeStatement( pstmt );
+                DbConnectionManager.closeTransactionConnection( connection, abortTransaction );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes registrations in batches of {@link #BATCH_SIZE}, and refreshes in-memory state of the affected users.
+     *
+     * @param rows The registrations to remove, each as username, service identifier and node.
+     * @param affected Receives the names of the users of which registrations were removed.
+     * @return The amount of removed registrations.
+     */
+    private static int deleteRows( final List<String[]> rows, final Set<String> affected ) throws SQLException
+    {
+        int result = 0;
+        try
+        {
+            for ( int offset = 0; offset < rows.size(); offset += BATCH_SIZE )
+            {
+                final List<String[]> batch = rows.subList( offset, Math.min( offset + BATCH_SIZE, rows.size() ) );
+                Connection connection = null;
+                PreparedStatement pstmt = null;
+                try
                 {
-                    Log.warn( "Unable to process database row content while obtaining push service configuration for user '{}'.", user.toString(), e );
+                    connection = getConnection();
+                    pstmt = connection.prepareStatement( "DELETE FROM ofPushNotiService WHERE username = ? AND serviceID = ? AND node = ?" );
+                    for ( final String[] row : batch ) {
+                        pstmt.setString( 1, row[0] );
+                        pstmt.setLong( 2, Long.parseLong( row[1] ) );
+                        pstmt.setString( 3, row[2] );
+                        pstmt.addBatch();
+                        affected.add( row[0] );
+                    }
+                    for ( final int count : pstmt.executeBatch() ) {
+                        result += Math.max( count, 0 );
+                    }
+                }
+                finally
+                {
+                    DbConnectionManager.closeConnection( null, pstmt, connection );
+                }
+            }
+        }
+        finally
+        {
+            invalidateServiceCounts();
+            refresh( affected );
+        }
+        return result;
+    }
+
+    /**
+     * Returns one page of registrations, in order of username, without loading more than that page from the database.
+     *
+     * Pages are delimited by users: the registrations of a user are never split over two pages. The next page is
+     * obtained by passing the value returned by this method as the 'afterUsername' argument. As this continues from a
+     * position in the (indexed) username column, rather than skipping a number of rows, obtaining a page takes the same
+     * effort regardless of how far into the table it is.
+     *
+     * @param usernamePrefix When not null, only registrations of users whose username starts with this value ('*' matching any sequence of characters) are returned.
+     * @param service When not null, only registrations for this push service are returned.
+     * @param nodePattern When not null, only registrations for nodes matching this pattern ('*' matching any sequence of characters) are returned.
+     * @param afterUsername When not null, only registrations of users that sort after this username are returned.
+     * @param maxUsers The maximum amount of users for which to return registrations (at most {@link #BATCH_SIZE}).
+     * @param consumer Receives the registrations, as they are read from the database.
+     * @return The username to pass as 'afterUsername' to obtain the next page, or null when this is the last page.
+     */
+    public static String findRegistrations( final String usernamePrefix, final JID service, final String nodePattern, final String afterUsername, final int maxUsers, final Consumer<PushRegistration> consumer ) throws SQLException
+    {
+        if ( maxUsers < 1 || maxUsers > BATCH_SIZE ) {
+            throw new IllegalArgumentException( "Argument 'maxUsers' must be between 1 and " + BATCH_SIZE + " (inclusive)." );
+        }
+
+        final StringBuilder filter = new StringBuilder();
+        final List<String> arguments = new ArrayList<>();
+        if ( usernamePrefix != null && !usernamePrefix.isEmpty() ) {
+            filter.append( " AND r.username LIKE ? ESCAPE '!'" );
+            arguments.add( toLikePattern( usernamePrefix ) + "%" );
+        }
+        if ( service != null ) {
+            filter.append( " AND r.serviceID IN (SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?)" );
+            arguments.add( service.toString() );
+        }
+        if ( nodePattern != null && !nodePattern.isEmpty() ) {
+            filter.append( " AND r.node LIKE ? ESCAPE '!'" );
+            arguments.add( toLikePattern( nodePattern ) );
+        }
+
+        // First, find the users on this page, using the index on the username column.
+        final List<String> usernames = new ArrayList<>();
+        boolean hasMore = false;
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            // Note that the first page cannot use "r.username > ''", as some databases (like Oracle) treat '' as NULL.
+            pstmt = connection.prepareStatement( "SELECT DISTINCT r.username FROM ofPushNotiService r WHERE 1=1" + ( afterUsername != null ? " AND r.username > ?" : "" ) + filter + " ORDER BY r.username" );
+            pstmt.setMaxRows( maxUsers + 1 );
+            pstmt.setFetchSize( maxUsers + 1 );
+            int index = 1;
+            if ( afterUsername != null ) {
+                pstmt.setString( index++, afterUsername );
+            }
+            for ( final String argument : arguments ) {
+                pstmt.setString( index++, argument );
+            }
+            rs = pstmt.executeQuery();
+            while ( rs.next() )
+            {
+                if ( usernames.size() == maxUsers ) {
+                    hasMore = true;
+                    break;
                 }
+                usernames.add( rs.getString( 1 ) );
             }
         }
         finally
@@ -180,12 +1070,234 @@ public class PushServiceManager
             DbConnectionManager.closeConnection( rs, pstmt, connection );
         }
 
-        Log.trace( "User '{}' has {} push notification services configured.", user, result.size());
-        return result;
+        if ( usernames.isEmpty() ) {
+            return null;
+        }
+
+        // Then, stream the registrations of those users.
+        connection = null;
+        pstmt = null;
+        rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( "SELECT r.username, d.service, r.node, r.options FROM ofPushNotiService r, ofPushNotiSvcDict d WHERE r.serviceID = d.serviceID AND r.username IN (" + String.join( ",", Collections.nCopies( usernames.size(), "?" ) ) + ")" + filter + " ORDER BY r.username" );
+            int index = 1;
+            for ( final String username : usernames ) {
+                pstmt.setString( index++, username );
+            }
+            for ( final String argument : arguments ) {
+                pstmt.setString( index++, argument );
+            }
+            rs = pstmt.executeQuery();
+            while ( rs.next() )
+            {
+                consumer.accept( new PushRegistration( rs.getString( 1 ), rs.getString( 2 ), rs.getString( 3 ), rs.getString( 4 ) ) );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+
+        return hasMore ? usernames.get( usernames.size() - 1 ) : null;
     }
 
-    public static boolean hasServiceNodes( final User user ) throws SQLException
+    /**
+     * Returns the identifier of a push service in the service dictionary table, adding the service to that table when
+     * it is not yet in it.
+     *
+     * @param service The address of the push service.
+     * @return The identifier of the service.
+     */
+    static long getOrCreateServiceID( final String service ) throws SQLException
+    {
+        final Long cached = SERVICE_IDS.get( service );
+        if ( cached != null ) {
+            return cached;
+        }
+
+        SQLException lastException = null;
+        for ( int attempt = 0; attempt < 3; attempt++ )
+        {
+            Connection connection = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try
+            {
+                connection = getConnection();
+
+                pstmt = connection.prepareStatement( "SELECT serviceID FROM ofPushNotiSvcDict WHERE service = ?" );
+                pstmt.setString( 1, service );
+                rs = pstmt.executeQuery();
+                if ( rs.next() ) {
+                    final long serviceID = rs.getLong( 1 );
+                    SERVICE_IDS.put( service, serviceID );
+                    return serviceID;
+                }
+                DbConnectionManager.fastcloseStmt( rs, pstmt );
+                rs = null;
+
+                // The unique index on the hash of the service rejects a concurrent addition of the same service.
+                final long serviceID = SequenceManager.nextID( SERVICE_ID_SEQUENCE );
+                pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiSvcDict (serviceID, service, serviceHash) VALUES (?,?,?)" );
+                pstmt.setLong( 1, serviceID );
+                pstmt.setString( 2, service );
+                pstmt.setString( 3, hashService( service ) );
+                pstmt.execute();
+                Log.debug( "Added push service '{}' to the service dictionary, with identifier {}.", service, serviceID );
+                SERVICE_IDS.put( service, serviceID );
+                return serviceID;
+            }
+            catch ( SQLException e )
+            {
+                // Most likely, the service was added concurrently. The next attempt finds it.
+                Log.debug( "Unable to add push service '{}' to the service dictionary (attempt {}).", service, attempt + 1, e );
+                lastException = e;
+            }
+            finally
+            {
+                DbConnectionManager.closeConnection( rs, pstmt, connection );
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Calculates the value that guards the service dictionary table against duplicate services: a hexadecimal SHA-256
+     * hash of the address of the service (which itself is too long to be indexed in some databases).
+     *
+     * @param service The address of the push service.
+     * @return A string of 64 characters.
+     */
+    static String hashService( final String service )
+    {
+        try {
+            return HexFormat.of().formatHex( MessageDigest.getInstance( "SHA-256" ).digest( service.getBytes( StandardCharsets.UTF_8 ) ) );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 is not available.", e ); // Every Java platform is required to support SHA-256.
+        }
+    }
+
+    /**
+     * Returns a shared instance of the address of a push service.
+     *
+     * @param service The address of the push service.
+     * @return A JID instance that is shared by all registrations for the service (unless too many distinct services are in use).
+     * @throws IllegalArgumentException when the address is not a valid JID.
+     */
+    static JID internServiceJID( final String service )
+    {
+        final JID existing = SERVICE_JIDS.get( service );
+        if ( existing != null ) {
+            return existing;
+        }
+        if ( SERVICE_JIDS.size() >= MAX_SERVICE_JIDS ) {
+            return new JID( service );
+        }
+        return SERVICE_JIDS.computeIfAbsent( service, JID::new );
+    }
+
+    /**
+     * Returns a shared instance of the address of a push service, as a String, for use in cached registrations.
+     */
+    private static String internService( final String service )
+    {
+        try {
+            return internServiceJID( service ).toString();
+        } catch ( IllegalArgumentException e ) {
+            return service;
+        }
+    }
+
+    /**
+     * Converts a pattern in which '*' is a wildcard to a SQL LIKE pattern that uses '!' as its escape character.
+     */
+    static String toLikePattern( final String pattern )
     {
-        return !getServiceNodes(user).isEmpty();
+        final StringBuilder sb = new StringBuilder();
+        for ( final char c : pattern.toCharArray() )
+        {
+            switch ( c ) {
+                case '*': sb.append( '%' ); break;
+                case '%':
+                case '_':
+                case '!': sb.append( '!' ).append( c ); break;
+                default: sb.append( c );
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Refreshes in-memory state for users of which the registrations were modified by a bulk operation: cached
+     * registrations are removed, and termination delegates are removed from the sessions of users that no longer have
+     * any registration. The latter is done on every cluster node.
+     *
+     * @param usernames the users of which registrations were modified.
+     */
+    public static void refresh( final Collection<String> usernames )
+    {
+        if ( usernames.isEmpty() ) {
+            return;
+        }
+        usernames.forEach( PushServiceManager::invalidateRegistrations );
+
+        final Set<String> withoutRegistrations = new HashSet<>( usernames );
+        try
+        {
+            final List<String> list = new ArrayList<>( usernames );
+            for ( int offset = 0; offset < list.size(); offset += BATCH_SIZE )
+            {
+                final List<String> batch = list.subList( offset, Math.min( offset + BATCH_SIZE, list.size() ) );
+                final String sql = "SELECT DISTINCT username FROM ofPushNotiService WHERE username IN (" + String.join( ",", Collections.nCopies( batch.size(), "?" ) ) + ")";
+                withoutRegistrations.removeAll( findUsernames( sql, batch.toArray( new String[0] ) ) );
+            }
+        }
+        catch ( SQLException e )
+        {
+            Log.warn( "Unable to determine which users still have push notification services configured. Termination delegates are not refreshed.", e );
+            return;
+        }
+
+        if ( !withoutRegistrations.isEmpty() ) {
+            Log.debug( "Removing termination delegates for {} user(s) that no longer have push notification services configured.", withoutRegistrations.size() );
+            try
+            {
+                final RefreshDelegatesTask task = new RefreshDelegatesTask( withoutRegistrations );
+                task.run();
+                CacheFactory.doClusterTask( task );
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "An exception occurred while removing termination delegates of users that no longer have push notification services configured.", e );
+            }
+        }
+    }
+
+    private static Set<String> findUsernames( final String sql, final String... parameters ) throws SQLException
+    {
+        final Set<String> result = new HashSet<>();
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try
+        {
+            connection = getConnection();
+            pstmt = connection.prepareStatement( sql );
+            for ( int i = 0; i < parameters.length; i++ ) {
+                pstmt.setString( i + 1, parameters[i] );
+            }
+            rs = pstmt.executeQuery();
+            while ( rs.next() ) {
+                result.add( rs.getString( 1 ) );
+            }
+        }
+        finally
+        {
+            DbConnectionManager.closeConnection( rs, pstmt, connection );
+        }
+        return result;
     }
 }
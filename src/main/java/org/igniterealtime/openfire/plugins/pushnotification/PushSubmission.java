@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A request, by code other than this plugin, to send a push notification to all push services registered by a user.
+ *
+ * @see PushNotificationService
+ */
+public class PushSubmission
+{
+    private final String username;
+    private final String id;
+    private final Map<String, String> summary;
+    private final PushPriority priority;
+
+    /**
+     * Creates a new submission.
+     *
+     * @param username The user to notify.
+     * @param id An identifier of the event that the user is notified of. Submissions for the same user and identifier
+     *           are deduplicated. When null, a random identifier is used.
+     * @param summary The fields of the urn:xmpp:push:summary form (excluding FORM_TYPE), such as 'message-count' and
+     *                'last-message-body'. Subject to the same configuration as summaries of messages.
+     * @param priority The priority of the push notification, used to shed work when the server is overloaded.
+     */
+    public PushSubmission( @Nonnull final String username, @Nullable final String id, @Nonnull final Map<String, String> summary, @Nonnull final PushPriority priority )
+    {
+        this.username = username;
+        this.id = id != null ? id : UUID.randomUUID().toString();
+        this.summary = Collections.unmodifiableMap( new LinkedHashMap<>( summary ) );
+        this.priority = priority;
+    }
+
+    @Nonnull
+    public String getUsername()
+    {
+        return username;
+    }
+
+    @Nonnull
+    public String getId()
+    {
+        return id;
+    }
+
+    @Nonnull
+    public Map<String, String> getSummary()
+    {
+        return summary;
+    }
+
+    @Nonnull
+    public PushPriority getPriority()
+    {
+        return priority;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PushSubmission{username='" + username + "', id='" + id + "', priority=" + priority + '}';
+    }
+}
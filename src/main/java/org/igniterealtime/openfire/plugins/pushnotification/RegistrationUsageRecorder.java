@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records when registrations are used (enabled by the client, or successfully pushed to) in the database, without
+ * writing to the database for every push notification.
+ *
+ * Uses are collected in memory, and written periodically, in batches. A registration is written at most once per
+ * {@link #RESOLUTION}, and no more than {@link #MAX_WRITES_PER_SECOND} registrations are written per second. Uses that
+ * could not be written within a period are written in the next. Uses that are still pending when the recorder is
+ * stopped are written before it stops.
+ */
+public class RegistrationUsageRecorder
+{
+    private static final Logger Log = LoggerFactory.getLogger( RegistrationUsageRecorder.class );
+
+    /**
+     * The precision with which the last use of a registration is recorded.
+     */
+    public static final SystemProperty<Duration> RESOLUTION = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.registrations.usage-resolution")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MINUTES)
+        .setDefaultValue(Duration.ofDays(1))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The period with which uses of registrations are written to the database. Requires a reload of the plugin.
+     */
+    public static final SystemProperty<Duration> FLUSH_INTERVAL = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.registrations.usage-flush-interval")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDefaultValue(Duration.ofMinutes(1))
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The maximum amount of registrations of which the use is written to the database per second.
+     */
+    public static final SystemProperty<Integer> MAX_WRITES_PER_SECOND = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.registrations.usage-max-writes-per-second")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(200)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum amount of registrations of which the moment of the last write is retained.
+     */
+    static final int MAX_WRITTEN = 100_000;
+
+    /**
+     * Registrations of which a use is yet to be written.
+     */
+    private final Set<PushRegistration> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registrations of which a use was written recently, with the moment (in milliseconds since the epoch) of writing.
+     * Holds no more than {@link #MAX_WRITTEN} entries: the use of registrations beyond that is written again in the next
+     * flush, rather than once per {@link #RESOLUTION}, until older entries expire.
+     */
+    private final ConcurrentMap<PushRegistration, Long> written = new ConcurrentHashMap<>();
+
+    private final TimerTask flush = new TimerTask() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while recording the use of push service registrations.", e );
+            }
+        }
+    };
+
+    public void start()
+    {
+        final long interval = FLUSH_INTERVAL.getValue().toMillis();
+        TaskEngine.getInstance().schedule( flush, interval, interval );
+    }
+
+    public void stop()
+    {
+        TaskEngine.getInstance().cancelScheduledTask( flush );
+        try {
+            // The plugin is stopping: write everything that is pending, without spreading the writes over time.
+            flush( false );
+        } catch ( Exception e ) {
+            Log.warn( "Unable to record the use of {} push service registration(s) while stopping.", pending.size(), e );
+        }
+    }
+
+    /**
+     * Records that a registration was used.
+     *
+     * @param username The user of the registration.
+     * @param service The address of the push service of the registration.
+     * @param node The node of the registration.
+     */
+    public void recordUse( @Nonnull final String username, @Nonnull final String service, @Nonnull final String node )
+    {
+        final PushRegistration registration = new PushRegistration( username, service, node, null );
+        final Long last = written.get( registration );
+        if ( last != null && last + RESOLUTION.getValue().toMillis() > System.currentTimeMillis() ) {
+            return;
+        }
+        pending.add( registration );
+    }
+
+    /**
+     * Writes pending uses to the database, no faster than {@link #MAX_WRITES_PER_SECOND}, for at most the duration of
+     * one flush interval.
+     */
+    void flush() throws Exception
+    {
+        flush( true );
+    }
+
+    /**
+     * Writes pending uses to the database.
+     *
+     * @param paced true to write no faster than {@link #MAX_WRITES_PER_SECOND}, for at most the duration of one flush
+     *              interval, false to write all pending uses as fast as possible.
+     */
+    private synchronized void flush( final boolean paced ) throws Exception
+    {
+        final long now = System.currentTimeMillis();
+        final long resolution = RESOLUTION.getValue().toMillis();
+        written.values().removeIf( last -> last + resolution <= now );
+
+        final long deadline = System.nanoTime() + FLUSH_INTERVAL.getValue().toNanos();
+        int total = 0;
+        while ( !pending.isEmpty() && ( !paced || System.nanoTime() < deadline ) )
+        {
+            final int max = paced ? Math.min( MAX_WRITES_PER_SECOND.getValue(), PushServiceManager.BATCH_SIZE ) : PushServiceManager.BATCH_SIZE;
+            final List<PushRegistration> batch = new ArrayList<>( max );
+            for ( final PushRegistration registration : pending ) {
+                if ( batch.size() >= max ) {
+                    break;
+                }
+                batch.add( registration );
+            }
+
+            final long start = System.nanoTime();
+            final Instant when = Instant.now();
+            PushServiceManager.updateLastUsed( batch, when );
+            for ( final PushRegistration registration : batch ) {
+                pending.remove( registration );
+                if ( written.size() < MAX_WRITTEN ) {
+                    written.put( registration, when.toEpochMilli() );
+                }
+            }
+            total += batch.size();
+
+            // Spread the writes over time, to limit the load on the database.
+            final long minimumNanos = Duration.ofSeconds( 1 ).toNanos() * batch.size() / MAX_WRITES_PER_SECOND.getValue();
+            final long remaining = minimumNanos - ( System.nanoTime() - start );
+            if ( paced && remaining > 0 && !pending.isEmpty() ) {
+                Thread.sleep( remaining / 1_000_000, (int) ( remaining % 1_000_000 ) );
+            }
+        }
+        if ( total > 0 ) {
+            Log.debug( "Recorded the use of {} push service registration(s). {} remain pending.", total, pending.size() );
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.jivesoftware.openfire.cluster.ClusterEventListener;
+import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps track of push notifications that were attempted, using a {@link LocalPushAttemptTracker} while this server is
+ * not part of a cluster, and a {@link CachedPushAttemptTracker} while it is.
+ *
+ * When this server joins or leaves a cluster, the state that was recorded so far is copied to the implementation that
+ * is used from then on, so that recent attempts are still taken into account. Attempts that are recorded while the
+ * state is being copied can be missed, which at worst leads to one duplicate push notification.
+ *
+ * The caches also carry the state of a {@link LocalPushAttemptTracker} across a reload of the plugin: their entries only
+ * contain classes loaded by Openfire's classloader, and they outlive an instance of the plugin. See
+ * {@link #exportState()} and {@link #adoptState()}.
+ *
+ * This instance must be registered with {@link ClusterManager#addListener(ClusterEventListener)} to be notified of
+ * changes in clustering.
+ */
+public class SwitchingPushAttemptTracker implements PushAttemptTracker, ClusterEventListener
+{
+    private static final Logger Log = LoggerFactory.getLogger( SwitchingPushAttemptTracker.class );
+
+    private final LocalPushAttemptTracker local = new LocalPushAttemptTracker();
+    private final CachedPushAttemptTracker cached = new CachedPushAttemptTracker();
+
+    private volatile PushAttemptTracker delegate = ClusterManager.isClusteringStarted() ? cached : local;
+
+    @Nonnull
+    @Override
+    public String tryAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duplicateWindow, @Nullable final Duration coalesceWindow, final int maxPerSecond )
+    {
+        return delegate.tryAttempt( username, messageIdentifier, duplicateWindow, coalesceWindow, maxPerSecond );
+    }
+
+    @Override
+    public boolean wasAttempted( @Nonnull final String username, @Nonnull final String messageIdentifier, @Nonnull final Duration duration )
+    {
+        return delegate.wasAttempted( username, messageIdentifier, duration );
+    }
+
+    @Override
+    public long attemptsForLast( @Nonnull final String username, @Nonnull final Duration duration )
+    {
+        return delegate.attemptsForLast( username, duration );
+    }
+
+    @Override
+    public void addAttempt( @Nonnull final String username, @Nonnull final String messageIdentifier )
+    {
+        delegate.addAttempt( username, messageIdentifier );
+    }
+
+    @Override
+    public void purgeAllOlderThan( @Nonnull final Instant cutoff )
+    {
+        delegate.purgeAllOlderThan( cutoff );
+    }
+
+    /**
+     * Moves the state of push attempts that are tracked in local memory into the caches, where they can be adopted by a
+     * next instance of this plugin. To be invoked when the plugin is unloaded.
+     */
+    public synchronized void exportState()
+    {
+        if ( delegate == local ) {
+            Log.debug( "Moving the state of push attempts into caches, to be adopted after the plugin is reloaded." );
+            cached.addAll( local.getAttemptsByUser(), local.getLastAttemptByMessage() );
+            local.clear();
+        }
+    }
+
+    /**
+     * Moves state of push attempts that was left in the caches by a previous instance of this plugin (see
+     * {@link #exportState()}) into local memory, when not part of a cluster. To be invoked when the plugin is loaded.
+     */
+    public synchronized void adoptState()
+    {
+        if ( delegate == local ) {
+            local.addAll( cached.getAttemptsByUser(), cached.getLastAttemptByMessage() );
+            cached.clear();
+        }
+    }
+
+    @Override
+    public synchronized void joinedCluster()
+    {
+        if ( delegate == cached ) {
+            return;
+        }
+        Log.debug( "Joined a cluster. Moving the state of push attempts into clustered caches." );
+        delegate = cached;
+        cached.addAll( local.getAttemptsByUser(), local.getLastAttemptByMessage() );
+        local.clear();
+    }
+
+    @Override
+    public synchronized void leftCluster()
+    {
+        if ( delegate == local ) {
+            return;
+        }
+        Log.debug( "Left the cluster. Moving the state of push attempts into local memory." );
+        local.addAll( cached.getAttemptsByUser(), cached.getLastAttemptByMessage() );
+        delegate = local;
+    }
+
+    @Override
+    public void joinedCluster( final byte[] nodeID ) {}
+
+    @Override
+    public void leftCluster( final byte[] nodeID ) {}
+
+    @Override
+    public void markedAsSeniorClusterMember() {}
+}
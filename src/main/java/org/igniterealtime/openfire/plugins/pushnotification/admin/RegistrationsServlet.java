@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.admin;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Exposes the push service registrations, as stored in the database, as JSON for use by administrators. Like the pages
+ * of the admin console, this requires the requester to be authenticated as an administrator.
+ *
+ * Two resources are provided:
+ * <ul>
+ *     <li><tt>registrations</tt> returns one page of registrations (see {@link PushServiceManager#findRegistrations}).
+ *     Optional query parameters: <tt>user</tt> (username prefix), <tt>service</tt> (address of a push service),
+ *     <tt>node</tt> (node pattern), <tt>after</tt> (the value of <tt>next</tt> of the previous page) and
+ *     <tt>limit</tt> (the maximum amount of users on the page).</li>
+ *     <li><tt>service-counts</tt> returns the amount of registrations per push service.</li>
+ * </ul>
+ *
+ * Registrations are written to the response as they are read from the database. Publish-options are not included, as
+ * these can contain secrets.
+ */
+public class RegistrationsServlet extends HttpServlet
+{
+    private static final Logger Log = LoggerFactory.getLogger( RegistrationsServlet.class );
+
+    public static final int DEFAULT_LIMIT = 50;
+
+    @Override
+    protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        response.setContentType( "application/json" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.setHeader( "Cache-Control", "no-store" );
+
+        try
+        {
+            if ( request.getServletPath().endsWith( "service-counts" ) ) {
+                writeServiceCounts( response );
+            } else {
+                writeRegistrations( request, response );
+            }
+        }
+        catch ( IllegalArgumentException e )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST, e.getMessage() );
+        }
+        catch ( SQLException e )
+        {
+            Log.warn( "An exception occurred while reading push service registrations.", e );
+            if ( !response.isCommitted() ) {
+                response.sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+            }
+        }
+    }
+
+    private void writeServiceCounts( final HttpServletResponse response ) throws SQLException, IOException
+    {
+        final Map<String, Long> counts = PushServiceManager.getServiceCounts();
+        final PrintWriter out = response.getWriter();
+        out.write( "{\"service-counts\":{" );
+        boolean first = true;
+        for ( final Map.Entry<String, Long> entry : counts.entrySet() )
+        {
+            if ( !first ) {
+                out.write( ',' );
+            }
+            first = false;
+            out.write( quote( entry.getKey() ) );
+            out.write( ':' );
+            out.write( String.valueOf( entry.getValue() ) );
+        }
+        out.write( "}}" );
+    }
+
+    private void writeRegistrations( final HttpServletRequest request, final HttpServletResponse response ) throws SQLException, IOException
+    {
+        final String user = emptyToNull( request.getParameter( "user" ) );
+        final String service = emptyToNull( request.getParameter( "service" ) );
+        final JID serviceJID = service == null ? null : new JID( service );
+        final String node = emptyToNull( request.getParameter( "node" ) );
+        final String after = emptyToNull( request.getParameter( "after" ) );
+        final int limit;
+        try {
+            limit = request.getParameter( "limit" ) == null ? DEFAULT_LIMIT : Integer.parseInt( request.getParameter( "limit" ) );
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Parameter 'limit' must be a number." );
+        }
+        if ( limit < 1 || limit > PushServiceManager.BATCH_SIZE ) {
+            throw new IllegalArgumentException( "Parameter 'limit' must be between 1 and " + PushServiceManager.BATCH_SIZE + " (inclusive)." );
+        }
+
+        final PrintWriter out = response.getWriter();
+        out.write( "{\"registrations\":[" );
+        final boolean[] first = { true };
+        final String next = PushServiceManager.findRegistrations( user, serviceJID, node, after, limit, registration -> {
+            if ( !first[0] ) {
+                out.write( ',' );
+            }
+            first[0] = false;
+            out.write( "{\"username\":" + quote( registration.getUsername() )
+                + ",\"service\":" + quote( registration.getService() )
+                + ",\"node\":" + quote( registration.getNode() )
+                + ",\"publish-options\":" + registration.hasPublishOptions() + '}' );
+        } );
+        out.write( "],\"next\":" + ( next == null ? "null" : quote( next ) ) + '}' );
+    }
+
+    private static String emptyToNull( final String value )
+    {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    static String quote( final String value )
+    {
+        final StringBuilder sb = new StringBuilder( value.length() + 2 ).append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            switch ( c ) {
+                case '"': sb.append( "\\\"" ); break;
+                case '\\': sb.append( "\\\\" ); break;
+                case '\n': sb.append( "\\n" ); break;
+                case '\r': sb.append( "\\r" ); break;
+                case '\t': sb.append( "\\t" ); break;
+                default:
+                    if ( c < 0x20 ) {
+                        sb.append( String.format( "\\u%04x", (int) c ) );
+                    } else {
+                        sb.append( c );
+                    }
+            }
+        }
+        return sb.append( '"' ).toString();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.appserver;
+
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.component.Component;
+import org.xmpp.component.ComponentException;
+import org.xmpp.component.ComponentManager;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Packet;
+import org.xmpp.packet.PacketError;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-process XEP-0357 'App Server'.
+ *
+ * This component accepts the pubsub publish requests that are generated for users that registered this component's
+ * address as their push service, and hands the notifications over to a {@link PushTransport}. This removes the need to
+ * run a separate app server, and saves the XMPP hop to it.
+ *
+ * Publish requests are only accepted when they originate from the local XMPP domain.
+ *
+ * @see <a href="https://xmpp.org/extensions/xep-0357.html#publishing">XEP-0357: "Push Notifications", section 7</a>
+ */
+public class EmbeddedAppServerComponent implements Component
+{
+    private static final Logger Log = LoggerFactory.getLogger( EmbeddedAppServerComponent.class );
+
+    /**
+     * Enables the embedded app server. Changes take effect after the plugin is reloaded.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.appserver.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(false)
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The subdomain (of the XMPP domain) on which the embedded app server is made available. Changes take effect after
+     * the plugin is reloaded.
+     */
+    public static final SystemProperty<String> SUBDOMAIN = SystemProperty.Builder.ofType(String.class)
+        .setKey("pushnotifications.appserver.subdomain")
+        .setPlugin("Push Notification")
+        .setDefaultValue("push")
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The fully qualified class name of the {@link PushTransport} implementation that is used to deliver notifications.
+     * Changes take effect after the plugin is reloaded.
+     */
+    public static final SystemProperty<String> TRANSPORT_CLASS = SystemProperty.Builder.ofType(String.class)
+        .setKey("pushnotifications.appserver.transport")
+        .setPlugin("Push Notification")
+        .setDefaultValue(HttpPushTransport.class.getName())
+        .setDynamic(false)
+        .build();
+
+    public static final String PUBSUB_NAMESPACE = "http://jabber.org/protocol/pubsub";
+    public static final String DISCO_INFO_NAMESPACE = "http://jabber.org/protocol/disco#info";
+
+    private final PushTransport transport;
+    private ComponentManager componentManager;
+    private JID address;
+
+    public EmbeddedAppServerComponent( @Nonnull final PushTransport transport )
+    {
+        this.transport = transport;
+    }
+
+    /**
+     * Instantiates the transport that is configured by {@link #TRANSPORT_CLASS}.
+     *
+     * @return a new, not yet started transport.
+     * @throws ReflectiveOperationException when the configured class cannot be instantiated.
+     */
+    public static PushTransport createConfiguredTransport() throws ReflectiveOperationException
+    {
+        final Class<?> transportClass = Class.forName( TRANSPORT_CLASS.getValue(), true, EmbeddedAppServerComponent.class.getClassLoader() );
+        return (PushTransport) transportClass.getDeclaredConstructor().newInstance();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Push Notification App Server";
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "An in-process XEP-0357 app server that delivers push notifications to a push gateway.";
+    }
+
+    @Override
+    public void initialize( final JID jid, final ComponentManager componentManager ) throws ComponentException
+    {
+        this.address = jid;
+        this.componentManager = componentManager;
+    }
+
+    @Override
+    public void start()
+    {
+        Log.debug( "Starting embedded app server on {}", address );
+        transport.start();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        Log.debug( "Stopping embedded app server on {}", address );
+        transport.stop();
+    }
+
+    /**
+     * The address of this component, or null when it has not been initialized.
+     *
+     * @return an XMPP address.
+     */
+    public JID getAddress()
+    {
+        return address;
+    }
+
+    @Override
+    public void processPacket( final Packet packet )
+    {
+        if ( !(packet instanceof IQ) ) {
+            return;
+        }
+
+        final IQ iq = (IQ) packet;
+        if ( iq.isResponse() ) {
+            Log.trace( "Silently ignoring a response stanza: {}", iq );
+            return;
+        }
+
+        final Element child = iq.getChildElement();
+        if ( IQ.Type.get.equals( iq.getType() ) && child != null && DISCO_INFO_NAMESPACE.equals( child.getNamespaceURI() ) ) {
+            send( createDiscoInfoResponse( iq ) );
+            return;
+        }
+
+        if ( !IQ.Type.set.equals( iq.getType() ) || child == null || !PUBSUB_NAMESPACE.equals( child.getNamespaceURI() ) || child.element( "publish" ) == null ) {
+            send( createErrorResponse( iq, PacketError.Condition.feature_not_implemented ) );
+            return;
+        }
+
+        if ( iq.getFrom() == null || !XMPPServer.getInstance().getServerInfo().getXMPPDomain().equals( iq.getFrom().getDomain() ) || iq.getFrom().getNode() != null ) {
+            Log.debug( "Rejecting a publish request from an entity other than the local XMPP domain: {}", iq.getFrom() );
+            send( createErrorResponse( iq, PacketError.Condition.forbidden ) );
+            return;
+        }
+
+        final PushRequest request;
+        try
+        {
+            request = parse( child );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            Log.debug( "Unable to parse publish request: {}", iq, e );
+            send( createErrorResponse( iq, PacketError.Condition.bad_request ) );
+            return;
+        }
+
+        Log.trace( "Delivering {}", request );
+        transport.deliver( request ).whenComplete( ( result, throwable ) -> {
+            if ( throwable == null ) {
+                send( IQ.createResultIQ( iq ) );
+            } else {
+                Log.debug( "Unable to deliver {}", request, throwable );
+                send( createErrorResponse( iq, PacketError.Condition.recipient_unavailable ) );
+            }
+        });
+    }
+
+    static PushRequest parse( final Element pubsub )
+    {
+        final Element publish = pubsub.element( "publish" );
+        final String node = publish.attributeValue( "node" );
+        if ( node == null || node.isEmpty() ) {
+            throw new IllegalArgumentException( "Publish request does not specify a node." );
+        }
+
+        final Map<String, String> summary = new HashMap<>();
+        final Element item = publish.element( "item" );
+        if ( item != null ) {
+            final Element notification = item.element( QName.get( "notification", "urn:xmpp:push:0" ) );
+            if ( notification != null ) {
+                summary.putAll( parseForm( notification.element( QName.get( "x", "jabber:x:data" ) ) ) );
+            }
+        }
+
+        final Map<String, String> publishOptions = new HashMap<>();
+        final Element publishOptionsElement = pubsub.element( "publish-options" );
+        if ( publishOptionsElement != null ) {
+            publishOptions.putAll( parseForm( publishOptionsElement.element( QName.get( "x", "jabber:x:data" ) ) ) );
+        }
+
+        return new PushRequest( node, publishOptions, summary );
+    }
+
+    private static Map<String, String> parseForm( final Element form )
+    {
+        final Map<String, String> result = new HashMap<>();
+        if ( form == null ) {
+            return result;
+        }
+        for ( final Element field : form.elements( "field" ) )
+        {
+            final String var = field.attributeValue( "var" );
+            if ( var == null || "FORM_TYPE".equals( var ) ) {
+                continue;
+            }
+            final Element value = field.element( "value" );
+            result.put( var, value == null ? null : value.getText() );
+        }
+        return result;
+    }
+
+    private IQ createDiscoInfoResponse( final IQ request )
+    {
+        final IQ response = IQ.createResultIQ( request );
+        final Element query = response.setChildElement( "query", DISCO_INFO_NAMESPACE );
+        query.addElement( "identity" )
+            .addAttribute( "category", "pubsub" )
+            .addAttribute( "type", "push" )
+            .addAttribute( "name", getName() );
+        query.addElement( "feature" ).addAttribute( "var", DISCO_INFO_NAMESPACE );
+        query.addElement( "feature" ).addAttribute( "var", "urn:xmpp:push:0" );
+        return response;
+    }
+
+    private static IQ createErrorResponse( final IQ request, final PacketError.Condition condition )
+    {
+        final IQ response = IQ.createResultIQ( request );
+        if ( request.getChildElement() != null ) {
+            response.setChildElement( request.getChildElement().createCopy() );
+        }
+        response.setError( condition );
+        return response;
+    }
+
+    private void send( final Packet packet )
+    {
+        try
+        {
+            componentManager.sendPacket( this, packet );
+        }
+        catch ( ComponentException e )
+        {
+            Log.warn( "Unable to send stanza from embedded app server: {}", packet, e );
+        }
+    }
+}
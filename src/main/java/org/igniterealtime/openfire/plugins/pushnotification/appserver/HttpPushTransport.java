@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.appserver;
+
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * A {@link PushTransport} that POSTs notifications, as JSON, to a configurable HTTP endpoint (typically a gateway that
+ * forwards to FCM and/or APNs).
+ *
+ * All requests are sent through one shared {@link HttpClient} that prefers HTTP/2. This allows many concurrent requests
+ * to be multiplexed over a small number of pooled connections. Notifications that are submitted within a short period
+ * of each other are batched into one request.
+ *
+ * The request body is a JSON object with one array, named 'notifications'. Each element of that array has the node,
+ * the publish-options and the summary of one notification.
+ */
+public class HttpPushTransport implements PushTransport
+{
+    private static final Logger Log = LoggerFactory.getLogger( HttpPushTransport.class );
+
+    /**
+     * The URL of the HTTP endpoint to which notifications are POSTed.
+     */
+    public static final SystemProperty<String> ENDPOINT = SystemProperty.Builder.ofType(String.class)
+        .setKey("pushnotifications.appserver.http.endpoint")
+        .setPlugin("Push Notification")
+        .setDefaultValue("")
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum amount of notifications that are combined in one HTTP request.
+     */
+    public static final SystemProperty<Integer> BATCH_SIZE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.appserver.http.batch-size")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(50)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum amount of time that a notification is held back, waiting for others to be batched with it.
+     */
+    public static final SystemProperty<Duration> BATCH_LINGER = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.appserver.http.batch-linger")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofMillis(10))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum amount of HTTP requests that can concurrently be in flight (these are multiplexed over pooled connections).
+     */
+    public static final SystemProperty<Integer> MAX_IN_FLIGHT = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.appserver.http.max-in-flight")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(64)
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The maximum amount of time to wait for the HTTP endpoint to respond.
+     */
+    public static final SystemProperty<Duration> REQUEST_TIMEOUT = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.appserver.http.request-timeout")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofSeconds(10))
+        .setDynamic(true)
+        .build();
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Supplier<String> endpoint;
+
+    /**
+     * Batches for which an HTTP request is in flight.
+     */
+    private final Set<List<Pending>> sending = ConcurrentHashMap.newKeySet();
+
+    private HttpClient httpClient;
+    private ExecutorService executor;
+    private Semaphore inFlight;
+    private Thread flusher;
+    private volatile boolean running;
+
+    public HttpPushTransport()
+    {
+        this( ENDPOINT::getValue );
+    }
+
+    /**
+     * Creates a transport that POSTs to an endpoint other than the one that is configured in {@link #ENDPOINT}.
+     *
+     * @param endpoint Provides the URL of the HTTP endpoint.
+     */
+    HttpPushTransport( @Nonnull final Supplier<String> endpoint )
+    {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public synchronized void start()
+    {
+        if ( running ) {
+            return;
+        }
+        executor = Executors.newCachedThreadPool( new NamedThreadFactory( "pushnotification-http-", true, null, null, null ) );
+        httpClient = HttpClient.newBuilder()
+            .version( HttpClient.Version.HTTP_2 )
+            .connectTimeout( REQUEST_TIMEOUT.getValue() )
+            .executor( executor )
+            .build();
+        inFlight = new Semaphore( MAX_IN_FLIGHT.getValue() );
+        running = true;
+        flusher = new Thread( this::flushLoop, "pushnotification-http-batcher" );
+        flusher.setDaemon( true );
+        flusher.start();
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if ( !running ) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join( 1000 );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        final List<Pending> remaining = new ArrayList<>();
+        queue.drainTo( remaining );
+        remaining.forEach( pending -> pending.future.completeExceptionally( new IllegalStateException( "Transport is stopped." ) ) );
+        executor.shutdownNow();
+
+        // Responses to requests that are in flight can no longer be processed.
+        sending.forEach( batch -> fail( batch, new IllegalStateException( "Transport is stopped." ) ) );
+        sending.clear();
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> deliver( @Nonnull final PushRequest request )
+    {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        if ( !running ) {
+            future.completeExceptionally( new IllegalStateException( "Transport is not started." ) );
+            return future;
+        }
+        final Pending pending = new Pending( request, future );
+        queue.add( pending );
+
+        // When the transport was stopped concurrently, it may have drained the queue before the notification was added.
+        if ( !running && queue.remove( pending ) ) {
+            future.completeExceptionally( new IllegalStateException( "Transport is stopped." ) );
+        }
+        return future;
+    }
+
+    private void flushLoop()
+    {
+        while ( running )
+        {
+            final List<Pending> batch = new ArrayList<>();
+            try
+            {
+                final Pending first = queue.poll( 1, TimeUnit.SECONDS );
+                if ( first == null ) {
+                    continue;
+                }
+
+                batch.add( first );
+                final int batchSize = BATCH_SIZE.getValue();
+                final long deadline = System.nanoTime() + BATCH_LINGER.getValue().toNanos();
+                while ( batch.size() < batchSize )
+                {
+                    // Take whatever is immediately available, then wait (up to the linger deadline) for more.
+                    if ( queue.drainTo( batch, batchSize - batch.size() ) > 0 ) {
+                        continue;
+                    }
+                    final long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 ) {
+                        break;
+                    }
+                    final Pending next = queue.poll( remaining, TimeUnit.NANOSECONDS );
+                    if ( next == null ) {
+                        break;
+                    }
+                    batch.add( next );
+                }
+
+                inFlight.acquire();
+                send( batch );
+            }
+            catch ( InterruptedException e )
+            {
+                fail( batch, new IllegalStateException( "Transport is stopped." ) );
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "An unexpected exception occurred while batching push notifications for HTTP delivery.", e );
+                fail( batch, e );
+            }
+        }
+    }
+
+    private void send( final List<Pending> batch )
+    {
+        final String endpoint = this.endpoint.get();
+        if ( endpoint == null || endpoint.isEmpty() ) {
+            inFlight.release();
+            fail( batch, new IllegalStateException( "No HTTP endpoint is configured (" + ENDPOINT.getKey() + ")." ) );
+            return;
+        }
+
+        final HttpRequest request;
+        try
+        {
+            request = HttpRequest.newBuilder( URI.create( endpoint ) )
+                .timeout( REQUEST_TIMEOUT.getValue() )
+                .header( "Content-Type", "application/json" )
+                .POST( HttpRequest.BodyPublishers.ofString( toJson( batch ) ) )
+                .build();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            inFlight.release();
+            fail( batch, e );
+            return;
+        }
+
+        Log.trace( "Sending a batch of {} notification(s) to {}", batch.size(), endpoint );
+        final CompletableFuture<HttpResponse<Void>> exchange;
+        sending.add( batch );
+        try
+        {
+            exchange = httpClient.sendAsync( request, HttpResponse.BodyHandlers.discarding() );
+        }
+        catch ( RuntimeException e )
+        {
+            sending.remove( batch );
+            inFlight.release();
+            fail( batch, e );
+            return;
+        }
+        exchange.whenComplete( ( response, throwable ) -> {
+            sending.remove( batch );
+            inFlight.release();
+            if ( throwable != null ) {
+                fail( batch, throwable );
+            } else if ( response.statusCode() / 100 != 2 ) {
+                fail( batch, new IOException( "HTTP endpoint responded with status " + response.statusCode() ) );
+            } else {
+                batch.forEach( pending -> pending.future.complete( null ) );
+            }
+        } );
+    }
+
+    private static void fail( final List<Pending> batch, final Throwable cause )
+    {
+        Log.debug( "Unable to deliver a batch of {} notification(s).", batch.size(), cause );
+        batch.forEach( pending -> pending.future.completeExceptionally( cause ) );
+    }
+
+    static String toJson( final List<Pending> batch )
+    {
+        final StringBuilder sb = new StringBuilder( "{\"notifications\":[" );
+        for ( int i = 0; i < batch.size(); i++ )
+        {
+            final PushRequest request = batch.get( i ).request;
+            if ( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( "{\"node\":" );
+            appendString( sb, request.getNode() );
+            sb.append( ",\"options\":" );
+            appendObject( sb, request.getPublishOptions() );
+            sb.append( ",\"summary\":" );
+            appendObject( sb, request.getSummary() );
+            sb.append( '}' );
+        }
+        return sb.append( "]}" ).toString();
+    }
+
+    private static void appendObject( final StringBuilder sb, final Map<String, String> values )
+    {
+        sb.append( '{' );
+        boolean first = true;
+        for ( final Map.Entry<String, String> entry : values.entrySet() )
+        {
+            if ( !first ) {
+                sb.append( ',' );
+            }
+            first = false;
+            appendString( sb, entry.getKey() );
+            sb.append( ':' );
+            appendString( sb, entry.getValue() );
+        }
+        sb.append( '}' );
+    }
+
+    private static void appendString( final StringBuilder sb, final String value )
+    {
+        if ( value == null ) {
+            sb.append( "null" );
+            return;
+        }
+        sb.append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            switch ( c )
+            {
+                case '"':  sb.append( "\\\"" ); break;
+                case '\\': sb.append( "\\\\" ); break;
+                case '\n': sb.append( "\\n" ); break;
+                case '\r': sb.append( "\\r" ); break;
+                case '\t': sb.append( "\\t" ); break;
+                default:
+                    if ( c < 0x20 ) {
+                        sb.append( String.format( "\\u%04x", (int) c ) );
+                    } else {
+                        sb.append( c );
+                    }
+            }
+        }
+        sb.append( '"' );
+    }
+
+    static class Pending
+    {
+        final PushRequest request;
+        final CompletableFuture<Void> future;
+
+        Pending( final PushRequest request, final CompletableFuture<Void> future )
+        {
+            this.request = request;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.appserver;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single notification, as extracted from a XEP-0357 publish request that was received by the embedded app server, to
+ * be delivered by a {@link PushTransport}.
+ */
+public class PushRequest
+{
+    private final String node;
+    private final Map<String, String> publishOptions;
+    private final Map<String, String> summary;
+
+    public PushRequest(@Nonnull final String node, @Nonnull final Map<String, String> publishOptions, @Nonnull final Map<String, String> summary)
+    {
+        this.node = node;
+        this.publishOptions = Collections.unmodifiableMap(new LinkedHashMap<>(publishOptions));
+        this.summary = Collections.unmodifiableMap(new LinkedHashMap<>(summary));
+    }
+
+    /**
+     * The pubsub node to which the notification was published. App servers typically use this to identify the device.
+     *
+     * @return a pubsub node identifier.
+     */
+    @Nonnull
+    public String getNode()
+    {
+        return node;
+    }
+
+    /**
+     * The fields of the publish-options form (excluding FORM_TYPE) that the client provided when enabling push.
+     *
+     * @return publish-options, possibly empty.
+     */
+    @Nonnull
+    public Map<String, String> getPublishOptions()
+    {
+        return publishOptions;
+    }
+
+    /**
+     * The fields of the urn:xmpp:push:summary form (excluding FORM_TYPE) that were part of the notification.
+     *
+     * @return notification summary, possibly empty.
+     */
+    @Nonnull
+    public Map<String, String> getSummary()
+    {
+        return summary;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PushRequest{node='" + node + "', publishOptions=" + publishOptions.keySet() + ", summary=" + summary.keySet() + '}';
+    }
+}
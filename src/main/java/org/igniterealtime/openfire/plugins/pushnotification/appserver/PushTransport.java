@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.appserver;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers notifications that were received by the embedded app server to a (typically remote) push gateway, such as
+ * FCM or APNs, or a relay in front of those.
+ *
+ * Implementations are expected to be thread-safe and non-blocking: the returned future is completed when the delivery
+ * attempt has finished.
+ */
+public interface PushTransport
+{
+    /**
+     * Prepares the transport for use.
+     */
+    void start();
+
+    /**
+     * Releases all resources held by the transport. Deliveries that have not yet completed are completed exceptionally.
+     */
+    void stop();
+
+    /**
+     * Delivers a notification.
+     *
+     * @param request The notification to deliver.
+     * @return A future that completes normally when the notification was accepted by the gateway, or exceptionally when
+     *         it was not.
+     */
+    @Nonnull
+    CompletableFuture<Void> deliver(@Nonnull final PushRequest request);
+}
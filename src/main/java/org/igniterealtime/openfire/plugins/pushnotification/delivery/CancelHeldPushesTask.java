@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushNotificationPlugin;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.cache.ClusterTask;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A cluster task that cancels push notifications that are held by the {@link PushGraceQueue} of other cluster nodes.
+ * This is used when a user reads a message on a session that is connected to a different cluster node than the one
+ * that is holding the push notification for that message.
+ */
+public class CancelHeldPushesTask implements ClusterTask<Void>
+{
+    private String username;
+    private String conversation;
+    private String messageId;
+
+    public CancelHeldPushesTask()
+    {
+        // Required for serialization.
+    }
+
+    /**
+     * @param username The recipient.
+     * @param conversation The conversation of which to cancel push notifications, or null to cancel all push
+     *                     notifications of the recipient.
+     * @param messageId The message of which to cancel the push notification, or null to cancel the push notifications
+     *                  of all messages in the conversation.
+     */
+    public CancelHeldPushesTask( @Nonnull final String username, @Nullable final String conversation, @Nullable final String messageId )
+    {
+        this.username = username;
+        this.conversation = conversation;
+        this.messageId = messageId;
+    }
+
+    @Override
+    public Void getResult()
+    {
+        return null;
+    }
+
+    @Override
+    public void run()
+    {
+        XMPPServer.getInstance().getPluginManager().getPluginByName( "Push Notification" )
+            .filter( plugin -> plugin instanceof PushNotificationPlugin )
+            .map( plugin -> ((PushNotificationPlugin) plugin).getGraceQueue() )
+            .ifPresent( graceQueue -> {
+                if ( conversation == null ) {
+                    graceQueue.cancelAll( username );
+                } else if ( messageId == null ) {
+                    graceQueue.cancelConversation( username, conversation );
+                } else {
+                    graceQueue.cancelMessage( username, conversation, messageId );
+                }
+            } );
+    }
+
+    @Override
+    public void writeExternal( final ObjectOutput out ) throws IOException
+    {
+        out.writeUTF( username );
+        out.writeBoolean( conversation != null );
+        if ( conversation != null ) {
+            out.writeUTF( conversation );
+        }
+        out.writeBoolean( messageId != null );
+        if ( messageId != null ) {
+            out.writeUTF( messageId );
+        }
+    }
+
+    @Override
+    public void readExternal( final ObjectInput in ) throws IOException
+    {
+        username = in.readUTF();
+        conversation = in.readBoolean() ? in.readUTF() : null;
+        messageId = in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A FIFO of {@link PushDelivery} instances, stored in an append-only, memory-mapped file of fixed capacity.
+ *
+ * The file starts with a header that records the read and write position. Records are appended at the write position,
+ * and consumed from the read position. When all records have been consumed, both positions are reset to the start of
+ * the data area. When the data area runs out of space, the unconsumed records are moved to its start.
+ *
+ * As the positions are stored in the mapped file itself, records that were not consumed before the JVM exits remain
+ * available when the file is opened again, also when it is opened with a different capacity: when the capacity is
+ * reduced, the unconsumed records are moved to the start of the data area, as far as they fit. Records with an invalid
+ * length are treated as the end of the journal.
+ *
+ * Instances are thread-safe.
+ */
+public class DeliveryJournal implements Closeable
+{
+    private static final Logger Log = LoggerFactory.getLogger( DeliveryJournal.class );
+
+    private static final int MAGIC = 0x50555348; // "PUSH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24; // magic (int), version (int), read position (long), write position (long)
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private int readPosition;
+    private int writePosition;
+    private int size;
+
+    /**
+     * Opens (and, if needed, creates) a journal.
+     *
+     * @param file The file that backs the journal.
+     * @param capacity The size of the file, in bytes.
+     * @throws IOException When the file cannot be opened.
+     */
+    public DeliveryJournal( @Nonnull final Path file, final int capacity ) throws IOException
+    {
+        this.file = file;
+        this.capacity = capacity;
+        Files.createDirectories( file.toAbsolutePath().getParent() );
+        channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+        // When the capacity was reduced, records beyond the new capacity would be lost by mapping the file. Move them out of the way first.
+        final byte[] migrated = channel.size() > capacity ? readRecordsBeyond( capacity ) : null;
+        if ( migrated != null ) {
+            channel.truncate( capacity );
+        }
+        buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+
+        if ( migrated != null )
+        {
+            buffer.putInt( 0, MAGIC );
+            buffer.putInt( 4, VERSION );
+            reset();
+            int position = 0;
+            int dropped = 0;
+            while ( position < migrated.length )
+            {
+                final int length = readInt( migrated, position );
+                if ( writePosition + Integer.BYTES + length <= capacity ) {
+                    buffer.put( writePosition, migrated, position, Integer.BYTES + length );
+                    writePosition += Integer.BYTES + length;
+                    size++;
+                } else {
+                    dropped++;
+                }
+                position += Integer.BYTES + length;
+            }
+            storePositions();
+            Log.warn( "Moved {} undelivered push notification(s) into delivery journal {} after its capacity was reduced to {} bytes. {} push notification(s) did not fit and were dropped.", size, file, capacity, dropped );
+        }
+        else if ( hasValidHeader( buffer.getInt( 0 ), buffer.getInt( 4 ), buffer.getLong( 8 ), buffer.getLong( 16 ), capacity ) )
+        {
+            readPosition = (int) buffer.getLong( 8 );
+            writePosition = (int) buffer.getLong( 16 );
+            int position = readPosition;
+            while ( position < writePosition )
+            {
+                final int length = writePosition - position < Integer.BYTES ? -1 : buffer.getInt( position );
+                if ( length < 0 || length > writePosition - position - Integer.BYTES ) {
+                    Log.warn( "Delivery journal {} contains a record with an invalid length ({}) at position {}. Records from that position onwards are dropped.", file, length, position );
+                    writePosition = position;
+                    break;
+                }
+                position += Integer.BYTES + length;
+                size++;
+            }
+            if ( size == 0 ) {
+                reset();
+            } else {
+                storePositions();
+            }
+            Log.info( "Opened delivery journal {} that contains {} undelivered push notification(s).", file, size );
+        }
+        else
+        {
+            if ( buffer.getInt( 0 ) != 0 ) {
+                Log.warn( "Delivery journal {} has an unrecognized header. It is reinitialized, which drops any push notifications that it contained.", file );
+            }
+            buffer.putInt( 0, MAGIC );
+            buffer.putInt( 4, VERSION );
+            reset();
+            Log.debug( "Initialized new delivery journal {}", file );
+        }
+    }
+
+    /**
+     * Appends a delivery to the journal.
+     *
+     * @param delivery the delivery to append.
+     * @return false when the journal did not have enough capacity to store the delivery.
+     */
+    public synchronized boolean append( @Nonnull final PushDelivery delivery )
+    {
+        final byte[] record;
+        try
+        {
+            record = serialize( delivery );
+        }
+        catch ( IOException e )
+        {
+            Log.warn( "Unable to serialize {}", delivery, e );
+            return false;
+        }
+
+        final int required = Integer.BYTES + record.length;
+        if ( writePosition + required > capacity ) {
+            compact();
+            if ( writePosition + required > capacity ) {
+                return false;
+            }
+        }
+
+        buffer.putInt( writePosition, record.length );
+        buffer.put( writePosition + Integer.BYTES, record );
+        writePosition += required;
+        size++;
+        storePositions();
+        return true;
+    }
+
+    /**
+     * Removes the oldest delivery from the journal.
+     *
+     * @return the oldest delivery, or null when the journal is empty.
+     */
+    @Nullable
+    public synchronized PushDelivery poll()
+    {
+        while ( readPosition < writePosition )
+        {
+            final int length = writePosition - readPosition < Integer.BYTES ? -1 : buffer.getInt( readPosition );
+            if ( length < 0 || length > writePosition - readPosition - Integer.BYTES ) {
+                Log.warn( "Delivery journal {} contains a record with an invalid length ({}) at position {}. The remainder of the journal is dropped.", file, length, readPosition );
+                reset();
+                return null;
+            }
+            final byte[] record = new byte[length];
+            buffer.get( readPosition + Integer.BYTES, record );
+            readPosition += Integer.BYTES + length;
+            size--;
+            if ( readPosition == writePosition ) {
+                reset();
+            } else {
+                storePositions();
+            }
+
+            try
+            {
+                return deserialize( record );
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "Skipping a journal record that could not be parsed.", e );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The amount of deliveries in the journal.
+     *
+     * @return a non-negative number.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * The amount of bytes in use by unconsumed records.
+     *
+     * @return a non-negative number.
+     */
+    public synchronized int getUsedBytes()
+    {
+        return writePosition - readPosition;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        buffer.force();
+        channel.close();
+        Log.debug( "Closed delivery journal {} that contains {} undelivered push notification(s).", file, size );
+    }
+
+    private static boolean hasValidHeader( final int magic, final int version, final long readPosition, final long writePosition, final long capacity )
+    {
+        return magic == MAGIC && version == VERSION && readPosition >= HEADER_SIZE && writePosition <= capacity && readPosition <= writePosition;
+    }
+
+    /**
+     * Reads the unconsumed records of a journal file that was created with a capacity larger than the current one, if
+     * any of its records are stored beyond the current capacity.
+     *
+     * @param capacity The current capacity of the journal.
+     * @return the unconsumed, well-formed records (each prefixed by its length), or null when no records need to be moved.
+     */
+    @Nullable
+    private byte[] readRecordsBeyond( final int capacity ) throws IOException
+    {
+        final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        channel.read( header, 0 );
+        if ( !hasValidHeader( header.getInt( 0 ), header.getInt( 4 ), header.getLong( 8 ), header.getLong( 16 ), channel.size() ) || header.getLong( 16 ) <= capacity ) {
+            return null;
+        }
+        final int start = (int) header.getLong( 8 );
+        final int end = (int) header.getLong( 16 );
+        final ByteBuffer data = ByteBuffer.allocate( end - start );
+        while ( data.hasRemaining() ) {
+            if ( channel.read( data, start + data.position() ) < 0 ) {
+                break;
+            }
+        }
+        final byte[] records = data.array();
+
+        // Drop anything from the first record that has an invalid length onwards.
+        int position = 0;
+        while ( position < records.length )
+        {
+            final int length = records.length - position < Integer.BYTES ? -1 : readInt( records, position );
+            if ( length < 0 || length > records.length - position - Integer.BYTES ) {
+                Log.warn( "Delivery journal {} contains a record with an invalid length ({}) at position {}. Records from that position onwards are dropped.", file, length, start + position );
+                break;
+            }
+            position += Integer.BYTES + length;
+        }
+        return position == records.length ? records : Arrays.copyOf( records, position );
+    }
+
+    private static int readInt( final byte[] bytes, final int position )
+    {
+        return ByteBuffer.wrap( bytes, position, Integer.BYTES ).getInt();
+    }
+
+    private void compact()
+    {
+        if ( readPosition == HEADER_SIZE ) {
+            return;
+        }
+        final int used = writePosition - readPosition;
+        final byte[] data = new byte[used];
+        buffer.get( readPosition, data );
+        buffer.put( HEADER_SIZE, data );
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + used;
+        storePositions();
+    }
+
+    private void reset()
+    {
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        size = 0;
+        storePositions();
+    }
+
+    private void storePositions()
+    {
+        buffer.putLong( 8, readPosition );
+        buffer.putLong( 16, writePosition );
+    }
+
+    static byte[] serialize( final PushDelivery delivery ) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( final DataOutputStream out = new DataOutputStream( bytes ) )
+        {
+            out.writeUTF( delivery.getUsername() );
+            out.writeUTF( delivery.getFingerprint() );
+            out.writeInt( delivery.getAttempts() );
+            final byte[] xml = delivery.getPush().toXML().getBytes( StandardCharsets.UTF_8 );
+            out.writeInt( xml.length );
+            out.write( xml );
+            out.writeUTF( delivery.getPriority().name() );
+            out.writeLong( delivery.getCreated() );
+        }
+        return bytes.toByteArray();
+    }
+
+    static PushDelivery deserialize( final byte[] record ) throws Exception
+    {
+        try ( final DataInputStream in = new DataInputStream( new ByteArrayInputStream( record ) ) )
+        {
+            final String username = in.readUTF();
+            final String fingerprint = in.readUTF();
+            final int attempts = in.readInt();
+            final byte[] xml = new byte[in.readInt()];
+            in.readFully( xml );
+            final Element element = new SAXReader().read( new StringReader( new String( xml, StandardCharsets.UTF_8 ) ) ).getRootElement();
+
+            // Records that were written by earlier versions of the plugin end here.
+            PushPriority priority = PushPriority.DIRECT;
+            long created = System.currentTimeMillis();
+            if ( in.available() > 0 ) {
+                priority = PushPriority.valueOf( in.readUTF() );
+                created = in.readLong();
+            }
+            return new PushDelivery( username, fingerprint, new IQ( element ), priority, created, attempts );
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Spreads the dispatch of push notifications that are caused by one source (such as a message in a large group chat,
+ * or a broadcast by the server) over time.
+ *
+ * When more than {@link #THRESHOLD} push notifications for the same source are dispatched within a second, further
+ * push notifications for that source are held back. Held push notifications are released at a global rate of
+ * {@link #RATE} per second (a token bucket shared by all sources). When the backlog is too large to be released within
+ * {@link #WINDOW} at that rate, the rate is increased, so that no push notification is held back for longer than that.
+ */
+public class FanOutSmoother
+{
+    private static final Logger Log = LoggerFactory.getLogger( FanOutSmoother.class );
+
+    /**
+     * Enables the smoothing of push notifications caused by a single message or broadcast.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.fanout.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The amount of push notifications for one source, within one second, above which further push notifications for
+     * that source are smoothed.
+     */
+    public static final SystemProperty<Integer> THRESHOLD = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.fanout.threshold")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(50)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The amount of smoothed push notifications that are released per second.
+     */
+    public static final SystemProperty<Integer> RATE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.fanout.rate")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(200)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum period over which smoothed push notifications are spread.
+     */
+    public static final SystemProperty<Duration> WINDOW = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.fanout.window")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofSeconds(10))
+        .setDynamic(true)
+        .build();
+
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * The amount of push notifications per source in the current second. Cleared every second.
+     */
+    private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    private final Queue<Runnable> held = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger heldCount = new AtomicInteger();
+
+    private volatile ScheduledExecutorService scheduler;
+    private double tokens;
+    private long lastTick;
+
+    public synchronized void start()
+    {
+        if ( scheduler != null ) {
+            return;
+        }
+        lastTick = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "pushnotification-fanout-", true, null, null, null ) );
+        scheduler.scheduleAtFixedRate( this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS );
+        scheduler.scheduleAtFixedRate( counts::clear, 1, 1, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Stops smoothing. Push notifications that are still held back are dispatched immediately.
+     */
+    public synchronized void stop()
+    {
+        if ( scheduler == null ) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination( 5, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+
+        final int released = drain( Integer.MAX_VALUE );
+        if ( released > 0 ) {
+            Log.debug( "Dispatched {} held push notification(s) while stopping.", released );
+        }
+        counts.clear();
+    }
+
+    /**
+     * Dispatches a push notification, or holds it back when it is part of a fan-out.
+     *
+     * @param source Identifies what caused the push notification (for example, the sender of a message).
+     * @param dispatch Dispatches the push notification, returning a short description of the outcome.
+     * @return the outcome of the dispatch, or 'deferred' when the dispatch was held back.
+     */
+    @Nonnull
+    public String submit( @Nonnull final String source, @Nonnull final Supplier<String> dispatch )
+    {
+        if ( !ENABLED.getValue() || scheduler == null ) {
+            return dispatch.get();
+        }
+
+        final int count = counts.computeIfAbsent( source, s -> new AtomicInteger() ).incrementAndGet();
+        if ( count <= THRESHOLD.getValue() ) {
+            return dispatch.get();
+        }
+        if ( count == THRESHOLD.getValue() + 1 ) {
+            Log.debug( "Detected a fan-out of push notifications for '{}'. Smoothing further push notifications.", source );
+        }
+
+        held.add( () -> {
+            final String outcome = dispatch.get();
+            Log.trace( "Dispatched a held back push notification for '{}': {}", source, outcome );
+        } );
+        heldCount.incrementAndGet();
+        return "deferred";
+    }
+
+    /**
+     * The amount of push notifications that are held back.
+     *
+     * @return a non-negative number.
+     */
+    public int getHeldCount()
+    {
+        return heldCount.get();
+    }
+
+    private void tick()
+    {
+        try
+        {
+            final long now = System.nanoTime();
+            final double elapsedSeconds = ( now - lastTick ) / 1_000_000_000.0;
+            lastTick = now;
+
+            final int backlog = heldCount.get();
+            if ( backlog == 0 ) {
+                tokens = 0;
+                return;
+            }
+
+            // Release at least fast enough to empty the backlog within the window.
+            final double windowSeconds = Math.max( WINDOW.getValue().toMillis(), TICK_MILLIS ) / 1000.0;
+            final double rate = Math.max( RATE.getValue(), backlog / windowSeconds );
+            tokens = Math.min( tokens + rate * elapsedSeconds, Math.max( 1, rate * TICK_MILLIS / 1000.0 * 2 ) );
+
+            final int permitted = (int) tokens;
+            if ( permitted > 0 ) {
+                tokens -= drain( permitted );
+            }
+        }
+        catch ( Exception e )
+        {
+            Log.warn( "An exception occurred while releasing held back push notifications.", e );
+        }
+    }
+
+    private int drain( final int max )
+    {
+        int released = 0;
+        Runnable task;
+        while ( released < max && ( task = held.poll() ) != null )
+        {
+            heldCount.decrementAndGet();
+            released++;
+            try {
+                task.run();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while dispatching a held back push notification.", e );
+            }
+        }
+        return released;
+    }
+}
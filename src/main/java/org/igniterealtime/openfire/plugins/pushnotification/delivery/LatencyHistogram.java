@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records durations in buckets of exponentially increasing width, from which percentiles can be estimated with a
+ * relative error of at most 1/16 (about 6%), using a fixed amount of memory.
+ *
+ * Recordings are kept for two intervals: the current one and the previous one. Calling {@link #rotate()} starts a new
+ * interval, discarding the recordings of the previous one. Percentiles are computed over both intervals, so that they
+ * always reflect at least one complete interval.
+ *
+ * Instances are thread-safe. Recording does not lock or allocate.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + ( Long.SIZE - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+    private volatile AtomicLongArray current = new AtomicLongArray( BUCKETS );
+    private volatile AtomicLongArray previous = new AtomicLongArray( BUCKETS );
+
+    /**
+     * Records a duration.
+     *
+     * @param millis The duration, in milliseconds. Negative values are recorded as zero.
+     */
+    public void record( final long millis )
+    {
+        current.incrementAndGet( bucketOf( Math.max( 0, millis ) ) );
+    }
+
+    /**
+     * Starts a new interval.
+     */
+    public synchronized void rotate()
+    {
+        previous = current;
+        current = new AtomicLongArray( BUCKETS );
+    }
+
+    /**
+     * The amount of recorded durations in the current and previous interval.
+     *
+     * @return a non-negative number.
+     */
+    public long getCount()
+    {
+        final AtomicLongArray current = this.current;
+        final AtomicLongArray previous = this.previous;
+        long result = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            result += current.get( i ) + previous.get( i );
+        }
+        return result;
+    }
+
+    /**
+     * Estimates a percentile of the durations that were recorded in the current and previous interval.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return the estimated duration in milliseconds (rounded up to the end of its bucket), or -1 if nothing was recorded.
+     */
+    public long getPercentile( final double percentile )
+    {
+        final AtomicLongArray current = this.current;
+        final AtomicLongArray previous = this.previous;
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            counts[i] = current.get( i ) + previous.get( i );
+            total += counts[i];
+        }
+        if ( total == 0 ) {
+            return -1;
+        }
+
+        final long rank = Math.max( 1, (long) Math.ceil( total * Math.min( Math.max( percentile, 0 ), 100 ) / 100.0 ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= rank ) {
+                return upperBoundOf( i );
+            }
+        }
+        return upperBoundOf( BUCKETS - 1 );
+    }
+
+    static int bucketOf( final long value )
+    {
+        if ( value < SUB_BUCKETS ) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros( value ); // at least SUB_BUCKET_BITS
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) ( value >>> shift ) & ( SUB_BUCKETS - 1 );
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf( final int bucket )
+    {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        final int shift = ( bucket - SUB_BUCKETS ) / SUB_BUCKETS;
+        final int subBucket = ( bucket - SUB_BUCKETS ) % SUB_BUCKETS;
+        final long lowerBound = (long) ( SUB_BUCKETS + subBucket ) << shift;
+        return lowerBound + ( 1L << shift ) - 1;
+    }
+}
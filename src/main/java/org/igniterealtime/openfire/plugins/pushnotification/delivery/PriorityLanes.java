@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.jivesoftware.util.SystemProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of push notifications that is split into one lane per {@link PushPriority}.
+ *
+ * Lanes are served using weighted fair queuing: every lane receives a share of the deliveries that is proportional to
+ * its weight, for as long as it has push notifications queued. A lane that was idle does not accumulate credit. With
+ * the default weights, when all lanes are busy, direct chat push notifications receive 8/15 of the deliveries and
+ * group chat push notifications 2/15. Any share that a lane does not use is divided over the other lanes.
+ *
+ * Within a lane, users are served round-robin: one push notification for every user that has push notifications
+ * queued in that lane, in turn. This prevents a few users with many push notifications from delaying push
+ * notifications for everyone else. Push notifications for the same user (in the same lane) are delivered in order.
+ *
+ * Instances are thread-safe.
+ */
+public class PriorityLanes
+{
+    /**
+     * The relative share of deliveries for each lane, when more than one lane has push notifications queued.
+     */
+    public static final Map<PushPriority, SystemProperty<Integer>> WEIGHTS;
+
+    static {
+        final int[] defaults = { 8, 4, 2, 1 };
+        final EnumMap<PushPriority, SystemProperty<Integer>> weights = new EnumMap<>( PushPriority.class );
+        for ( final PushPriority priority : PushPriority.values() ) {
+            weights.put( priority, SystemProperty.Builder.ofType(Integer.class)
+                .setKey("pushnotifications.delivery.weight." + priority.name().toLowerCase())
+                .setPlugin("Push Notification")
+                .setMinValue(1)
+                .setDefaultValue(defaults[ Math.min( priority.ordinal(), defaults.length - 1 ) ])
+                .setDynamic(true)
+                .build() );
+        }
+        WEIGHTS = Collections.unmodifiableMap( weights );
+    }
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Lane[] lanes;
+
+    /**
+     * The pass value of the most recently served lane. Lanes that become active start from here.
+     */
+    private double virtualTime;
+    private int size;
+
+    public PriorityLanes( final int capacity )
+    {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException( "Argument 'capacity' must be positive." );
+        }
+        this.capacity = capacity;
+        this.lanes = new Lane[ PushPriority.values().length ];
+        for ( int i = 0; i < lanes.length; i++ ) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Adds a push notification to the lane of its priority.
+     *
+     * @param delivery The push notification.
+     * @return false if the queue is full.
+     */
+    public boolean offer( @Nonnull final PushDelivery delivery )
+    {
+        lock.lock();
+        try
+        {
+            if ( size >= capacity ) {
+                return false;
+            }
+            final Lane lane = lanes[ delivery.getPriority().ordinal() ];
+            if ( lane.size == 0 ) {
+                lane.pass = Math.max( lane.pass, virtualTime );
+            }
+            lane.add( delivery );
+            size++;
+            notEmpty.signal();
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next push notification to deliver, waiting for one to become available if needed.
+     *
+     * @return a push notification.
+     * @throws InterruptedException when interrupted while waiting.
+     */
+    @Nonnull
+    public PushDelivery take() throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            while ( size == 0 ) {
+                notEmpty.await();
+            }
+            return next();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next push notification to deliver, if any.
+     *
+     * @return a push notification, or null if the queue is empty.
+     */
+    @Nullable
+    public PushDelivery poll()
+    {
+        lock.lock();
+        try
+        {
+            return size == 0 ? null : next();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int size()
+    {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int remainingCapacity()
+    {
+        lock.lock();
+        try {
+            return capacity - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The amount of push notifications that are queued in a lane.
+     *
+     * @param priority The lane.
+     * @return a non-negative number.
+     */
+    public int size( @Nonnull final PushPriority priority )
+    {
+        lock.lock();
+        try {
+            return lanes[ priority.ordinal() ].size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Serves the non-empty lane with the lowest pass value, then advances the pass value of that lane by the inverse of
+     * its weight (stride scheduling, which is how weighted fair queuing is applied to units of equal cost). Must be
+     * called while holding the lock, when the queue is not empty.
+     */
+    private PushDelivery next()
+    {
+        Lane selected = null;
+        int selectedIndex = -1;
+        for ( int i = 0; i < lanes.length; i++ ) {
+            final Lane lane = lanes[i];
+            if ( lane.size > 0 && ( selected == null || lane.pass < selected.pass ) ) {
+                selected = lane;
+                selectedIndex = i;
+            }
+        }
+        assert selected != null;
+
+        virtualTime = selected.pass;
+        selected.pass += 1.0 / WEIGHTS.get( PushPriority.values()[ selectedIndex ] ).getValue();
+        size--;
+        return selected.next();
+    }
+
+    /**
+     * The push notifications of one priority, served round-robin by user. Guarded by the lock of the enclosing instance.
+     */
+    private static final class Lane
+    {
+        final Map<String, ArrayDeque<PushDelivery>> byUser = new HashMap<>();
+        final ArrayDeque<String> turns = new ArrayDeque<>();
+        int size;
+        double pass;
+
+        void add( final PushDelivery delivery )
+        {
+            ArrayDeque<PushDelivery> queue = byUser.get( delivery.getUsername() );
+            if ( queue == null ) {
+                queue = new ArrayDeque<>();
+                byUser.put( delivery.getUsername(), queue );
+                turns.add( delivery.getUsername() );
+            }
+            queue.add( delivery );
+            size++;
+        }
+
+        PushDelivery next()
+        {
+            final String username = turns.poll();
+            final ArrayDeque<PushDelivery> queue = byUser.get( username );
+            final PushDelivery result = queue.poll();
+            if ( queue.isEmpty() ) {
+                byUser.remove( username );
+            } else {
+                turns.add( username );
+            }
+            size--;
+            return result;
+        }
+    }
+}
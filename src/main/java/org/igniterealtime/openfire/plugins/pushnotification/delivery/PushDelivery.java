@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.xmpp.packet.IQ;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A push notification (a pubsub publish request to a push service) that is waiting to be delivered.
+ */
+public class PushDelivery
+{
+    private final String username;
+    private final String fingerprint;
+    private final IQ push;
+    private final PushPriority priority;
+    private final long created;
+    private final int attempts;
+
+    /**
+     * Creates a new delivery.
+     *
+     * @param username The name of the user for which the push notification is sent.
+     * @param fingerprint The identifier of the message that caused the push notification (as returned by PushInterceptor#getMessageIdentifier).
+     * @param push The publish request to deliver.
+     * @param priority The priority of the push notification, which determines the lane in which it is queued.
+     */
+    public PushDelivery( @Nonnull final String username, @Nonnull final String fingerprint, @Nonnull final IQ push, @Nonnull final PushPriority priority )
+    {
+        this( username, fingerprint, push, priority, System.currentTimeMillis(), 0 );
+    }
+
+    PushDelivery( @Nonnull final String username, @Nonnull final String fingerprint, @Nonnull final IQ push, @Nonnull final PushPriority priority, final long created, final int attempts )
+    {
+        this.username = username;
+        this.fingerprint = fingerprint;
+        this.push = push;
+        this.priority = priority;
+        this.created = created;
+        this.attempts = attempts;
+    }
+
+    @Nonnull
+    public String getUsername()
+    {
+        return username;
+    }
+
+    @Nonnull
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    @Nonnull
+    public IQ getPush()
+    {
+        return push;
+    }
+
+    @Nonnull
+    public PushPriority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * The moment at which this push notification was first queued.
+     *
+     * @return a number of milliseconds since the epoch.
+     */
+    public long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * The amount of delivery attempts that failed for this push notification.
+     *
+     * @return a non-negative number.
+     */
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    /**
+     * Returns a copy of this instance that records one more failed delivery attempt.
+     *
+     * @return a new instance.
+     */
+    PushDelivery nextAttempt()
+    {
+        return new PushDelivery( username, fingerprint, push, priority, created, attempts + 1 );
+    }
+
+    /**
+     * A key that identifies this delivery: the combination of the message fingerprint, and the service and node to
+     * which the notification is sent.
+     *
+     * @return a deduplication key.
+     */
+    @Nonnull
+    public String getDeduplicationKey()
+    {
+        return fingerprint + '|' + push.getTo() + '|' + getNode();
+    }
+
+    /**
+     * The node of the push service to which the notification is published.
+     *
+     * @return a node, or null if the publish request does not specify one.
+     */
+    @Nullable
+    public String getNode()
+    {
+        return push.getChildElement() != null && push.getChildElement().element( "publish" ) != null ? push.getChildElement().element( "publish" ).attributeValue( "node" ) : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PushDelivery{username='" + username + "', to=" + push.getTo() + ", priority=" + priority + ", attempts=" + attempts + '}';
+    }
+}
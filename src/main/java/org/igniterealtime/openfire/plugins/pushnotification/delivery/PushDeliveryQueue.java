@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * The outbound stage of the push notification pipeline.
+ *
+ * Push notifications are queued in a bounded, in-memory queue, from which they are delivered by a small pool of worker
+ * threads. That queue has a lane per priority, that are served using weighted fair queuing, and round-robin by user
+ * within each lane (see {@link PriorityLanes}). When the in-memory queue is full, push notifications overflow into a {@link DeliveryJournal} on local disk.
+ * The in-memory queue is refilled from that journal as space becomes available. When the queue is stopped, everything
+ * that is still queued in memory is written to the journal, which is replayed the next time that the queue is started.
+ *
+ * Deliveries that fail are retried after an exponentially increasing delay, up to a configurable amount of attempts.
+ * A delivery fails when it cannot be routed, or when the push service later reports a temporary error or does not
+ * respond at all (see {@link #reportFailure}).
+ * A delivery is not queued if an equivalent delivery (same message fingerprint, service and node) is already queued in
+ * memory. Deliveries in the journal are deduplicated when they are read back from it, so that the memory used for
+ * deduplication is bounded by the capacity of the in-memory queue, rather than growing with the journaled backlog.
+ *
+ * For every lane, the time between queuing a push notification and the start of its first delivery attempt is recorded,
+ * from which percentiles over the last one to two minutes are available through {@link #getLatencyPercentile}.
+ */
+public class PushDeliveryQueue
+{
+    private static final Logger Log = LoggerFactory.getLogger( PushDeliveryQueue.class );
+
+    /**
+     * The maximum amount of push notifications that are queued in memory. Changes take effect after the plugin is reloaded.
+     */
+    public static final SystemProperty<Integer> MEMORY_CAPACITY = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.delivery.memory-capacity")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(10000)
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The size (in megabytes) of the journal file to which push notifications overflow. Changes take effect after the plugin is reloaded.
+     */
+    public static final SystemProperty<Integer> JOURNAL_SIZE_MB = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.delivery.journal-size-mb")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setMaxValue(1024)
+        .setDefaultValue(64)
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The amount of threads that deliver push notifications. Changes take effect after the plugin is reloaded.
+     */
+    public static final SystemProperty<Integer> WORKERS = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.delivery.workers")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(2)
+        .setDynamic(false)
+        .build();
+
+    /**
+     * The maximum amount of attempts to deliver a push notification.
+     */
+    public static final SystemProperty<Integer> MAX_ATTEMPTS = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.delivery.max-attempts")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(5)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The delay before the first retry of a failed delivery. Every next retry doubles the delay.
+     */
+    public static final SystemProperty<Duration> RETRY_INITIAL_DELAY = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.delivery.retry-initial-delay")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofMillis(500))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum delay between retries of a failed delivery.
+     */
+    public static final SystemProperty<Duration> RETRY_MAX_DELAY = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.delivery.retry-max-delay")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofMinutes(1))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * Performs the actual delivery of a push notification.
+     */
+    @FunctionalInterface
+    public interface Deliverer
+    {
+        void deliver( @Nonnull final PushDelivery delivery ) throws Exception;
+    }
+
+    private final Deliverer deliverer;
+    /**
+     * The deduplication keys of deliveries that are held in memory (queued, being delivered or awaiting a retry).
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<PushDelivery> awaitingRetry = ConcurrentHashMap.newKeySet();
+
+    private final Map<PushPriority, LatencyHistogram> latencies = new EnumMap<>( PushPriority.class );
+
+    private volatile PriorityLanes memory;
+    private DeliveryJournal journal;
+    private ExecutorService workers;
+    private volatile ScheduledExecutorService retries;
+    private volatile boolean running;
+
+    public PushDeliveryQueue( @Nonnull final Deliverer deliverer )
+    {
+        this.deliverer = deliverer;
+        for ( final PushPriority priority : PushPriority.values() ) {
+            latencies.put( priority, new LatencyHistogram() );
+        }
+    }
+
+    /**
+     * The location of the journal file.
+     *
+     * @return a path.
+     */
+    public static Path getJournalPath()
+    {
+        return JiveGlobals.getHomePath().resolve( "pushnotification" ).resolve( "delivery-journal.dat" );
+    }
+
+    /**
+     * Opens the journal (replaying anything that was left in it) and starts delivering.
+     */
+    public synchronized void start()
+    {
+        if ( running ) {
+            return;
+        }
+        memory = new PriorityLanes( MEMORY_CAPACITY.getValue() );
+        try
+        {
+            journal = new DeliveryJournal( getJournalPath(), JOURNAL_SIZE_MB.getValue() * 1024 * 1024 );
+        }
+        catch ( IOException e )
+        {
+            Log.error( "Unable to open the delivery journal. Push notifications that do not fit in memory will be dropped.", e );
+            journal = null;
+        }
+
+        if ( journal != null && !journal.isEmpty() )
+        {
+            // Replay: drain the journal into the in-memory queue, dropping duplicates.
+            final int journaled = journal.size();
+            int duplicates = 0;
+            for ( int i = 0; i < journaled; i++ ) {
+                final PushDelivery delivery = journal.poll();
+                if ( delivery == null ) {
+                    break;
+                }
+                if ( !pending.add( delivery.getDeduplicationKey() ) ) {
+                    duplicates++;
+                    continue;
+                }
+                if ( !memory.offer( delivery ) ) {
+                    pending.remove( delivery.getDeduplicationKey() );
+                    journal.append( delivery );
+                }
+            }
+            Log.info( "Replayed {} push notification(s) from the delivery journal ({} duplicate(s) dropped).", journaled - duplicates, duplicates );
+        }
+
+        // Deliveries that failed after the queue was stopped could not be written to the journal.
+        for ( final PushDelivery retry : awaitingRetry ) {
+            if ( awaitingRetry.remove( retry ) && pending.add( retry.getDeduplicationKey() ) && !enqueue( retry ) ) {
+                Log.warn( "Unable to re-queue {}: both the in-memory queue and the delivery journal are full.", retry );
+            }
+        }
+
+        running = true;
+        retries = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "pushnotification-delivery-retry-", true, null, null, null ) );
+        retries.scheduleAtFixedRate( () -> latencies.values().forEach( LatencyHistogram::rotate ), 1, 1, TimeUnit.MINUTES );
+        final int workerCount = WORKERS.getValue();
+        workers = Executors.newFixedThreadPool( workerCount, new NamedThreadFactory( "pushnotification-delivery-", true, null, null, null ) );
+        for ( int i = 0; i < workerCount; i++ ) {
+            workers.execute( this::work );
+        }
+    }
+
+    /**
+     * Stops delivering, and writes everything that is still queued in memory to the journal.
+     */
+    public synchronized void stop()
+    {
+        if ( !running ) {
+            return;
+        }
+        running = false;
+        workers.shutdownNow();
+        retries.shutdownNow();
+        try
+        {
+            if ( !workers.awaitTermination( 5, TimeUnit.SECONDS ) ) {
+                Log.warn( "Delivery workers did not terminate in time." );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Deliveries that are submitted from now on are rejected, rather than queued in memory that is no longer served.
+        final PriorityLanes memory = this.memory;
+        this.memory = null;
+
+        int spilled = 0;
+        int dropped = 0;
+        PushDelivery delivery;
+        while ( (delivery = memory.poll()) != null ) {
+            if ( journal != null && journal.append( delivery ) ) {
+                spilled++;
+            } else {
+                dropped++;
+            }
+        }
+        // Retries that have not been executed yet are stored too.
+        for ( final PushDelivery retry : awaitingRetry ) {
+            if ( !awaitingRetry.remove( retry ) ) {
+                continue;
+            }
+            if ( journal != null && journal.append( retry ) ) {
+                spilled++;
+            } else {
+                dropped++;
+            }
+        }
+        if ( spilled > 0 || dropped > 0 ) {
+            Log.info( "Wrote {} queued push notification(s) to the delivery journal, {} could not be stored and were dropped.", spilled, dropped );
+        }
+
+        if ( journal != null ) {
+            try {
+                journal.close();
+            } catch ( IOException e ) {
+                Log.warn( "An exception occurred while closing the delivery journal.", e );
+            }
+            journal = null;
+        }
+        // Everything that was held in memory is now in the journal, where it is deduplicated again when it is replayed.
+        pending.clear();
+    }
+
+    /**
+     * Queues a push notification for delivery.
+     *
+     * @param delivery The push notification to deliver.
+     * @return false if the push notification was not queued, because an equivalent one already is, or because there was no capacity to queue it.
+     */
+    public boolean submit( @Nonnull final PushDelivery delivery )
+    {
+        if ( !pending.add( delivery.getDeduplicationKey() ) ) {
+            Log.trace( "Not queuing {}, as an equivalent delivery is already queued.", delivery );
+            return false;
+        }
+        if ( enqueue( delivery ) ) {
+            return true;
+        }
+        if ( !running ) {
+            Log.debug( "Unable to queue {}, as the queue is stopped.", delivery );
+        } else {
+            Log.warn( "Unable to queue {}: both the in-memory queue and the delivery journal are full.", delivery );
+        }
+        return false;
+    }
+
+    /**
+     * Reports that a push notification that was delivered by the {@link Deliverer} was not accepted by the push
+     * service, because of a temporary error, or because the push service did not respond. The push notification is
+     * retried, unless an equivalent one is already queued, or the maximum amount of attempts has been reached.
+     *
+     * @param delivery The push notification that failed.
+     * @param reason A description of the failure (used for diagnostics).
+     */
+    public void reportFailure( @Nonnull final PushDelivery delivery, @Nonnull final String reason )
+    {
+        if ( !pending.add( delivery.getDeduplicationKey() ) ) {
+            Log.trace( "Not retrying {} ({}), as an equivalent delivery is already queued.", delivery, reason );
+            return;
+        }
+        retry( delivery, reason, null );
+    }
+
+    /**
+     * The amount of push notifications that are waiting to be delivered (in memory or in the journal).
+     *
+     * @return a non-negative number.
+     */
+    public int getQueueDepth()
+    {
+        final PriorityLanes memory = this.memory;
+        final DeliveryJournal journal = this.journal;
+        return (memory == null ? 0 : memory.size()) + (journal == null ? 0 : journal.size());
+    }
+
+    /**
+     * The amount of push notifications of a priority that are waiting in memory to be delivered. Push notifications
+     * that overflowed into the journal are not included.
+     *
+     * @param priority The priority (lane) of the push notifications.
+     * @return a non-negative number.
+     */
+    public int getQueueDepth( @Nonnull final PushPriority priority )
+    {
+        final PriorityLanes memory = this.memory;
+        return memory == null ? 0 : memory.size( priority );
+    }
+
+    /**
+     * Estimates a percentile of the time between queuing a push notification and the start of its first delivery
+     * attempt, over the last one to two minutes.
+     *
+     * @param priority The priority (lane) of the push notifications.
+     * @param percentile The percentile, between 0 and 100.
+     * @return a duration, or null if no push notifications of this priority were delivered in that period.
+     */
+    public Duration getLatencyPercentile( @Nonnull final PushPriority priority, final double percentile )
+    {
+        final long millis = latencies.get( priority ).getPercentile( percentile );
+        return millis < 0 ? null : Duration.ofMillis( millis );
+    }
+
+    /**
+     * Queues a delivery of which the deduplication key has been added to {@link #pending}. That key is removed again
+     * when the delivery is not queued in memory.
+     */
+    private boolean enqueue( final PushDelivery delivery )
+    {
+        final PriorityLanes memory = this.memory;
+        final DeliveryJournal journal = this.journal;
+        if ( memory == null ) {
+            pending.remove( delivery.getDeduplicationKey() );
+            return false;
+        }
+        // Once deliveries have overflowed into the journal, append new ones to that too, to roughly retain their order.
+        // High-priority deliveries are exempt, as their lanes are served ahead of the journaled backlog anyway.
+        if ( (journal == null || journal.isEmpty() || !delivery.getPriority().isLow()) && memory.offer( delivery ) ) {
+            return true;
+        }
+        pending.remove( delivery.getDeduplicationKey() );
+        return journal != null && journal.append( delivery );
+    }
+
+    private void refill( final PriorityLanes memory )
+    {
+        final DeliveryJournal journal = this.journal;
+        if ( journal == null ) {
+            return;
+        }
+        while ( memory.remainingCapacity() > 0 && !journal.isEmpty() )
+        {
+            final PushDelivery delivery = journal.poll();
+            if ( delivery == null ) {
+                return;
+            }
+            if ( !pending.add( delivery.getDeduplicationKey() ) ) {
+                Log.trace( "Dropping {} that was read from the delivery journal, as an equivalent delivery is already queued.", delivery );
+                continue;
+            }
+            if ( !memory.offer( delivery ) ) {
+                pending.remove( delivery.getDeduplicationKey() );
+                journal.append( delivery );
+                return;
+            }
+        }
+    }
+
+    private void work()
+    {
+        while ( running )
+        {
+            final PriorityLanes memory = this.memory;
+            if ( memory == null ) {
+                return;
+            }
+            final PushDelivery delivery;
+            try
+            {
+                delivery = memory.take();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if ( delivery.getAttempts() == 0 ) {
+                latencies.get( delivery.getPriority() ).record( System.currentTimeMillis() - delivery.getCreated() );
+            }
+
+            try {
+                refill( memory );
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while reading push notifications from the delivery journal.", e );
+            }
+
+            try
+            {
+                deliverer.deliver( delivery );
+                pending.remove( delivery.getDeduplicationKey() );
+            }
+            catch ( Exception e )
+            {
+                retry( delivery, e.getMessage(), e );
+            }
+        }
+    }
+
+    /**
+     * Schedules another attempt of a failed delivery, of which the deduplication key is in {@link #pending}. When the
+     * queue is stopping, the delivery is written to the journal by {@link #stop()}, or, when it has already stopped,
+     * re-queued by the next {@link #start()}.
+     */
+    private void retry( final PushDelivery delivery, final String reason, final Throwable cause )
+    {
+        final PushDelivery next = delivery.nextAttempt();
+        if ( next.getAttempts() >= MAX_ATTEMPTS.getValue() ) {
+            pending.remove( delivery.getDeduplicationKey() );
+            Log.warn( "Giving up delivering {} after {} attempt(s): {}", delivery, next.getAttempts(), reason, cause );
+            return;
+        }
+
+        awaitingRetry.add( next );
+        final ScheduledExecutorService retries = this.retries;
+        if ( !running || retries == null ) {
+            Log.debug( "Not scheduling a retry of {}, as the queue is stopping.", next );
+            return;
+        }
+        final Duration delay = getRetryDelay( next.getAttempts() );
+        Log.debug( "Delivery of {} failed ({}). Retrying in {}.", delivery, reason, delay, cause );
+        try
+        {
+            retries.schedule( () -> {
+                if ( !awaitingRetry.remove( next ) ) {
+                    return;
+                }
+                if ( !enqueue( next ) ) {
+                    Log.warn( "Unable to re-queue {}: both the in-memory queue and the delivery journal are full.", next );
+                }
+            }, delay.toMillis(), TimeUnit.MILLISECONDS );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            Log.debug( "Not scheduling a retry of {}, as the queue is stopping.", next );
+        }
+    }
+
+    /**
+     * Calculates the delay before a retry, which doubles with every failed attempt (capped by {@link #RETRY_MAX_DELAY}),
+     * with up to 20% random jitter to prevent retries of simultaneous failures from being synchronized.
+     *
+     * @param failedAttempts the amount of attempts that have failed.
+     * @return the delay before the next attempt.
+     */
+    static Duration getRetryDelay( final int failedAttempts )
+    {
+        final long initial = RETRY_INITIAL_DELAY.getValue().toMillis();
+        final long max = RETRY_MAX_DELAY.getValue().toMillis();
+        final long exponential = initial << Math.min( Math.max( failedAttempts - 1, 0 ), 30 );
+        final long capped = Math.min( exponential <= 0 ? max : exponential, max );
+        final long jitter = (long) (capped * 0.2 * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis( capped - jitter );
+    }
+}
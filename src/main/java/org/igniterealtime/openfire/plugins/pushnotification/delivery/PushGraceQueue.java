@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketClassification;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketConsumer;
+import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.jivesoftware.openfire.session.Session;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.cache.CacheFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+import org.xmpp.packet.Packet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds push notifications for messages for a short period, during which they are cancelled when it becomes clear that
+ * the recipient has seen the message on another device. This prevents a phone from notifying its user of a message that
+ * was just read on a desktop.
+ *
+ * Pending push notifications are cancelled by:
+ * <ul>
+ *     <li>a XEP-0333 'displayed' marker sent by the recipient, which cancels all push notifications for messages in
+ *     that conversation (as markers apply to all earlier messages);</li>
+ *     <li>a XEP-0184 receipt sent by the recipient, which cancels the push notification for that message;</li>
+ *     <li>any stanza sent by the recipient (when {@link #CANCEL_ON_ACTIVITY} is enabled), which cancels all push
+ *     notifications for that recipient.</li>
+ * </ul>
+ *
+ * Pending push notifications are kept in a {@link TimingWheel}, which allows for hundreds of thousands of them
+ * to be held at little cost. In a cluster, cancellations are sent to all other cluster nodes (see
+ * {@link CancelHeldPushesTask}), as the session on which a message is read can be connected to a different cluster node
+ * than the one that holds the push notification.
+ */
+public class PushGraceQueue implements PacketConsumer
+{
+    private static final Logger Log = LoggerFactory.getLogger( PushGraceQueue.class );
+
+    /**
+     * The period during which push notifications for messages are held. Zero disables holding push notifications.
+     */
+    public static final SystemProperty<Duration> PERIOD = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.grace.period")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofSeconds(3))
+        .setMaxValue(Duration.ofMinutes(1))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * Cancels all held push notifications for a user when any stanza is received from any of the user's sessions
+     * (rather than only a displayed marker or receipt).
+     */
+    public static final SystemProperty<Boolean> CANCEL_ON_ACTIVITY = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.grace.cancel-on-activity")
+        .setPlugin("Push Notification")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The packets that this instance is to be invoked for: any stanza received from a local client session of an
+     * authenticated user.
+     */
+    public static final long INTEREST = PacketClassification.mask( PacketClassification.Phase.INBOUND_UNPROCESSED, EnumSet.of( PacketClassification.SessionKind.CLIENT ), EnumSet.allOf( PacketClassification.StanzaKind.class ) );
+
+    private static final QName DISPLAYED = QName.get( "displayed", "urn:xmpp:chat-markers:0" );
+    private static final QName RECEIVED = QName.get( "received", "urn:xmpp:receipts" );
+
+    /**
+     * Held push notifications. Key: username. Value: held push notifications of the user, by conversation and message.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Held, TimingWheel.Timeout>> held = new ConcurrentHashMap<>();
+
+    /**
+     * Users for which activity was recently sent to other cluster nodes. Used to send activity at most once per grace
+     * period, as most stanzas that a user sends do not cancel anything.
+     */
+    private final ConcurrentMap<String, Boolean> recentlyBroadcast = new ConcurrentHashMap<>();
+
+    private ExecutorService dispatcher;
+    private volatile TimingWheel timer;
+
+    public synchronized void start()
+    {
+        if ( timer != null ) {
+            return;
+        }
+        dispatcher = Executors.newSingleThreadExecutor( new NamedThreadFactory( "pushnotification-grace-dispatch-", true, null, null, null ) );
+        timer = new TimingWheel( "pushnotification-grace-", 50, TimeUnit.MILLISECONDS, 1024, dispatcher );
+        timer.start();
+    }
+
+    /**
+     * Stops holding push notifications. Push notifications that are still held are dispatched immediately.
+     */
+    public synchronized void stop()
+    {
+        if ( timer == null ) {
+            return;
+        }
+        final List<Runnable> remaining = timer.stop();
+        timer = null;
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination( 5, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher = null;
+
+        for ( final Runnable task : remaining ) {
+            try {
+                task.run();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while dispatching a held push notification.", e );
+            }
+        }
+        if ( !remaining.isEmpty() ) {
+            Log.debug( "Dispatched {} held push notification(s) while stopping.", remaining.size() );
+        }
+        held.clear();
+        recentlyBroadcast.clear();
+    }
+
+    @Override
+    public void consume( @Nonnull final Packet packet, final Session session, @Nonnull final PacketClassification classification )
+    {
+        final JID address = session.getAddress();
+        if ( address == null || address.getNode() == null || timer == null ) {
+            return;
+        }
+        final String username = address.getNode();
+
+        final boolean isMessage = packet instanceof Message && packet.getTo() != null;
+        final Element displayed = isMessage ? packet.getElement().element( DISPLAYED ) : null;
+        final Element received = isMessage ? packet.getElement().element( RECEIVED ) : null;
+
+        if ( CANCEL_ON_ACTIVITY.getValue() ) {
+            final int cancelled = cancelAll( username );
+            if ( cancelled > 0 ) {
+                Log.trace( "Cancelled {} held push notification(s) for '{}', as the user is active.", cancelled, username );
+            }
+            // Markers and receipts are typically sent right after a message was read elsewhere, when another cluster node
+            // may just have started to hold a push notification for it. Those are always sent. Other activity is sent at
+            // most once per grace period.
+            if ( displayed != null || received != null || shouldBroadcastActivity( username ) ) {
+                broadcast( new CancelHeldPushesTask( username, null, null ) );
+            }
+            return;
+        }
+
+        if ( !isMessage ) {
+            return;
+        }
+        final String conversation = packet.getTo().toBareJID();
+        if ( displayed != null ) {
+            // A displayed marker applies to all earlier messages in the conversation.
+            final int cancelled = cancelConversation( username, conversation );
+            Log.trace( "Cancelled {} held push notification(s) for '{}', as the user read the conversation with '{}'.", cancelled, username, conversation );
+            broadcast( new CancelHeldPushesTask( username, conversation, null ) );
+            return;
+        }
+        if ( received != null && received.attributeValue( "id" ) != null ) {
+            final int cancelled = cancelMessage( username, conversation, received.attributeValue( "id" ) );
+            Log.trace( "Cancelled {} held push notification(s) for '{}', as the user received message '{}' from '{}'.", cancelled, username, received.attributeValue( "id" ), conversation );
+            broadcast( new CancelHeldPushesTask( username, conversation, received.attributeValue( "id" ) ) );
+        }
+    }
+
+    /**
+     * Dispatches a push notification for a message after the grace period, unless it is cancelled before that.
+     *
+     * @param username The recipient of the message.
+     * @param conversation The bare JID of the sender of the message (or of the room, for group chat messages).
+     * @param messageId The 'id' attribute of the message, if any.
+     * @param dispatch Dispatches the push notification, returning a short description of the outcome.
+     * @return the outcome of the dispatch, or 'held' when the dispatch was delayed.
+     */
+    @Nonnull
+    public String hold( @Nonnull final String username, @Nonnull final String conversation, @Nullable final String messageId, @Nonnull final Supplier<String> dispatch )
+    {
+        final TimingWheel timer = this.timer;
+        final Duration period = PERIOD.getValue();
+        if ( timer == null || period.isZero() || period.isNegative() ) {
+            return dispatch.get();
+        }
+
+        final Held key = new Held( conversation, messageId );
+        final AtomicReference<TimingWheel.Timeout> handle = new AtomicReference<>();
+        final TimingWheel.Timeout timeout;
+        try {
+            timeout = timer.schedule( () -> {
+                remove( username, key, handle.get() );
+                final String outcome = dispatch.get();
+                Log.trace( "Dispatched a held push notification for '{}': {}", username, outcome );
+            }, period.toMillis(), TimeUnit.MILLISECONDS );
+        } catch ( IllegalStateException e ) {
+            Log.trace( "Not holding a push notification for '{}', as holding push notifications is being stopped.", username );
+            return dispatch.get();
+        }
+        handle.set( timeout );
+
+        final TimingWheel.Timeout[] previous = new TimingWheel.Timeout[1];
+        held.compute( username, ( u, ofUser ) -> {
+            final ConcurrentMap<Held, TimingWheel.Timeout> result = ofUser == null ? new ConcurrentHashMap<>() : ofUser;
+            previous[0] = result.put( key, timeout );
+            return result;
+        } );
+        if ( previous[0] != null ) {
+            // A push notification for the same message is already held. Dispatch only one.
+            previous[0].cancel();
+        }
+        if ( timeout.isExpired() ) {
+            // The task ran before it was registered, and could not remove its own registration.
+            remove( username, key, timeout );
+        }
+        return "held";
+    }
+
+    /**
+     * Cancels the held push notifications for all messages in a conversation.
+     *
+     * @param username The recipient.
+     * @param conversation The bare JID of the other party of the conversation (or of the room).
+     * @return the amount of cancelled push notifications.
+     */
+    public int cancelConversation( @Nonnull final String username, @Nonnull final String conversation )
+    {
+        final ConcurrentMap<Held, TimingWheel.Timeout> ofUser = held.get( username );
+        if ( ofUser == null ) {
+            return 0;
+        }
+        int result = 0;
+        for ( final Map.Entry<Held, TimingWheel.Timeout> entry : ofUser.entrySet() ) {
+            if ( entry.getKey().conversation.equals( conversation ) && ofUser.remove( entry.getKey(), entry.getValue() ) && entry.getValue().cancel() ) {
+                result++;
+            }
+        }
+        cleanup( username, ofUser );
+        return result;
+    }
+
+    /**
+     * Cancels the held push notification for one message.
+     *
+     * @param username The recipient.
+     * @param conversation The bare JID of the sender of the message (or of the room).
+     * @param messageId The 'id' attribute of the message.
+     * @return the amount of cancelled push notifications (zero or one).
+     */
+    public int cancelMessage( @Nonnull final String username, @Nonnull final String conversation, @Nonnull final String messageId )
+    {
+        final ConcurrentMap<Held, TimingWheel.Timeout> ofUser = held.get( username );
+        if ( ofUser == null ) {
+            return 0;
+        }
+        final TimingWheel.Timeout timeout = ofUser.remove( new Held( conversation, messageId ) );
+        cleanup( username, ofUser );
+        return timeout != null && timeout.cancel() ? 1 : 0;
+    }
+
+    /**
+     * Cancels all held push notifications for a user.
+     *
+     * @param username The recipient.
+     * @return the amount of cancelled push notifications.
+     */
+    public int cancelAll( @Nonnull final String username )
+    {
+        final ConcurrentMap<Held, TimingWheel.Timeout> ofUser = held.remove( username );
+        if ( ofUser == null ) {
+            return 0;
+        }
+        int result = 0;
+        for ( final TimingWheel.Timeout timeout : ofUser.values() ) {
+            if ( timeout.cancel() ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if any push notifications are held for a user.
+     *
+     * @param username The recipient.
+     * @return true if push notifications are held.
+     */
+    public boolean isHolding( @Nonnull final String username )
+    {
+        return held.containsKey( username );
+    }
+
+    /**
+     * The amount of push notifications that are held.
+     *
+     * @return a non-negative number.
+     */
+    public int getHeldCount()
+    {
+        final TimingWheel timer = this.timer;
+        return timer == null ? 0 : timer.getPendingCount();
+    }
+
+    /**
+     * Checks if activity of a user is to be sent to other cluster nodes, which is done at most once per grace period.
+     */
+    private boolean shouldBroadcastActivity( final String username )
+    {
+        if ( !ClusterManager.isClusteringStarted() || recentlyBroadcast.putIfAbsent( username, Boolean.TRUE ) != null ) {
+            return false;
+        }
+        final TimingWheel timer = this.timer;
+        try {
+            if ( timer != null ) {
+                timer.schedule( () -> recentlyBroadcast.remove( username ), PERIOD.getValue().toMillis(), TimeUnit.MILLISECONDS );
+            }
+        } catch ( IllegalStateException e ) {
+            recentlyBroadcast.remove( username );
+        }
+        return true;
+    }
+
+    private static void broadcast( final CancelHeldPushesTask task )
+    {
+        if ( !ClusterManager.isClusteringStarted() ) {
+            return;
+        }
+        try {
+            CacheFactory.doClusterTask( task );
+        } catch ( Exception e ) {
+            Log.warn( "An exception occurred while cancelling held push notifications on other cluster nodes.", e );
+        }
+    }
+
+    private void remove( final String username, final Held key, final TimingWheel.Timeout timeout )
+    {
+        final ConcurrentMap<Held, TimingWheel.Timeout> ofUser = held.get( username );
+        if ( ofUser != null ) {
+            ofUser.remove( key, timeout );
+            cleanup( username, ofUser );
+        }
+    }
+
+    private void cleanup( final String username, final ConcurrentMap<Held, TimingWheel.Timeout> ofUser )
+    {
+        if ( ofUser.isEmpty() ) {
+            held.computeIfPresent( username, ( u, current ) -> current.isEmpty() ? null : current );
+        }
+    }
+
+    /**
+     * Identifies a held push notification of a user.
+     */
+    private static final class Held
+    {
+        final String conversation;
+        final String messageId;
+
+        Held( final String conversation, final String messageId )
+        {
+            this.conversation = conversation;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Held ) ) {
+                return false;
+            }
+            final Held that = (Held) o;
+            return conversation.equals( that.conversation ) && Objects.equals( messageId, that.messageId );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * conversation.hashCode() + ( messageId == null ? 0 : messageId.hashCode() );
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.jivesoftware.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A timer that can hold very many pending tasks, which are typically cancelled before they expire.
+ *
+ * Tasks are placed in buckets based on their expiry time. The buckets are organised in a hierarchy of wheels: each
+ * bucket of the lowest wheel spans one tick, and each bucket of a higher wheel spans all buckets of the wheel below it.
+ * A single thread visits one bucket of the lowest wheel per tick, and executes the tasks in it. When the lowest wheel
+ * completes a revolution, the tasks in the next bucket of the wheel above it are moved down to the lowest wheel (and
+ * so on, for higher wheels). This way, tasks with long delays are touched only a few times, regardless of how many
+ * ticks they wait for. Scheduling and cancelling a task take constant time, regardless of the amount of pending tasks,
+ * and do not lock. Tasks expire up to one tick late.
+ *
+ * Expired tasks are handed to an executor, so that slow tasks do not delay the timer.
+ */
+public class TimingWheel
+{
+    private static final Logger Log = LoggerFactory.getLogger( TimingWheel.class );
+
+    private final long tickNanos;
+
+    /**
+     * The buckets of each wheel. Wheel 'k' has buckets that each span 2^(k * bits) ticks.
+     */
+    private final Bucket[][] wheels;
+    private final int bits;
+    private final int mask;
+    private final Executor executor;
+    private final Thread worker;
+
+    /**
+     * Tasks that were scheduled, but not yet placed in a bucket. Only the worker thread modifies the buckets.
+     */
+    private final Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile boolean running;
+    private volatile long startNanos;
+
+    /**
+     * Creates a timer.
+     *
+     * @param name The name of the thread of the timer.
+     * @param tick The duration of a tick.
+     * @param unit The unit of the tick duration.
+     * @param wheelSize The amount of buckets per wheel (rounded up to a power of two).
+     * @param executor Executes tasks that expired.
+     */
+    public TimingWheel( @Nonnull final String name, final long tick, @Nonnull final TimeUnit unit, final int wheelSize, @Nonnull final Executor executor )
+    {
+        if ( tick <= 0 || wheelSize <= 1 ) {
+            throw new IllegalArgumentException( "Argument 'tick' must be positive, and argument 'wheelSize' must be larger than one." );
+        }
+        this.tickNanos = unit.toNanos( tick );
+        int bits = 1;
+        while ( ( 1 << bits ) < wheelSize ) {
+            bits++;
+        }
+        this.bits = bits;
+        this.mask = ( 1 << bits ) - 1;
+
+        // Enough wheels to cover any delay that can be expressed in ticks.
+        final int levels = ( 63 + bits - 1 ) / bits;
+        this.wheels = new Bucket[ levels ][ 1 << bits ];
+        for ( final Bucket[] wheel : wheels ) {
+            for ( int i = 0; i < wheel.length; i++ ) {
+                wheel[i] = new Bucket();
+            }
+        }
+        this.executor = executor;
+        final ThreadFactory threadFactory = new NamedThreadFactory( name, true, null, null, null );
+        this.worker = threadFactory.newThread( this::work );
+    }
+
+    public synchronized void start()
+    {
+        if ( running ) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        running = true;
+        worker.start();
+    }
+
+    /**
+     * Stops the timer.
+     *
+     * @return the tasks that were pending (not expired nor cancelled).
+     */
+    @Nonnull
+    public synchronized List<Runnable> stop()
+    {
+        final List<Runnable> result = new ArrayList<>();
+        if ( !running ) {
+            return result;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join( TimeUnit.SECONDS.toMillis( 5 ) );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+
+        Timeout timeout;
+        while ( ( timeout = additions.poll() ) != null ) {
+            if ( timeout.expire() ) {
+                result.add( timeout.task );
+            }
+        }
+        for ( final Bucket[] wheel : wheels ) {
+            for ( final Bucket bucket : wheel ) {
+                for ( Timeout t = bucket.head; t != null; t = t.next ) {
+                    if ( t.expire() ) {
+                        result.add( t.task );
+                    }
+                }
+                bucket.head = null;
+                bucket.tail = null;
+            }
+        }
+        pending.set( 0 );
+        return result;
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param task The task to execute when the delay has passed.
+     * @param delay The delay.
+     * @param unit The unit of the delay.
+     * @return a handle through which the task can be cancelled.
+     */
+    @Nonnull
+    public Timeout schedule( @Nonnull final Runnable task, final long delay, @Nonnull final TimeUnit unit )
+    {
+        if ( !running ) {
+            throw new IllegalStateException( "The timer is not running." );
+        }
+        final Timeout timeout = new Timeout( this, task, System.nanoTime() - startNanos + unit.toNanos( Math.max( 0, delay ) ) );
+        pending.incrementAndGet();
+        additions.add( timeout );
+        return timeout;
+    }
+
+    /**
+     * The amount of tasks that are scheduled, and have not expired or been cancelled.
+     *
+     * @return a non-negative number.
+     */
+    public int getPendingCount()
+    {
+        return pending.get();
+    }
+
+    private void work()
+    {
+        long tick = 0;
+        while ( running )
+        {
+            // Wait for the end of the current tick.
+            final long deadline = ( tick + 1 ) * tickNanos;
+            long sleepNanos;
+            while ( ( sleepNanos = deadline - ( System.nanoTime() - startNanos ) ) > 0 ) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep( sleepNanos );
+                } catch ( InterruptedException e ) {
+                    if ( !running ) {
+                        return;
+                    }
+                }
+            }
+
+            try
+            {
+                cascade( tick );
+                transferAdditions( tick );
+                expire( wheels[0][ (int) ( tick & mask ) ] );
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "An unexpected exception occurred in the timer.", e );
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Moves the tasks of the buckets of higher wheels that start at this tick down to lower wheels, starting with the
+     * highest wheel (as its tasks can end up in a bucket of a wheel that is cascaded next).
+     */
+    private void cascade( final long currentTick )
+    {
+        for ( int level = wheels.length - 1; level > 0; level-- )
+        {
+            final int shift = level * bits;
+            if ( shift >= 63 || ( currentTick & ( ( 1L << shift ) - 1 ) ) != 0 ) {
+                continue;
+            }
+            final Bucket bucket = wheels[level][ (int) ( ( currentTick >>> shift ) & mask ) ];
+            Timeout timeout = bucket.head;
+            bucket.head = null;
+            bucket.tail = null;
+            while ( timeout != null ) {
+                final Timeout next = timeout.next;
+                timeout.next = null;
+                if ( !timeout.isCancelled() ) {
+                    place( timeout, currentTick );
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private void transferAdditions( final long currentTick )
+    {
+        // Limit the amount of work per tick, so that a burst of additions does not delay expiry much.
+        for ( int i = 0; i < 100_000; i++ )
+        {
+            final Timeout timeout = additions.poll();
+            if ( timeout == null ) {
+                return;
+            }
+            if ( !timeout.isCancelled() ) {
+                place( timeout, currentTick );
+            }
+        }
+    }
+
+    /**
+     * Places a task in the lowest wheel in which its expiry is less than one revolution ahead.
+     */
+    private void place( final Timeout timeout, final long currentTick )
+    {
+        final long expiryTick = Math.max( timeout.deadline / tickNanos, currentTick );
+        int level = 0;
+        while ( level < wheels.length - 1 && ( expiryTick >>> ( level * bits ) ) - ( currentTick >>> ( level * bits ) ) > mask ) {
+            level++;
+        }
+        wheels[level][ (int) ( ( expiryTick >>> ( level * bits ) ) & mask ) ].add( timeout );
+    }
+
+    private void expire( final Bucket bucket )
+    {
+        Timeout timeout = bucket.head;
+        bucket.head = null;
+        bucket.tail = null;
+        while ( timeout != null )
+        {
+            final Timeout next = timeout.next;
+            timeout.next = null;
+            if ( timeout.expire() ) {
+                pending.decrementAndGet();
+                try {
+                    executor.execute( timeout.task );
+                } catch ( Exception e ) {
+                    Log.warn( "Unable to execute an expired task.", e );
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A linked list of tasks. Only accessed by the worker thread. Cancelled tasks are removed when the bucket is
+     * expired or cascaded.
+     */
+    private static final class Bucket
+    {
+        Timeout head;
+        Timeout tail;
+
+        void add( final Timeout timeout )
+        {
+            if ( head == null ) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+    }
+
+    /**
+     * A task that is scheduled in a {@link TimingWheel}.
+     */
+    public static final class Timeout
+    {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater( Timeout.class, "state" );
+
+        private final TimingWheel timer;
+        private final Runnable task;
+        private final long deadline; // nanoseconds since the start of the timer
+        private volatile int state = PENDING;
+
+        // Only accessed by the worker thread.
+        private Timeout next;
+
+        private Timeout( final TimingWheel timer, final Runnable task, final long deadline )
+        {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task. The task is removed from the timer lazily.
+         *
+         * @return true if the task was cancelled, false if it already expired or was cancelled.
+         */
+        public boolean cancel()
+        {
+            if ( STATE.compareAndSet( this, PENDING, CANCELLED ) ) {
+                timer.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled()
+        {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return state == EXPIRED;
+        }
+
+        private boolean expire()
+        {
+            return STATE.compareAndSet( this, PENDING, EXPIRED );
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.interception;
+
+import org.jivesoftware.openfire.interceptor.PacketInterceptor;
+import org.jivesoftware.openfire.interceptor.PacketRejectedException;
+import org.jivesoftware.openfire.session.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.Packet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The only packet interceptor of this plugin. It classifies every packet once (direction, processed flag, session kind
+ * and stanza kind) and dispatches it to the consumers that registered an interest in packets of that classification.
+ *
+ * Packets that no consumer is interested in are discarded after one bitmask comparison.
+ */
+public class ClassifyingInterceptor implements PacketInterceptor
+{
+    private static final Logger Log = LoggerFactory.getLogger( ClassifyingInterceptor.class );
+
+    private static final class Registration
+    {
+        final PacketConsumer consumer;
+        final long mask;
+
+        Registration( final PacketConsumer consumer, final long mask )
+        {
+            this.consumer = consumer;
+            this.mask = mask;
+        }
+    }
+
+    // Copy-on-write: registrations are rare, interception is not.
+    private volatile Registration[] registrations = new Registration[0];
+    private volatile long interest = 0;
+
+    /**
+     * Registers a consumer.
+     *
+     * @param consumer The consumer to invoke for matching packets.
+     * @param mask The packets to match, as created by {@link PacketClassification#mask}.
+     */
+    public synchronized void addConsumer( @Nonnull final PacketConsumer consumer, final long mask )
+    {
+        final Registration[] updated = new Registration[registrations.length + 1];
+        System.arraycopy( registrations, 0, updated, 0, registrations.length );
+        updated[registrations.length] = new Registration( consumer, mask );
+        registrations = updated;
+        interest |= mask;
+    }
+
+    /**
+     * Removes all registrations of a consumer.
+     *
+     * @param consumer The consumer to remove.
+     */
+    public synchronized void removeConsumer( @Nonnull final PacketConsumer consumer )
+    {
+        int retained = 0;
+        long updatedInterest = 0;
+        final Registration[] updated = new Registration[registrations.length];
+        for ( final Registration registration : registrations ) {
+            if ( registration.consumer != consumer ) {
+                updated[retained++] = registration;
+                updatedInterest |= registration.mask;
+            }
+        }
+        final Registration[] result = new Registration[retained];
+        System.arraycopy( updated, 0, result, 0, retained );
+        registrations = result;
+        interest = updatedInterest;
+    }
+
+    @Override
+    public void interceptPacket( final Packet packet, final Session session, final boolean incoming, final boolean processed ) throws PacketRejectedException
+    {
+        final PacketClassification.Phase phase = PacketClassification.Phase.of( incoming, processed );
+        final PacketClassification.SessionKind sessionKind = PacketClassification.SessionKind.of( session );
+        final PacketClassification.StanzaKind stanzaKind = PacketClassification.StanzaKind.of( packet );
+        final long bit = PacketClassification.bit( phase, sessionKind, stanzaKind );
+        if ( (interest & bit) == 0 ) {
+            return;
+        }
+
+        final PacketClassification classification = new PacketClassification( phase, sessionKind, stanzaKind );
+        for ( final Registration registration : registrations )
+        {
+            if ( (registration.mask & bit) == 0 ) {
+                continue;
+            }
+            try
+            {
+                registration.consumer.consume( packet, session, classification );
+            }
+            catch ( PacketRejectedException e )
+            {
+                throw e;
+            }
+            catch ( Exception e )
+            {
+                Log.warn( "An unexpected exception occurred while processing an intercepted packet ({}).", classification, e );
+            }
+        }
+    }
+}
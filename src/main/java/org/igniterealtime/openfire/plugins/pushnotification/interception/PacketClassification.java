@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.interception;
+
+import org.jivesoftware.openfire.session.LocalClientSession;
+import org.jivesoftware.openfire.session.Session;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.Message;
+import org.xmpp.packet.Packet;
+import org.xmpp.packet.Presence;
+
+import javax.annotation.Nonnull;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The classification of an intercepted packet, as determined once by {@link ClassifyingInterceptor} for all of its
+ * consumers.
+ *
+ * Every combination of {@link Phase}, {@link SessionKind} and {@link StanzaKind} is assigned a distinct bit in a long
+ * value. This allows the interest of a consumer, as well as the combined interest of all consumers, to be expressed as
+ * a bitmask that can be matched against a packet with a single operation.
+ */
+public final class PacketClassification
+{
+    /**
+     * The direction of a packet, combined with the moment of interception (before or after processing).
+     */
+    public enum Phase
+    {
+        INBOUND_UNPROCESSED, INBOUND_PROCESSED, OUTBOUND_UNPROCESSED, OUTBOUND_PROCESSED;
+
+        public static Phase of( final boolean incoming, final boolean processed )
+        {
+            if ( incoming ) {
+                return processed ? INBOUND_PROCESSED : INBOUND_UNPROCESSED;
+            }
+            return processed ? OUTBOUND_PROCESSED : OUTBOUND_UNPROCESSED;
+        }
+    }
+
+    /**
+     * The kind of session through which a packet is received or sent.
+     */
+    public enum SessionKind
+    {
+        /**
+         * A local session of an authenticated (non-anonymous) user.
+         */
+        CLIENT,
+
+        /**
+         * A local session of an anonymous user.
+         */
+        ANONYMOUS_CLIENT,
+
+        /**
+         * Any other session (or none).
+         */
+        OTHER;
+
+        public static SessionKind of( final Session session )
+        {
+            if ( !(session instanceof LocalClientSession) ) {
+                return OTHER;
+            }
+            return ((LocalClientSession) session).isAnonymousUser() ? ANONYMOUS_CLIENT : CLIENT;
+        }
+    }
+
+    /**
+     * The kind of stanza.
+     */
+    public enum StanzaKind
+    {
+        MESSAGE, IQ, PRESENCE, OTHER;
+
+        public static StanzaKind of( final Packet packet )
+        {
+            if ( packet instanceof Message ) {
+                return MESSAGE;
+            }
+            if ( packet instanceof IQ ) {
+                return IQ;
+            }
+            if ( packet instanceof Presence ) {
+                return PRESENCE;
+            }
+            return OTHER;
+        }
+    }
+
+    private static final int SESSION_KINDS = SessionKind.values().length;
+    private static final int STANZA_KINDS = StanzaKind.values().length;
+
+    private final Phase phase;
+    private final SessionKind sessionKind;
+    private final StanzaKind stanzaKind;
+
+    PacketClassification( @Nonnull final Phase phase, @Nonnull final SessionKind sessionKind, @Nonnull final StanzaKind stanzaKind )
+    {
+        this.phase = phase;
+        this.sessionKind = sessionKind;
+        this.stanzaKind = stanzaKind;
+    }
+
+    @Nonnull
+    public Phase getPhase()
+    {
+        return phase;
+    }
+
+    public boolean isIncoming()
+    {
+        return phase == Phase.INBOUND_UNPROCESSED || phase == Phase.INBOUND_PROCESSED;
+    }
+
+    public boolean isProcessed()
+    {
+        return phase == Phase.INBOUND_PROCESSED || phase == Phase.OUTBOUND_PROCESSED;
+    }
+
+    @Nonnull
+    public SessionKind getSessionKind()
+    {
+        return sessionKind;
+    }
+
+    @Nonnull
+    public StanzaKind getStanzaKind()
+    {
+        return stanzaKind;
+    }
+
+    /**
+     * Returns the bit that represents a combination of phase, session kind and stanza kind.
+     */
+    static long bit( final Phase phase, final SessionKind sessionKind, final StanzaKind stanzaKind )
+    {
+        return 1L << ( (phase.ordinal() * SESSION_KINDS + sessionKind.ordinal()) * STANZA_KINDS + stanzaKind.ordinal() );
+    }
+
+    /**
+     * Returns a bitmask that matches all combinations of the provided phases, session kinds and stanza kinds.
+     *
+     * @param phases The phases to match.
+     * @param sessionKinds The session kinds to match.
+     * @param stanzaKinds The stanza kinds to match.
+     * @return A bitmask.
+     */
+    public static long mask( @Nonnull final Set<Phase> phases, @Nonnull final Set<SessionKind> sessionKinds, @Nonnull final Set<StanzaKind> stanzaKinds )
+    {
+        long result = 0;
+        for ( final Phase phase : phases ) {
+            for ( final SessionKind sessionKind : sessionKinds ) {
+                for ( final StanzaKind stanzaKind : stanzaKinds ) {
+                    result |= bit( phase, sessionKind, stanzaKind );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convenience method that returns a bitmask for one phase.
+     *
+     * @param phase The phase to match.
+     * @param sessionKinds The session kinds to match.
+     * @param stanzaKinds The stanza kinds to match.
+     * @return A bitmask.
+     */
+    public static long mask( @Nonnull final Phase phase, @Nonnull final Set<SessionKind> sessionKinds, @Nonnull final Set<StanzaKind> stanzaKinds )
+    {
+        return mask( EnumSet.of( phase ), sessionKinds, stanzaKinds );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PacketClassification{" + phase + ", " + sessionKind + ", " + stanzaKind + '}';
+    }
+}
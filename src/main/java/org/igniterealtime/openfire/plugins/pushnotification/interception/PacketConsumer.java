@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.interception;
+
+import org.jivesoftware.openfire.interceptor.PacketRejectedException;
+import org.jivesoftware.openfire.session.Session;
+import org.xmpp.packet.Packet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A consumer of packets that are intercepted by {@link ClassifyingInterceptor}. A consumer is invoked only for packets
+ * that match the interest with which it was registered.
+ */
+@FunctionalInterface
+public interface PacketConsumer
+{
+    /**
+     * Invoked for an intercepted packet that matches the interest of this consumer.
+     *
+     * @param packet the intercepted packet.
+     * @param session the session that received or is sending the packet.
+     * @param classification the classification of the packet.
+     * @throws PacketRejectedException if the packet should be prevented from being processed (only possible for packets that are not processed yet).
+     */
+    void consume( @Nonnull final Packet packet, final Session session, @Nonnull final PacketClassification classification ) throws PacketRejectedException;
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Processing of a message by the push notification interceptor, from entry to the decision to attempt a push notification.
+ */
+@Name("org.igniterealtime.openfire.pushnotification.Intercept")
+@Label("Push Intercept")
+@Category({"Openfire", "Push Notification"})
+@Description("Processing of a message by the push notification interceptor, from entry to the decision to attempt a push notification.")
+@StackTrace(false)
+@Enabled(false)
+public class PushInterceptEvent extends Event
+{
+    @Label("Username")
+    @Description("The user that is the recipient of the message.")
+    public String username;
+
+    @Label("Source")
+    @Description("How the message was observed (for example: 'intercepted' or 'offline').")
+    public String source;
+
+    @Label("Priority")
+    @Description("The priority of the push notification, when determined.")
+    public String priority;
+
+    @Label("Registrations")
+    @Description("The amount of push services registered by the user, or -1 when not determined.")
+    public int registrations = -1;
+
+    @Label("Outcome")
+    @Description("The result of processing the message.")
+    public String outcome;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Routing of a push notification to a push service.
+ */
+@Name("org.igniterealtime.openfire.pushnotification.Route")
+@Label("Push Route")
+@Category({"Openfire", "Push Notification"})
+@Description("Routing of a push notification to a push service.")
+@StackTrace(false)
+@Enabled(false)
+public class PushRouteEvent extends Event
+{
+    @Label("Username")
+    @Description("The user for which the push notification is sent.")
+    public String username;
+
+    @Label("Service")
+    @Description("The push service to which the notification is sent.")
+    public String service;
+
+    @Label("Attempt")
+    @Description("The number of earlier, failed delivery attempts.")
+    public int attempt;
+
+    @Label("Failed")
+    @Description("True if routing failed.")
+    public boolean failed;
+}
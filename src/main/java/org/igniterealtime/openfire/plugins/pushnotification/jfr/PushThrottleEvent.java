@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The rate limiting and deduplication decision for a push notification.
+ */
+@Name("org.igniterealtime.openfire.pushnotification.Throttle")
+@Label("Push Throttle Decision")
+@Category({"Openfire", "Push Notification"})
+@Description("The rate limiting and deduplication decision for a push notification.")
+@StackTrace(false)
+@Enabled(false)
+public class PushThrottleEvent extends Event
+{
+    @Label("Username")
+    @Description("The user for which the push notification would be sent.")
+    public String username;
+
+    @Label("Decision")
+    @Description("The decision: 'allowed', 'duplicate' or 'rate-limited'.")
+    public String decision;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Lookup of the push service registrations of a user.
+ */
+@Name("org.igniterealtime.openfire.pushnotification.RegistrationLookup")
+@Label("Push Registration Lookup")
+@Category({"Openfire", "Push Notification"})
+@Description("Lookup of the push service registrations of a user.")
+@StackTrace(false)
+@Enabled(false)
+public class RegistrationLookupEvent extends Event
+{
+    @Label("Username")
+    @Description("The user for which registrations were looked up.")
+    public String username;
+
+    @Label("Service Count")
+    @Description("The amount of push services that the user registered.")
+    public int serviceCount;
+
+    @Label("Failed")
+    @Description("True if the lookup failed.")
+    public boolean failed;
+}
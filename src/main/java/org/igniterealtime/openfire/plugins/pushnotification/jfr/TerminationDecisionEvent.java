@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The decision of the push notification termination delegate on whether a detached Stream Management session can be terminated.
+ */
+@Name("org.igniterealtime.openfire.pushnotification.TerminationDecision")
+@Label("Push Termination Decision")
+@Category({"Openfire", "Push Notification"})
+@Description("The decision of the push notification termination delegate on whether a detached Stream Management session can be terminated.")
+@StackTrace(false)
+@Enabled(false)
+public class TerminationDecisionEvent extends Event
+{
+    @Label("Allowable Inactivity")
+    @Description("The allowable inactivity, in milliseconds.")
+    public long allowableInactivity;
+
+    @Label("Unanswered For")
+    @Description("How long (in milliseconds) the oldest push notification remained unanswered, or -1 if there is none.")
+    public long unansweredFor;
+
+    @Label("Terminate")
+    @Description("True if the session can be terminated.")
+    public boolean terminate;
+}
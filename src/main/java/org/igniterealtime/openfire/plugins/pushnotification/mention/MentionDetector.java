@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.mention;
+
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketClassification;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketConsumer;
+import org.jivesoftware.openfire.SessionManager;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.session.LocalClientSession;
+import org.jivesoftware.openfire.session.Session;
+import org.jivesoftware.openfire.user.User;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+import org.xmpp.packet.Packet;
+import org.xmpp.packet.Presence;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Determines if a group chat message mentions its recipient, or was sent in a room for which the recipient opted in to
+ * receive push notifications for all messages.
+ *
+ * A message mentions its recipient when it contains a XEP-0372 reference to the bare JID of the recipient or to its
+ * occupant JID, or when its body contains the bare JID, username or the nickname of the recipient in the room that the
+ * message was sent in. A nickname that the recipient uses in another room does not count as a mention.
+ *
+ * The nicknames of a user are learned from the self-presence (status code 110) that rooms send to the user when it
+ * joins a room or changes its nickname. For every user and room, the words to look for are compiled into one
+ * {@link MentionMatcher}, which is recompiled only when the nickname in that room changes.
+ *
+ * As rooms do not send self-presence again when the plugin is reloaded, the nicknames are carried across a reload in
+ * the session data of the local sessions of each user (see {@link #exportState()} and {@link #adoptState()}).
+ */
+public class MentionDetector implements PacketConsumer
+{
+    private static final Logger Log = LoggerFactory.getLogger( MentionDetector.class );
+
+    /**
+     * When enabled, push notifications for group chat messages are only sent when the recipient is mentioned, or has
+     * opted in to receive push notifications for all messages in the room.
+     */
+    public static final SystemProperty<Boolean> MENTIONS_ONLY = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.groupchat.mentions-only")
+        .setPlugin("Push Notification")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The name of the user property that holds a comma-separated list of the bare JIDs of rooms for which the user
+     * receives push notifications for all messages.
+     */
+    public static final String ROOMS_USER_PROPERTY = "pushnotification.groupchat.rooms";
+
+    /**
+     * The packets that this instance is to be invoked for by
+     * {@link org.igniterealtime.openfire.plugins.pushnotification.interception.ClassifyingInterceptor}: presence stanzas
+     * that were sent to local client sessions of authenticated users.
+     */
+    public static final long INTEREST = PacketClassification.mask( PacketClassification.Phase.OUTBOUND_PROCESSED, EnumSet.of( PacketClassification.SessionKind.CLIENT ), EnumSet.of( PacketClassification.StanzaKind.PRESENCE ) );
+
+    private static final QName MUC_USER = QName.get( "x", "http://jabber.org/protocol/muc#user" );
+    private static final QName REFERENCE = QName.get( "reference", "urn:xmpp:reference:0" );
+
+    /**
+     * The name of the session data in which the nicknames of the user of a session are left for a next instance of
+     * this plugin, as a map of room bare JID to nickname (using only JDK classes, that are shared by both instances).
+     */
+    private static final String NICKNAMES_HANDOFF = "pushnotification.mention.nicknames.handoff";
+
+    /**
+     * The room nicknames of users. Key: username. Value: an immutable snapshot of the nicknames, by room.
+     */
+    private final ConcurrentMap<String, Nicknames> nicknamesByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public void consume( @Nonnull final Packet packet, final Session session, @Nonnull final PacketClassification classification )
+    {
+        final Presence presence = (Presence) packet;
+        final Element x = presence.getElement().element( MUC_USER );
+        if ( x == null || presence.getFrom() == null || presence.getFrom().getResource() == null || !isSelfPresence( x ) ) {
+            return;
+        }
+
+        final String username = session.getAddress().getNode();
+        final JID room = presence.getFrom().asBareJID();
+        final String nickname = presence.getFrom().getResource();
+        if ( presence.getType() == Presence.Type.unavailable ) {
+            Log.trace( "User '{}' left room '{}' as '{}'.", username, room, nickname );
+            nicknamesByUser.computeIfPresent( username, ( u, nicknames ) -> nicknames.without( room ) );
+        } else if ( presence.getType() == null ) {
+            Log.trace( "User '{}' is in room '{}' as '{}'.", username, room, nickname );
+            nicknamesByUser.compute( username, ( u, nicknames ) -> ( nicknames == null ? Nicknames.NONE : nicknames ).with( room, nickname ) );
+        }
+    }
+
+    /**
+     * Checks if a group chat message mentions its recipient.
+     *
+     * @param user The recipient of the message.
+     * @param message The message.
+     * @return true if the recipient is mentioned.
+     */
+    public boolean isMentioned( @Nonnull final User user, @Nonnull final Message message )
+    {
+        final JID bareJID = XMPPServer.getInstance().createJID( user.getUsername(), null );
+        final Nicknames nicknames = nicknamesByUser.getOrDefault( user.getUsername(), Nicknames.NONE );
+        final JID room = message.getFrom() == null ? null : message.getFrom().asBareJID();
+        final String nickname = room == null ? null : nicknames.byRoom.get( room );
+
+        for ( final Element reference : message.getElement().elements( REFERENCE ) )
+        {
+            if ( !"mention".equals( reference.attributeValue( "type" ) ) ) {
+                continue;
+            }
+            final String uri = reference.attributeValue( "uri" );
+            if ( uri == null || !uri.startsWith( "xmpp:" ) ) {
+                continue;
+            }
+            try {
+                final JID target = new JID( uri.substring( "xmpp:".length() ) );
+                if ( target.asBareJID().equals( bareJID ) || ( nickname != null && target.asBareJID().equals( room ) && nickname.equals( target.getResource() ) ) ) {
+                    return true;
+                }
+            } catch ( IllegalArgumentException e ) {
+                Log.trace( "Ignoring reference with an invalid URI: {}", uri );
+            }
+        }
+
+        final String body = message.getBody();
+        if ( body == null ) {
+            return false;
+        }
+        return nicknames.matcherFor( user.getUsername(), bareJID, room ).matches( body );
+    }
+
+    /**
+     * Checks if a user opted in to receive push notifications for all messages in a room.
+     *
+     * @param user The user.
+     * @param room The bare JID of the room.
+     * @return true if the user opted in.
+     */
+    public boolean isOptedIn( @Nonnull final User user, @Nonnull final JID room )
+    {
+        final String rooms = user.getProperties().get( ROOMS_USER_PROPERTY );
+        if ( rooms == null || rooms.isBlank() ) {
+            return false;
+        }
+        final String target = room.toBareJID();
+        for ( final String candidate : rooms.split( "," ) ) {
+            if ( candidate.trim().equalsIgnoreCase( target ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the nicknames of a user.
+     *
+     * @param username The user.
+     */
+    public void forget( @Nonnull final String username )
+    {
+        nicknamesByUser.remove( username );
+    }
+
+    /**
+     * Leaves the nicknames of users in the session data of their local sessions, for a next instance of this plugin to
+     * adopt using {@link #adoptState()}. To be invoked when the plugin is unloaded.
+     */
+    public void exportState()
+    {
+        final int[] count = new int[1];
+        SessionManager.getInstance().getSessions().stream()
+            .filter( session -> session instanceof LocalClientSession && session.getAddress().getNode() != null )
+            .forEach( session -> {
+                final Nicknames nicknames = nicknamesByUser.get( session.getAddress().getNode() );
+                if ( nicknames != null ) {
+                    final HashMap<String, String> handoff = new HashMap<>();
+                    nicknames.byRoom.forEach( ( room, nickname ) -> handoff.put( room.toBareJID(), nickname ) );
+                    ( (LocalClientSession) session ).setSessionData( NICKNAMES_HANDOFF, handoff );
+                    count[0]++;
+                }
+            } );
+        Log.debug( "Left the room nicknames of users in {} session(s), to be adopted after the plugin is reloaded.", count[0] );
+    }
+
+    /**
+     * Adopts the nicknames that were left in the session data of local sessions by a previous instance of this plugin
+     * (see {@link #exportState()}). To be invoked when the plugin is loaded.
+     */
+    public void adoptState()
+    {
+        final int[] count = new int[1];
+        SessionManager.getInstance().getSessions().stream()
+            .filter( session -> session instanceof LocalClientSession )
+            .forEach( session -> {
+                final Object handoff = ( (LocalClientSession) session ).removeSessionData( NICKNAMES_HANDOFF );
+                if ( !( handoff instanceof Map ) || session.getAddress().getNode() == null ) {
+                    return;
+                }
+                count[0]++;
+                for ( final Map.Entry<?, ?> entry : ( (Map<?, ?>) handoff ).entrySet() ) {
+                    if ( entry.getKey() instanceof String && entry.getValue() instanceof String ) {
+                        try {
+                            final JID room = new JID( (String) entry.getKey() );
+                            nicknamesByUser.compute( session.getAddress().getNode(), ( u, nicknames ) -> ( nicknames == null ? Nicknames.NONE : nicknames ).with( room, (String) entry.getValue() ) );
+                        } catch ( IllegalArgumentException e ) {
+                            Log.trace( "Ignoring a room with an invalid address: {}", entry.getKey() );
+                        }
+                    }
+                }
+            } );
+        Log.debug( "Adopted the room nicknames of users from {} session(s).", count[0] );
+    }
+
+    private static boolean isSelfPresence( final Element x )
+    {
+        for ( final Element status : x.elements( "status" ) ) {
+            if ( "110".equals( status.attributeValue( "code" ) ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An immutable set of nicknames of a user, together with the matchers that find the username and bare JID of the
+     * user, and the nickname of the user in a particular room. The matchers are compiled lazily, and at most once per
+     * room per instance.
+     */
+    private static final class Nicknames
+    {
+        /**
+         * The nicknames of a user that is in no rooms. As this instance is shared by all users, it does not cache
+         * matchers (which are specific to a user).
+         */
+        static final Nicknames NONE = new Nicknames( Collections.emptyMap() );
+
+        final Map<JID, String> byRoom;
+        private final ConcurrentMap<JID, MentionMatcher> matchersByRoom = new ConcurrentHashMap<>();
+        private volatile MentionMatcher matcher;
+
+        Nicknames( final Map<JID, String> byRoom )
+        {
+            this.byRoom = byRoom;
+        }
+
+        Nicknames with( final JID room, final String nickname )
+        {
+            if ( nickname.equals( byRoom.get( room ) ) ) {
+                return this;
+            }
+            final Map<JID, String> copy = new HashMap<>( byRoom );
+            copy.put( room, nickname );
+            return new Nicknames( Collections.unmodifiableMap( copy ) );
+        }
+
+        Nicknames without( final JID room )
+        {
+            if ( !byRoom.containsKey( room ) ) {
+                return this;
+            }
+            if ( byRoom.size() == 1 ) {
+                return null; // removes the entry from the map.
+            }
+            final Map<JID, String> copy = new HashMap<>( byRoom );
+            copy.remove( room );
+            return new Nicknames( Collections.unmodifiableMap( copy ) );
+        }
+
+        /**
+         * Returns the matcher for messages in a room: it finds the username and bare JID of the user, and the nickname
+         * of the user in that room (if any).
+         */
+        MentionMatcher matcherFor( final String username, final JID bareJID, final JID room )
+        {
+            final String nickname = room == null ? null : byRoom.get( room );
+            if ( this == NONE ) {
+                return new MentionMatcher( Arrays.asList( username, bareJID.toBareJID() ) );
+            }
+            if ( nickname == null )
+            {
+                MentionMatcher result = matcher;
+                if ( result == null ) {
+                    result = new MentionMatcher( Arrays.asList( username, bareJID.toBareJID() ) );
+                    matcher = result;
+                }
+                return result;
+            }
+            return matchersByRoom.computeIfAbsent( room, r -> new MentionMatcher( Arrays.asList( username, bareJID.toBareJID(), nickname ) ) );
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.mention;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Finds any of a fixed set of words in a text, using the Aho-Corasick algorithm.
+ *
+ * Matching is case-insensitive, and only matches that are not directly preceded or followed by a letter or digit are
+ * reported (so that 'ann' is not found in 'annual'). Scanning a text takes time that is linear in the length of the
+ * text, and does not allocate memory.
+ *
+ * Instances are immutable, and thus thread-safe.
+ */
+public final class MentionMatcher
+{
+    private static final int[] NO_OUTPUT = new int[0];
+
+    /**
+     * A matcher that never matches.
+     */
+    public static final MentionMatcher EMPTY = new MentionMatcher( Collections.emptySet() );
+
+    // For every state: the characters for which a transition exists (sorted), and the states that they lead to.
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+
+    // For every state: the state to continue with when no transition exists.
+    private final int[] failure;
+
+    // For every state: the lengths of the words that end in this state (including those of its failure states).
+    private final int[][] outputs;
+
+    private final Set<String> words;
+
+    /**
+     * Compiles a matcher.
+     *
+     * @param words The words to find. Empty and blank words are ignored.
+     */
+    public MentionMatcher( @Nonnull final Collection<String> words )
+    {
+        final Set<String> normalized = new HashSet<>();
+        for ( final String word : words ) {
+            if ( word != null && !word.isBlank() ) {
+                normalized.add( normalize( word.trim() ) );
+            }
+        }
+        this.words = Collections.unmodifiableSet( normalized );
+
+        // Build the trie.
+        final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        final List<Set<Integer>> ends = new ArrayList<>();
+        trie.add( new TreeMap<>() );
+        ends.add( new HashSet<>() );
+        for ( final String word : normalized )
+        {
+            int state = 0;
+            for ( int i = 0; i < word.length(); i++ )
+            {
+                final Integer next = trie.get( state ).get( word.charAt( i ) );
+                if ( next == null ) {
+                    trie.add( new TreeMap<>() );
+                    ends.add( new HashSet<>() );
+                    trie.get( state ).put( word.charAt( i ), trie.size() - 1 );
+                    state = trie.size() - 1;
+                } else {
+                    state = next;
+                }
+            }
+            ends.get( state ).add( word.length() );
+        }
+
+        final int stateCount = trie.size();
+        transitionChars = new char[stateCount][];
+        transitionTargets = new int[stateCount][];
+        for ( int state = 0; state < stateCount; state++ )
+        {
+            final TreeMap<Character, Integer> transitions = trie.get( state );
+            transitionChars[state] = new char[transitions.size()];
+            transitionTargets[state] = new int[transitions.size()];
+            int i = 0;
+            for ( final Map.Entry<Character, Integer> transition : transitions.entrySet() ) {
+                transitionChars[state][i] = transition.getKey();
+                transitionTargets[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Compute failure links breadth-first, merging the output of the failure state into that of each state.
+        failure = new int[stateCount];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for ( final int child : transitionTargets[0] ) {
+            queue.add( child );
+        }
+        while ( !queue.isEmpty() )
+        {
+            final int state = queue.poll();
+            for ( int i = 0; i < transitionChars[state].length; i++ )
+            {
+                final char c = transitionChars[state][i];
+                final int child = transitionTargets[state][i];
+                int fallback = failure[state];
+                while ( fallback != 0 && transition( fallback, c ) < 0 ) {
+                    fallback = failure[fallback];
+                }
+                final int target = transition( fallback, c );
+                failure[child] = target >= 0 && target != child ? target : 0;
+                ends.get( child ).addAll( ends.get( failure[child] ) );
+                queue.add( child );
+            }
+        }
+
+        outputs = new int[stateCount][];
+        for ( int state = 0; state < stateCount; state++ ) {
+            outputs[state] = ends.get( state ).isEmpty() ? NO_OUTPUT : ends.get( state ).stream().mapToInt( Integer::intValue ).toArray();
+        }
+    }
+
+    /**
+     * Checks if any of the words occurs in a text.
+     *
+     * @param text The text to scan.
+     * @return true if at least one of the words occurs in the text.
+     */
+    public boolean matches( @Nonnull final CharSequence text )
+    {
+        int state = 0;
+        for ( int position = 0; position < text.length(); position++ )
+        {
+            final char c = normalize( text.charAt( position ) );
+            int next;
+            while ( ( next = transition( state, c ) ) < 0 && state != 0 ) {
+                state = failure[state];
+            }
+            state = Math.max( next, 0 );
+
+            for ( final int length : outputs[state] )
+            {
+                final int start = position - length + 1;
+                if ( isBoundary( text, start - 1 ) && isBoundary( text, position + 1 ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The (normalized) words that this matcher finds.
+     *
+     * @return an unmodifiable set of words.
+     */
+    @Nonnull
+    public Set<String> getWords()
+    {
+        return words;
+    }
+
+    private int transition( final int state, final char c )
+    {
+        final int index = Arrays.binarySearch( transitionChars[state], c );
+        return index < 0 ? -1 : transitionTargets[state][index];
+    }
+
+    private static boolean isBoundary( final CharSequence text, final int index )
+    {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit( text.charAt( index ) );
+    }
+
+    private static char normalize( final char c )
+    {
+        return Character.toLowerCase( Character.toUpperCase( c ) );
+    }
+
+    private static String normalize( final String word )
+    {
+        final StringBuilder result = new StringBuilder( word.length() );
+        for ( int i = 0; i < word.length(); i++ ) {
+            result.append( normalize( word.charAt( i ) ) );
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.overload;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe exponentially weighted moving average of a latency, in nanoseconds.
+ */
+public class LatencyGauge
+{
+    private static final double WEIGHT = 0.1;
+
+    // The bits of a double, so that the average can be updated without locking.
+    private final AtomicLong average = new AtomicLong( Double.doubleToLongBits( 0 ) );
+
+    /**
+     * Records an observed latency.
+     *
+     * @param nanos the observed latency, in nanoseconds.
+     */
+    public void record( final long nanos )
+    {
+        long current;
+        long updated;
+        do {
+            current = average.get();
+            final double value = Double.longBitsToDouble( current );
+            updated = Double.doubleToLongBits( value + WEIGHT * ( nanos - value ) );
+        } while ( !average.compareAndSet( current, updated ) );
+    }
+
+    /**
+     * Returns the moving average of the recorded latencies.
+     *
+     * @return an average latency, in nanoseconds.
+     */
+    public long getAverageNanos()
+    {
+        return (long) Double.longBitsToDouble( average.get() );
+    }
+
+    /**
+     * Moves the average towards zero. This is to be used periodically, so that the average recovers after a period in
+     * which no latencies are recorded.
+     */
+    public void decay()
+    {
+        record( 0 );
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.overload;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.jivesoftware.util.SystemProperty;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.TimerTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/**
+ * Monitors signals of server overload, and determines to what degree the work done for push notifications is to be
+ * reduced.
+ *
+ * Every second, the controller compares the depth of the delivery queue, the average time to route a push
+ * notification and the average time to obtain a database connection against configurable thresholds. When any signal
+ * exceeds its threshold, the {@link Level} is raised by one step. When all signals are well below their thresholds for
+ * a number of consecutive evaluations, the level is lowered by one step.
+ */
+public class OverloadController
+{
+    private static final Logger Log = LoggerFactory.getLogger( OverloadController.class );
+
+    /**
+     * Enables the shedding of work for push notifications when the server is overloaded.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.overload.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The amount of queued push notifications above which the server is considered to be overloaded.
+     */
+    public static final SystemProperty<Integer> QUEUE_DEPTH_THRESHOLD = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.overload.queue-depth-threshold")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(5000)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The average time to route a push notification above which the server is considered to be overloaded.
+     */
+    public static final SystemProperty<Duration> ROUTE_LATENCY_THRESHOLD = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.overload.route-latency-threshold")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofMillis(50))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The average time to obtain a database connection above which the server is considered to be overloaded.
+     */
+    public static final SystemProperty<Duration> DATABASE_WAIT_THRESHOLD = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.overload.database-wait-threshold")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.MILLIS)
+        .setDefaultValue(Duration.ofMillis(100))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The amount of consecutive evaluations (one per second) without overload after which the level is lowered.
+     */
+    public static final SystemProperty<Integer> RECOVERY_EVALUATIONS = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.overload.recovery-evaluations")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setDefaultValue(10)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * When coalescing, the period after a push notification to a user during which no other push notifications are
+     * sent to that user.
+     */
+    public static final SystemProperty<Duration> COALESCE_WINDOW = SystemProperty.Builder.ofType(Duration.class)
+        .setKey("pushnotifications.overload.coalesce-window")
+        .setPlugin("Push Notification")
+        .setChronoUnit(ChronoUnit.SECONDS)
+        .setDefaultValue(Duration.ofSeconds(10))
+        .setDynamic(true)
+        .build();
+
+    /**
+     * When sampling, the percentage of low-priority push notifications that is retained.
+     */
+    public static final SystemProperty<Integer> SAMPLE_PERCENTAGE = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.overload.sample-percentage")
+        .setPlugin("Push Notification")
+        .setMinValue(0)
+        .setMaxValue(100)
+        .setDefaultValue(25)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The degree to which work is reduced. Every level includes the reductions of the levels before it.
+     */
+    public enum Level
+    {
+        /**
+         * No reductions.
+         */
+        NORMAL,
+
+        /**
+         * Summaries do not include the sender and body of messages.
+         */
+        DROP_SUMMARY_BODIES,
+
+        /**
+         * At most one push notification per user is sent in each {@link #COALESCE_WINDOW}.
+         */
+        COALESCE,
+
+        /**
+         * Only a sample ({@link #SAMPLE_PERCENTAGE}) of low-priority push notifications is sent.
+         */
+        SAMPLE_LOW_PRIORITY
+    }
+
+    private final IntSupplier queueDepth;
+    private final LatencyGauge routeLatency = new LatencyGauge();
+    private final LatencyGauge databaseWait;
+
+    private volatile Level level = Level.NORMAL;
+    private int calmEvaluations = 0;
+
+    private final TimerTask evaluation = new TimerTask() {
+        @Override
+        public void run() {
+            try {
+                evaluate();
+            } catch ( Exception e ) {
+                Log.warn( "An exception occurred while evaluating server load.", e );
+            }
+        }
+    };
+
+    /**
+     * Creates a new controller.
+     *
+     * @param queueDepth provides the amount of push notifications that are waiting to be delivered.
+     * @param databaseWait the average time to obtain a database connection.
+     */
+    public OverloadController( @Nonnull final IntSupplier queueDepth, @Nonnull final LatencyGauge databaseWait )
+    {
+        this.queueDepth = queueDepth;
+        this.databaseWait = databaseWait;
+    }
+
+    public void start()
+    {
+        TaskEngine.getInstance().schedule( evaluation, Duration.ofSeconds(1).toMillis(), Duration.ofSeconds(1).toMillis() );
+    }
+
+    public void stop()
+    {
+        TaskEngine.getInstance().cancelScheduledTask( evaluation );
+    }
+
+    /**
+     * The current level.
+     *
+     * @return the current level.
+     */
+    @Nonnull
+    public Level getLevel()
+    {
+        return ENABLED.getValue() ? level : Level.NORMAL;
+    }
+
+    /**
+     * Records the time it took to route a push notification.
+     *
+     * @param nanos the duration, in nanoseconds.
+     */
+    public void recordRouteLatency( final long nanos )
+    {
+        routeLatency.record( nanos );
+    }
+
+    /**
+     * Checks if message senders and bodies are to be omitted from push notification summaries.
+     *
+     * @return true if summaries are to be reduced.
+     */
+    public boolean shouldDropSummaryBodies()
+    {
+        return getLevel().compareTo( Level.DROP_SUMMARY_BODIES ) >= 0;
+    }
+
+    /**
+     * Returns the period in which no more than one push notification is to be sent per user, if any.
+     *
+     * @return a period, or null if push notifications are not to be coalesced.
+     */
+    public Duration getCoalesceWindow()
+    {
+        return getLevel().compareTo( Level.COALESCE ) >= 0 ? COALESCE_WINDOW.getValue() : null;
+    }
+
+    /**
+     * Checks if a push notification is to be shed.
+     *
+     * @param priority the priority of the push notification.
+     * @return true if the push notification is not to be sent.
+     */
+    public boolean shouldShed( @Nonnull final PushPriority priority )
+    {
+        if ( !priority.isLow() || getLevel().compareTo( Level.SAMPLE_LOW_PRIORITY ) < 0 ) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextInt( 100 ) >= SAMPLE_PERCENTAGE.getValue();
+    }
+
+    /**
+     * Returns a description of the signals that determine the level, for diagnostics.
+     *
+     * @return a human readable description.
+     */
+    public String getSignals()
+    {
+        return String.format( "queue depth: %d, route latency: %d ms, database wait: %d ms", queueDepth.getAsInt(), routeLatency.getAverageNanos() / 1_000_000, databaseWait.getAverageNanos() / 1_000_000 );
+    }
+
+    synchronized void evaluate()
+    {
+        final double pressure = Math.max( Math.max(
+            queueDepth.getAsInt() / (double) QUEUE_DEPTH_THRESHOLD.getValue(),
+            routeLatency.getAverageNanos() / (double) Math.max( 1, ROUTE_LATENCY_THRESHOLD.getValue().toNanos() ) ),
+            databaseWait.getAverageNanos() / (double) Math.max( 1, DATABASE_WAIT_THRESHOLD.getValue().toNanos() ) );
+
+        // Without new observations, latencies would remain at their last value forever.
+        routeLatency.decay();
+        databaseWait.decay();
+
+        final Level old = level;
+        if ( pressure >= 1.0 ) {
+            calmEvaluations = 0;
+            if ( level.ordinal() < Level.values().length - 1 ) {
+                level = Level.values()[ level.ordinal() + 1 ];
+            }
+        } else if ( pressure < 0.5 ) {
+            calmEvaluations++;
+            if ( calmEvaluations >= RECOVERY_EVALUATIONS.getValue() && level != Level.NORMAL ) {
+                level = Level.values()[ level.ordinal() - 1 ];
+                calmEvaluations = 0;
+            }
+        } else {
+            calmEvaluations = 0;
+        }
+
+        if ( old != level ) {
+            Log.info( "Push notification overload level changed from {} to {} ({}).", old, level, getSignals() );
+        }
+    }
+}
@@ -15,11 +15,13 @@
  */
 package org.igniterealtime.openfire.plugins.pushnotification.streammanagement;
 
+import org.igniterealtime.openfire.plugins.pushnotification.jfr.TerminationDecisionEvent;
 import org.jivesoftware.openfire.streammanagement.TerminationDelegate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
 
@@ -41,11 +43,37 @@ public class PushNotificationSteamManagementTerminationDelegate implements Termi
 
     private Instant oldestUnansweredPushNotification;
 
+    public PushNotificationSteamManagementTerminationDelegate()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a delegate that continues where a previous delegate (typically, of an earlier instance of this plugin)
+     * left off.
+     *
+     * @param oldestUnansweredPushNotification The moment of the oldest push notification that was sent since the last activity of the session, if any.
+     */
+    public PushNotificationSteamManagementTerminationDelegate(@Nullable final Instant oldestUnansweredPushNotification)
+    {
+        this.oldestUnansweredPushNotification = oldestUnansweredPushNotification;
+    }
+
     @Override
     public synchronized boolean shouldTerminate(@Nonnull final Duration allowableInactivity)
     {
-        final boolean result = oldestUnansweredPushNotification != null && oldestUnansweredPushNotification.isBefore(Instant.now().minus(allowableInactivity));
+        final TerminationDecisionEvent event = new TerminationDecisionEvent();
+        event.begin();
+        final Instant now = Instant.now();
+        final boolean result = oldestUnansweredPushNotification != null && oldestUnansweredPushNotification.isBefore(now.minus(allowableInactivity));
         Log.trace("Should terminate: {} (Oldest unanswered notification: {} - Allowable inactivity: {})", (result ? "yes" : "no"), oldestUnansweredPushNotification, allowableInactivity);
+        event.end();
+        if (event.shouldCommit()) {
+            event.allowableInactivity = allowableInactivity.toMillis();
+            event.unansweredFor = oldestUnansweredPushNotification == null ? -1 : Duration.between(oldestUnansweredPushNotification, now).toMillis();
+            event.terminate = result;
+            event.commit();
+        }
         return result;
     }
 
@@ -58,4 +86,9 @@ public class PushNotificationSteamManagementTerminationDelegate implements Termi
             oldestUnansweredPushNotification = Instant.now();
         }
     }
+
+    @Nullable
+    public synchronized Instant getOldestUnansweredPushNotification() {
+        return oldestUnansweredPushNotification;
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.streammanagement;
+
+import org.jivesoftware.util.cache.ClusterTask;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A cluster task that removes the termination delegates from all local sessions of a set of users. This is used after
+ * a bulk operation removed all push service registrations of those users.
+ */
+public class RefreshDelegatesTask implements ClusterTask<Void>
+{
+    private List<String> usernames;
+
+    public RefreshDelegatesTask()
+    {
+        // Required for serialization.
+    }
+
+    public RefreshDelegatesTask( @Nonnull final Collection<String> usernames )
+    {
+        this.usernames = new ArrayList<>( usernames );
+    }
+
+    @Override
+    public Void getResult()
+    {
+        return null;
+    }
+
+    @Override
+    public void run()
+    {
+        usernames.forEach( TerminationDelegateManager::deregisterDelegateFor );
+    }
+
+    @Override
+    public void writeExternal( final ObjectOutput out ) throws IOException
+    {
+        out.writeInt( usernames.size() );
+        for ( final String username : usernames ) {
+            out.writeUTF( username );
+        }
+    }
+
+    @Override
+    public void readExternal( final ObjectInput in ) throws IOException
+    {
+        final int size = in.readInt();
+        usernames = new ArrayList<>( size );
+        for ( int i = 0; i < size; i++ ) {
+            usernames.add( in.readUTF() );
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.streammanagement;
+
+import org.dom4j.Element;
+import org.igniterealtime.openfire.plugins.pushnotification.PushAttemptTracker;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.session.LocalClientSession;
+import org.jivesoftware.openfire.session.Session;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+
+/**
+ * Detects messages for which a push notification was already sent, when they were first routed to the user, and that
+ * are now delivered again. This happens when:
+ * <ul>
+ *     <li>a client resumes a Stream Management session, and Openfire resends the stanzas that the client did not
+ *     acknowledge;</li>
+ *     <li>a client retrieves its offline messages, for which a push notification was sent when they were stored;</li>
+ *     <li>a Stream Management session that was not resumed is closed, and Openfire stores its unacknowledged messages
+ *     offline.</li>
+ * </ul>
+ *
+ * Openfire marks messages that it delivers again with a XEP-0203 'delay' element from the server itself. Messages that
+ * already carried a 'delay' element (such as group chat history) are not marked again. These are recognized by their
+ * fingerprint (see {@link org.igniterealtime.openfire.plugins.pushnotification.PushInterceptor#getMessageIdentifier}),
+ * which is looked up in the recent push attempts of the user. As only sessions that have Stream Management enabled
+ * can replay messages, this lookup is not performed for other sessions.
+ *
+ * Both checks are cheaper than obtaining the push service registrations of the user, and are therefore performed
+ * before that.
+ */
+public class ReplayDetector
+{
+    private static final Logger Log = LoggerFactory.getLogger( ReplayDetector.class );
+
+    /**
+     * Suppresses push notifications for messages that are delivered again, after Stream Management resumption or from
+     * offline storage.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.replay-detection.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(true)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The period in which a push attempt for the same message identifies a replay. Push attempts are retained for ten
+     * minutes.
+     */
+    private static final Duration WINDOW = Duration.ofMinutes( 10 );
+
+    private final PushAttemptTracker attemptTracker;
+
+    public ReplayDetector( @Nonnull final PushAttemptTracker attemptTracker )
+    {
+        this.attemptTracker = attemptTracker;
+    }
+
+    /**
+     * Checks if a message is delivered again.
+     *
+     * @param session The session to which the message is sent, or null when the message was stored offline.
+     * @param username The recipient of the message.
+     * @param identifier The identifier of the message, as generated by {@link org.igniterealtime.openfire.plugins.pushnotification.PushInterceptor#getMessageIdentifier}.
+     * @param message The message.
+     * @return 'redelivered' or 'replayed' when a push notification for the message is not to be sent, otherwise null.
+     */
+    @Nullable
+    public String detect( @Nullable final Session session, @Nonnull final String username, @Nonnull final String identifier, @Nonnull final Message message )
+    {
+        if ( !ENABLED.getValue() ) {
+            return null;
+        }
+
+        if ( session != null && isDelayedByServer( message ) ) {
+            Log.trace( "For user '{}', skipping push, as the message is delivered again by the server.", username );
+            return "redelivered";
+        }
+
+        if ( ( session == null || isStreamManagementEnabled( session ) ) && attemptTracker.wasAttempted( username, identifier, WINDOW ) ) {
+            Log.trace( "For user '{}', skipping push, as a push was already attempted for this message.", username );
+            return "replayed";
+        }
+        return null;
+    }
+
+    private static boolean isDelayedByServer( final Message message )
+    {
+        final Element delay = message.getChildElement( "delay", "urn:xmpp:delay" );
+        return delay != null && XMPPServer.getInstance().getServerInfo().getXMPPDomain().equals( delay.attributeValue( "from" ) );
+    }
+
+    private static boolean isStreamManagementEnabled( final Session session )
+    {
+        return session instanceof LocalClientSession && ( (LocalClientSession) session ).getStreamManager() != null && ( (LocalClientSession) session ).getStreamManager().isEnabled();
+    }
+}
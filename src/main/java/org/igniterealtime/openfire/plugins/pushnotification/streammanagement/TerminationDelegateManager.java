@@ -16,10 +16,10 @@
 package org.igniterealtime.openfire.plugins.pushnotification.streammanagement;
 
 import org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketClassification;
+import org.igniterealtime.openfire.plugins.pushnotification.interception.PacketConsumer;
 import org.jivesoftware.openfire.SessionManager;
 import org.jivesoftware.openfire.event.SessionEventListener;
-import org.jivesoftware.openfire.interceptor.PacketInterceptor;
-import org.jivesoftware.openfire.interceptor.PacketRejectedException;
 import org.jivesoftware.openfire.session.ClientSession;
 import org.jivesoftware.openfire.session.LocalClientSession;
 import org.jivesoftware.openfire.session.Session;
@@ -32,6 +32,8 @@ import org.xmpp.packet.Packet;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.EnumSet;
 
 /**
  * Responsible for managing instances of {@link PushNotificationSteamManagementTerminationDelegate} on all applicable
@@ -39,14 +41,38 @@ import java.sql.SQLException;
  *
  * Instances are stored as a sessionData on the session object itself, using the key defined by {@link #PUSHNOTIFICATION_TERMINATION_DELEGATE}
  *
+ * When the plugin is unloaded (typically, to be upgraded), the state of the delegates is left on each session as a
+ * sessionData of a JDK type (that does not depend on the class loader of the plugin), using the key defined by
+ * {@link #PUSHNOTIFICATION_TERMINATION_DELEGATE_HANDOFF}. The next instance of the plugin adopts that state, instead of
+ * querying the database for every session.
+ *
  * @author Guus der Kinderen, guus@goodbytes.nl
  */
-public class TerminationDelegateManager implements SessionEventListener, PacketInterceptor
+public class TerminationDelegateManager implements SessionEventListener, PacketConsumer
 {
     private static final Logger Log = LoggerFactory.getLogger(TerminationDelegateManager.class);
 
     public static final String PUSHNOTIFICATION_TERMINATION_DELEGATE = "pushnotification.terminationDelegate";
 
+    public static final String PUSHNOTIFICATION_TERMINATION_DELEGATE_HANDOFF = "pushnotification.terminationDelegate.handoff";
+
+    /**
+     * Handoff value of a session that had no delegate (as its user had no push notifications enabled).
+     */
+    private static final long HANDOFF_NO_DELEGATE = -1;
+
+    /**
+     * Handoff value of a session that had a delegate, without unanswered push notifications. Other (positive) values
+     * are the moment of the oldest unanswered push notification, in milliseconds since the epoch.
+     */
+    private static final long HANDOFF_NO_UNANSWERED_PUSH = 0;
+
+    /**
+     * The packets that this instance is to be invoked for: any stanza received from a local client session (pre or post
+     * processed probably doesn't matter, but we don't want to fire twice).
+     */
+    public static final long INTEREST = PacketClassification.mask( PacketClassification.Phase.INBOUND_UNPROCESSED, EnumSet.of( PacketClassification.SessionKind.CLIENT, PacketClassification.SessionKind.ANONYMOUS_CLIENT ), EnumSet.allOf( PacketClassification.StanzaKind.class ) );
+
     @Override
     public void sessionCreated(Session session)
     {
@@ -74,9 +100,13 @@ public class TerminationDelegateManager implements SessionEventListener, PacketI
     }
 
     public static void registerDelegate(final LocalClientSession clientSession) {
+        registerDelegate(clientSession, null);
+    }
+
+    private static void registerDelegate(final LocalClientSession clientSession, final Instant oldestUnansweredPushNotification) {
         if (clientSession.getSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE) == null) {
             Log.trace("Registering delegate for {}", clientSession);
-            final PushNotificationSteamManagementTerminationDelegate delegate = new PushNotificationSteamManagementTerminationDelegate();
+            final PushNotificationSteamManagementTerminationDelegate delegate = new PushNotificationSteamManagementTerminationDelegate(oldestUnansweredPushNotification);
             clientSession.setSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE, delegate);
             clientSession.getStreamManager().addTerminationDelegate(delegate);
         } else {
@@ -101,8 +131,12 @@ public class TerminationDelegateManager implements SessionEventListener, PacketI
     }
 
     public static void deregisterDelegateFor(@Nonnull final User user) {
-        Log.trace("Deregistering delegate for all sessions of {}", user);
-        SessionManager.getInstance().getSessions(user.getUsername()).stream()
+        deregisterDelegateFor(user.getUsername());
+    }
+
+    public static void deregisterDelegateFor(@Nonnull final String username) {
+        Log.trace("Deregistering delegate for all sessions of {}", username);
+        SessionManager.getInstance().getSessions(username).stream()
             .filter(session -> session instanceof LocalClientSession)
             .map(session -> (LocalClientSession) session)
             .forEach(TerminationDelegateManager::deregisterDelegate);
@@ -131,6 +165,60 @@ public class TerminationDelegateManager implements SessionEventListener, PacketI
         Log.debug("Done deregistering delegate for all sessions.");
     }
 
+    /**
+     * Removes the delegates of all local sessions, leaving their state in the session data, for a next instance of this
+     * plugin to adopt using {@link #adoptDelegatesForAll()}.
+     */
+    public static void exportDelegatesForAll() {
+        Log.debug("Exporting delegate state of all sessions...");
+        SessionManager.getInstance().getSessions().stream()
+            .filter(session -> session instanceof LocalClientSession)
+            .map(session -> (LocalClientSession) session)
+            .forEach(session -> {
+                final PushNotificationSteamManagementTerminationDelegate delegate = (PushNotificationSteamManagementTerminationDelegate) session.removeSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE);
+                final long handoff;
+                if (delegate == null) {
+                    handoff = HANDOFF_NO_DELEGATE;
+                } else {
+                    session.getStreamManager().removeTerminationDelegate(delegate);
+                    final Instant oldestUnansweredPushNotification = delegate.getOldestUnansweredPushNotification();
+                    handoff = oldestUnansweredPushNotification == null ? HANDOFF_NO_UNANSWERED_PUSH : Math.max(1, oldestUnansweredPushNotification.toEpochMilli());
+                }
+                session.setSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE_HANDOFF, handoff);
+            });
+        Log.debug("Done exporting delegate state of all sessions.");
+    }
+
+    /**
+     * Registers a delegate for all local sessions of users that have push notifications enabled. The state that was
+     * exported by a previous instance of this plugin (see {@link #exportDelegatesForAll()}) is adopted. Only for
+     * sessions without such state (for example, those that were created while the plugin was not loaded) the database
+     * is queried.
+     */
+    public static void adoptDelegatesForAll() {
+        Log.debug("Adopting delegate state of all sessions...");
+        final int[] counts = new int[2];
+        SessionManager.getInstance().getSessions().stream()
+            .filter(session -> session instanceof LocalClientSession)
+            .map(session -> (LocalClientSession) session)
+            .forEach(session -> {
+                final Object handoff = session.removeSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE_HANDOFF);
+                if (handoff instanceof Long) {
+                    counts[0]++;
+                    final long value = (Long) handoff;
+                    if (value != HANDOFF_NO_DELEGATE) {
+                        registerDelegate(session, value == HANDOFF_NO_UNANSWERED_PUSH ? null : Instant.ofEpochMilli(value));
+                    }
+                } else {
+                    counts[1]++;
+                    if (doesUserHavePushEnabled(session)) {
+                        registerDelegate(session);
+                    }
+                }
+            });
+        Log.debug("Done adopting delegate state of all sessions ({} adopted, {} looked up).", counts[0], counts[1]);
+    }
+
     public static void registerActivityFor(@Nonnull final LocalClientSession clientSession) {
         final PushNotificationSteamManagementTerminationDelegate delegate = (PushNotificationSteamManagementTerminationDelegate) clientSession.getSessionData(PUSHNOTIFICATION_TERMINATION_DELEGATE);
         if (delegate != null) {
@@ -139,7 +227,11 @@ public class TerminationDelegateManager implements SessionEventListener, PacketI
     }
 
     public static void registerPushNotificationFor(@Nonnull final User user) {
-        SessionManager.getInstance().getSessions(user.getUsername()).stream()
+        registerPushNotificationFor(user.getUsername());
+    }
+
+    public static void registerPushNotificationFor(@Nonnull final String username) {
+        SessionManager.getInstance().getSessions(username).stream()
             .filter(session -> session instanceof LocalClientSession)
             .map(session -> (LocalClientSession) session)
             .forEach(session -> {
@@ -173,17 +265,8 @@ public class TerminationDelegateManager implements SessionEventListener, PacketI
     }
 
     @Override
-    public void interceptPacket(final Packet packet, final Session session, final boolean incoming, final boolean processed) throws PacketRejectedException
+    public void consume(@Nonnull final Packet packet, final Session session, @Nonnull final PacketClassification classification)
     {
-        if (!(session instanceof LocalClientSession)) {
-            return;
-        }
-
-        final boolean inbound = incoming && !processed; // pre or post processed probably doesn't matter, but we don't want to fire twice.
-        if (!inbound) {
-            return;
-        }
-
         registerActivityFor((LocalClientSession) session);
     }
 
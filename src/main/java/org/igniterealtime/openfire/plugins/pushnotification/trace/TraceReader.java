@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.trace;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Reads the records of a trace file that was written by {@link TraceRecorder}.
+ */
+public class TraceReader implements Closeable
+{
+    private final DataInputStream in;
+    private final Instant start;
+    private long previousMicros;
+
+    /**
+     * Opens a trace file, and reads its header.
+     *
+     * @param file The trace file.
+     * @throws IOException when the file cannot be read, or is not a trace file of a supported version.
+     */
+    public TraceReader( @Nonnull final Path file ) throws IOException
+    {
+        in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ), 64 * 1024 ) );
+        try
+        {
+            if ( in.readInt() != TraceRecorder.MAGIC ) {
+                throw new IOException( "Not a push notification trace: " + file );
+            }
+            final byte version = in.readByte();
+            if ( version != TraceRecorder.VERSION ) {
+                throw new IOException( "Unsupported version " + version + " of push notification trace: " + file );
+            }
+            start = Instant.ofEpochMilli( in.readLong() );
+        }
+        catch ( IOException e )
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The moment at which the recording of the trace started. The time of each record is relative to this moment.
+     *
+     * @return a moment in time.
+     */
+    @Nonnull
+    public Instant getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the next record, or null when the end of the trace has been reached.
+     * @throws IOException when the trace cannot be read, or is malformed.
+     */
+    @Nullable
+    public TraceRecord next() throws IOException
+    {
+        in.mark( 1 );
+        if ( in.read() < 0 ) {
+            return null;
+        }
+        in.reset();
+        try {
+            final TraceRecord record = TraceRecord.readFrom( in, previousMicros );
+            previousMicros = record.getTimeMicros();
+            return record;
+        } catch ( EOFException e ) {
+            // The last record was not completely written (for example, because Openfire was terminated while recording).
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
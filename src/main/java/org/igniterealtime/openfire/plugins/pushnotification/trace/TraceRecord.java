@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.trace;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One event in a push notification trace: the processing of a message (or submission) that could cause a push
+ * notification.
+ *
+ * In a trace file, a record is written as (where 'varint' denotes an unsigned LEB128-encoded number):
+ * <ul>
+ *     <li>varint: microseconds since the previous record (or since the start of the trace)</li>
+ *     <li>8 bytes: anonymized hash of the username</li>
+ *     <li>1 byte: source (high nibble) and priority (low nibble), both as an index in {@link #SOURCES} and
+ *     {@link #PRIORITIES}</li>
+ *     <li>varint: amount of registrations of the user, plus one (zero when unknown)</li>
+ *     <li>1 byte: outcome, as an index in {@link #OUTCOMES}</li>
+ *     <li>varint: microseconds spent processing</li>
+ * </ul>
+ */
+public class TraceRecord
+{
+    /**
+     * The sources of records. The first entry is used for unknown values.
+     */
+    public static final List<String> SOURCES = Arrays.asList( "other", "intercepted", "offline", "api" );
+
+    /**
+     * The priorities of records. The first entry is used when the priority is not (yet) known.
+     */
+    public static final List<PushPriority> PRIORITIES = Arrays.asList( null, PushPriority.DIRECT, PushPriority.MENTION, PushPriority.GROUPCHAT, PushPriority.BULK );
+
+    /**
+     * The outcomes of records. The first entry is used for unknown values. New values are to be appended only.
+     */
+    public static final List<String> OUTCOMES = Arrays.asList( "other", "queued", "deferred", "held", "awaiting-ack", "no-body", "unknown-user", "not-mentioned", "muted", "shed", "lookup-failed", "no-registrations", "duplicate", "coalesced", "rate-limited", "redelivered", "replayed" );
+
+    private final long timeMicros;
+    private final long userHash;
+    private final String source;
+    private final PushPriority priority;
+    private final int registrations;
+    private final String outcome;
+    private final long processingMicros;
+
+    /**
+     * @param timeMicros The time of the event, in microseconds since the start of the trace.
+     * @param userHash The anonymized hash of the username.
+     * @param source How the message was observed (for example: 'intercepted' or 'offline').
+     * @param priority The priority of the push notification, or null when not known.
+     * @param registrations The amount of registrations of the user, or -1 when not known.
+     * @param outcome The result of processing the message.
+     * @param processingMicros The time spent processing the message, in microseconds.
+     */
+    public TraceRecord( final long timeMicros, final long userHash, @Nonnull final String source, @Nullable final PushPriority priority, final int registrations, @Nonnull final String outcome, final long processingMicros )
+    {
+        this.timeMicros = timeMicros;
+        this.userHash = userHash;
+        this.source = source;
+        this.priority = priority;
+        this.registrations = registrations;
+        this.outcome = outcome;
+        this.processingMicros = processingMicros;
+    }
+
+    public long getTimeMicros()
+    {
+        return timeMicros;
+    }
+
+    public long getUserHash()
+    {
+        return userHash;
+    }
+
+    @Nonnull
+    public String getSource()
+    {
+        return source;
+    }
+
+    @Nullable
+    public PushPriority getPriority()
+    {
+        return priority;
+    }
+
+    public int getRegistrations()
+    {
+        return registrations;
+    }
+
+    @Nonnull
+    public String getOutcome()
+    {
+        return outcome;
+    }
+
+    public long getProcessingMicros()
+    {
+        return processingMicros;
+    }
+
+    void writeTo( @Nonnull final DataOutput out, final long previousTimeMicros ) throws IOException
+    {
+        writeVarLong( out, Math.max( 0, timeMicros - previousTimeMicros ) );
+        out.writeLong( userHash );
+        out.writeByte( ( indexOf( SOURCES, source ) << 4 ) | indexOf( PRIORITIES, priority ) );
+        writeVarLong( out, registrations + 1L );
+        out.writeByte( indexOf( OUTCOMES, outcome ) );
+        writeVarLong( out, processingMicros );
+    }
+
+    static TraceRecord readFrom( @Nonnull final DataInput in, final long previousTimeMicros ) throws IOException
+    {
+        final long timeMicros = previousTimeMicros + readVarLong( in );
+        final long userHash = in.readLong();
+        final int kind = in.readUnsignedByte();
+        final int registrations = (int) readVarLong( in ) - 1;
+        final int outcome = in.readUnsignedByte();
+        final long processingMicros = readVarLong( in );
+        return new TraceRecord( timeMicros, userHash, valueOf( SOURCES, kind >>> 4, SOURCES.get( 0 ) ), valueOf( PRIORITIES, kind & 0x0F, null ), registrations, valueOf( OUTCOMES, outcome, OUTCOMES.get( 0 ) ), processingMicros );
+    }
+
+    private static <T> int indexOf( final List<T> values, final T value )
+    {
+        final int index = values.indexOf( value );
+        return Math.max( index, 0 );
+    }
+
+    private static <T> T valueOf( final List<T> values, final int index, final T fallback )
+    {
+        return index < values.size() ? values.get( index ) : fallback;
+    }
+
+    private static void writeVarLong( final DataOutput out, long value ) throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 ) {
+            out.writeByte( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    private static long readVarLong( final DataInput in ) throws IOException
+    {
+        long result = 0;
+        for ( int shift = 0; shift < 64; shift += 7 ) {
+            final int b = in.readUnsignedByte();
+            result |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 ) {
+                return result;
+            }
+        }
+        throw new IOException( "Malformed variable-length number." );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TraceRecord{time=" + timeMicros + "us, user=" + Long.toHexString( userHash ) + ", source=" + source + ", priority=" + priority + ", registrations=" + registrations + ", outcome=" + outcome + ", processing=" + processingMicros + "us}";
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.trace;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.NamedThreadFactory;
+import org.jivesoftware.util.SystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the processing of messages by the push notification interceptor to a binary trace file, from which the
+ * workload can later be replayed outside of Openfire (see {@code TraceReplayer} in the test sources of this plugin).
+ *
+ * A trace does not contain message content or usernames. Usernames are replaced by a hash that is salted with a random
+ * value that is generated for every trace, and that is not stored. Records of the same user within one trace share the
+ * same hash, but cannot be related to the user, nor to records in other traces.
+ *
+ * Recording is cheap for the threads that process messages: they add a record to a bounded queue, which is written to
+ * disk by a single thread. When that queue is full, records are dropped (and counted) rather than slowing down message
+ * processing. A recording starts when {@link #ENABLED} is set, and ends when it is unset, or when the trace file reaches
+ * {@link #MAX_SIZE_MB}. Trace files are written to the <tt>pushnotification</tt> directory in Openfire's home directory.
+ *
+ * The format of a trace file is a header (the four bytes 'PNTR', a version byte, and the start time in milliseconds
+ * since the epoch), followed by any amount of records, as described in {@link TraceRecord}.
+ */
+public class TraceRecorder
+{
+    private static final Logger Log = LoggerFactory.getLogger( TraceRecorder.class );
+
+    /**
+     * Enables the recording of a trace of the messages that are processed for push notifications.
+     */
+    public static final SystemProperty<Boolean> ENABLED = SystemProperty.Builder.ofType(Boolean.class)
+        .setKey("pushnotifications.trace.enabled")
+        .setPlugin("Push Notification")
+        .setDefaultValue(false)
+        .setDynamic(true)
+        .build();
+
+    /**
+     * The maximum size (in megabytes) of a trace file. Recording stops when this size is reached.
+     */
+    public static final SystemProperty<Integer> MAX_SIZE_MB = SystemProperty.Builder.ofType(Integer.class)
+        .setKey("pushnotifications.trace.max-size-mb")
+        .setPlugin("Push Notification")
+        .setMinValue(1)
+        .setMaxValue(1024)
+        .setDefaultValue(100)
+        .setDynamic(true)
+        .build();
+
+    static final int MAGIC = 0x504E5452; // 'PNTR'
+    static final byte VERSION = 1;
+
+    private static final int QUEUE_CAPACITY = 65536;
+
+    private volatile boolean running;
+    private volatile Recording recording;
+
+    public synchronized void start()
+    {
+        running = true;
+    }
+
+    /**
+     * Stops recording, writing all records that are still queued to the trace file.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        final Recording current = recording;
+        if ( current != null ) {
+            current.finish();
+        }
+    }
+
+    /**
+     * Checks if records are currently accepted. Callers can use this to avoid measuring the time spent processing a
+     * message when that measurement is not going to be used.
+     *
+     * @return true if records are accepted.
+     */
+    public boolean isRecording()
+    {
+        return running && ENABLED.getValue();
+    }
+
+    /**
+     * Records the processing of a message. This is a no-op when no trace is being recorded.
+     *
+     * @param username The recipient of the message, or null when not known.
+     * @param source How the message was observed (for example: 'intercepted' or 'offline').
+     * @param priority The priority of the push notification, or null when not known.
+     * @param registrations The amount of push service registrations of the recipient, or -1 when not known.
+     * @param outcome The result of processing the message.
+     * @param processingNanos The time spent processing the message, in nanoseconds.
+     */
+    public void record( @Nullable final String username, @Nonnull final String source, @Nullable final PushPriority priority, final int registrations, @Nullable final String outcome, final long processingNanos )
+    {
+        if ( !isRecording() ) {
+            return;
+        }
+        Recording current = recording;
+        if ( current == null ) {
+            current = startRecording();
+        }
+        if ( current == null || current.finished ) {
+            return;
+        }
+        final Pending pending = new Pending( System.nanoTime(), username == null ? "" : username, source, priority, registrations, outcome == null ? "other" : outcome, processingNanos );
+        if ( !current.queue.offer( pending ) ) {
+            current.dropped.incrementAndGet();
+        }
+    }
+
+    private synchronized Recording startRecording()
+    {
+        if ( recording != null || !isRecording() ) {
+            return recording;
+        }
+        try
+        {
+            final Path directory = JiveGlobals.getHomePath().resolve( "pushnotification" );
+            Files.createDirectories( directory );
+            final Path file = directory.resolve( "trace-" + LocalDateTime.now().format( DateTimeFormatter.ofPattern( "yyyyMMdd-HHmmss" ) ) + ".bin" );
+            recording = new Recording( file );
+            Log.info( "Started recording a push notification trace to {}", file );
+        }
+        catch ( IOException | NoSuchAlgorithmException e )
+        {
+            Log.warn( "Unable to start recording a push notification trace. Disabling recording.", e );
+            ENABLED.setValue( false );
+        }
+        return recording;
+    }
+
+    private synchronized void recordingEnded( final Recording ended )
+    {
+        if ( recording == ended ) {
+            recording = null;
+        }
+    }
+
+    /**
+     * A record that has not yet been written. Usernames are hashed by the writer thread, to keep the cost of
+     * recording low for the threads that process messages.
+     */
+    private static final class Pending
+    {
+        final long nanos;
+        final String username;
+        final String source;
+        final PushPriority priority;
+        final int registrations;
+        final String outcome;
+        final long processingNanos;
+
+        Pending( final long nanos, final String username, final String source, final PushPriority priority, final int registrations, final String outcome, final long processingNanos )
+        {
+            this.nanos = nanos;
+            this.username = username;
+            this.source = source;
+            this.priority = priority;
+            this.registrations = registrations;
+            this.outcome = outcome;
+            this.processingNanos = processingNanos;
+        }
+    }
+
+    /**
+     * One trace file, and the thread that writes to it.
+     */
+    private final class Recording implements Runnable
+    {
+        final Path file;
+        final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+        final AtomicLong dropped = new AtomicLong();
+        final long startNanos = System.nanoTime();
+        final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+        final byte[] salt = new byte[32];
+        final DataOutputStream out;
+        final Thread writer;
+        volatile boolean finished;
+
+        Recording( final Path file ) throws IOException, NoSuchAlgorithmException
+        {
+            this.file = file;
+            new SecureRandom().nextBytes( salt );
+            out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file ), 64 * 1024 ) );
+            out.writeInt( MAGIC );
+            out.writeByte( VERSION );
+            out.writeLong( System.currentTimeMillis() );
+            writer = new NamedThreadFactory( "pushnotification-trace-", true, null, null, null ).newThread( this );
+            writer.start();
+        }
+
+        void finish()
+        {
+            finished = true;
+            writer.interrupt();
+            try {
+                writer.join( TimeUnit.SECONDS.toMillis( 5 ) );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            final long maxBytes = MAX_SIZE_MB.getValue() * 1024L * 1024L;
+            long previousMicros = 0;
+            long written = 0;
+            try
+            {
+                while ( true )
+                {
+                    Pending pending = null;
+                    if ( !finished ) {
+                        try {
+                            pending = queue.poll( 1, TimeUnit.SECONDS );
+                        } catch ( InterruptedException e ) {
+                            finished = true;
+                        }
+                    }
+                    if ( pending == null ) {
+                        pending = queue.poll();
+                    }
+                    if ( pending == null )
+                    {
+                        if ( finished || !isRecording() ) {
+                            break;
+                        }
+                        out.flush();
+                        continue;
+                    }
+
+                    // Records are queued by several threads, so they can be slightly out of order.
+                    final long micros = Math.max( previousMicros, TimeUnit.NANOSECONDS.toMicros( pending.nanos - startNanos ) );
+                    new TraceRecord( micros, hash( pending.username ), pending.source, pending.priority, pending.registrations, pending.outcome, TimeUnit.NANOSECONDS.toMicros( pending.processingNanos ) ).writeTo( out, previousMicros );
+                    previousMicros = micros;
+                    written++;
+                    if ( out.size() >= maxBytes ) {
+                        Log.info( "The push notification trace {} reached its maximum size. Recording stops.", file );
+                        ENABLED.setValue( false );
+                        break;
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                Log.warn( "An exception occurred while writing push notification trace {}. Recording stops.", file, e );
+                ENABLED.setValue( false );
+            }
+            finally
+            {
+                finished = true;
+                try {
+                    out.close();
+                } catch ( IOException e ) {
+                    Log.debug( "Unable to close push notification trace {}", file, e );
+                }
+                Log.info( "Stopped recording push notification trace {}: {} record(s) written, {} dropped.", file, written, dropped.get() + queue.size() );
+                queue.clear();
+                recordingEnded( this );
+            }
+        }
+
+        private long hash( final String username )
+        {
+            digest.update( salt );
+            final byte[] result = digest.digest( username.getBytes( StandardCharsets.UTF_8 ) );
+            long value = 0;
+            for ( int i = 0; i < Long.BYTES; i++ ) {
+                value = ( value << 8 ) | ( result[i] & 0xFF );
+            }
+            return value;
+        }
+    }
+}
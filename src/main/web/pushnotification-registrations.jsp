@@ -0,0 +1,127 @@
+<%@ page contentType="text/html; charset=UTF-8" %>
+
+<%@ page import="org.jivesoftware.util.*" %>
+<%@ page import="java.util.ArrayList" %>
+<%@ page import="java.util.List" %>
+<%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushRegistration" %>
+<%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager" %>
+<%@ page import="org.xmpp.packet.JID" %>
+
+<%@ taglib uri="admin" prefix="admin" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+
+<jsp:useBean id="webManager" class="org.jivesoftware.util.WebManager" />
+<% webManager.init(request, response, session, application, out ); %>
+<%
+    final String user = ParamUtils.getParameter(request, "user");
+    final String service = ParamUtils.getParameter(request, "service");
+    final String node = ParamUtils.getParameter(request, "node");
+    final String after = ParamUtils.getParameter(request, "after");
+    final int limit = Math.max(1, Math.min(PushServiceManager.BATCH_SIZE, ParamUtils.getIntParameter(request, "limit", 50)));
+
+    final List<PushRegistration> registrations = new ArrayList<>();
+    String next = null;
+    String error = null;
+    try {
+        next = PushServiceManager.findRegistrations(user, service == null ? null : new JID(service), node, after, limit, registrations::add);
+    } catch (Exception e) {
+        error = e.getMessage();
+    }
+
+    pageContext.setAttribute("user", user);
+    pageContext.setAttribute("service", service);
+    pageContext.setAttribute("node", node);
+    pageContext.setAttribute("after", after);
+    pageContext.setAttribute("limit", limit);
+    pageContext.setAttribute("registrations", registrations);
+    pageContext.setAttribute("next", next);
+    pageContext.setAttribute("error", error);
+%>
+
+<html>
+<head>
+    <title>
+        <fmt:message key="pushnotification.registrations.title"/>
+    </title>
+    <meta name="pageID" content="pushnotification-registrations"/>
+</head>
+<body>
+
+<c:if test="${not empty error}">
+    <admin:infobox type="error">
+        <fmt:message key="pushnotification.settings.error" />: <c:out value="${error}"/>
+    </admin:infobox>
+</c:if>
+
+<p><fmt:message key="pushnotification.registrations.description.detail" /></p>
+<br />
+
+<form action="pushnotification-registrations.jsp" method="get">
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.registrations.filter.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <label for="user"><fmt:message key="pushnotification.registrations.user" /></label>
+        <input type="text" name="user" id="user" size="20" value="<c:out value="${user}"/>" />
+        <label for="service"><fmt:message key="pushnotification.services.service" /></label>
+        <input type="text" name="service" id="service" size="30" value="<c:out value="${service}"/>" />
+        <label for="node"><fmt:message key="pushnotification.services.node-pattern" /></label>
+        <input type="text" name="node" id="node" size="30" value="<c:out value="${node}"/>" />
+        <input type="hidden" name="limit" value="${limit}" />
+        <button type="submit"><fmt:message key="pushnotification.registrations.filter.submit" /></button>
+    </div>
+</form>
+<br />
+
+<div class="jive-table">
+    <table cellpadding="0" cellspacing="0" border="0" width="100%">
+        <thead>
+        <tr>
+            <th nowrap><fmt:message key="pushnotification.registrations.user" /></th>
+            <th nowrap><fmt:message key="pushnotification.services.service" /></th>
+            <th nowrap><fmt:message key="pushnotification.registrations.node" /></th>
+            <th nowrap><fmt:message key="pushnotification.registrations.publish-options" /></th>
+        </tr>
+        </thead>
+        <tbody>
+        <c:if test="${empty registrations}">
+            <tr><td colspan="4"><fmt:message key="pushnotification.registrations.none" /></td></tr>
+        </c:if>
+        <c:forEach var="registration" items="${registrations}">
+            <tr>
+                <td><c:out value="${registration.username}"/></td>
+                <td><c:out value="${registration.service}"/></td>
+                <td><c:out value="${registration.node}"/></td>
+                <td><c:if test="${registration.publishOptions ne null}"><fmt:message key="pushnotification.registrations.publish-options.present" /></c:if></td>
+            </tr>
+        </c:forEach>
+        </tbody>
+    </table>
+</div>
+<br />
+
+<p>
+    <c:if test="${not empty after}">
+        <c:url var="firstUrl" value="pushnotification-registrations.jsp">
+            <c:param name="user" value="${user}"/>
+            <c:param name="service" value="${service}"/>
+            <c:param name="node" value="${node}"/>
+            <c:param name="limit" value="${limit}"/>
+        </c:url>
+        <a href="${firstUrl}"><fmt:message key="pushnotification.registrations.first" /></a>
+    </c:if>
+    <c:if test="${not empty next}">
+        <c:url var="nextUrl" value="pushnotification-registrations.jsp">
+            <c:param name="user" value="${user}"/>
+            <c:param name="service" value="${service}"/>
+            <c:param name="node" value="${node}"/>
+            <c:param name="limit" value="${limit}"/>
+            <c:param name="after" value="${next}"/>
+        </c:url>
+        <a href="${nextUrl}"><fmt:message key="pushnotification.registrations.next" /></a>
+    </c:if>
+</p>
+
+</body>
+</html>
@@ -0,0 +1,163 @@
+<%@ page contentType="text/html; charset=UTF-8" %>
+
+<%@ page import="org.jivesoftware.util.*" %>
+<%@ page import="java.util.HashMap" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager" %>
+<%@ page import="org.xmpp.packet.JID" %>
+
+<%@ taglib uri="admin" prefix="admin" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+
+<jsp:useBean id="webManager" class="org.jivesoftware.util.WebManager" />
+<% webManager.init(request, response, session, application, out ); %>
+<%
+    final String action = ParamUtils.getParameter(request, "action");
+    Integer affected = null;
+    Map<String, String> errors = new HashMap<>();
+
+    if (action != null) {
+        Cookie csrfCookie = CookieUtils.getCookie(request, "csrf");
+        String csrfParam = ParamUtils.getParameter(request, "csrf");
+
+        if (csrfCookie == null || csrfParam == null || !csrfCookie.getValue().equals(csrfParam)) {
+            errors.put("csrf", "CSRF checksum failed. Reload the page and try again.");
+        } else {
+            try {
+                switch (action) {
+                    case "deregister-service": {
+                        final JID service = new JID(ParamUtils.getParameter(request, "service"));
+                        affected = PushServiceManager.deregisterService(service);
+                        webManager.logEvent("Removed all push notification registrations for service", "service = " + service + ",\nremoved = " + affected);
+                        break;
+                    }
+                    case "rename-service": {
+                        final JID oldService = new JID(ParamUtils.getParameter(request, "service"));
+                        final JID newService = new JID(ParamUtils.getParameter(request, "new-service"));
+                        affected = PushServiceManager.renameService(oldService, newService);
+                        webManager.logEvent("Moved push notification registrations to a new service address", "old service = " + oldService + ",\nnew service = " + newService + ",\nupdated = " + affected);
+                        break;
+                    }
+                    case "deregister-nodes": {
+                        final String nodePattern = ParamUtils.getParameter(request, "node-pattern");
+                        affected = PushServiceManager.deregisterNodes(nodePattern);
+                        webManager.logEvent("Removed push notification registrations for nodes matching a pattern", "node pattern = " + nodePattern + ",\nremoved = " + affected);
+                        break;
+                    }
+                    default:
+                        errors.put("action", "Unknown action.");
+                }
+            } catch (Exception e) {
+                errors.put(action, e.getMessage());
+            }
+        }
+    }
+
+    String csrfParam = StringUtils.randomString(15);
+    CookieUtils.setCookie(request, response, "csrf", csrfParam, -1);
+    pageContext.setAttribute("csrf", csrfParam);
+    pageContext.setAttribute("errors", errors);
+    pageContext.setAttribute("affected", affected);
+    pageContext.setAttribute("serviceCounts", PushServiceManager.getServiceCounts());
+%>
+
+<html>
+<head>
+    <title>
+        <fmt:message key="pushnotification.services.title"/>
+    </title>
+    <meta name="pageID" content="pushnotification-services"/>
+</head>
+<body>
+
+<c:choose>
+    <c:when test="${not empty errors}">
+        <c:forEach var="err" items="${errors}">
+            <admin:infobox type="error">
+                <c:choose>
+                    <c:when test="${err.key eq 'csrf'}"><fmt:message key="global.csrf.failed" /></c:when>
+                    <c:otherwise><fmt:message key="pushnotification.settings.error" />: <c:out value="${err.key}"/>! <c:out value="${err.value}"/></c:otherwise>
+                </c:choose>
+            </admin:infobox>
+        </c:forEach>
+    </c:when>
+    <c:when test="${not empty affected}">
+        <admin:infobox type="success">
+            <fmt:message key="pushnotification.services.success"><fmt:param value="${affected}"/></fmt:message>
+        </admin:infobox>
+    </c:when>
+</c:choose>
+
+<p><fmt:message key="pushnotification.services.description.detail" /></p>
+<br />
+
+<div class="jive-table">
+    <table cellpadding="0" cellspacing="0" border="0" width="100%">
+        <thead>
+        <tr>
+            <th nowrap><fmt:message key="pushnotification.services.service" /></th>
+            <th nowrap><fmt:message key="pushnotification.services.registrations" /></th>
+        </tr>
+        </thead>
+        <tbody>
+        <c:if test="${empty serviceCounts}">
+            <tr><td colspan="2"><fmt:message key="pushnotification.services.none" /></td></tr>
+        </c:if>
+        <c:forEach var="entry" items="${serviceCounts}">
+            <tr>
+                <td><c:out value="${entry.key}"/></td>
+                <td><c:out value="${entry.value}"/></td>
+            </tr>
+        </c:forEach>
+        </tbody>
+    </table>
+</div>
+<br />
+
+<form action="pushnotification-services.jsp" method="post">
+    <input type="hidden" name="csrf" value="${csrf}" />
+    <input type="hidden" name="action" value="deregister-service" />
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.services.deregister-service.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <p><fmt:message key="pushnotification.services.deregister-service.description" /></p>
+        <label for="deregister-service"><fmt:message key="pushnotification.services.service" /></label>
+        <input type="text" name="service" id="deregister-service" size="40" />
+        <button type="submit"><fmt:message key="pushnotification.services.deregister-service.submit" /></button>
+    </div>
+</form>
+
+<form action="pushnotification-services.jsp" method="post">
+    <input type="hidden" name="csrf" value="${csrf}" />
+    <input type="hidden" name="action" value="rename-service" />
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.services.rename-service.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <p><fmt:message key="pushnotification.services.rename-service.description" /></p>
+        <label for="rename-service"><fmt:message key="pushnotification.services.service" /></label>
+        <input type="text" name="service" id="rename-service" size="40" />
+        <label for="rename-new-service"><fmt:message key="pushnotification.services.new-service" /></label>
+        <input type="text" name="new-service" id="rename-new-service" size="40" />
+        <button type="submit"><fmt:message key="pushnotification.services.rename-service.submit" /></button>
+    </div>
+</form>
+
+<form action="pushnotification-services.jsp" method="post">
+    <input type="hidden" name="csrf" value="${csrf}" />
+    <input type="hidden" name="action" value="deregister-nodes" />
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.services.deregister-nodes.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <p><fmt:message key="pushnotification.services.deregister-nodes.description" /></p>
+        <label for="node-pattern"><fmt:message key="pushnotification.services.node-pattern" /></label>
+        <input type="text" name="node-pattern" id="node-pattern" size="40" />
+        <button type="submit"><fmt:message key="pushnotification.services.deregister-nodes.submit" /></button>
+    </div>
+</form>
+
+</body>
+</html>
@@ -1,9 +1,16 @@
 <%@ page contentType="text/html; charset=UTF-8" %>
 
 <%@ page import="org.jivesoftware.util.*" %>
+<%@ page import="java.time.Duration" %>
+<%@ page import="java.util.ArrayList" %>
 <%@ page import="java.util.HashMap" %>
+<%@ page import="java.util.LinkedHashMap" %>
+<%@ page import="java.util.List" %>
 <%@ page import="java.util.Map" %>
 <%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushInterceptor" %>
+<%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushNotificationPlugin" %>
+<%@ page import="org.igniterealtime.openfire.plugins.pushnotification.PushPriority" %>
+<%@ page import="org.jivesoftware.openfire.XMPPServer" %>
 
 <%@ taglib uri="admin" prefix="admin" %>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
@@ -48,6 +55,28 @@
     pageContext.setAttribute("summeryEnable", PushInterceptor.SUMMARY_ENABLE.getValue());
     pageContext.setAttribute("summeryIncludeLastSender", PushInterceptor.SUMMARY_INCLUDE_LAST_SENDER.getValue());
     pageContext.setAttribute("summeryIncludeLastMessageBody", PushInterceptor.SUMMARY_INCLUDE_LAST_MESSAGE_BODY.getValue());
+    XMPPServer.getInstance().getPluginManager().getPluginByName("Push Notification")
+        .map(plugin -> ((PushNotificationPlugin) plugin).getOverloadController())
+        .ifPresent(controller -> {
+            pageContext.setAttribute("overloadLevel", controller.getLevel());
+            pageContext.setAttribute("overloadSignals", controller.getSignals());
+        });
+    XMPPServer.getInstance().getPluginManager().getPluginByName("Push Notification")
+        .map(plugin -> ((PushNotificationPlugin) plugin).getDeliveryQueue())
+        .ifPresent(queue -> {
+            final List<Map<String, Object>> lanes = new ArrayList<>();
+            for (final PushPriority priority : PushPriority.values()) {
+                final Map<String, Object> lane = new LinkedHashMap<>();
+                lane.put("priority", priority);
+                lane.put("depth", queue.getQueueDepth(priority));
+                for (final int percentile : new int[] { 50, 90, 99 }) {
+                    final Duration latency = queue.getLatencyPercentile(priority, percentile);
+                    lane.put("p" + percentile, latency == null ? "-" : latency.toMillis() + " ms");
+                }
+                lanes.add(lane);
+            }
+            pageContext.setAttribute("lanes", lanes);
+        });
 %>
 
 <html>
@@ -80,6 +109,56 @@
 <p><fmt:message key="pushnotification.settings.description.detail" /></p>
 <br />
 
+<c:if test="${not empty overloadLevel}">
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.settings.overload.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <p>
+            <fmt:message key="pushnotification.settings.overload.level">
+                <fmt:param><b><c:out value="${overloadLevel}"/></b></fmt:param>
+            </fmt:message>
+            (<c:out value="${overloadSignals}"/>)
+        </p>
+        <c:if test="${overloadLevel ne 'NORMAL'}">
+            <p><fmt:message key="pushnotification.settings.overload.description" /></p>
+        </c:if>
+    </div>
+</c:if>
+
+<c:if test="${not empty lanes}">
+    <div class="jive-contentBoxHeader">
+        <fmt:message key="pushnotification.settings.lanes.boxtitle" />
+    </div>
+    <div class="jive-contentBox">
+        <p><fmt:message key="pushnotification.settings.lanes.description" /></p>
+        <div class="jive-table">
+            <table cellpadding="0" cellspacing="0" border="0" width="100%">
+                <thead>
+                <tr>
+                    <th nowrap><fmt:message key="pushnotification.settings.lanes.lane" /></th>
+                    <th nowrap><fmt:message key="pushnotification.settings.lanes.queued" /></th>
+                    <th nowrap>p50</th>
+                    <th nowrap>p90</th>
+                    <th nowrap>p99</th>
+                </tr>
+                </thead>
+                <tbody>
+                <c:forEach var="lane" items="${lanes}">
+                    <tr>
+                        <td><c:out value="${lane.priority}"/></td>
+                        <td><c:out value="${lane.depth}"/></td>
+                        <td><c:out value="${lane.p50}"/></td>
+                        <td><c:out value="${lane.p90}"/></td>
+                        <td><c:out value="${lane.p99}"/></td>
+                    </tr>
+                </c:forEach>
+                </tbody>
+            </table>
+        </div>
+    </div>
+</c:if>
+
 <form action="pushnotification-settings.jsp" method="post">
     <input type="hidden" name="csrf" value="${csrf}" />
     <div class="jive-contentBoxHeader">
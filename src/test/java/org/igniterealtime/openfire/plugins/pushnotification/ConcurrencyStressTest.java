@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.PushNotificationSteamManagementTerminationDelegate;
+import org.jivesoftware.util.JiveGlobals;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A stress test of the state that is shared by threads that process messages for the same user: the push attempt
+ * trackers (that deduplicate and rate limit push notifications) and the Stream Management termination delegate.
+ *
+ * Every scenario lets many threads operate on the same user (or delegate) at the same time, and counts the
+ * observations that violate an invariant. Scenarios that consist of rounds start all threads of a round at the same
+ * moment, and record the outcome of every round (in the style of jcstress). The push attempt scenarios are executed
+ * against each implementation of {@link PushAttemptTracker}:
+ * <ul>
+ *     <li><tt>local</tt>: {@link LocalPushAttemptTracker}, as used by servers that are not part of a cluster;</li>
+ *     <li><tt>cached</tt>: {@link CachedPushAttemptTracker}, as used in a cluster (outside of Openfire, its caches are
+ *     local caches, but they are accessed through the same cache and lock abstractions);</li>
+ *     <li><tt>switching</tt>: {@link SwitchingPushAttemptTracker}, while a separate thread repeatedly simulates this server
+ *     joining and leaving a cluster. As documented, attempts can be missed while state is copied, so one violation per
+ *     simulated change of the cluster is tolerated.</li>
+ * </ul>
+ *
+ * Each scenario runs for one second by default. To look for rare races (for example, when verifying a lock-free
+ * replacement of one of these implementations), run longer with <tt>mvn test -Dpushnotifications.stress.seconds=30</tt>.
+ */
+public class ConcurrencyStressTest
+{
+    private static final int THREADS = Math.max( 4, Runtime.getRuntime().availableProcessors() );
+    private static final int SECONDS = Integer.getInteger( "pushnotifications.stress.seconds", 1 );
+
+    @TempDir
+    static Path home;
+
+    @BeforeAll
+    public static void setUpHome() throws Exception
+    {
+        // The size of the rings of attempts depends on a system property. Without a completed setup, system properties
+        // resolve to their default values, without the need for Openfire's database.
+        Files.createDirectories( home.resolve( "conf" ) );
+        Files.write( home.resolve( "conf" ).resolve( "openfire.xml" ), "<jive></jive>".getBytes( StandardCharsets.UTF_8 ) );
+        JiveGlobals.setHomePath( home );
+    }
+
+    private static PushAttemptTracker tracker( final String name )
+    {
+        switch ( name ) {
+            case "local":     return new LocalPushAttemptTracker();
+            case "cached":    return new CachedPushAttemptTracker();
+            case "switching": return new SwitchingPushAttemptTracker();
+            default: throw new IllegalArgumentException( "Unknown tracker: " + name );
+        }
+    }
+
+    /**
+     * In every round, all threads try to attempt a push notification for the same message. Exactly one must be allowed.
+     */
+    @ParameterizedTest
+    @ValueSource( strings = { "local", "cached", "switching" } )
+    public void testDeduplication( final String name ) throws Exception
+    {
+        // Setup test fixture.
+        final PushAttemptTracker tracker = tracker( name );
+        final String username = "dedup-" + name;
+        final AtomicInteger round = new AtomicInteger();
+        final AtomicInteger allowed = new AtomicInteger();
+        final AtomicLong violations = new AtomicLong();
+        final Map<Integer, AtomicLong> histogram = new ConcurrentSkipListMap<>();
+        final long deadline = deadline();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier( THREADS, () -> {
+            if ( round.get() > 0 ) {
+                final int count = allowed.getAndSet( 0 );
+                histogram.computeIfAbsent( count, c -> new AtomicLong() ).incrementAndGet();
+                if ( count != 1 ) {
+                    violations.incrementAndGet();
+                }
+            }
+            round.incrementAndGet();
+            stop.set( System.nanoTime() > deadline );
+        } );
+
+        // Execute system under test.
+        final long flips = execute( tracker, () -> {
+            while ( true ) {
+                barrier.await();
+                if ( stop.get() ) {
+                    return;
+                }
+                final String outcome = tracker.tryAttempt( username, username + "->" + round.get(), Duration.ofMinutes( 5 ), null, Integer.MAX_VALUE );
+                if ( "allowed".equals( outcome ) ) {
+                    allowed.incrementAndGet();
+                } else if ( !"duplicate".equals( outcome ) ) {
+                    violations.incrementAndGet();
+                }
+            }
+        } );
+
+        // Verify results.
+        assertTrue( round.get() > 1, "No round completed." );
+        assertTrue( violations.get() <= flips, "Violations: " + violations.get() + " (tolerated: " + flips + "). Allowed per round: " + histogram );
+    }
+
+    /**
+     * All threads try to attempt push notifications for distinct messages of the same user, as fast as possible, while
+     * the amount of recent attempts is observed. No more attempts than the rate limit (plus the one that reached it)
+     * must be recorded within one second.
+     */
+    @ParameterizedTest
+    @ValueSource( strings = { "local", "cached", "switching" } )
+    public void testRateLimit( final String name ) throws Exception
+    {
+        // Setup test fixture.
+        final PushAttemptTracker tracker = tracker( name );
+        final String username = "rate-" + name;
+        final int maxPerSecond = PushInterceptor.MAX_PER_SECOND.getValue();
+        final AtomicLong allowed = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+        final AtomicLong sequence = new AtomicLong();
+        final long deadline = deadline();
+        final long start = System.nanoTime();
+
+        // Execute system under test.
+        final long flips = execute( tracker, () -> {
+            final boolean observer = Thread.currentThread().getName().endsWith( "-0" );
+            while ( System.nanoTime() < deadline ) {
+                if ( observer ) {
+                    if ( tracker.attemptsForLast( username, Duration.ofSeconds( 1 ) ) > maxPerSecond + 1 ) {
+                        violations.incrementAndGet();
+                    }
+                } else if ( "allowed".equals( tracker.tryAttempt( username, username + "->" + sequence.incrementAndGet(), Duration.ofMinutes( 5 ), null, maxPerSecond ) ) ) {
+                    allowed.incrementAndGet();
+                }
+            }
+        } );
+
+        // Verify results.
+        // Over the entire run, at most (limit + 1) attempts per started second are allowed.
+        final long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() - start ) + 1;
+        if ( allowed.get() > ( maxPerSecond + 1 ) * elapsedSeconds ) {
+            violations.incrementAndGet();
+        }
+        assertTrue( violations.get() <= flips, "Violations: " + violations.get() + " (tolerated: " + flips + "). Allowed " + allowed.get() + " in " + elapsedSeconds + "s at " + maxPerSecond + "/s" );
+    }
+
+    /**
+     * Every thread records a small amount of attempts for a user of its own, and for a user that is shared by all
+     * threads. Every attempt for its own user must be counted and found. The amount of attempts for the shared user must
+     * not be lower than the amount that the thread itself recorded (as that is fewer than the amount that is retained).
+     */
+    @ParameterizedTest
+    @ValueSource( strings = { "local", "cached", "switching" } )
+    public void testCountAttempts( final String name ) throws Exception
+    {
+        // Setup test fixture.
+        final PushAttemptTracker tracker = tracker( name );
+        final int perUser = 8; // fewer than the minimum amount of attempts that is retained per user.
+        final AtomicLong violations = new AtomicLong();
+        final AtomicInteger round = new AtomicInteger();
+        final long deadline = deadline();
+
+        // Execute system under test.
+        final long flips = execute( tracker, () -> {
+            final String thread = Thread.currentThread().getName();
+            while ( System.nanoTime() < deadline ) {
+                final int r = round.incrementAndGet();
+                final String own = "count-" + name + "-" + thread + "-" + r;
+                final String shared = "count-" + name + "-shared-" + ( r / THREADS );
+                for ( int i = 0; i < perUser; i++ ) {
+                    tracker.addAttempt( own, own + "->" + i );
+                    tracker.addAttempt( shared, shared + "->" + thread + "-" + i );
+                }
+                if ( tracker.attemptsForLast( own, Duration.ofMinutes( 1 ) ) != perUser ) {
+                    violations.incrementAndGet();
+                }
+                for ( int i = 0; i < perUser; i++ ) {
+                    if ( !tracker.wasAttempted( own, own + "->" + i, Duration.ofMinutes( 1 ) ) ) {
+                        violations.incrementAndGet();
+                    }
+                }
+                if ( tracker.attemptsForLast( shared, Duration.ofMinutes( 1 ) ) < perUser ) {
+                    violations.incrementAndGet();
+                }
+            }
+        } );
+        tracker.purgeAllOlderThan( Instant.now().plusSeconds( 1 ) );
+
+        // Verify results.
+        assertTrue( violations.get() <= flips, "Violations: " + violations.get() + " (tolerated: " + flips + ")" );
+    }
+
+    /**
+     * Threads record attempts while one thread repeatedly purges attempts that are older than a minute. No recent
+     * attempt must be lost. After a purge of everything, no attempt must remain.
+     */
+    @ParameterizedTest
+    @ValueSource( strings = { "local", "cached", "switching" } )
+    public void testPurge( final String name ) throws Exception
+    {
+        // Setup test fixture.
+        final PushAttemptTracker tracker = tracker( name );
+        final String username = "purge-" + name;
+        final AtomicLong violations = new AtomicLong();
+        final AtomicLong sequence = new AtomicLong();
+        final Map<String, String> recorded = new ConcurrentHashMap<>(); // id -> user
+        final long deadline = deadline();
+
+        // Execute system under test.
+        final long flips = execute( tracker, () -> {
+            final boolean purger = Thread.currentThread().getName().endsWith( "-0" );
+            while ( System.nanoTime() < deadline ) {
+                if ( purger ) {
+                    tracker.purgeAllOlderThan( Instant.now().minus( Duration.ofMinutes( 1 ) ) );
+                } else {
+                    final String user = username + "-" + Thread.currentThread().getName();
+                    final String id = user + "->" + sequence.incrementAndGet();
+                    tracker.addAttempt( user, id );
+                    if ( !tracker.wasAttempted( user, id, Duration.ofMinutes( 1 ) ) ) {
+                        violations.incrementAndGet();
+                    }
+                    if ( recorded.size() < 10000 ) {
+                        recorded.put( id, user );
+                    }
+                }
+            }
+        } );
+        tracker.purgeAllOlderThan( Instant.now().plusSeconds( 1 ) );
+
+        // Verify results.
+        for ( final Map.Entry<String, String> entry : recorded.entrySet() ) {
+            if ( tracker.wasAttempted( entry.getValue(), entry.getKey(), Duration.ofMinutes( 1 ) ) || tracker.attemptsForLast( entry.getValue(), Duration.ofMinutes( 1 ) ) != 0 ) {
+                violations.incrementAndGet();
+            }
+        }
+        assertTrue( violations.get() <= flips, "Violations: " + violations.get() + " (tolerated: " + flips + ")" );
+    }
+
+    /**
+     * Threads record push notifications on a delegate without any activity. The moment of the oldest unanswered push
+     * notification, once set, must never change, and the session must not be terminated before a day has passed.
+     */
+    @Test
+    public void testDelegateOldestPushIsStable() throws Exception
+    {
+        // Setup test fixture.
+        final PushNotificationSteamManagementTerminationDelegate delegate = new PushNotificationSteamManagementTerminationDelegate();
+        final AtomicLong violations = new AtomicLong();
+        final long deadline = deadline();
+
+        // Execute system under test.
+        execute( null, () -> {
+            Instant first = null;
+            while ( System.nanoTime() < deadline ) {
+                delegate.registerPushNotification();
+                final Instant oldest = delegate.getOldestUnansweredPushNotification();
+                if ( oldest == null || ( first != null && !first.equals( oldest ) ) ) {
+                    violations.incrementAndGet();
+                }
+                first = oldest;
+                if ( delegate.shouldTerminate( Duration.ofDays( 1 ) ) ) {
+                    violations.incrementAndGet();
+                }
+            }
+        } );
+
+        // Verify results.
+        assertEquals( 0, violations.get() );
+    }
+
+    /**
+     * In every round, half of the threads register activity while the other half register a push notification, on a
+     * delegate without state. Afterwards, either no push notification is unanswered, or the oldest one was registered in
+     * that round.
+     */
+    @Test
+    public void testDelegateActivityRacesPush() throws Exception
+    {
+        // Setup test fixture.
+        final PushNotificationSteamManagementTerminationDelegate delegate = new PushNotificationSteamManagementTerminationDelegate();
+        final AtomicInteger round = new AtomicInteger();
+        final AtomicLong violations = new AtomicLong();
+        final Map<String, AtomicLong> histogram = new ConcurrentSkipListMap<>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final Instant[] roundStart = new Instant[1];
+        final long deadline = deadline();
+        final CyclicBarrier barrier = new CyclicBarrier( THREADS, () -> {
+            if ( round.get() > 0 ) {
+                final Instant oldest = delegate.getOldestUnansweredPushNotification();
+                histogram.computeIfAbsent( oldest == null ? "answered" : "unanswered", o -> new AtomicLong() ).incrementAndGet();
+                if ( oldest != null && oldest.isBefore( roundStart[0] ) ) {
+                    violations.incrementAndGet();
+                }
+            }
+            delegate.registerActivity();
+            roundStart[0] = Instant.now();
+            round.incrementAndGet();
+            stop.set( System.nanoTime() > deadline );
+        } );
+
+        // Execute system under test.
+        execute( null, () -> {
+            final String thread = Thread.currentThread().getName();
+            final boolean pusher = Integer.parseInt( thread.substring( thread.lastIndexOf( '-' ) + 1 ) ) % 2 == 0;
+            while ( true ) {
+                barrier.await();
+                if ( stop.get() ) {
+                    return;
+                }
+                if ( pusher ) {
+                    delegate.registerPushNotification();
+                } else {
+                    delegate.registerActivity();
+                }
+            }
+        } );
+
+        // Verify results.
+        assertEquals( 0, violations.get(), "Outcomes: " + histogram );
+    }
+
+    private static long deadline()
+    {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos( SECONDS );
+    }
+
+    @FunctionalInterface
+    interface Task
+    {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a task on all threads, and waits for them to finish. When the tracker is a {@link SwitchingPushAttemptTracker},
+     * an additional thread simulates this server joining and leaving a cluster while the task runs.
+     *
+     * @return The amount of simulated changes of the cluster.
+     */
+    private static long execute( final PushAttemptTracker tracker, final Task task ) throws Exception
+    {
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( THREADS, runnable -> new Thread( runnable, "stress-" + counter.getAndIncrement() ) );
+        final List<Future<?>> futures = new ArrayList<>();
+        for ( int t = 0; t < THREADS; t++ ) {
+            futures.add( executor.submit( () -> { task.run(); return null; } ) );
+        }
+
+        final AtomicLong flips = new AtomicLong();
+        Thread flipper = null;
+        if ( tracker instanceof SwitchingPushAttemptTracker )
+        {
+            final SwitchingPushAttemptTracker switching = (SwitchingPushAttemptTracker) tracker;
+            flipper = new Thread( () -> {
+                final Random random = new Random();
+                while ( !Thread.currentThread().isInterrupted() ) {
+                    if ( flips.incrementAndGet() % 2 == 1 ) {
+                        switching.joinedCluster();
+                    } else {
+                        switching.leftCluster();
+                    }
+                    try {
+                        Thread.sleep( 5 + random.nextInt( 20 ) );
+                    } catch ( InterruptedException e ) {
+                        return;
+                    }
+                }
+            }, "stress-cluster" );
+            flipper.start();
+        }
+
+        try {
+            for ( final Future<?> future : futures ) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            if ( flipper != null ) {
+                flipper.interrupt();
+                flipper.join();
+                ( (SwitchingPushAttemptTracker) tracker ).leftCluster();
+            }
+        }
+        return flips.get();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Gives the tools in the test sources access to the public entry point of the push notification pipeline, which the
+ * plugin otherwise only hands out when running in Openfire.
+ */
+public final class PushPipeline
+{
+    private PushPipeline()
+    {}
+
+    /**
+     * Creates a service that submits push notifications through the provided interceptor.
+     *
+     * @param pushInterceptor The interceptor that processes submissions.
+     * @return A push notification service.
+     */
+    @Nonnull
+    public static PushNotificationService serviceFor( @Nonnull final PushInterceptor pushInterceptor )
+    {
+        return new PushNotificationService( pushInterceptor );
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.appserver;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies {@link HttpPushTransport} end-to-end, against a local HTTP server.
+ */
+public class HttpPushTransportTest
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final AtomicInteger status = new AtomicInteger( 200 );
+    private HttpPushTransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+        server.createContext( "/push", exchange -> {
+            try ( final InputStream in = exchange.getRequestBody() ) {
+                bodies.add( new String( in.readAllBytes(), StandardCharsets.UTF_8 ) );
+            }
+            exchange.sendResponseHeaders( status.get(), -1 );
+            exchange.close();
+        } );
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor( serverExecutor );
+        server.start();
+
+        final String endpoint = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/push";
+        transport = new HttpPushTransport( () -> endpoint );
+        transport.start();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        transport.stop();
+        server.stop( 0 );
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testDeliversNotificationsAsJson() throws Exception
+    {
+        // Execute system under test.
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for ( int i = 0; i < 120; i++ ) {
+            futures.add( transport.deliver( new PushRequest( "node-" + i, Map.of( "secret", "s\"" + i ), Map.of( "message-count", "1" ) ) ) );
+        }
+        CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).get( 30, TimeUnit.SECONDS );
+
+        // Verify results.
+        final String all = String.join( "", bodies );
+        for ( int i = 0; i < 120; i++ ) {
+            assertTrue( all.contains( "{\"node\":\"node-" + i + "\",\"options\":{\"secret\":\"s\\\"" + i + "\"},\"summary\":{\"message-count\":\"1\"}}" ), "Missing notification " + i );
+        }
+        for ( final String body : bodies ) {
+            assertTrue( body.startsWith( "{\"notifications\":[" ) );
+        }
+        assertTrue( bodies.size() < 120, "Notifications are expected to be batched." );
+    }
+
+    @Test
+    public void testFailsOnErrorStatus()
+    {
+        // Setup test fixture.
+        status.set( 503 );
+
+        // Execute system under test.
+        final CompletableFuture<Void> future = transport.deliver( new PushRequest( "node", Map.of(), Map.of() ) );
+
+        // Verify results.
+        final ExecutionException e = assertThrows( ExecutionException.class, () -> future.get( 30, TimeUnit.SECONDS ) );
+        assertInstanceOf( IOException.class, e.getCause() );
+    }
+
+    @Test
+    public void testDeliverAfterStopFails()
+    {
+        // Setup test fixture.
+        transport.stop();
+
+        // Execute system under test.
+        final CompletableFuture<Void> future = transport.deliver( new PushRequest( "node", Map.of(), Map.of() ) );
+
+        // Verify results.
+        assertTrue( future.isCompletedExceptionally() );
+    }
+
+    @Test
+    public void testEveryNotificationCompletesWhenStoppedConcurrently() throws Exception
+    {
+        // Setup test fixture.
+        final int threads = 8;
+        final ExecutorService producers = Executors.newFixedThreadPool( threads );
+        final List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+        final CountDownLatch started = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ ) {
+            producers.submit( () -> {
+                started.countDown();
+                for ( int i = 0; i < 2000; i++ ) {
+                    futures.add( transport.deliver( new PushRequest( "node-" + i, Map.of(), Map.of() ) ) );
+                }
+            } );
+        }
+
+        // Execute system under test.
+        started.await();
+        transport.stop();
+        producers.shutdown();
+        assertTrue( producers.awaitTermination( 30, TimeUnit.SECONDS ) );
+
+        // Verify results.
+        for ( final CompletableFuture<Void> future : futures ) {
+            try {
+                future.get( 30, TimeUnit.SECONDS );
+            } catch ( ExecutionException e ) {
+                // Failing is fine, as long as the future completes.
+            }
+        }
+    }
+}
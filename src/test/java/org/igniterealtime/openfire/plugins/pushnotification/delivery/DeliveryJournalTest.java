@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xmpp.packet.IQ;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies that {@link DeliveryJournal} retains its records in order, also when it is reopened, compacted, or reopened
+ * with a smaller capacity.
+ */
+public class DeliveryJournalTest
+{
+    private static final int HEADER_SIZE = 24;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    /**
+     * The amount of bytes that a single record (including its length prefix) takes up in the journal. All deliveries
+     * created by {@link #delivery(int)} have the same size.
+     */
+    private int recordSize;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        file = directory.resolve( "delivery-journal.dat" );
+        recordSize = Integer.BYTES + DeliveryJournal.serialize( delivery( 0 ) ).length;
+    }
+
+    private static PushDelivery delivery( final int index )
+    {
+        final IQ push = new IQ( IQ.Type.set );
+        push.setID( "push-" + index );
+        push.setTo( "push.example.org" );
+        push.setChildElement( "pubsub", "http://jabber.org/protocol/pubsub" ).addElement( "publish" ).addAttribute( "node", "node-" + index );
+        return new PushDelivery( "user" + index, "fingerprint-" + index, push, PushPriority.DIRECT );
+    }
+
+    private static void assertPolled( final DeliveryJournal journal, final int index )
+    {
+        final PushDelivery result = journal.poll();
+        assertNotNull( result );
+        assertEquals( "user" + index, result.getUsername() );
+        assertEquals( "fingerprint-" + index, result.getFingerprint() );
+        assertEquals( "node-" + index, result.getNode() );
+    }
+
+    @Test
+    public void testPollReturnsAppendedDeliveriesInOrder() throws Exception
+    {
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, 64 * 1024 ) )
+        {
+            // Execute system under test.
+            for ( int i = 0; i < 5; i++ ) {
+                assertTrue( journal.append( delivery( i ) ) );
+            }
+
+            // Verify results.
+            assertEquals( 5, journal.size() );
+            for ( int i = 0; i < 5; i++ ) {
+                assertPolled( journal, i );
+            }
+            assertTrue( journal.isEmpty() );
+            assertEquals( 0, journal.getUsedBytes() );
+            assertNull( journal.poll() );
+        }
+    }
+
+    @Test
+    public void testReopenRetainsUnconsumedDeliveries() throws Exception
+    {
+        // Setup test fixture.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, 64 * 1024 ) )
+        {
+            for ( int i = 0; i < 3; i++ ) {
+                journal.append( delivery( i ) );
+            }
+            assertPolled( journal, 0 );
+        }
+
+        // Execute system under test.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, 64 * 1024 ) )
+        {
+            // Verify results.
+            assertEquals( 2, journal.size() );
+            assertPolled( journal, 1 );
+            assertPolled( journal, 2 );
+            assertTrue( journal.isEmpty() );
+        }
+    }
+
+    @Test
+    public void testAppendCompactsWhenDataAreaIsExhausted() throws Exception
+    {
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, HEADER_SIZE + 3 * recordSize ) )
+        {
+            // Setup test fixture.
+            for ( int i = 0; i < 3; i++ ) {
+                assertTrue( journal.append( delivery( i ) ) );
+            }
+            assertFalse( journal.append( delivery( 3 ) ), "A journal that is full should reject a delivery." );
+            assertPolled( journal, 0 );
+
+            // Execute system under test.
+            final boolean result = journal.append( delivery( 3 ) );
+
+            // Verify results.
+            assertTrue( result, "The space of the consumed record should have been reclaimed." );
+            assertEquals( 3, journal.size() );
+            assertPolled( journal, 1 );
+            assertPolled( journal, 2 );
+            assertPolled( journal, 3 );
+        }
+    }
+
+    @Test
+    public void testReopenWithSmallerCapacityMigratesUnconsumedDeliveries() throws Exception
+    {
+        // Setup test fixture.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, 64 * 1024 ) )
+        {
+            for ( int i = 0; i < 10; i++ ) {
+                journal.append( delivery( i ) );
+            }
+            for ( int i = 0; i < 5; i++ ) {
+                assertPolled( journal, i );
+            }
+        }
+
+        // Execute system under test.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, HEADER_SIZE + 6 * recordSize ) )
+        {
+            // Verify results.
+            assertEquals( 5, journal.size() );
+            for ( int i = 5; i < 10; i++ ) {
+                assertPolled( journal, i );
+            }
+        }
+    }
+
+    @Test
+    public void testReopenWithSmallerCapacityDropsDeliveriesThatDoNotFit() throws Exception
+    {
+        // Setup test fixture.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, 64 * 1024 ) )
+        {
+            for ( int i = 0; i < 10; i++ ) {
+                journal.append( delivery( i ) );
+            }
+        }
+
+        // Execute system under test.
+        try ( final DeliveryJournal journal = new DeliveryJournal( file, HEADER_SIZE + 3 * recordSize ) )
+        {
+            // Verify results.
+            assertEquals( 3, journal.size() );
+            for ( int i = 0; i < 3; i++ ) {
+                assertPolled( journal, i );
+            }
+            assertTrue( journal.isEmpty() );
+        }
+    }
+}
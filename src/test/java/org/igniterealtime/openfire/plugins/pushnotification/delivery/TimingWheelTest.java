@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.delivery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies that {@link TimingWheel} executes tasks after their delay, also when they are cascaded down from higher
+ * wheels, and that it honours cancellation.
+ */
+public class TimingWheelTest
+{
+    private TimingWheel timer;
+
+    @BeforeEach
+    public void setUp()
+    {
+        // A tiny wheel (four buckets of one millisecond) causes tasks with short delays to be placed in higher wheels.
+        timer = new TimingWheel( "test-timing-wheel-", 1, TimeUnit.MILLISECONDS, 4, Runnable::run );
+        timer.start();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        timer.stop();
+    }
+
+    @Test
+    public void testExecutesTasksAcrossCascadeBoundaries() throws Exception
+    {
+        // Setup test fixture.
+        final long[] delays = { 2, 5, 17, 70, 300 }; // wheel 0, 1, 2, 3 and 4
+        final Queue<Long> executed = new ConcurrentLinkedQueue<>();
+        final Queue<Long> early = new ConcurrentLinkedQueue<>();
+        final CountDownLatch latch = new CountDownLatch( delays.length );
+        final long start = System.nanoTime();
+
+        // Execute system under test.
+        for ( int i = delays.length - 1; i >= 0; i-- ) {
+            final long delay = delays[i];
+            timer.schedule( () -> {
+                if ( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < delay ) {
+                    early.add( delay );
+                }
+                executed.add( delay );
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS );
+        }
+
+        // Verify results.
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ), "All tasks should have expired." );
+        assertArrayEquals( new Long[] { 2L, 5L, 17L, 70L, 300L }, executed.toArray( new Long[0] ) );
+        assertTrue( early.isEmpty(), "Tasks should not expire before their delay, but these did: " + early );
+        assertEquals( 0, timer.getPendingCount() );
+    }
+
+    @Test
+    public void testCancelledTaskIsNotExecuted() throws Exception
+    {
+        // Setup test fixture.
+        final CountDownLatch cancelledRan = new CountDownLatch( 1 );
+        final CountDownLatch laterRan = new CountDownLatch( 1 );
+        final TimingWheel.Timeout cancelled = timer.schedule( cancelledRan::countDown, 20, TimeUnit.MILLISECONDS );
+        final TimingWheel.Timeout later = timer.schedule( laterRan::countDown, 40, TimeUnit.MILLISECONDS );
+
+        // Execute system under test.
+        final boolean result = cancelled.cancel();
+
+        // Verify results.
+        assertTrue( result );
+        assertFalse( cancelled.cancel(), "A task can be cancelled only once." );
+        assertTrue( cancelled.isCancelled() );
+        assertTrue( laterRan.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, cancelledRan.getCount(), "A cancelled task should not be executed." );
+        assertTrue( later.isExpired() );
+        assertFalse( later.cancel(), "An expired task cannot be cancelled." );
+        assertEquals( 0, timer.getPendingCount() );
+    }
+
+    @Test
+    public void testStopReturnsPendingTasks()
+    {
+        // Setup test fixture.
+        final Runnable pending = () -> fail( "A pending task should not be executed when the timer stops." );
+        final Runnable cancelled = () -> fail( "A cancelled task should not be executed." );
+        timer.schedule( pending, 1, TimeUnit.HOURS );
+        timer.schedule( cancelled, 1, TimeUnit.HOURS ).cancel();
+
+        // Execute system under test.
+        final List<Runnable> result = timer.stop();
+
+        // Verify results.
+        assertEquals( List.of( pending ), result );
+        assertEquals( 0, timer.getPendingCount() );
+        assertThrows( IllegalStateException.class, () -> timer.schedule( () -> {}, 1, TimeUnit.MILLISECONDS ) );
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.mention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies that {@link MentionMatcher} finds words only as whole words, case-insensitively, also when the words overlap.
+ */
+public class MentionMatcherTest
+{
+    @Test
+    public void testMatchesWholeWords()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "ann" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "ann" ) );
+        assertTrue( matcher.matches( "ann: are you there?" ) );
+        assertTrue( matcher.matches( "Ask Ann." ) );
+        assertTrue( matcher.matches( "(ann)" ) );
+        assertTrue( matcher.matches( "hey\nann" ) );
+        assertFalse( matcher.matches( "annual" ) );
+        assertFalse( matcher.matches( "joann" ) );
+        assertFalse( matcher.matches( "ann2" ) );
+        assertFalse( matcher.matches( "" ) );
+    }
+
+    @Test
+    public void testMatchesCaseInsensitively()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "Zo\u00eb" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "hi ZO\u00cb" ) );
+        assertTrue( matcher.matches( "hi zo\u00eb" ) );
+        assertFalse( matcher.matches( "hi zoe" ) );
+    }
+
+    @Test
+    public void testMatchesWordsWithPunctuation()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "john", "john@example.org" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "please ask john@example.org." ) );
+        assertTrue( matcher.matches( "please ask john." ) );
+        assertFalse( matcher.matches( "please ask johnny@example.org." ) );
+    }
+
+    @Test
+    public void testMatchesLongerWordWhenShorterWordIsNotWhole()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "ann", "anna" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "thanks anna" ) );
+        assertFalse( matcher.matches( "thanks annabel" ) );
+    }
+
+    @Test
+    public void testMatchesWordThatEndsInsideAnotherWord()
+    {
+        // Setup test fixture: 'she' and 'he' are found through failure links, while scanning for 'hers'.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "he", "she", "hers" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "is it hers?" ) );
+        assertTrue( matcher.matches( "ushers and she" ) );
+        assertTrue( matcher.matches( "x-he" ) );
+        assertFalse( matcher.matches( "ushers" ) );
+        assertFalse( matcher.matches( "shell" ) );
+    }
+
+    @Test
+    public void testMatchesSuffixOfAPartialMatch()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( List.of( "abcd", "bc", "xbc" ) );
+
+        // Execute system under test & verify results.
+        assertTrue( matcher.matches( "abx bc" ), "After a partial match of 'abcd' fails, 'bc' should still be found." );
+        assertTrue( matcher.matches( "a-xbc" ) );
+        assertFalse( matcher.matches( "abc d" ), "'bc' is preceded by a letter, and should not be found." );
+    }
+
+    @Test
+    public void testIgnoresBlankWords()
+    {
+        // Setup test fixture.
+        final MentionMatcher matcher = new MentionMatcher( Arrays.asList( "", "  ", null, " bob " ) );
+
+        // Execute system under test & verify results.
+        assertEquals( Set.of( "bob" ), matcher.getWords() );
+        assertTrue( matcher.matches( "hi bob" ) );
+        assertFalse( matcher.matches( "   " ) );
+    }
+
+    @Test
+    public void testEmptyMatcherNeverMatches()
+    {
+        // Execute system under test & verify results.
+        assertFalse( MentionMatcher.EMPTY.matches( "anything at all" ) );
+        assertFalse( MentionMatcher.EMPTY.matches( "" ) );
+        assertTrue( MentionMatcher.EMPTY.getWords().isEmpty() );
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses command line arguments of the form <tt>--name value</tt>, as used by the command line tools in this package.
+ */
+final class Arguments
+{
+    private Arguments() {}
+
+    static Map<String, String> parse( final String[] args )
+    {
+        final Map<String, String> result = new HashMap<>();
+        for ( int i = 0; i < args.length; i++ )
+        {
+            if ( !args[i].startsWith( "--" ) ) {
+                throw new IllegalArgumentException( "Unexpected argument: " + args[i] );
+            }
+            final String name = args[i].substring( 2 );
+            if ( i + 1 < args.length && !args[i + 1].startsWith( "--" ) ) {
+                result.put( name, args[++i] );
+            } else {
+                result.put( name, "true" );
+            }
+        }
+        return result;
+    }
+}
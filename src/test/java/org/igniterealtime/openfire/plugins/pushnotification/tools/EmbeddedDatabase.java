@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.tools;
+
+import org.jivesoftware.database.ConnectionProvider;
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.util.JiveGlobals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * An embedded HSQLDB database, created from the database scripts that ship with this plugin (the installation script,
+ * followed by any upgrade scripts for newer versions), that is used by Openfire's {@link DbConnectionManager} in place
+ * of the database of an Openfire server. This allows the tools in this package to use the database code of this plugin
+ * outside of Openfire, exactly as it is used by Openfire.
+ */
+final class EmbeddedDatabase implements ConnectionProvider
+{
+    private final String url;
+
+    private EmbeddedDatabase( final String url )
+    {
+        this.url = url;
+    }
+
+    /**
+     * Creates the database schema of this plugin, and makes Openfire's {@link DbConnectionManager} use the database.
+     *
+     * As {@link DbConnectionManager} records its configuration in Openfire's home directory, a new, temporary directory
+     * is used as that (see {@link #useTemporaryHome(String)}).
+     *
+     * @param url The JDBC URL of the (HSQLDB) database.
+     * @param scripts The directory that contains the database scripts.
+     */
+    static void install( final String url, final Path scripts ) throws SQLException, IOException
+    {
+        useTemporaryHome( "pushdb" );
+        createSchema( url, scripts );
+        DbConnectionManager.setConnectionProvider( new EmbeddedDatabase( url ) );
+    }
+
+    /**
+     * Stops Openfire's {@link DbConnectionManager} from using the database.
+     */
+    static void uninstall()
+    {
+        DbConnectionManager.destroyConnectionProvider();
+    }
+
+    /**
+     * Uses a new, temporary directory as Openfire's home directory. Its configuration does not have setup completed,
+     * which causes system properties to resolve to their default values, without the need for Openfire's database.
+     *
+     * @param prefix The prefix of the name of the directory.
+     */
+    static void useTemporaryHome( final String prefix ) throws IOException
+    {
+        final Path home = Files.createTempDirectory( prefix );
+        Files.createDirectories( home.resolve( "conf" ) );
+        Files.write( home.resolve( "conf" ).resolve( "openfire.xml" ), "<jive></jive>".getBytes( StandardCharsets.UTF_8 ) );
+        JiveGlobals.setHomePath( home );
+    }
+
+    /**
+     * Creates the database schema of this plugin, using the installation script and any upgrade scripts.
+     *
+     * @param url The JDBC URL of the (HSQLDB) database.
+     * @param scripts The directory that contains the database scripts.
+     */
+    static void createSchema( final String url, final Path scripts ) throws SQLException, IOException
+    {
+        try ( final Connection connection = DriverManager.getConnection( url, "SA", "" );
+              final Statement statement = connection.createStatement() )
+        {
+            statement.execute( "CREATE TABLE ofVersion (name VARCHAR(50) NOT NULL, version INTEGER NOT NULL, CONSTRAINT ofVersion_pk PRIMARY KEY (name))" );
+            statement.execute( "CREATE TABLE ofID (idType INTEGER NOT NULL, id BIGINT NOT NULL, CONSTRAINT ofID_pk PRIMARY KEY (idType))" );
+            executeScript( connection, scripts.resolve( "pushnotification_hsqldb.sql" ) );
+
+            // Apply the upgrade scripts for any version newer than the one that was installed, like Openfire would.
+            int version = getVersion( connection );
+            final Path upgrades = scripts.resolve( "upgrade" );
+            while ( Files.exists( upgrades.resolve( String.valueOf( version + 1 ) ).resolve( "pushnotification_hsqldb.sql" ) ) )
+            {
+                version++;
+                System.out.printf( "Applying upgrade script for version %d%n", version );
+                executeScript( connection, upgrades.resolve( String.valueOf( version ) ).resolve( "pushnotification_hsqldb.sql" ) );
+            }
+            System.out.printf( "Database schema is at version %d%n", getVersion( connection ) );
+        }
+    }
+
+    /**
+     * Adds a push service to the service dictionary table with a particular identifier, like the upgrade script that
+     * introduced that table: the identifier is used as its hash, and the sequence from which the plugin issues
+     * identifiers is advanced beyond it.
+     *
+     * @param connection A connection to the database.
+     * @param serviceID The identifier of the service.
+     * @param service The address of the service.
+     */
+    static void addService( final Connection connection, final long serviceID, final String service ) throws SQLException
+    {
+        try ( final PreparedStatement dict = connection.prepareStatement( "INSERT INTO ofPushNotiSvcDict (serviceID, service, serviceHash) VALUES(?,?,?)" );
+              final PreparedStatement sequence = connection.prepareStatement( "UPDATE ofID SET id = ? WHERE idType = 760 AND id <= ?" ) )
+        {
+            dict.setLong( 1, serviceID );
+            dict.setString( 2, service );
+            dict.setString( 3, String.valueOf( serviceID ) );
+            dict.execute();
+            sequence.setLong( 1, serviceID + 1 );
+            sequence.setLong( 2, serviceID );
+            sequence.execute();
+        }
+    }
+
+    static int getVersion( final Connection connection ) throws SQLException
+    {
+        try ( final Statement statement = connection.createStatement();
+              final ResultSet rs = statement.executeQuery( "SELECT version FROM ofVersion WHERE name = 'pushnotification'" ) )
+        {
+            return rs.next() ? rs.getInt( 1 ) : 0;
+        }
+    }
+
+    static void executeScript( final Connection connection, final Path script ) throws SQLException, IOException
+    {
+        final StringBuilder command = new StringBuilder();
+        for ( final String rawLine : Files.readAllLines( script, StandardCharsets.UTF_8 ) )
+        {
+            final String line = rawLine.trim();
+            if ( line.isEmpty() || line.startsWith( "--" ) || line.startsWith( "//" ) ) {
+                continue;
+            }
+            command.append( line ).append( ' ' );
+            if ( line.endsWith( ";" ) ) {
+                command.setLength( command.lastIndexOf( ";" ) );
+                try ( final Statement statement = connection.createStatement() ) {
+                    statement.execute( command.toString() );
+                }
+                command.setLength( 0 );
+            }
+        }
+    }
+
+    @Override
+    public boolean isPooled()
+    {
+        return false;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return DriverManager.getConnection( url, "SA", "" );
+    }
+
+    @Override
+    public void start()
+    {
+    }
+
+    @Override
+    public void restart()
+    {
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+}
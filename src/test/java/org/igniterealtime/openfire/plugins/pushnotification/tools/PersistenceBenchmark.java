@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.tools;
+
+import com.sun.management.ThreadMXBean;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.igniterealtime.openfire.plugins.pushnotification.PublishOptions;
+import org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager;
+import org.jivesoftware.openfire.user.User;
+import org.xmpp.packet.JID;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of the database operations of {@link PushServiceManager}.
+ *
+ * The benchmark creates an {@link EmbeddedDatabase} from the database scripts that ship with this plugin, fills it with
+ * synthetic registrations, and then measures the throughput and latency of each operation, concurrently executed by a configurable amount of
+ * threads. Bulk operations are executed (and measured) once. For every operation, the amount of memory that is allocated
+ * on the heap per execution is reported as well (including the allocations of the database driver, which is embedded),
+ * when the JVM supports measuring that.
+ *
+ * This class is part of the test sources, and is not shipped with the plugin. It is to be executed outside of Openfire,
+ * after building the plugin, with Openfire's libraries (which include HSQLDB) on the classpath:
+ *
+ * <pre>java -cp "target/classes:target/test-classes:openfire/lib/*" org.igniterealtime.openfire.plugins.pushnotification.tools.PersistenceBenchmark --rows 10000000</pre>
+ *
+ * Supported arguments (all optional):
+ * <ul>
+ *     <li><tt>--rows</tt>: the amount of registrations to generate (default: 1000000)</li>
+ *     <li><tt>--threads</tt>: the amount of concurrent threads per operation (default: 8)</li>
+ *     <li><tt>--seconds</tt>: the duration of the measurement of each operation (default: 10)</li>
+ *     <li><tt>--scripts</tt>: the directory that contains the database scripts (default: src/main/database)</li>
+ *     <li><tt>--url</tt>: the JDBC URL of the database (default: jdbc:hsqldb:mem:pushbenchmark)</li>
+ *     <li><tt>--seed</tt>: the seed for the generator of synthetic data (default: 42)</li>
+ *     <li><tt>--legacy-options</tt>: stores publish-options as raw XML, like earlier versions of this plugin did, instead of
+ *     in the representation of {@link PublishOptions} (default: false)</li>
+ * </ul>
+ */
+public class PersistenceBenchmark
+{
+    static final JID[] SERVICES = {
+        new JID( "push.example.org" ),
+        new JID( "fcm.push.example.com" ),
+        new JID( "apns.push.example.net" )
+    };
+    private static final JID DECOMMISSIONED_SERVICE = new JID( "old-push.example.org" );
+
+    private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int rows;
+    private final int threads;
+    private final int seconds;
+    private final Path scripts;
+    private final String url;
+    private final long seed;
+    private final boolean legacyOptions;
+
+    private int users;
+
+    public PersistenceBenchmark( final int rows, final int threads, final int seconds, final Path scripts, final String url, final long seed, final boolean legacyOptions )
+    {
+        this.rows = rows;
+        this.threads = threads;
+        this.seconds = seconds;
+        this.scripts = scripts;
+        this.url = url;
+        this.seed = seed;
+        this.legacyOptions = legacyOptions;
+    }
+
+    public static void main( final String[] args ) throws Exception
+    {
+        final Map<String, String> arguments = Arguments.parse( args );
+        new PersistenceBenchmark(
+            Integer.parseInt( arguments.getOrDefault( "rows", "1000000" ) ),
+            Integer.parseInt( arguments.getOrDefault( "threads", "8" ) ),
+            Integer.parseInt( arguments.getOrDefault( "seconds", "10" ) ),
+            Paths.get( arguments.getOrDefault( "scripts", "src/main/database" ) ),
+            arguments.getOrDefault( "url", "jdbc:hsqldb:mem:pushbenchmark" ),
+            Long.parseLong( arguments.getOrDefault( "seed", "42" ) ),
+            Boolean.parseBoolean( arguments.getOrDefault( "legacy-options", "false" ) )
+        ).run();
+    }
+
+    public void run() throws Exception
+    {
+        System.out.printf( "Creating schema from %s%n", scripts.toAbsolutePath() );
+        EmbeddedDatabase.install( url, scripts );
+        try
+        {
+
+            System.out.printf( "Generating %,d registrations...%n", rows );
+            final long start = System.nanoTime();
+            populate();
+            System.out.printf( "Generated %,d registrations for %,d users in %,d ms.%n%n", rows, users, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) );
+
+            final List<Result> results = new ArrayList<>();
+            final ConcurrentLinkedQueue<String[]> registered = new ConcurrentLinkedQueue<>();
+
+            results.add( measure( "loadRegistrations", random -> PushServiceManager.loadRegistrations( randomUsername( random ) ) ) );
+            results.add( measure( "getServiceNodes", random -> PushServiceManager.getServiceNodes( user( randomUsername( random ) ) ) ) );
+            results.add( measure( "register", random -> {
+                final User user = user( randomUsername( random ) );
+                final JID service = SERVICES[ random.nextInt( SERVICES.length ) ];
+                final String node = "bench-" + Long.toHexString( random.nextLong() );
+                PushServiceManager.register( user, service, node, random.nextInt( 10 ) < 3 ? publishOptions( random ) : null );
+                registered.add( new String[] { user.getUsername(), service.toString(), node } );
+            } ) );
+            results.add( measure( "deregister(user,service,node)", random -> {
+                final String[] registration = registered.poll();
+                if ( registration != null ) {
+                    PushServiceManager.deregister( user( registration[0] ), new JID( registration[1] ), registration[2] );
+                } else {
+                    PushServiceManager.deregister( user( randomUsername( random ) ), SERVICES[0], "non-existing" );
+                }
+            } ) );
+            results.add( measure( "deregister(user,service)", random -> PushServiceManager.deregister( user( randomUsername( random ) ), SERVICES[ random.nextInt( SERVICES.length ) ] ) ) );
+            results.add( measure( "deregister(user)", random -> PushServiceManager.deregister( user( randomUsername( random ) ) ) ) );
+
+            results.add( once( "getServiceCounts", PushServiceManager::getServiceCounts ) );
+            results.add( once( "renameService", () -> PushServiceManager.renameService( SERVICES[2], new JID( "renamed." + SERVICES[2] ) ) ) );
+            results.add( once( "deregisterNodes", () -> PushServiceManager.deregisterNodes( "purge-*" ) ) );
+            results.add( once( "deregisterService", () -> PushServiceManager.deregisterService( DECOMMISSIONED_SERVICE ) ) );
+
+            report( results );
+        }
+        finally
+        {
+            EmbeddedDatabase.uninstall();
+        }
+    }
+
+    private void populate() throws SQLException
+    {
+        final Random random = new Random( seed );
+        final Map<JID, Long> serviceIDs = new HashMap<>();
+        try ( final Connection connection = DriverManager.getConnection( url, "SA", "" );
+              final PreparedStatement pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiService (username, serviceID, node, options) VALUES(?,?,?,?)" ) )
+        {
+            for ( final JID service : SERVICES ) {
+                serviceIDs.put( service, (long) serviceIDs.size() + 1 );
+            }
+            serviceIDs.put( DECOMMISSIONED_SERVICE, (long) serviceIDs.size() + 1 );
+            for ( final Map.Entry<JID, Long> entry : serviceIDs.entrySet() ) {
+                EmbeddedDatabase.addService( connection, entry.getValue(), entry.getKey().toString() );
+            }
+
+            connection.setAutoCommit( false );
+            int generated = 0;
+            while ( generated < rows )
+            {
+                // Most users have a single device, some have a few.
+                final int devices = Math.min( rows - generated, random.nextInt( 10 ) < 7 ? 1 : 2 + random.nextInt( 2 ) );
+                final String username = "user" + users;
+                for ( int d = 0; d < devices; d++ )
+                {
+                    final JID service;
+                    final String node;
+                    if ( generated % 1000 == 999 ) {
+                        service = SERVICES[ random.nextInt( SERVICES.length ) ];
+                        node = "purge-" + Long.toHexString( random.nextLong() );
+                    } else if ( generated % 1000 == 998 ) {
+                        service = DECOMMISSIONED_SERVICE;
+                        node = Long.toHexString( random.nextLong() ) + Long.toHexString( random.nextLong() );
+                    } else {
+                        service = SERVICES[ random.nextInt( SERVICES.length ) ];
+                        node = Long.toHexString( random.nextLong() ) + Long.toHexString( random.nextLong() );
+                    }
+                    pstmt.setString( 1, username );
+                    pstmt.setLong( 2, serviceIDs.get( service ) );
+                    pstmt.setString( 3, node );
+                    if ( random.nextInt( 10 ) < 3 ) {
+                        final Element options = publishOptions( random );
+                        pstmt.setString( 4, legacyOptions ? options.asXML() : PublishOptions.encode( options ) );
+                    } else {
+                        pstmt.setString( 4, null );
+                    }
+                    pstmt.addBatch();
+                    generated++;
+                    if ( generated % 10000 == 0 ) {
+                        pstmt.executeBatch();
+                        connection.commit();
+                    }
+                }
+                users++;
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        }
+    }
+
+    private String randomUsername( final Random random )
+    {
+        return "user" + random.nextInt( users );
+    }
+
+    private static User user( final String username )
+    {
+        return new User( username, null, null, new java.util.Date(), new java.util.Date() );
+    }
+
+    private static Element publishOptions( final Random random )
+    {
+        final Element x = DocumentHelper.createElement( DocumentHelper.createQName( "x", DocumentHelper.createNamespace( "", "jabber:x:data" ) ) );
+        x.addAttribute( "type", "submit" );
+        final Element formType = x.addElement( "field" ).addAttribute( "var", "FORM_TYPE" );
+        formType.addElement( "value" ).setText( "http://jabber.org/protocol/pubsub#publish-options" );
+        x.addElement( "field" ).addAttribute( "var", "secret" ).addElement( "value" ).setText( Long.toHexString( random.nextLong() ) + Long.toHexString( random.nextLong() ) );
+        return x;
+    }
+
+    @FunctionalInterface
+    interface Operation
+    {
+        void execute( Random random ) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface BulkOperation
+    {
+        Object execute() throws Exception;
+    }
+
+    private Result measure( final String name, final Operation operation ) throws InterruptedException
+    {
+        System.out.printf( "Measuring %s (%d thread(s), %d second(s))...%n", name, threads, seconds );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final List<long[]> samplesPerThread = new CopyOnWriteArrayList<>();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( seconds );
+        final CountDownLatch done = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ )
+        {
+            final long threadSeed = seed + t;
+            executor.execute( () -> {
+                final Random random = new Random( threadSeed );
+                long[] samples = new long[1024];
+                int count = 0;
+                final long allocatedBefore = allocatedBytes();
+                try {
+                    while ( System.nanoTime() < deadline ) {
+                        final long start = System.nanoTime();
+                        try {
+                            operation.execute( random );
+                        } catch ( Exception e ) {
+                            errors.incrementAndGet();
+                        }
+                        if ( count == samples.length ) {
+                            samples = Arrays.copyOf( samples, count * 2 );
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                } finally {
+                    final long allocatedAfter = allocatedBytes();
+                    if ( allocatedBefore >= 0 && allocatedAfter >= 0 ) {
+                        allocated.addAndGet( allocatedAfter - allocatedBefore );
+                    }
+                    samplesPerThread.add( Arrays.copyOf( samples, count ) );
+                    done.countDown();
+                }
+            } );
+        }
+        done.await();
+        executor.shutdown();
+
+        final long[] all = samplesPerThread.stream().flatMapToLong( Arrays::stream ).toArray();
+        return new Result( name, all, seconds, errors.get(), allocatedBytes() < 0 ? -1 : allocated.get() );
+    }
+
+    private Result once( final String name, final BulkOperation operation )
+    {
+        System.out.printf( "Measuring %s (once)...%n", name );
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        long errors = 0;
+        Object outcome = null;
+        try {
+            outcome = operation.execute();
+        } catch ( Exception e ) {
+            errors++;
+            outcome = "failed: " + e;
+        }
+        final long duration = System.nanoTime() - start;
+        final long allocatedAfter = allocatedBytes();
+        System.out.printf( "  result: %s%n", outcome );
+        return new Result( name, new long[] { duration }, duration / 1_000_000_000.0, errors, allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore );
+    }
+
+    /**
+     * The amount of bytes that the current thread allocated on the heap so far.
+     *
+     * @return an amount of bytes, or -1 when the JVM does not support measuring that.
+     */
+    static long allocatedBytes()
+    {
+        if ( !THREAD_MX_BEAN.isThreadAllocatedMemorySupported() || !THREAD_MX_BEAN.isThreadAllocatedMemoryEnabled() ) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    static void report( final List<Result> results )
+    {
+        System.out.println();
+        System.out.printf( "%-32s %12s %12s %10s %10s %10s %10s %8s %14s%n", "operation", "count", "ops/s", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)", "errors", "alloc/op (B)" );
+        for ( final Result result : results ) {
+            System.out.println( result );
+        }
+    }
+
+    static class Result
+    {
+        final String name;
+        final long[] latencies;
+        final double seconds;
+        final long errors;
+        final long allocated;
+
+        Result( final String name, final long[] latencies, final double seconds, final long errors )
+        {
+            this( name, latencies, seconds, errors, -1 );
+        }
+
+        /**
+         * @param allocated The amount of bytes that were allocated on the heap by all executions, or -1 when unknown.
+         */
+        Result( final String name, final long[] latencies, final double seconds, final long errors, final long allocated )
+        {
+            this.name = name;
+            this.latencies = latencies;
+            this.seconds = seconds;
+            this.errors = errors;
+            this.allocated = allocated;
+            Arrays.sort( this.latencies );
+        }
+
+        long percentileMicros( final double percentile )
+        {
+            if ( latencies.length == 0 ) {
+                return 0;
+            }
+            final int index = (int) Math.min( latencies.length - 1, Math.ceil( percentile / 100.0 * latencies.length ) - 1 );
+            return TimeUnit.NANOSECONDS.toMicros( latencies[ Math.max( index, 0 ) ] );
+        }
+
+        @Override
+        public String toString()
+        {
+            final String allocatedPerOperation = allocated < 0 || latencies.length == 0 ? "n/a" : String.format( "%,d", allocated / latencies.length );
+            return String.format( "%-32s %,12d %,12.0f %,10d %,10d %,10d %,10d %,8d %14s", name, latencies.length, seconds > 0 ? latencies.length / seconds : 0, percentileMicros( 50 ), percentileMicros( 90 ), percentileMicros( 99 ), percentileMicros( 100 ), errors, allocatedPerOperation );
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2025 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.igniterealtime.openfire.plugins.pushnotification.tools;
+
+import org.igniterealtime.openfire.plugins.pushnotification.LocalPushAttemptTracker;
+import org.igniterealtime.openfire.plugins.pushnotification.PushInterceptor;
+import org.igniterealtime.openfire.plugins.pushnotification.PushNotificationService;
+import org.igniterealtime.openfire.plugins.pushnotification.PushPipeline;
+import org.igniterealtime.openfire.plugins.pushnotification.PushPriority;
+import org.igniterealtime.openfire.plugins.pushnotification.PushServiceManager;
+import org.igniterealtime.openfire.plugins.pushnotification.PushSubmission;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.FanOutSmoother;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDelivery;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushDeliveryQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.delivery.PushGraceQueue;
+import org.igniterealtime.openfire.plugins.pushnotification.mention.MentionDetector;
+import org.igniterealtime.openfire.plugins.pushnotification.overload.OverloadController;
+import org.igniterealtime.openfire.plugins.pushnotification.streammanagement.ReplayDetector;
+import org.igniterealtime.openfire.plugins.pushnotification.trace.TraceReader;
+import org.igniterealtime.openfire.plugins.pushnotification.trace.TraceRecord;
+import org.igniterealtime.openfire.plugins.pushnotification.trace.TraceRecorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a trace that was recorded by {@link org.igniterealtime.openfire.plugins.pushnotification.trace.TraceRecorder}.
+ *
+ * Every message in the trace that caused a lookup of push service registrations in the original run is processed
+ * again, by submitting it to a {@link PushNotificationService} that uses the plugin's own {@link PushInterceptor}: its
+ * registrations are looked up through {@link PushServiceManager}, it is throttled by a {@link LocalPushAttemptTracker}
+ * (using the default of {@link PushInterceptor#MAX_PER_SECOND}), and a push notification per registration is built and
+ * queued in a {@link PushDeliveryQueue}. Instead of Openfire's database, an {@link EmbeddedDatabase} is used, that is
+ * filled with as many registrations for each (anonymized) user as the trace recorded. Instead of routing push
+ * notifications to push services, they are counted. Messages that did not cause a lookup (for example, because the
+ * recipient was unknown, or because the conversation was muted) are counted, but not processed.
+ *
+ * Messages are replayed at the pace at which they were recorded, multiplied by a configurable speed. The throughput,
+ * the latency of processing messages, the latency of queued push notifications and the largest delay behind the
+ * schedule of the trace are reported.
+ *
+ * This class is part of the test sources, and is not shipped with the plugin. It is to be executed outside of Openfire,
+ * after building the plugin, with Openfire's libraries (which include HSQLDB) on the classpath:
+ *
+ * <pre>java -cp "target/classes:target/test-classes:openfire/lib/*" org.igniterealtime.openfire.plugins.pushnotification.tools.TraceReplayer --trace trace-20250101-120000.bin --speed 10</pre>
+ *
+ * Supported arguments (all but <tt>--trace</tt> are optional):
+ * <ul>
+ *     <li><tt>--trace</tt>: the trace file to replay</li>
+ *     <li><tt>--speed</tt>: the factor by which to speed up the replay, or 0 to replay as fast as possible (default: 1)</li>
+ *     <li><tt>--threads</tt>: the amount of threads that process messages (default: 8)</li>
+ *     <li><tt>--scripts</tt>: the directory that contains the database scripts (default: src/main/database)</li>
+ *     <li><tt>--url</tt>: the JDBC URL of the database (default: jdbc:hsqldb:mem:pushreplay)</li>
+ * </ul>
+ */
+public class TraceReplayer
+{
+    /**
+     * Outcomes of messages that did not cause a lookup of registrations in the original run.
+     */
+    private static final Set<String> NOT_LOOKED_UP = Set.of( "no-body", "unknown-user", "not-mentioned", "muted", "shed", "redelivered", "replayed", "other" );
+
+    private final Path trace;
+    private final double speed;
+    private final int threads;
+    private final Path scripts;
+    private final String url;
+
+    private final ConcurrentLinkedQueue<Long> deliveryLatencies = new ConcurrentLinkedQueue<>();
+
+    public TraceReplayer( final Path trace, final double speed, final int threads, final Path scripts, final String url )
+    {
+        this.trace = trace;
+        this.speed = speed;
+        this.threads = threads;
+        this.scripts = scripts;
+        this.url = url;
+    }
+
+    public static void main( final String[] args ) throws Exception
+    {
+        final Map<String, String> arguments = Arguments.parse( args );
+        if ( !arguments.containsKey( "trace" ) ) {
+            throw new IllegalArgumentException( "Missing required argument: --trace" );
+        }
+        new TraceReplayer(
+            Paths.get( arguments.get( "trace" ) ),
+            Double.parseDouble( arguments.getOrDefault( "speed", "1" ) ),
+            Integer.parseInt( arguments.getOrDefault( "threads", "8" ) ),
+            Paths.get( arguments.getOrDefault( "scripts", "src/main/database" ) ),
+            arguments.getOrDefault( "url", "jdbc:hsqldb:mem:pushreplay" )
+        ).run();
+    }
+
+    public void run() throws Exception
+    {
+        // This also uses a temporary home directory, in which the delivery queue keeps its journal.
+        System.out.printf( "Creating schema from %s%n", scripts.toAbsolutePath() );
+        EmbeddedDatabase.install( url, scripts );
+        final PushDeliveryQueue deliveryQueue = new PushDeliveryQueue( this::deliver );
+        try
+        {
+
+            System.out.printf( "Reading users from %s%n", trace.toAbsolutePath() );
+            final Map<Long, Integer> registrationsByUser = readUsers();
+            populate( registrationsByUser );
+            System.out.printf( "Generated registrations for %,d users.%n%n", registrationsByUser.size() );
+
+            deliveryQueue.start();
+            replay( deliveryQueue );
+        }
+        finally
+        {
+            deliveryQueue.stop();
+            EmbeddedDatabase.uninstall();
+        }
+    }
+
+    /**
+     * Reads the trace once, to determine the amount of registrations of each user. Users for which the amount was
+     * never recorded, but for which push notifications were queued, are assumed to have one registration.
+     */
+    private Map<Long, Integer> readUsers() throws IOException
+    {
+        final Map<Long, Integer> result = new HashMap<>();
+        try ( final TraceReader reader = new TraceReader( trace ) )
+        {
+            TraceRecord record;
+            while ( ( record = reader.next() ) != null )
+            {
+                if ( NOT_LOOKED_UP.contains( record.getOutcome() ) ) {
+                    continue;
+                }
+                final int registrations = record.getRegistrations() >= 0 ? record.getRegistrations() : ( "no-registrations".equals( record.getOutcome() ) ? 0 : 1 );
+                result.merge( record.getUserHash(), registrations, Math::max );
+            }
+        }
+        return result;
+    }
+
+    private void populate( final Map<Long, Integer> registrationsByUser ) throws SQLException
+    {
+        try ( final Connection connection = DriverManager.getConnection( url, "SA", "" );
+              final PreparedStatement pstmt = connection.prepareStatement( "INSERT INTO ofPushNotiService (username, serviceID, node, options) VALUES(?,?,?,?)" ) )
+        {
+            for ( int i = 0; i < PersistenceBenchmark.SERVICES.length; i++ ) {
+                EmbeddedDatabase.addService( connection, i + 1, PersistenceBenchmark.SERVICES[i].toString() );
+            }
+
+            connection.setAutoCommit( false );
+            int generated = 0;
+            for ( final Map.Entry<Long, Integer> entry : registrationsByUser.entrySet() )
+            {
+                for ( int r = 0; r < entry.getValue(); r++ )
+                {
+                    pstmt.setString( 1, username( entry.getKey() ) );
+                    pstmt.setLong( 2, r % PersistenceBenchmark.SERVICES.length + 1 );
+                    pstmt.setString( 3, "replay-" + r );
+                    pstmt.setString( 4, null );
+                    pstmt.addBatch();
+                    if ( ++generated % 10000 == 0 ) {
+                        pstmt.executeBatch();
+                        connection.commit();
+                    }
+                }
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        }
+    }
+
+    private void replay( final PushDeliveryQueue deliveryQueue ) throws Exception
+    {
+        final LocalPushAttemptTracker attemptTracker = new LocalPushAttemptTracker();
+        final PushNotificationService service = PushPipeline.serviceFor( new PushInterceptor(
+            attemptTracker,
+            deliveryQueue,
+            new OverloadController( deliveryQueue::getQueueDepth, PushServiceManager.getConnectionWait() ),
+            new MentionDetector(),
+            new FanOutSmoother(),
+            new PushGraceQueue(),
+            new TraceRecorder(),
+            new ReplayDetector( attemptTracker )
+        ) );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final Semaphore inFlight = new Semaphore( threads * 64 );
+        final ConcurrentLinkedQueue<Long> processingLatencies = new ConcurrentLinkedQueue<>();
+        final Map<String, AtomicLong> outcomes = new ConcurrentSkipListMap<>();
+        final AtomicLong errors = new AtomicLong();
+        long maximumLagNanos = 0;
+        long sequence = 0;
+
+        System.out.printf( "Replaying %s at %s...%n", trace.getFileName(), speed > 0 ? speed + "x speed" : "maximum speed" );
+        final long start = System.nanoTime();
+        try ( final TraceReader reader = new TraceReader( trace ) )
+        {
+            TraceRecord record;
+            while ( ( record = reader.next() ) != null )
+            {
+                if ( NOT_LOOKED_UP.contains( record.getOutcome() ) ) {
+                    outcomes.computeIfAbsent( "skipped (" + record.getOutcome() + ")", o -> new AtomicLong() ).incrementAndGet();
+                    continue;
+                }
+
+                if ( speed > 0 )
+                {
+                    final long due = start + (long) ( TimeUnit.MICROSECONDS.toNanos( record.getTimeMicros() ) / speed );
+                    final long wait = due - System.nanoTime();
+                    if ( wait > 0 ) {
+                        TimeUnit.NANOSECONDS.sleep( wait );
+                    } else {
+                        maximumLagNanos = Math.max( maximumLagNanos, -wait );
+                    }
+                }
+
+                final String username = username( record.getUserHash() );
+                final String identifier = String.valueOf( sequence++ );
+                final PushPriority priority = record.getPriority() == null ? PushPriority.DIRECT : record.getPriority();
+                inFlight.acquire();
+                executor.execute( () -> {
+                    final long begin = System.nanoTime();
+                    try {
+                        final String outcome = service.submit( new PushSubmission( username, identifier, Collections.emptyMap(), priority ) );
+                        outcomes.computeIfAbsent( outcome, o -> new AtomicLong() ).incrementAndGet();
+                    } catch ( Exception e ) {
+                        errors.incrementAndGet();
+                    } finally {
+                        processingLatencies.add( System.nanoTime() - begin );
+                        inFlight.release();
+                    }
+                } );
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination( 1, TimeUnit.HOURS );
+        final double processingSeconds = ( System.nanoTime() - start ) / 1_000_000_000.0;
+
+        // Wait for the delivery queue to drain.
+        while ( deliveryQueue.getQueueDepth() > 0 ) {
+            Thread.sleep( 10 );
+        }
+        final double seconds = ( System.nanoTime() - start ) / 1_000_000_000.0;
+
+        System.out.println();
+        for ( final Map.Entry<String, AtomicLong> outcome : outcomes.entrySet() ) {
+            System.out.printf( "%-32s %,12d%n", outcome.getKey(), outcome.getValue().get() );
+        }
+        System.out.printf( "%-32s %,12d ms%n", "maximum lag behind trace", TimeUnit.NANOSECONDS.toMillis( maximumLagNanos ) );
+
+        PersistenceBenchmark.report( List.of(
+            new PersistenceBenchmark.Result( "process message", processingLatencies.stream().mapToLong( Long::longValue ).toArray(), processingSeconds, errors.get() ),
+            new PersistenceBenchmark.Result( "deliver push notification", deliveryLatencies.stream().mapToLong( Long::longValue ).toArray(), seconds, 0 )
+        ) );
+    }
+
+    /**
+     * Stands in for the routing of a push notification to its push service.
+     */
+    private void deliver( final PushDelivery delivery )
+    {
+        deliveryLatencies.add( TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis() - delivery.getCreated() ) );
+    }
+
+    private static String username( final long userHash )
+    {
+        return "u" + Long.toHexString( userHash );
+    }
+}